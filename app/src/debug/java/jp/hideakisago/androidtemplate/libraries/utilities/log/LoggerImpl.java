@@ -1,10 +1,16 @@
 package jp.hideakisago.androidtemplate.libraries.utilities.log;
 
+import android.util.Log;
+
 /**
  * Log 出力を行う class です。
+ * 出力する level は {@link LogLevels} で実行時に変更できます。
  */
 class LoggerImpl extends AbsLogger {
 
+    /** Tag 毎の設定が無い場合に出力する最低の log level。 */
+    static final int DEFAULT_MIN_LEVEL = Log.VERBOSE;
+
     /**
      * Log 出力時の tag を指定して生成します。
      *
@@ -1,28 +1,90 @@
 package jp.hideakisago.androidtemplate.viewcontrollers.menu;
 
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.support.annotation.Nullable;
-import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
-import android.widget.ListView;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.widget.EditText;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import jp.hideakisago.androidtemplate.R;
+import jp.hideakisago.androidtemplate.libraries.utilities.TextSearchIndex;
 import jp.hideakisago.androidtemplate.libraries.utilities.ViewFinder;
 import jp.hideakisago.androidtemplate.viewcontrollers.AbsUiFragment;
 
 /**
  * 開発 menu 画面の抽象 class です。
  *
- * 画面や API などの開発項目を {@link ListView} で表示し、各項目に設定された処理を実行します。
+ * 画面や API などの開発項目を {@link RecyclerView} で表示し、各項目に設定された処理を実行します。
+ * 項目が変わった場合は {@link #refreshItems()} を呼び出すと、 {@link #createItems()} の結果との差分を
+ * background thread で求め、変更された行のみを更新します。
+ * <p>
+ * List の上の入力欄に入力すると、項目名に入力した文字列を含む項目に絞り込みます。
+ * 項目名の {@link TextSearchIndex} は項目の作成時に background thread で構築し、
+ * 入力が {@value #FILTER_DEBOUNCE_MILLIS}ms 止まってから検索します。 検索中に入力が変わった場合は、古い検索を中断します。
+ * <p>
+ * {@link ItemListBuilder#addTask(String, ItemTask)} で追加した項目は、全ての開発 menu 画面で共有する
+ * 有限の thread pool で実行します。 実行中の項目の再選択は無視し、 view の破棄時に実行中の処理を取り消します。
  */
 public abstract class AbsMenuListFragment extends AbsUiFragment {
 
+    /** 処理を持つ項目の view を再利用のために保持する数。 */
+    private static final int MAX_RECYCLED_ACTION_VIEWS = 20;
+
+    /** 入力が止まってから絞り込むまでの時間 (millisecond)。 */
+    private static final long FILTER_DEBOUNCE_MILLIS = 150;
+
+    /** Index の構築と検索を行う thread。 */
+    private static final ExecutorService FILTER_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "MenuFilter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** UI thread の handler。 */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** 絞り込みの入力欄。 */
+    private EditText mFilterView;
+
     /** 項目 list。 */
-    private ListView mListView;
+    private RecyclerView mListView;
+
+    /** 絞り込む前の全ての項目。 */
+    private List<Item> mItems = Collections.emptyList();
+
+    /** {@link #mItems} の項目名の index。 */
+    private Future<TextSearchIndex> mIndex;
+
+    /** 実行中の検索。 */
+    private Future<?> mFilterTask;
+
+    /** 絞り込みの世代。 古い検索の結果を捨てるために利用します。 */
+    private int mFilterGeneration;
+
+    /** 入力が止まった時に絞り込む処理。 */
+    private final Runnable mFilterRunnable = this::applyFilter;
+
+    /** 項目 list の adapter。 */
+    private MenuItemAdapter mAdapter;
+
+    /** {@link Item#task} を実行する runner。 */
+    private ItemTaskRunner mTaskRunner;
 
     @Override
     protected int getLayoutId() {
@@ -33,6 +95,7 @@ public abstract class AbsMenuListFragment extends AbsUiFragment {
     protected void onFindView(ViewFinder view) {
         super.onFindView(view);
 
+        mFilterView = view.find(R.id.filter);
         mListView = view.find(R.id.list);
     }
 
@@ -41,22 +104,130 @@ public abstract class AbsMenuListFragment extends AbsUiFragment {
         super.onInitView(savedInstanceState);
 
         onInitListView(mListView, savedInstanceState);
+
+        mFilterView.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mHandler.removeCallbacks(mFilterRunnable);
+                mHandler.postDelayed(mFilterRunnable, FILTER_DEBOUNCE_MILLIS);
+            }
+        });
+    }
+
+    @Override
+    public void onDestroyView() {
+        mHandler.removeCallbacks(mFilterRunnable);
+        cancelFilter();
+        if (mAdapter != null) {
+            mAdapter.cancel();
+        }
+        if (mTaskRunner != null) {
+            mTaskRunner.cancelAll();
+        }
+        super.onDestroyView();
     }
 
     /**
-     * {@link ListView} を初期化します。
+     * {@link RecyclerView} を初期化します。
      *
-     * @param listView 初期化する {@link ListView} です。
+     * @param listView 初期化する {@link RecyclerView} です。
      * @param savedInstanceState null でないの場合、この fragment は以前に保存した状態から再構築されています。
      */
-    protected void onInitListView(ListView listView, @Nullable Bundle savedInstanceState) {
+    protected void onInitListView(RecyclerView listView, @Nullable Bundle savedInstanceState) {
+
+        listView.setLayoutManager(new LinearLayoutManager(getContext()));
+        listView.setHasFixedSize(true);
+        listView.getRecycledViewPool()
+                .setMaxRecycledViews(MenuItemAdapter.VIEW_TYPE_ACTION, MAX_RECYCLED_ACTION_VIEWS);
+
+        mTaskRunner = new ItemTaskRunner(key -> mAdapter.notifyKeyChanged(key));
+        mAdapter = new MenuItemAdapter(this::onItemClick, mTaskRunner);
+        listView.setAdapter(mAdapter);
+        setItems(createItems());
+    }
+
+    /**
+     * {@link #createItems()} を呼び出し直し、表示している項目との差分の行のみを更新します。
+     * 入力欄で絞り込んでいる場合は、新しい項目を絞り込んで表示します。
+     */
+    protected void refreshItems() {
+        setItems(createItems());
+    }
+
+    /**
+     * 全ての項目を変更し、項目名の index の構築を開始します。
+     *
+     * 表示している項目との差分の行のみを更新します。 {@link #createItems()} 以外から項目を追加する場合に呼び出してください。
+     *
+     * @param items 全ての項目です。
+     */
+    protected final void setItems(List<Item> items) {
+        mItems = new ArrayList<>(items);
+        final List<String> names = new ArrayList<>(mItems.size());
+        for (Item item : mItems) {
+            names.add(item.name);
+        }
+        FutureTask<TextSearchIndex> index = new FutureTask<>(() -> TextSearchIndex.build(names));
+        mIndex = index;
+        FILTER_EXECUTOR.execute(index);
+        applyFilter();
+    }
+
+    /**
+     * 入力欄の文字列で項目を絞り込みます。
+     *
+     * 検索は index の構築と同じ thread で行うため、 index の構築後に実行されます。
+     */
+    private void applyFilter() {
+        cancelFilter();
+        final int generation = mFilterGeneration;
+        final String query = mFilterView.getText().toString();
+        final List<Item> items = mItems;
+        if (query.trim().isEmpty()) {
+            mAdapter.submit(items);
+            return;
+        }
+        final Future<TextSearchIndex> index = mIndex;
+        mFilterTask = FILTER_EXECUTOR.submit(() -> {
+            final int[] positions = index.get().search(query);
+            mHandler.post(() -> {
+                if (generation == mFilterGeneration) {
+                    mAdapter.submit(items, positions);
+                }
+            });
+            return null;
+        });
+    }
 
-        listView.setAdapter(new ArrayAdapter<>(
-                getContext(),
-                android.R.layout.simple_list_item_1,
-                createItems()));
+    /**
+     * 実行中の検索を中断し、結果を反映しないようにします。
+     */
+    private void cancelFilter() {
+        mFilterGeneration++;
+        if (mFilterTask != null) {
+            mFilterTask.cancel(true);
+            mFilterTask = null;
+        }
+    }
 
-        listView.setOnItemClickListener(AbsMenuListFragment.this::onItemClick);
+    /**
+     * @param position 表示している行の位置です。
+     * @return 指定した位置に表示している項目を返します。 該当する行が無い場合は null を返します。
+     */
+    @Nullable
+    protected final Item getDisplayedItem(int position) {
+        if (mAdapter == null || position < 0 || position >= mAdapter.getItemCount()) {
+            return null;
+        }
+        return mAdapter.getItem(position);
     }
 
     /**
@@ -71,14 +242,28 @@ public abstract class AbsMenuListFragment extends AbsUiFragment {
      * List 項目を click した時に呼び出されます。
      *
      * 該当項目の {@link Item#runner} が設定されている場合は実行します。
+     * {@link Item#task} は {@link ItemTaskRunner} で実行するため、この method は呼び出されません。
+     *
+     * @param item Click された項目です。
      */
-    protected void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-        Item item = (Item) parent.getAdapter().getItem(position);
+    protected void onItemClick(Item item) {
         if (item.runner != null) {
             item.runner.run();
         }
     }
 
+    /**
+     * 項目選択時に background thread で実行される処理です。
+     */
+    protected interface ItemTask {
+        /**
+         * 処理を実行します。 画面の破棄などで取り消された場合は、実行中の thread が interrupt されます。
+         *
+         * @throws Exception 処理に失敗した場合に throw します。 Message を項目に表示します。
+         */
+        void run() throws Exception;
+    }
+
     /**
      * List に表示する1要素です。
      */
@@ -87,6 +272,8 @@ public abstract class AbsMenuListFragment extends AbsUiFragment {
         public final String name;
         /** 項目選択時に実行される処理。 */
         public final Runnable runner;
+        /** 項目選択時に background thread で実行される処理。 */
+        public final ItemTask task;
 
         /**
          * 項目名のみ指定して生成します。
@@ -105,8 +292,20 @@ public abstract class AbsMenuListFragment extends AbsUiFragment {
          * @param runner 項目選択時に実行される処理です。
          */
         public Item(String name, @Nullable Runnable runner) {
+            this(name, runner, null);
+        }
+
+        /**
+         * 項目名、項目選択時に実行される処理 及び background thread で実行される処理 を指定して生成します。
+         *
+         * @param name 項目名です。
+         * @param runner 項目選択時に実行される処理です。
+         * @param task 項目選択時に background thread で実行される処理です。
+         */
+        public Item(String name, @Nullable Runnable runner, @Nullable ItemTask task) {
             this.name = name;
             this.runner = runner;
+            this.task = task;
         }
 
         @Override
@@ -180,5 +379,17 @@ public abstract class AbsMenuListFragment extends AbsUiFragment {
             items.add(new Item(name, runner));
             return this;
         }
+
+        /**
+         * 引数で指定する項目名と、 background thread で実行する {@link ItemTask} の item を生成して項目に追加します。
+         *
+         * @param name 項目名です。
+         * @param task 項目選択時に background thread で実行される処理です。
+         * @return this を返します。
+         */
+        public ItemListBuilder addTask(String name, ItemTask task) {
+            items.add(new Item(name, null, task));
+            return this;
+        }
     }
 }
@@ -0,0 +1,144 @@
+package jp.hideakisago.androidtemplate.viewcontrollers.menu;
+
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+
+import java.util.List;
+
+/**
+ * 項目を page 単位で読み込む開発 menu 画面の抽象 class です。
+ *
+ * {@link #createItemPageSource()} の source から最初の page のみを読み込んで表示し、
+ * 以降の page は list の scroll の方向の端に近づいた時に background thread で読み込みます。
+ * 保持する page は {@value #MAX_PAGES} page までで、超えた場合は反対側の端の page を破棄します。
+ * <p>
+ * usage:
+ * <pre><code>
+ * protected ItemPageSource createItemPageSource() {
+ *     return new ItemPageSource() {
+ *         protected boolean loadPage(int page, ItemListBuilder builder) throws Exception {
+ *             for (Endpoint endpoint : api.getEndpoints(page)) {
+ *                 builder.add(endpoint.name, () -> call(endpoint));
+ *             }
+ *             return page &lt; api.getPageCount() - 1;
+ *         }
+ *     };
+ * }
+ * </code></pre>
+ */
+public abstract class AbsPagedMenuListFragment extends AbsMenuListFragment {
+
+    /** 保持する page 数の上限。 */
+    private static final int MAX_PAGES = 5;
+
+    /** 端からこの行数以内を表示した時に、次の page を読み込みます。 */
+    private static final int PREFETCH_DISTANCE = 10;
+
+    /** UI thread の handler。 */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** 項目を page 単位で読み込む pager。 */
+    private ItemPager mPager;
+
+    /** 項目 list。 */
+    private RecyclerView mListView;
+
+    /** 表示位置の変更を pager に伝える listener。 */
+    private final RecyclerView.OnScrollListener mScrollListener = new RecyclerView.OnScrollListener() {
+        @Override
+        public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+            checkPrefetch(dy);
+        }
+    };
+
+    @Override
+    protected void onInitListView(RecyclerView listView, @Nullable Bundle savedInstanceState) {
+        mListView = listView;
+        super.onInitListView(listView, savedInstanceState);
+
+        listView.addOnScrollListener(mScrollListener);
+    }
+
+    @Override
+    public void onDestroyView() {
+        if (mPager != null) {
+            mPager.cancel();
+        }
+        if (mListView != null) {
+            mListView.removeOnScrollListener(mScrollListener);
+        }
+        super.onDestroyView();
+    }
+
+    /**
+     * Pager を作り直し、最初の page を読み込みます。
+     *
+     * @return 最初の page の項目を返します。
+     */
+    @Override
+    protected final List<Item> createItems() {
+        if (mPager != null) {
+            mPager.cancel();
+        }
+        mPager = new ItemPager(createItemPageSource(), MAX_PAGES, PREFETCH_DISTANCE,
+                AsyncTask.THREAD_POOL_EXECUTOR, mHandler::post, this::onPageItemsChanged);
+        return mPager.loadFirstPage();
+    }
+
+    /**
+     * 項目を page 単位で読み込む source を作成します。
+     *
+     * @return 作成した source を返します。
+     */
+    protected abstract ItemPageSource createItemPageSource();
+
+    /**
+     * Page を読み込んだ、または破棄した時に呼び出されます。
+     *
+     * @param items 保持している全ての page の項目です。
+     */
+    private void onPageItemsChanged(List<Item> items) {
+        setItems(items);
+        // 読み込んだ page が画面に収まった場合も、同じ方向の次の page を読み込みます。
+        mListView.post(() -> checkPrefetch(0));
+    }
+
+    /**
+     * 表示している最初と最後の項目を pager に伝えます。
+     *
+     * 行の位置は絞り込み後の位置のため、項目に変換して渡し、 pager 自身の項目の中での位置で判定させます。
+     *
+     * @param direction Scroll の方向です。 後ろに scroll した場合は正、前に scroll した場合は負、それ以外は 0 です。
+     */
+    private void checkPrefetch(int direction) {
+        if (mPager == null || !(mListView.getLayoutManager() instanceof LinearLayoutManager)) {
+            return;
+        }
+        LinearLayoutManager layoutManager = (LinearLayoutManager) mListView.getLayoutManager();
+        mPager.onVisibleRangeChanged(getDisplayedItem(layoutManager.findFirstVisibleItemPosition()),
+                getDisplayedItem(layoutManager.findLastVisibleItemPosition()), direction);
+    }
+
+    /**
+     * 項目を page 単位で読み込む source です。
+     */
+    protected abstract static class ItemPageSource {
+        /**
+         * 指定した page の項目を builder に追加します。
+         *
+         * 最初の page は UI thread で、以降の page は background thread で呼び出されます。
+         * 破棄した page を読み込み直す場合は、同じ page を再度呼び出します。
+         *
+         * @param page 0 から始まる page の番号です。
+         * @param builder 項目を追加する builder です。
+         * @return 次の page が有る場合は true を返します。
+         * @throws Exception 読み込めなかった場合に throw します。 その方向の読み込みを止めます。
+         */
+        protected abstract boolean loadPage(int page, ItemListBuilder builder) throws Exception;
+    }
+}
@@ -1,19 +1,92 @@
 package jp.hideakisago.androidtemplate.viewcontrollers.menu;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.WorkerThread;
+
 import java.util.List;
 
 /**
  * REST API の実行確認用 menu list 画面です。
+ *
+ * 各 API の項目を選択すると、 {@link LoopbackHttpServer} を API の代わりに起動し、
+ * 画面上部で設定した並列数、 request 数、 rate で {@link ApiLoadTest} を実行します。
+ * 結果の throughput、 error 率、 latency の分布は list の先頭と log に出力します。
  */
 public class ApiListFragment extends AbsMenuListFragment {
 
+    /** 選択できる並列数。 */
+    private static final int[] CONCURRENCIES = {1, 4, 16, 64};
+
+    /** 選択できる request 数。 */
+    private static final int[] COUNTS = {50, 200, 1000};
+
+    /** 選択できる 1秒あたりの request 数。 0 は制限しないことを表します。 */
+    private static final int[] RATES = {10, 100, 1000, 0};
+
+    /** UI thread の handler。 */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** 選択している並列数の位置。 */
+    private volatile int mConcurrencyIndex = 1;
+
+    /** 選択している request 数の位置。 */
+    private volatile int mCountIndex = 1;
+
+    /** 選択している rate の位置。 */
+    private volatile int mRateIndex = 1;
+
+    /** 最後に実行した負荷試験の結果。 */
+    private volatile String mLastReport = "No load test has been run.";
+
     @Override
     protected List<Item> createItems() {
 
         return new ItemListBuilder()
-                .add("API", mLog::trace)
-                .add("API", mLog::trace)
-                .add("API", mLog::trace)
+                .add(mLastReport)
+                .add("Concurrency: " + CONCURRENCIES[mConcurrencyIndex], () -> {
+                    mConcurrencyIndex = (mConcurrencyIndex + 1) % CONCURRENCIES.length;
+                    refreshItems();
+                })
+                .add("Requests: " + COUNTS[mCountIndex], () -> {
+                    mCountIndex = (mCountIndex + 1) % COUNTS.length;
+                    refreshItems();
+                })
+                .add("Rate: " + (RATES[mRateIndex] > 0 ? RATES[mRateIndex] + "/s" : "unlimited"), () -> {
+                    mRateIndex = (mRateIndex + 1) % RATES.length;
+                    refreshItems();
+                })
+                .addTask("GET /users", () -> runLoadTest("/users", 0, 0))
+                .addTask("GET /users/1 (slow)", () -> runLoadTest("/users/1", 20, 0))
+                .addTask("GET /messages (flaky)", () -> runLoadTest("/messages", 5, 0.05))
                 .items;
     }
+
+    /**
+     * 選択している条件で負荷試験を実行し、結果を log と list の先頭に出力します。
+     *
+     * @param path 呼び出す API の path です。
+     * @param delayMillis Server が応答するまでの待ち時間 (millisecond) です。
+     * @param errorRate Server が 500 を返す割合 (0 から 1) です。
+     * @throws Exception 負荷試験を実行できなかった場合や、取り消された場合に throw します。
+     */
+    @WorkerThread
+    private void runLoadTest(String path, long delayMillis, double errorRate) throws Exception {
+        final ApiLoadTest test = new ApiLoadTest(
+                CONCURRENCIES[mConcurrencyIndex], COUNTS[mCountIndex], RATES[mRateIndex]);
+        final LoopbackHttpServer server = new LoopbackHttpServer(delayMillis, errorRate);
+        final ApiLoadTest.Result result;
+        try {
+            result = test.run(server.getUrl(path));
+        } finally {
+            server.close();
+        }
+        mLastReport = path + ": " + result;
+        mLog.i("Load test {}", mLastReport);
+        mHandler.post(() -> {
+            if (getView() != null) {
+                refreshItems();
+            }
+        });
+    }
 }
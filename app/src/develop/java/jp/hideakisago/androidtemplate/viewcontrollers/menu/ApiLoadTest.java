@@ -0,0 +1,202 @@
+package jp.hideakisago.androidtemplate.viewcontrollers.menu;
+
+import android.support.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.hideakisago.androidtemplate.libraries.utilities.profile.LatencyHistogram;
+
+/**
+ * API を指定した並列数、 request 数、 rate で呼び出し、 throughput、 error 率、 latency の分布を計測する負荷試験です。
+ *
+ * Rate を指定した場合、 i 番目の request は開始から i / rate 秒後に予定し、 latency は予定時刻から計測します。
+ * Client 側が詰まって予定通りに送れなかった時間も latency に含めるため、 HdrHistogram の
+ * coordinated omission 補正と同様に、詰まっている間の遅延を過小評価しません。
+ */
+class ApiLoadTest {
+
+    /** 接続と読み込みの timeout (millisecond)。 */
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    /** 並列数。 */
+    private final int mConcurrency;
+
+    /** Request 数。 */
+    private final int mCount;
+
+    /** 1秒あたりの request 数。 0 の場合は制限しません。 */
+    private final int mRatePerSecond;
+
+    /**
+     * @param concurrency 並列数です。
+     * @param count Request 数です。
+     * @param ratePerSecond 1秒あたりの request 数です。 0 の場合は制限しません。
+     */
+    ApiLoadTest(int concurrency, int count, int ratePerSecond) {
+        if (concurrency <= 0 || count <= 0 || ratePerSecond < 0) {
+            throw new IllegalArgumentException("concurrency=" + concurrency
+                    + ", count=" + count + ", ratePerSecond=" + ratePerSecond);
+        }
+        mConcurrency = concurrency;
+        mCount = count;
+        mRatePerSecond = ratePerSecond;
+    }
+
+    /**
+     * 負荷試験を実行し、全ての request が終わるまで待ちます。
+     *
+     * @param url 呼び出す URL です。
+     * @return 計測結果を返します。
+     * @throws InterruptedException 実行中に thread が interrupt された場合に throw します。 実行中の request も中断します。
+     */
+    @WorkerThread
+    Result run(final URL url) throws InterruptedException {
+        final Result result = new Result(this);
+        final AtomicInteger next = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(mConcurrency, runnable -> {
+            Thread thread = new Thread(runnable, "ApiLoadTest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long startNanos = System.nanoTime();
+        try {
+            final List<Future<?>> workers = new ArrayList<>(mConcurrency);
+            for (int worker = 0; worker < mConcurrency; worker++) {
+                workers.add(executor.submit(() -> {
+                    int index;
+                    while ((index = next.getAndIncrement()) < mCount) {
+                        long scheduledNanos = System.nanoTime();
+                        if (mRatePerSecond > 0) {
+                            scheduledNanos = startNanos + index * TimeUnit.SECONDS.toNanos(1) / mRatePerSecond;
+                            TimeUnit.NANOSECONDS.sleep(scheduledNanos - System.nanoTime());
+                        }
+                        final boolean succeeded = call(url);
+                        result.record(System.nanoTime() - scheduledNanos, succeeded);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        result.mElapsedNanos = System.nanoTime() - startNanos;
+        return result;
+    }
+
+    /**
+     * URL を1回呼び出し、 body を全て読み込みます。
+     *
+     * @param url 呼び出す URL です。
+     * @return 2xx の応答を受け取った場合は true を返します。 通信に失敗した場合や、それ以外の応答の場合は false を返します。
+     */
+    private static boolean call(URL url) {
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            final int code = connection.getResponseCode();
+            final InputStream in = code < 400 ? connection.getInputStream() : connection.getErrorStream();
+            if (in != null) {
+                try {
+                    final byte[] buffer = new byte[1024];
+                    while (in.read(buffer) != -1) {
+                        // Connection を再利用できるよう、 body を最後まで読み込みます。
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+            return code / 100 == 2;
+        } catch (IOException e) {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            return false;
+        }
+    }
+
+    /** 負荷試験の計測結果です。 */
+    static class Result {
+        /** 実行した負荷試験。 */
+        private final ApiLoadTest mTest;
+        /** 成否に関わらない latency の分布。 */
+        private final LatencyHistogram mLatency = new LatencyHistogram();
+        /** 失敗した request 数。 */
+        private final AtomicInteger mErrors = new AtomicInteger();
+        /** 開始から全ての request が終わるまでの時間 (nanosecond)。 */
+        private long mElapsedNanos;
+
+        /**
+         * @param test 実行した負荷試験です。
+         */
+        private Result(ApiLoadTest test) {
+            mTest = test;
+        }
+
+        /**
+         * @param latencyNanos Request の latency (nanosecond) です。
+         * @param succeeded 成功した場合は true です。
+         */
+        private void record(long latencyNanos, boolean succeeded) {
+            mLatency.record(latencyNanos);
+            if (!succeeded) {
+                mErrors.incrementAndGet();
+            }
+        }
+
+        /**
+         * @return Latency の分布を返します。
+         */
+        LatencyHistogram getLatency() {
+            return mLatency;
+        }
+
+        /**
+         * @return 1秒あたりに完了した request 数を返します。
+         */
+        double getThroughput() {
+            return mElapsedNanos == 0 ? 0 : mLatency.getCount() * (double) TimeUnit.SECONDS.toNanos(1) / mElapsedNanos;
+        }
+
+        /**
+         * @return 失敗した request の割合 (0 から 1) を返します。
+         */
+        double getErrorRate() {
+            return mLatency.getCount() == 0 ? 0 : (double) mErrors.get() / mLatency.getCount();
+        }
+
+        /**
+         * @return 条件と計測結果を複数行で返します。
+         */
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "concurrency=%d count=%d rate=%s\n"
+                            + "%.1f req/s, errors=%.1f%% (%d), elapsed=%.0fms\n"
+                            + "%s",
+                    mTest.mConcurrency, mTest.mCount,
+                    mTest.mRatePerSecond > 0 ? mTest.mRatePerSecond + "/s" : "unlimited",
+                    getThroughput(), getErrorRate() * 100, mErrors.get(), LatencyHistogram.toMillis(mElapsedNanos),
+                    mLatency);
+        }
+    }
+}
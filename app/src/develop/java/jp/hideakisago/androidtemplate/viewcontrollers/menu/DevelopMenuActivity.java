@@ -160,7 +160,7 @@ public class DevelopMenuActivity extends AppCompatActivity
             final int count = fm.getBackStackEntryCount();
             for (int index = 0; index < count; index++) {
                 FragmentManager.BackStackEntry entry = fm.getBackStackEntryAt(index);
-                mLog.d("" + index + " " + entry);
+                mLog.d("{} {}", index, entry);
             }
         }
     }
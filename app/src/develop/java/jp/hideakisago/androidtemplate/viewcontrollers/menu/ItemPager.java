@@ -0,0 +1,260 @@
+package jp.hideakisago.androidtemplate.viewcontrollers.menu;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import jp.hideakisago.androidtemplate.libraries.utilities.log.Logger;
+
+/**
+ * {@link AbsPagedMenuListFragment.ItemPageSource} から page 単位で項目を読み込み、一定数の page のみを保持する class です。
+ *
+ * 最初の page は呼び出し元の thread で読み込み、以降の page は表示位置が scroll の方向の端に近づいた時に executor で読み込みます。
+ * 保持する page 数が上限を超えた場合は、読み込んだ page と反対側の端の page を破棄します。
+ * 破棄した page は、その端に向かって scroll した時にのみ読み込み直すため、短い list でも前後の page を交互に読み込み続けることはありません。
+ * 表示位置は表示している項目で受け取り、保持している全ての項目の中での位置に変換して判定します。
+ * そのため、絞り込みで表示している行が一部の場合や、表示が読み込み前の項目のままの場合も正しく判定できます。
+ * 同時に読み込む page は1つのみで、状態は全て UI thread で更新します。
+ */
+class ItemPager {
+
+    /** 項目の変更を受け取る listener です。 */
+    interface Listener {
+        /**
+         * @param items 保持している全ての page の項目です。
+         */
+        void onItemsChanged(List<AbsMenuListFragment.Item> items);
+    }
+
+    /** Log。 */
+    private final Logger mLog = Logger.Factory.create(this);
+
+
+    /** 項目を読み込む source。 */
+    private final AbsPagedMenuListFragment.ItemPageSource mSource;
+
+    /** 保持する page 数の上限。 */
+    private final int mMaxPages;
+
+    /** 端からこの行数以内を表示した時に、次の page を読み込みます。 */
+    private final int mPrefetchDistance;
+
+    /** 2 page 目以降を読み込む executor。 */
+    private final Executor mExecutor;
+
+    /** 読み込んだ page を反映する、 UI thread の executor。 */
+    private final Executor mMainExecutor;
+
+    /** 項目の変更を受け取る listener。 */
+    private final Listener mListener;
+
+    /** 保持している page の項目。 */
+    private final ArrayDeque<List<AbsMenuListFragment.Item>> mPages = new ArrayDeque<>();
+
+    /** 保持している項目毎の、保持している全ての項目の中での位置。 */
+    private final Map<AbsMenuListFragment.Item, Integer> mPositions = new IdentityHashMap<>();
+
+    /** 保持している最初の page の番号。 */
+    private int mFirstPage;
+
+    /** 保持している最後の page の次の page が有るかどうか。 */
+    private boolean mHasNext;
+
+    /** Page を読み込み中かどうか。 */
+    private boolean mLoading;
+
+    /** 最後に読み込んだ方向。 後ろに追加した場合は 1 、前に追加した場合は -1 です。 */
+    private int mDirection = 1;
+
+    /** 最後の読み込みで破棄した page の番号。 破棄していない場合は -1 です。 */
+    private int mEvictedPage = -1;
+
+    /** 読み込みの世代。 取り消した読み込みの結果を捨てるために利用します。 */
+    private int mGeneration;
+
+    /**
+     * @param source 項目を読み込む source です。
+     * @param maxPages 保持する page 数の上限です。 2 以上を指定してください。
+     * @param prefetchDistance 端からこの行数以内を表示した時に、次の page を読み込みます。
+     * @param executor 2 page 目以降を読み込む executor です。
+     * @param mainExecutor 読み込んだ page を反映する、 UI thread の executor です。
+     * @param listener 項目の変更を受け取る listener です。
+     */
+    ItemPager(AbsPagedMenuListFragment.ItemPageSource source, int maxPages, int prefetchDistance, Executor executor,
+              Executor mainExecutor, Listener listener) {
+        if (maxPages < 2) {
+            throw new IllegalArgumentException("maxPages must be 2 or more: " + maxPages);
+        }
+        mSource = source;
+        mMaxPages = maxPages;
+        mPrefetchDistance = prefetchDistance;
+        mExecutor = executor;
+        mMainExecutor = mainExecutor;
+        mListener = listener;
+    }
+
+    /**
+     * 読み込み中の page を取り消し、最初の page を呼び出し元の thread で読み込みます。
+     *
+     * @return 最初の page の項目を返します。
+     */
+    @MainThread
+    List<AbsMenuListFragment.Item> loadFirstPage() {
+        cancel();
+        mPages.clear();
+        mFirstPage = 0;
+        mDirection = 1;
+        mEvictedPage = -1;
+        AbsMenuListFragment.ItemListBuilder builder = new AbsMenuListFragment.ItemListBuilder();
+        try {
+            mHasNext = mSource.loadPage(0, builder);
+        } catch (Exception e) {
+            mLog.e("Failed to load the first page.", e);
+            mHasNext = false;
+        }
+        mPages.add(builder.items);
+        return getItems();
+    }
+
+    /**
+     * 表示位置が scroll の方向の端に近ければ、その先の page の読み込みを開始します。
+     *
+     * Scroll していない場合 (direction が 0 の場合) は、最後に読み込んだ方向にのみ読み込みます。
+     * 最後の読み込みで破棄した page は、その方向に scroll するまで読み込みません。
+     *
+     * @param firstVisible 表示している最初の項目です。 表示していない場合は null です。
+     * @param lastVisible 表示している最後の項目です。 表示していない場合は null です。
+     * @param direction Scroll の方向です。 後ろに scroll した場合は正、前に scroll した場合は負、それ以外は 0 です。
+     */
+    @MainThread
+    void onVisibleRangeChanged(@Nullable AbsMenuListFragment.Item firstVisible,
+                               @Nullable AbsMenuListFragment.Item lastVisible, int direction) {
+        if (mLoading) {
+            return;
+        }
+        final boolean scrolled = direction != 0;
+        final int target = scrolled ? Integer.signum(direction) : mDirection;
+        if (target > 0) {
+            final Integer last = lastVisible != null ? mPositions.get(lastVisible) : null;
+            final int page = mFirstPage + mPages.size();
+            if (mHasNext && last != null && last >= mPositions.size() - 1 - mPrefetchDistance
+                    && (scrolled || page != mEvictedPage)) {
+                load(page, true);
+            }
+        } else {
+            final Integer first = firstVisible != null ? mPositions.get(firstVisible) : null;
+            final int page = mFirstPage - 1;
+            if (page >= 0 && first != null && first <= mPrefetchDistance
+                    && (scrolled || page != mEvictedPage)) {
+                load(page, false);
+            }
+        }
+    }
+
+    /**
+     * 読み込み中の page を取り消します。
+     */
+    @MainThread
+    void cancel() {
+        mGeneration++;
+        mLoading = false;
+    }
+
+    /**
+     * Page の読み込みを開始します。
+     *
+     * @param page 読み込む page の番号です。
+     * @param append 後ろに追加する場合は true 、前に追加する場合は false です。
+     */
+    private void load(final int page, final boolean append) {
+        mLoading = true;
+        final int generation = mGeneration;
+        mExecutor.execute(() -> {
+            final AbsMenuListFragment.ItemListBuilder builder = new AbsMenuListFragment.ItemListBuilder();
+            boolean hasNext;
+            boolean failed = false;
+            try {
+                hasNext = mSource.loadPage(page, builder);
+            } catch (Exception e) {
+                mLog.e("Failed to load page " + page + ".", e);
+                hasNext = false;
+                failed = true;
+            }
+            final boolean loadedHasNext = hasNext;
+            final boolean loadFailed = failed;
+            mMainExecutor.execute(() -> {
+                if (generation != mGeneration) {
+                    return;
+                }
+                mLoading = false;
+                if (loadFailed) {
+                    // 失敗した方向には、読み込み直すまで読み込みません。
+                    if (append) {
+                        mHasNext = false;
+                    }
+                    return;
+                }
+                onPageLoaded(page, append, builder.items, loadedHasNext);
+            });
+        });
+    }
+
+    /**
+     * 読み込んだ page を保持し、上限を超えた page を破棄します。
+     *
+     * @param page 読み込んだ page の番号です。
+     * @param append 後ろに追加する場合は true 、前に追加する場合は false です。
+     * @param items 読み込んだ項目です。
+     * @param hasNext 読み込んだ page の次の page が有るかどうかです。
+     */
+    private void onPageLoaded(int page, boolean append, List<AbsMenuListFragment.Item> items, boolean hasNext) {
+        mDirection = append ? 1 : -1;
+        mEvictedPage = -1;
+        if (append) {
+            mPages.addLast(items);
+            mHasNext = hasNext;
+            if (mPages.size() > mMaxPages) {
+                mPages.removeFirst();
+                mEvictedPage = mFirstPage;
+                mFirstPage++;
+            }
+        } else {
+            mPages.addFirst(items);
+            mFirstPage = page;
+            if (mPages.size() > mMaxPages) {
+                mPages.removeLast();
+                mEvictedPage = mFirstPage + mPages.size();
+                mHasNext = true;
+            }
+        }
+        mLog.d("Loaded page {}. Holding pages {}-{}.", page, mFirstPage, mFirstPage + mPages.size() - 1);
+        mListener.onItemsChanged(getItems());
+    }
+
+    /**
+     * 保持している項目の位置を更新します。
+     *
+     * @return 保持している全ての page の項目を返します。
+     */
+    private List<AbsMenuListFragment.Item> getItems() {
+        int size = 0;
+        for (List<AbsMenuListFragment.Item> page : mPages) {
+            size += page.size();
+        }
+        List<AbsMenuListFragment.Item> items = new ArrayList<>(size);
+        for (List<AbsMenuListFragment.Item> page : mPages) {
+            items.addAll(page);
+        }
+        mPositions.clear();
+        for (int position = 0; position < items.size(); position++) {
+            mPositions.put(items.get(position), position);
+        }
+        return items;
+    }
+}
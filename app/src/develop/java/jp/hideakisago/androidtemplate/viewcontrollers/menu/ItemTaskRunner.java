@@ -0,0 +1,211 @@
+package jp.hideakisago.androidtemplate.viewcontrollers.menu;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.MainThread;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.hideakisago.androidtemplate.libraries.utilities.log.Logger;
+import jp.hideakisago.androidtemplate.libraries.utilities.profile.LatencyHistogram;
+
+/**
+ * {@link AbsMenuListFragment.ItemTask} を全ての開発 menu 画面で共有する executor で実行し、項目毎の状態を管理する class です。
+ *
+ * 項目は {@link MenuItemAdapter} の行の key で識別します。 実行中の項目を再度選択した場合は実行しません。
+ * Executor の thread 数と待ち行列は有限で、溢れた場合は実行せずに項目に表示します。
+ * 各項目の所要時間は項目毎の {@link LatencyHistogram} に記録し、 {@link #describe(String)} で行に表示します。
+ */
+class ItemTaskRunner {
+
+    /** 同時に実行する処理の数。 */
+    private static final int THREAD_COUNT = 4;
+
+    /** 実行を待つ処理の上限。 */
+    private static final int QUEUE_CAPACITY = 32;
+
+    /** 全ての開発 menu 画面で共有する executor。 */
+    private static final ThreadPoolExecutor EXECUTOR = new ThreadPoolExecutor(
+            THREAD_COUNT, THREAD_COUNT, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(QUEUE_CAPACITY),
+            new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    return new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }, "MenuTask #" + mCount.incrementAndGet());
+                }
+            });
+
+    static {
+        EXECUTOR.allowCoreThreadTimeOut(true);
+    }
+
+    /** 状態の変更を受け取る listener です。 */
+    interface Listener {
+        /**
+         * @param key 状態が変わった項目の key です。
+         */
+        void onTaskStateChanged(String key);
+    }
+
+    /** 項目毎の状態です。 UI thread で参照、更新します。 */
+    private static class TaskState {
+        /** 所要時間の分布。 */
+        final LatencyHistogram latency = new LatencyHistogram();
+        /** 実行中の処理。 実行中でない場合は null です。 */
+        Future<?> running;
+        /** 最後の所要時間 (nanosecond)。 */
+        long lastNanos;
+        /** 最後の失敗の内容。 成功した場合は null です。 */
+        String lastError;
+    }
+
+    /** Log。 */
+    private final Logger mLog = Logger.Factory.create(this);
+
+    /** UI thread の handler。 */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** 状態の変更を受け取る listener。 */
+    private final Listener mListener;
+
+    /** 項目毎の状態。 */
+    private final Map<String, TaskState> mStates = new HashMap<>();
+
+    /**
+     * @param listener 状態の変更を受け取る listener です。 UI thread で呼び出します。
+     */
+    ItemTaskRunner(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * 項目の処理の実行を開始します。
+     *
+     * @param key 項目の key です。
+     * @param task 実行する処理です。
+     * @return 実行を開始した場合は true を返します。 実行中の場合や executor が溢れた場合は false を返します。
+     */
+    @MainThread
+    boolean start(final String key, final AbsMenuListFragment.ItemTask task) {
+        TaskState state = mStates.get(key);
+        if (state == null) {
+            state = new TaskState();
+            mStates.put(key, state);
+        }
+        if (state.running != null) {
+            mLog.d("Ignored a repeated tap on \"{}\".", key);
+            return false;
+        }
+        final TaskState target = state;
+        try {
+            target.running = EXECUTOR.submit(() -> {
+                final long start = System.nanoTime();
+                String error = null;
+                try {
+                    task.run();
+                } catch (InterruptedException e) {
+                    // 取り消された場合は onFinished で記録しません。
+                    error = "Interrupted";
+                } catch (Exception e) {
+                    mLog.w("Task \"" + key + "\" failed.", e);
+                    error = toMessage(e);
+                } catch (Error e) {
+                    mLog.e("Task \"" + key + "\" failed.", e);
+                    error = toMessage(e);
+                    throw e;
+                } finally {
+                    // 終了した項目を再び実行できるよう、必ず UI thread に終了を通知します。
+                    final long elapsed = System.nanoTime() - start;
+                    final String lastError = error;
+                    mHandler.post(() -> onFinished(key, target, elapsed, lastError));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            target.lastError = "Too many tasks are running.";
+            mListener.onTaskStateChanged(key);
+            return false;
+        }
+        target.lastError = null;
+        mListener.onTaskStateChanged(key);
+        return true;
+    }
+
+    /**
+     * 実行中の全ての処理を取り消します。 取り消した処理の結果は記録しません。
+     */
+    @MainThread
+    void cancelAll() {
+        for (Map.Entry<String, TaskState> state : mStates.entrySet()) {
+            if (state.getValue().running != null) {
+                state.getValue().running.cancel(true);
+                state.getValue().running = null;
+                mListener.onTaskStateChanged(state.getKey());
+            }
+        }
+    }
+
+    /**
+     * @param key 項目の key です。
+     * @return 項目の状態を行に表示する文字列を返します。
+     */
+    @MainThread
+    CharSequence describe(String key) {
+        TaskState state = mStates.get(key);
+        if (state == null) {
+            return "Tap to run";
+        }
+        if (state.running != null) {
+            return "Running…";
+        }
+        if (state.latency.getCount() == 0) {
+            return state.lastError != null ? state.lastError : "Cancelled";
+        }
+        String latency = String.format(Locale.US, "%.1f ms (p50 %.1f ms, p95 %.1f ms, n=%d)",
+                LatencyHistogram.toMillis(state.lastNanos),
+                LatencyHistogram.toMillis(state.latency.getPercentile(50)),
+                LatencyHistogram.toMillis(state.latency.getPercentile(95)),
+                state.latency.getCount());
+        return state.lastError != null ? latency + " " + state.lastError : latency;
+    }
+
+    /**
+     * @param e 処理で throw された例外です。
+     * @return 行に表示する失敗の内容を返します。
+     */
+    private static String toMessage(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+
+    /**
+     * 処理が終了した時に UI thread で呼び出されます。 取り消された処理の所要時間は記録しません。
+     *
+     * @param key 項目の key です。
+     * @param state 項目の状態です。
+     * @param elapsedNanos 所要時間 (nanosecond) です。
+     * @param error 失敗した場合はその内容、成功した場合は null です。
+     */
+    private void onFinished(String key, TaskState state, long elapsedNanos, String error) {
+        if (state.running == null || state.running.isCancelled()) {
+            return;
+        }
+        state.running = null;
+        state.lastNanos = elapsedNanos;
+        state.lastError = error;
+        state.latency.record(elapsedNanos);
+        mListener.onTaskStateChanged(key);
+    }
+}
@@ -0,0 +1,212 @@
+package jp.hideakisago.androidtemplate.viewcontrollers.menu;
+
+import android.support.annotation.WorkerThread;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.hideakisago.androidtemplate.libraries.utilities.log.Logger;
+
+/**
+ * REST API の代わりに応答する、 loopback address で待ち受ける最小限の HTTP server です。
+ *
+ * 負荷試験で client 側の性能を確認するため、全ての request に固定の JSON を返します。
+ * 応答前の待ち時間と、 500 を返す割合を指定できます。 Keep-alive に対応しているため、
+ * client の connection pool も含めて計測できます。
+ */
+class LoopbackHttpServer implements Closeable {
+
+    /** 応答する body。 */
+    private static final byte[] BODY = "{\"status\":\"ok\"}".getBytes(Charset.forName("UTF-8"));
+
+    /** 接続を待つ数の上限。 */
+    private static final int BACKLOG = 128;
+
+    /** 1行の最大の長さ。 */
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    /** Log。 */
+    private final Logger mLog = Logger.Factory.create(this);
+
+    /** 応答前の待ち時間 (millisecond)。 */
+    private final long mDelayMillis;
+
+    /** 500 を返す割合 (0 から 1)。 */
+    private final double mErrorRate;
+
+    /** 待ち受けている socket。 */
+    private final ServerSocket mServerSocket;
+
+    /** 接続を処理する thread。 */
+    private final ExecutorService mExecutor;
+
+    /** 接続中の socket。 */
+    private final Set<Socket> mSockets = Collections.synchronizedSet(new HashSet<Socket>());
+
+    /**
+     * Server を生成し、空いている port で待ち受けを開始します。
+     *
+     * @param delayMillis 応答前の待ち時間 (millisecond) です。
+     * @param errorRate 500 を返す割合 (0 から 1) です。
+     * @throws IOException 待ち受けを開始できなかった場合に throw します。
+     */
+    @WorkerThread
+    LoopbackHttpServer(long delayMillis, double errorRate) throws IOException {
+        mDelayMillis = delayMillis;
+        mErrorRate = errorRate;
+        mServerSocket = new ServerSocket(0, BACKLOG, InetAddress.getByName("127.0.0.1"));
+        final AtomicInteger count = new AtomicInteger();
+        mExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "LoopbackHttpServer #" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        mExecutor.execute(this::acceptLoop);
+    }
+
+    /**
+     * @param path Request の path です。
+     * @return この server の指定した path の URL を返します。
+     * @throws IOException URL を作成できなかった場合に throw します。
+     */
+    URL getUrl(String path) throws IOException {
+        return new URL("http", "127.0.0.1", mServerSocket.getLocalPort(), path);
+    }
+
+    /**
+     * 待ち受けを終了し、全ての接続を切断します。
+     */
+    @Override
+    public void close() {
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            mLog.w(e);
+        }
+        synchronized (mSockets) {
+            for (Socket socket : mSockets) {
+                closeQuietly(socket);
+            }
+        }
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * 接続を受け付け、接続毎に応答する処理を開始します。
+     */
+    private void acceptLoop() {
+        while (!mServerSocket.isClosed()) {
+            final Socket socket;
+            try {
+                socket = mServerSocket.accept();
+            } catch (IOException e) {
+                return;
+            }
+            mSockets.add(socket);
+            try {
+                mExecutor.execute(() -> serve(socket));
+            } catch (RuntimeException e) {
+                mSockets.remove(socket);
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    /**
+     * 1つの接続で受け付けた request に、接続が切断されるまで応答します。
+     *
+     * @param socket 接続です。
+     */
+    private void serve(Socket socket) {
+        final Random random = new Random();
+        try {
+            final InputStream in = new BufferedInputStream(socket.getInputStream());
+            final OutputStream out = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = readLine(in)) != null) {
+                if (requestLine.isEmpty()) {
+                    continue;
+                }
+                boolean keepAlive = !requestLine.endsWith("HTTP/1.0");
+                String header;
+                while ((header = readLine(in)) != null && !header.isEmpty()) {
+                    if (header.regionMatches(true, 0, "Connection:", 0, 11)) {
+                        keepAlive = !header.substring(11).trim().equalsIgnoreCase("close");
+                    }
+                }
+                if (mDelayMillis > 0) {
+                    TimeUnit.MILLISECONDS.sleep(mDelayMillis);
+                }
+                final boolean error = random.nextDouble() < mErrorRate;
+                final ByteArrayOutputStream response = new ByteArrayOutputStream();
+                response.write(("HTTP/1.1 " + (error ? "500 Internal Server Error" : "200 OK") + "\r\n"
+                        + "Content-Type: application/json\r\n"
+                        + "Content-Length: " + BODY.length + "\r\n"
+                        + "Connection: " + (keepAlive ? "keep-alive" : "close") + "\r\n"
+                        + "\r\n").getBytes(Charset.forName("US-ASCII")));
+                response.write(BODY);
+                // Header と body を別々に送ると delayed ACK で待たされるため、1回で書き込みます。
+                response.writeTo(out);
+                out.flush();
+                if (!keepAlive) {
+                    break;
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // 切断された場合や close() された場合は、応答を終了します。
+        } finally {
+            mSockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * @param in 読み込む stream です。
+     * @return CRLF または LF までの1行を返します。 終端に達した場合は null を返します。
+     * @throws IOException 読み込みに失敗した場合や、1行が長すぎる場合に throw します。
+     */
+    private static String readLine(InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int value;
+        while ((value = in.read()) != -1) {
+            if (value == '\n') {
+                final byte[] bytes = line.toByteArray();
+                final int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, Charset.forName("US-ASCII"));
+            }
+            if (line.size() >= MAX_LINE_LENGTH) {
+                throw new IOException("Line is too long.");
+            }
+            line.write(value);
+        }
+        return null;
+    }
+
+    /**
+     * @param socket 切断する socket です。
+     */
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // 既に切断されている場合は何もしません。
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package jp.hideakisago.androidtemplate.viewcontrollers.menu;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v7.widget.RecyclerView;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jp.hideakisago.androidtemplate.libraries.utilities.ListDiff;
+
+/**
+ * {@link AbsMenuListFragment} の項目を表示する {@link RecyclerView} の adapter です。
+ *
+ * 項目は項目名と同名の項目中の出現順から作る key で識別し、 key 毎に stable id を割り当てます。
+ * {@link #submit(List)} で新しい項目を渡すと、差分を background thread で求め、
+ * 変更された行のみを notifyItemXxx で更新します。
+ * <p>
+ * {@link AbsMenuListFragment.ItemTask} を持つ項目は {@link ItemTaskRunner} で実行し、
+ * 実行状態と所要時間を項目名の下に表示します。
+ */
+class MenuItemAdapter extends RecyclerView.Adapter<MenuItemAdapter.ViewHolder> {
+
+    /** 処理を持つ項目の view type。 */
+    static final int VIEW_TYPE_ACTION = 0;
+
+    /** 処理を持たない項目の view type。 */
+    static final int VIEW_TYPE_LABEL = 1;
+
+    /** Background thread で実行する処理を持つ項目の view type。 */
+    static final int VIEW_TYPE_TASK = 2;
+
+    /** 項目を key と項目名で比較する callback。 */
+    private static final ListDiff.Callback<Row> DIFF_CALLBACK = new ListDiff.Callback<Row>() {
+        @NonNull
+        @Override
+        public Object getKey(@NonNull Row row) {
+            return row.key;
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Row oldRow, @NonNull Row newRow) {
+            return oldRow.getViewType() == newRow.getViewType();
+        }
+    };
+
+    /** 項目の click を受け取る listener です。 */
+    interface OnItemClickListener {
+        /**
+         * @param item Click された項目です。
+         */
+        void onItemClick(AbsMenuListFragment.Item item);
+    }
+
+    /** UI thread の handler。 */
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    /** 項目の click を受け取る listener。 */
+    private final OnItemClickListener mListener;
+
+    /** {@link AbsMenuListFragment.ItemTask} を実行する runner。 */
+    private final ItemTaskRunner mTaskRunner;
+
+    /** 表示している行。 */
+    private List<Row> mRows = Collections.emptyList();
+
+    /** Key 毎の表示している行の位置。 */
+    private final Map<String, Integer> mPositions = new HashMap<>();
+
+    /** Key 毎の stable id。 */
+    private final Map<String, Long> mIds = new HashMap<>();
+
+    /** 次に割り当てる stable id。 */
+    private long mNextId;
+
+    /** {@link #submit(List)} の世代。 古い差分の反映を捨てるために利用します。 */
+    private int mGeneration;
+
+    /** 差分を通知する receiver。 */
+    private final ListDiff.Receiver mReceiver = new ListDiff.Receiver() {
+        @Override
+        public void onInserted(int position, int count) {
+            notifyItemRangeInserted(position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            notifyItemRangeRemoved(position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            notifyItemMoved(fromPosition, toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count) {
+            notifyItemRangeChanged(position, count);
+        }
+    };
+
+    /**
+     * @param listener 項目の click を受け取る listener です。
+     * @param taskRunner {@link AbsMenuListFragment.ItemTask} を実行する runner です。
+     */
+    MenuItemAdapter(OnItemClickListener listener, ItemTaskRunner taskRunner) {
+        mListener = listener;
+        mTaskRunner = taskRunner;
+        setHasStableIds(true);
+    }
+
+    /**
+     * 表示する項目を変更します。
+     *
+     * @param items 表示する項目です。
+     * @see #submit(List, int[])
+     */
+    @MainThread
+    void submit(List<AbsMenuListFragment.Item> items) {
+        submit(items, null);
+    }
+
+    /**
+     * 表示する項目を、指定した位置の項目に絞り込んで変更します。
+     *
+     * 初回は全ての行を表示し、以降は差分を background thread で求めてから変更された行のみを更新します。
+     * 差分を求めている間に再度呼び出された場合は、後の呼び出しの項目のみを反映します。
+     * 行の key は絞り込む前の項目から作るため、絞り込みを変えても同じ項目は同じ行として扱います。
+     *
+     * @param items 全ての項目です。
+     * @param positions 表示する項目の位置の昇順の配列です。 null の場合は全ての項目を表示します。
+     */
+    @MainThread
+    void submit(List<AbsMenuListFragment.Item> items, @Nullable final int[] positions) {
+        final List<AbsMenuListFragment.Item> snapshot = new ArrayList<>(items);
+        final List<Row> oldRows = mRows;
+        final int generation = ++mGeneration;
+        if (oldRows.isEmpty()) {
+            setRows(toRows(snapshot, positions));
+            notifyDataSetChanged();
+            return;
+        }
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            final List<Row> newRows = toRows(snapshot, positions);
+            final ListDiff diff = ListDiff.compute(oldRows, newRows, DIFF_CALLBACK);
+            mHandler.post(() -> {
+                if (generation != mGeneration) {
+                    return;
+                }
+                setRows(newRows);
+                diff.dispatchTo(mReceiver);
+            });
+        });
+    }
+
+    /**
+     * 求めている差分の反映を取り消します。
+     */
+    @MainThread
+    void cancel() {
+        mGeneration++;
+    }
+
+    /**
+     * 指定した key の行が表示されている場合は、その行を更新します。
+     *
+     * @param key 行の key です。
+     */
+    @MainThread
+    void notifyKeyChanged(String key) {
+        final Integer position = mPositions.get(key);
+        if (position != null) {
+            notifyItemChanged(position);
+        }
+    }
+
+    /**
+     * @param position 位置です。
+     * @return 指定した位置の項目を返します。
+     */
+    AbsMenuListFragment.Item getItem(int position) {
+        return mRows.get(position).item;
+    }
+
+    @Override
+    public int getItemCount() {
+        return mRows.size();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return mRows.get(position).id;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return mRows.get(position).getViewType();
+    }
+
+    @Override
+    public ViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(viewType == VIEW_TYPE_TASK
+                ? android.R.layout.simple_list_item_2 : android.R.layout.simple_list_item_1, parent, false);
+        final ViewHolder holder = new ViewHolder(view);
+        if (viewType == VIEW_TYPE_ACTION) {
+            view.setOnClickListener(v -> {
+                final int position = holder.getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) {
+                    mListener.onItemClick(getItem(position));
+                }
+            });
+        } else if (viewType == VIEW_TYPE_TASK) {
+            view.setOnClickListener(v -> {
+                final int position = holder.getAdapterPosition();
+                if (position != RecyclerView.NO_POSITION) {
+                    final Row row = mRows.get(position);
+                    mTaskRunner.start(row.key, row.item.task);
+                }
+            });
+        } else {
+            view.setEnabled(false);
+        }
+        return holder;
+    }
+
+    @Override
+    public void onBindViewHolder(ViewHolder holder, int position) {
+        final Row row = mRows.get(position);
+        holder.text.setText(row.item.name);
+        if (holder.detail != null) {
+            holder.detail.setText(mTaskRunner.describe(row.key));
+        }
+    }
+
+    /**
+     * 表示する行を変更し、新しい key に stable id を割り当てます。 Key 毎の行の位置も更新します。
+     * 絞り込みで一度非表示になった項目も同じ id で再表示できるよう、割り当てた id は保持し続けます。
+     *
+     * @param rows 表示する行です。
+     */
+    private void setRows(List<Row> rows) {
+        mPositions.clear();
+        for (int position = 0; position < rows.size(); position++) {
+            final Row row = rows.get(position);
+            mPositions.put(row.key, position);
+            Long id = mIds.get(row.key);
+            if (id == null) {
+                id = mNextId++;
+                mIds.put(row.key, id);
+            }
+            row.id = id;
+        }
+        mRows = rows;
+    }
+
+    /**
+     * @param items 全ての項目です。
+     * @param positions 行にする項目の位置の昇順の配列です。 null の場合は全ての項目を行にします。
+     * @return 項目名と、全ての項目の中での同名の項目の出現順から key を作った行を返します。
+     */
+    private static List<Row> toRows(List<AbsMenuListFragment.Item> items, @Nullable int[] positions) {
+        List<Row> rows = new ArrayList<>(positions != null ? positions.length : items.size());
+        Map<String, Integer> occurrences = new HashMap<>();
+        int next = 0;
+        for (int position = 0; position < items.size(); position++) {
+            final AbsMenuListFragment.Item item = items.get(position);
+            Integer occurrence = occurrences.get(item.name);
+            occurrence = occurrence == null ? 0 : occurrence + 1;
+            occurrences.put(item.name, occurrence);
+            if (positions == null || (next < positions.length && positions[next] == position)) {
+                rows.add(new Row(item.name + '\u0000' + occurrence, item));
+                next++;
+            }
+        }
+        return rows;
+    }
+
+    /** 表示する1行です。 */
+    private static class Row {
+        /** 項目を識別する key。 */
+        final String key;
+        /** 項目。 */
+        final AbsMenuListFragment.Item item;
+        /** Stable id。 UI thread で割り当てます。 */
+        long id;
+
+        /**
+         * @param key 項目を識別する key です。
+         * @param item 項目です。
+         */
+        Row(String key, AbsMenuListFragment.Item item) {
+            this.key = key;
+            this.item = item;
+        }
+
+        /**
+         * @return 行の view type を返します。
+         */
+        int getViewType() {
+            if (item.task != null) {
+                return VIEW_TYPE_TASK;
+            }
+            return item.runner != null ? VIEW_TYPE_ACTION : VIEW_TYPE_LABEL;
+        }
+    }
+
+    /** 項目の view holder です。 */
+    static class ViewHolder extends RecyclerView.ViewHolder {
+        /** 項目名。 */
+        final TextView text;
+        /** 実行状態。 simple_list_item_1 の場合は null です。 */
+        final TextView detail;
+
+        /**
+         * @param itemView simple_list_item_1 または simple_list_item_2 の view です。
+         */
+        ViewHolder(View itemView) {
+            super(itemView);
+            text = (TextView) itemView.findViewById(android.R.id.text1);
+            detail = (TextView) itemView.findViewById(android.R.id.text2);
+        }
+    }
+}
@@ -1,7 +1,17 @@
 package jp.hideakisago.androidtemplate.viewcontrollers.menu;
 
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.List;
 
+import jp.hideakisago.androidtemplate.libraries.utilities.log.TraceSections;
+import jp.hideakisago.androidtemplate.libraries.utilities.profile.LifecycleProfiler;
+
 /**
  * 特に分類されない処理を実行するための menu list 画面です。
  */
@@ -9,11 +19,38 @@ public class OtherListFragment extends AbsMenuListFragment {
 
     @Override
     protected List<Item> createItems() {
+        final File filesDir = getContext().getFilesDir();
 
         return new ItemListBuilder()
+                .add("Dump lifecycle profile", LifecycleProfiler::dump)
+                .addTask("Write trace events", () -> writeTraceEvents(filesDir))
                 .add("Other", mLog::trace)
                 .add("Other", mLog::trace)
                 .add("Other", mLog::trace)
                 .items;
     }
+
+    /**
+     * {@link TraceSections#getBuffer()} に記録された trace event を file に書き出します。
+     *
+     * 書き出した file は Perfetto UI や chrome://tracing で開くことができます。
+     *
+     * @param filesDir 書き出す directory です。
+     * @throws IOException 書き出せなかった場合に throw します。
+     */
+    @WorkerThread
+    private void writeTraceEvents(File filesDir) throws IOException {
+        if (TraceSections.isPlatformTraceAvailable()) {
+            mLog.i("Trace sections are recorded by android.os.Trace. Use systrace or Perfetto.");
+            return;
+        }
+        File file = new File(filesDir, "trace.json");
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            TraceSections.getBuffer().writeJson(out);
+        } finally {
+            out.close();
+        }
+        mLog.i("Wrote {} trace events to {}", TraceSections.getBuffer().getCount(), file);
+    }
 }
@@ -1,7 +1,16 @@
 package jp.hideakisago.androidtemplate;
 
 import android.app.Application;
+import android.os.AsyncTask;
 
+import java.io.IOException;
+
+import jp.hideakisago.androidtemplate.defines.Defines;
+import jp.hideakisago.androidtemplate.libraries.utilities.log.AsyncLogWriter;
+import jp.hideakisago.androidtemplate.libraries.utilities.log.CompositeLogWriter;
+import jp.hideakisago.androidtemplate.libraries.utilities.log.Logger;
+import jp.hideakisago.androidtemplate.libraries.utilities.log.MappedFileLogWriter;
+import jp.hideakisago.androidtemplate.libraries.utilities.profile.LifecycleProfiler;
 import jp.hideakisago.androidtemplate.models.configurations.AppConfig;
 
 /**
@@ -9,6 +18,9 @@ import jp.hideakisago.androidtemplate.models.configurations.AppConfig;
  */
 public class App extends Application {
 
+    /** Log の ring buffer の容量。 */
+    private static final int LOG_BUFFER_CAPACITY = 1024;
+
     /** App global configuration。 */
     private AppConfig mAppConfig;
 
@@ -16,6 +28,9 @@ public class App extends Application {
     public void onCreate() {
         super.onCreate();
 
+        initLogWriter();
+        LifecycleProfiler.setEnabled(Defines.LIFECYCLE_PROFILING_ENABLED);
+
         AppConfig.create(this, new PrivateBridge<AppConfig>() {
             @Override
             public void pass(AppConfig data) {
@@ -24,6 +39,27 @@ public class App extends Application {
         });
     }
 
+    /**
+     * Log の出力先を設定します。
+     *
+     * Logcat が rotate した後も調査できるよう file にも残し、
+     * UI thread で書き込みを行わないよう background thread で出力します。
+     * File の作成と map は起動を遅らせないよう background thread で行い、開けた後の log から file に残します。
+     */
+    private void initLogWriter() {
+        final CompositeLogWriter writer = new CompositeLogWriter(Logger.Factory.getWriter());
+        Logger.Factory.setWriter(new AsyncLogWriter(
+                writer, LOG_BUFFER_CAPACITY, AsyncLogWriter.OverflowPolicy.DROP_OLDEST));
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
+            try {
+                writer.add(MappedFileLogWriter.create(this));
+            } catch (IOException e) {
+                Logger.Factory.create(this).w("Failed to open the log file.", e);
+            }
+        });
+    }
+
     /**
      * @return {@link AppConfig} の instance を返します。
      */
@@ -0,0 +1,189 @@
+package jp.hideakisago.androidtemplate.libraries.utilities;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.LayoutRes;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import jp.hideakisago.androidtemplate.libraries.utilities.log.Logger;
+
+/**
+ * Layout を background thread で inflate する helper class です。
+ *
+ * Inflate は1つの background thread で順に行い、結果は UI thread で {@link Callback} に通知します。
+ * View の constructor が {@link Handler} を生成するなど、 background thread で inflate できない layout の場合は、
+ * UI thread で inflate し直してから通知します。
+ * <p>
+ * Usage:
+ * <pre><code>
+ * mRequest = BackgroundInflater.inflate(inflater, R.layout.foo, placeholder, view -> {
+ *     placeholder.addView(view);
+ *     ...
+ * });
+ * ...
+ * mRequest.cancel();
+ * </code></pre>
+ */
+public final class BackgroundInflater {
+
+    /** Log。 */
+    private static final Logger LOG = Logger.Factory.create(BackgroundInflater.class);
+
+    /** UI thread の handler。 */
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /** Inflate を行う thread。 */
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, BackgroundInflater.class.getSimpleName());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Instance を生成させないための private constructor です。
+     */
+    private BackgroundInflater() {
+        // 空実装
+    }
+
+    /**
+     * Layout を background thread で inflate します。
+     *
+     * Inflate した view は parent に追加されません。
+     * parent は layout params の生成にのみ利用します。
+     *
+     * @param inflater Inflate に利用する inflater です。 Factory を引き継いだ clone を background thread で利用します。
+     * @param layoutId Inflate する layout の id です。
+     * @param parent Inflate した view を追加する予定の親 view です。
+     * @param callback Inflate が完了した時に UI thread で呼び出されます。
+     * @return Inflate を中止するための {@link Request} を返します。
+     */
+    @MainThread
+    @NonNull
+    public static Request inflate(@NonNull LayoutInflater inflater, @LayoutRes int layoutId,
+                                  @NonNull ViewGroup parent, @NonNull Callback callback) {
+        Request request = new Request(inflater.cloneInContext(inflater.getContext()), layoutId, parent, callback);
+        EXECUTOR.execute(request::inflateInBackground);
+        return request;
+    }
+
+    /**
+     * Inflate の完了通知を受け取る callback です。
+     */
+    public interface Callback {
+        /**
+         * Inflate が完了した時に UI thread で呼び出されます。
+         * {@link Request#cancel()} した場合は呼び出されません。
+         *
+         * @param view Inflate した view です。
+         */
+        @MainThread
+        void onInflated(@NonNull View view);
+    }
+
+    /**
+     * 1つの inflate 要求です。
+     */
+    public static final class Request {
+        /** Inflater。 */
+        private final LayoutInflater mInflater;
+        /** Inflate する layout の id。 */
+        private final int mLayoutId;
+        /** Inflate した view を追加する予定の親 view。 */
+        private final ViewGroup mParent;
+        /** 完了通知先。 */
+        private final Callback mCallback;
+        /** 中止されたかどうか。 */
+        private volatile boolean mCancelled;
+
+        /**
+         * @param inflater Inflater です。
+         * @param layoutId Inflate する layout の id です。
+         * @param parent Inflate した view を追加する予定の親 view です。
+         * @param callback 完了通知先です。
+         */
+        private Request(LayoutInflater inflater, int layoutId, ViewGroup parent, Callback callback) {
+            mInflater = inflater;
+            mLayoutId = layoutId;
+            mParent = parent;
+            mCallback = callback;
+        }
+
+        /**
+         * Inflate を中止します。
+         *
+         * UI thread から呼び出した場合、以降 {@link Callback#onInflated(View)} は呼び出されません。
+         */
+        @MainThread
+        public void cancel() {
+            mCancelled = true;
+        }
+
+        /**
+         * @return {@link #cancel()} された場合は true を返します。
+         */
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        /**
+         * Background thread で inflate し、結果を UI thread に通知します。
+         */
+        private void inflateInBackground() {
+            if (mCancelled) {
+                return;
+            }
+            View view;
+            LOG.beginSection("inflate");
+            try {
+                view = mInflater.inflate(mLayoutId, mParent, false);
+            } catch (RuntimeException e) {
+                LOG.w("Failed to inflate in background. Retry on UI thread.", e);
+                MAIN_HANDLER.post(this::inflateOnMainThread);
+                return;
+            } finally {
+                LOG.endSection();
+            }
+            MAIN_HANDLER.post(() -> deliver(view));
+        }
+
+        /**
+         * Background thread で inflate できなかった場合に UI thread で inflate し、結果を通知します。
+         */
+        private void inflateOnMainThread() {
+            if (mCancelled) {
+                return;
+            }
+            LOG.beginSection("inflate");
+            View view;
+            try {
+                view = mInflater.inflate(mLayoutId, mParent, false);
+            } finally {
+                LOG.endSection();
+            }
+            deliver(view);
+        }
+
+        /**
+         * 中止されていなければ結果を通知します。
+         *
+         * @param view Inflate した view です。
+         */
+        private void deliver(View view) {
+            if (!mCancelled) {
+                mCallback.onInflated(view);
+            }
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package jp.hideakisago.androidtemplate.libraries.utilities;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 2つの list の差分を、挿入、削除、移動、変更の操作の列として求める class です。
+ *
+ * 要素は {@link Callback#getKey(Object)} の key で同一性を判定します。 Key は各 list の中で一意である必要が有ります。
+ * 求めた操作は {@link #dispatchTo(Receiver)} で順に通知し、通知された順に旧 list へ適用すると新 list になります。
+ * 連続する位置への同じ種類の操作は1つの範囲の操作にまとめるため、大半の行を絞り込んだ場合も通知は数回で済みます。
+ * RecyclerView の notifyItemRangeXxx に渡すことで、変更された行のみを更新できます。
+ * <p>
+ * 計算は要素数に比例する時間で完了します (移動が有る場合は移動毎に要素数に比例する時間が加わります)。
+ * UI thread を塞がないよう background thread で計算し、結果のみを UI thread で通知してください。
+ * <p>
+ * usage:
+ * <pre><code>
+ * ListDiff diff = ListDiff.compute(oldItems, newItems, CALLBACK);  // background thread
+ * ...
+ * mItems = newItems;                                                 // UI thread
+ * diff.dispatchTo(receiver);
+ * </code></pre>
+ */
+public final class ListDiff {
+
+    /** 要素の同一性と内容を判定する callback です。 */
+    public interface Callback<T> {
+        /**
+         * @param item 要素です。
+         * @return 要素を識別する key を返します。 {@link Object#equals(Object)} と {@link Object#hashCode()} で比較します。
+         */
+        @NonNull
+        Object getKey(@NonNull T item);
+
+        /**
+         * @param oldItem 旧 list の要素です。
+         * @param newItem 新 list の、同じ key の要素です。
+         * @return 表示する内容が同じ場合は true を返します。 false の場合は変更として通知します。
+         */
+        boolean areContentsTheSame(@NonNull T oldItem, @NonNull T newItem);
+    }
+
+    /** 差分の操作を受け取る interface です。 */
+    public interface Receiver {
+        /**
+         * @param position 要素を挿入した位置です。
+         * @param count 挿入した要素数です。
+         */
+        void onInserted(int position, int count);
+
+        /**
+         * @param position 要素を削除した位置です。
+         * @param count 削除した要素数です。
+         */
+        void onRemoved(int position, int count);
+
+        /**
+         * @param fromPosition 移動前の位置です。
+         * @param toPosition 移動後の位置です。
+         */
+        void onMoved(int fromPosition, int toPosition);
+
+        /**
+         * @param position 内容が変更された要素の位置です。
+         * @param count 内容が変更された要素数です。
+         */
+        void onChanged(int position, int count);
+    }
+
+    /** 挿入の操作。 */
+    private static final int INSERT = 0;
+
+    /** 削除の操作。 */
+    private static final int REMOVE = 1;
+
+    /** 移動の操作。 */
+    private static final int MOVE = 2;
+
+    /** 変更の操作。 */
+    private static final int CHANGE = 3;
+
+    /** 操作毎の種類、位置、移動後の位置または要素数。 */
+    private final int[] mOperations;
+
+    /** 操作数。 */
+    private final int mCount;
+
+    /**
+     * @param operations 操作毎の種類、位置、移動後の位置または要素数です。
+     * @param count 操作数です。
+     */
+    private ListDiff(int[] operations, int count) {
+        mOperations = operations;
+        mCount = count;
+    }
+
+    /**
+     * 差分を求めます。
+     *
+     * @param oldList 旧 list です。
+     * @param newList 新 list です。
+     * @param callback 要素の同一性と内容を判定する callback です。
+     * @return 旧 list を新 list にする差分を返します。
+     * @throws IllegalArgumentException いずれかの list に同じ key の要素が有る場合に throw します。
+     */
+    @NonNull
+    @WorkerThread
+    public static <T> ListDiff compute(@NonNull List<T> oldList, @NonNull List<T> newList,
+                                       @NonNull Callback<T> callback) {
+        final Map<Object, T> oldItems = indexByKey(oldList, callback);
+        final Map<Object, T> newItems = indexByKey(newList, callback);
+        Builder builder = new Builder();
+
+        // 新 list に無い要素を後ろから削除します。 前の要素の位置は変わりません。
+        final List<Object> working = new ArrayList<>(oldList.size());
+        for (T item : oldList) {
+            working.add(callback.getKey(item));
+        }
+        for (int position = working.size() - 1; position >= 0; position--) {
+            if (!newItems.containsKey(working.get(position))) {
+                working.remove(position);
+                builder.add(REMOVE, position, 1);
+            }
+        }
+
+        // 先頭から新 list の順に揃えます。 位置より前は常に新 list と一致しています。
+        for (int position = 0; position < newList.size(); position++) {
+            final T newItem = newList.get(position);
+            final Object key = callback.getKey(newItem);
+            final T oldItem = oldItems.get(key);
+            if (oldItem == null) {
+                working.add(position, key);
+                builder.add(INSERT, position, 1);
+                continue;
+            }
+            if (!working.get(position).equals(key)) {
+                final int from = working.indexOf(key);
+                working.remove(from);
+                working.add(position, key);
+                builder.add(MOVE, from, position);
+            }
+            if (!callback.areContentsTheSame(oldItem, newItem)) {
+                builder.add(CHANGE, position, 1);
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return 操作が無い場合は true を返します。
+     */
+    public boolean isEmpty() {
+        return mCount == 0;
+    }
+
+    /**
+     * @return 範囲にまとめた後の操作数を返します。
+     */
+    public int size() {
+        return mCount;
+    }
+
+    /**
+     * 操作を順に通知します。
+     *
+     * @param receiver 通知先です。
+     */
+    public void dispatchTo(@NonNull Receiver receiver) {
+        for (int index = 0; index < mCount; index++) {
+            final int position = mOperations[index * 3 + 1];
+            final int argument = mOperations[index * 3 + 2];
+            switch (mOperations[index * 3]) {
+                case INSERT:
+                    receiver.onInserted(position, argument);
+                    break;
+                case REMOVE:
+                    receiver.onRemoved(position, argument);
+                    break;
+                case MOVE:
+                    receiver.onMoved(position, argument);
+                    break;
+                default:
+                    receiver.onChanged(position, argument);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * @param list 要素の list です。
+     * @param callback Key を取得する callback です。
+     * @return Key 毎の要素を返します。
+     * @throws IllegalArgumentException 同じ key の要素が有る場合に throw します。
+     */
+    private static <T> Map<Object, T> indexByKey(List<T> list, Callback<T> callback) {
+        Map<Object, T> items = new HashMap<>(list.size() * 2);
+        for (T item : list) {
+            if (items.put(callback.getKey(item), item) != null) {
+                throw new IllegalArgumentException("Duplicate key: " + callback.getKey(item));
+            }
+        }
+        return items;
+    }
+
+    /** 操作を記録し、連続する同じ種類の操作を範囲にまとめる builder です。 */
+    private static class Builder {
+        /** 操作毎の種類、位置、移動後の位置または要素数。 */
+        private int[] mOperations = new int[3 * 16];
+        /** 操作数。 */
+        private int mCount;
+
+        /**
+         * @param type 操作の種類です。
+         * @param position 位置です。
+         * @param argument 移動では移動後の位置、それ以外では要素数です。
+         */
+        void add(int type, int position, int argument) {
+            if (mCount > 0 && type != MOVE && mOperations[(mCount - 1) * 3] == type) {
+                final int last = (mCount - 1) * 3;
+                final int lastPosition = mOperations[last + 1];
+                final int lastCount = mOperations[last + 2];
+                if (type == REMOVE && position + argument == lastPosition) {
+                    // 後ろから削除した場合は、直前の範囲の前に繋がります。
+                    mOperations[last + 1] = position;
+                    mOperations[last + 2] = lastCount + argument;
+                    return;
+                }
+                if (type == REMOVE ? position == lastPosition : position == lastPosition + lastCount) {
+                    mOperations[last + 2] = lastCount + argument;
+                    return;
+                }
+            }
+            if (mOperations.length < (mCount + 1) * 3) {
+                mOperations = Arrays.copyOf(mOperations, mOperations.length * 2);
+            }
+            mOperations[mCount * 3] = type;
+            mOperations[mCount * 3 + 1] = position;
+            mOperations[mCount * 3 + 2] = argument;
+            mCount++;
+        }
+
+        /**
+         * @return 記録した操作の差分を返します。
+         */
+        ListDiff build() {
+            return new ListDiff(mOperations, mCount);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package jp.hideakisago.androidtemplate.libraries.utilities;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+
+/**
+ * 文字列の list から、部分一致する要素を検索する index です。
+ *
+ * 各文字列の長さ {@value #GRAM_LENGTH} 文字以下の全ての部分文字列 (n-gram) 毎に、それを含む要素の位置を昇順に保持します。
+ * {@value #GRAM_LENGTH} 文字以下の query は index を引くだけで完了し、それより長い query は
+ * query 中で最も出現数の少ない n-gram を含む要素だけを照合します。
+ * 大文字と小文字は区別しません。
+ * <p>
+ * 構築と検索は background thread で行ってください。 検索中に thread が interrupt された場合は
+ * {@link CancellationException} を throw して中断します。
+ */
+public final class TextSearchIndex {
+
+    /** Index に登録する部分文字列の最大の長さ。 */
+    private static final int GRAM_LENGTH = 3;
+
+    /** Interrupt を確認する間隔 (照合した要素数)。 */
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024;
+
+    /** 空の検索結果。 */
+    private static final int[] EMPTY = new int[0];
+
+    /** 正規化した文字列。 */
+    private final String[] mTexts;
+
+    /** 部分文字列毎の、それを含む要素の位置。 */
+    private final Map<String, int[]> mPostings;
+
+    /**
+     * @param texts 正規化した文字列です。
+     * @param postings 部分文字列毎の、それを含む要素の位置です。
+     */
+    private TextSearchIndex(String[] texts, Map<String, int[]> postings) {
+        mTexts = texts;
+        mPostings = postings;
+    }
+
+    /**
+     * Index を構築します。
+     *
+     * @param texts 検索対象の文字列です。 位置が検索結果になります。
+     * @return 構築した index を返します。
+     */
+    @NonNull
+    @WorkerThread
+    public static TextSearchIndex build(@NonNull List<String> texts) {
+        final String[] normalized = new String[texts.size()];
+        final Map<String, Posting> postings = new HashMap<>();
+        for (int index = 0; index < normalized.length; index++) {
+            final String text = normalize(texts.get(index));
+            normalized[index] = text;
+            for (int length = 1; length <= GRAM_LENGTH; length++) {
+                for (int start = 0; start + length <= text.length(); start++) {
+                    final String gram = text.substring(start, start + length);
+                    Posting posting = postings.get(gram);
+                    if (posting == null) {
+                        posting = new Posting();
+                        postings.put(gram, posting);
+                    }
+                    posting.add(index);
+                }
+            }
+        }
+        final Map<String, int[]> compact = new HashMap<>(postings.size() * 2);
+        for (Map.Entry<String, Posting> posting : postings.entrySet()) {
+            compact.put(posting.getKey(), posting.getValue().toArray());
+        }
+        return new TextSearchIndex(normalized, compact);
+    }
+
+    /**
+     * @return 登録されている要素数を返します。
+     */
+    public int size() {
+        return mTexts.length;
+    }
+
+    /**
+     * Query を含む要素を検索します。
+     *
+     * @param query 検索する文字列です。 空の場合は全ての要素に一致します。
+     * @return 一致した要素の位置を昇順で返します。
+     * @throws CancellationException 検索中に thread が interrupt された場合に throw します。
+     */
+    @NonNull
+    @WorkerThread
+    public int[] search(@NonNull String query) {
+        final String normalized = normalize(query);
+        if (normalized.isEmpty()) {
+            int[] all = new int[mTexts.length];
+            for (int index = 0; index < all.length; index++) {
+                all[index] = index;
+            }
+            return all;
+        }
+
+        final int length = Math.min(GRAM_LENGTH, normalized.length());
+        int[] candidates = null;
+        for (int start = 0; start + length <= normalized.length(); start++) {
+            final int[] posting = mPostings.get(normalized.substring(start, start + length));
+            if (posting == null) {
+                return EMPTY;
+            }
+            if (candidates == null || posting.length < candidates.length) {
+                candidates = posting;
+            }
+        }
+        if (normalized.length() <= GRAM_LENGTH) {
+            return candidates.clone();
+        }
+
+        int[] matches = new int[candidates.length];
+        int count = 0;
+        for (int index = 0; index < candidates.length; index++) {
+            if (index % CANCELLATION_CHECK_INTERVAL == 0 && Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Search for \"" + query + "\" was cancelled.");
+            }
+            if (mTexts[candidates[index]].contains(normalized)) {
+                matches[count++] = candidates[index];
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    /**
+     * @param text 文字列です。
+     * @return 大文字と小文字を区別しないよう正規化した文字列を返します。
+     */
+    private static String normalize(String text) {
+        return text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /** 構築中の、要素の位置の list です。 */
+    private static class Posting {
+        /** 要素の位置。 */
+        private int[] mValues = new int[4];
+        /** 要素数。 */
+        private int mSize;
+
+        /**
+         * @param value 追加する位置です。 直前に追加した位置と同じ場合は追加しません。
+         */
+        void add(int value) {
+            if (mSize > 0 && mValues[mSize - 1] == value) {
+                return;
+            }
+            if (mSize == mValues.length) {
+                mValues = Arrays.copyOf(mValues, mSize * 2);
+            }
+            mValues[mSize++] = value;
+        }
+
+        /**
+         * @return 追加した位置の配列を返します。
+         */
+        int[] toArray() {
+            return Arrays.copyOf(mValues, mSize);
+        }
+    }
+}
@@ -2,13 +2,27 @@ package jp.hideakisago.androidtemplate.libraries.utilities;
 
 import android.support.annotation.IdRes;
 import android.support.annotation.NonNull;
+import android.util.SparseArray;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewParent;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import jp.hideakisago.androidtemplate.R;
 
 /**
  * View を見つけるための helper class です。
  *
  * {@link View#findViewById(int)} は method 名が長い上に cast も行う必要が有るため非常に冗長な記述になります。
  * {@link ViewFinder} はその問題を解消します。
+ * <p>
+ * 見つけた view は ID 毎に cache するため、同じ ID の2回目以降の検索では view tree を走査しません。
+ * {@link #indexAll()} を呼び出すと、1回の走査で ID を持つ全ての view を cache します。
+ * Cache した view は、 ID が変わっていないことと root view の子孫であることを確認してから返すため、
+ * view が削除された場合は再度検索します。
+ * View を追加、置き換えした場合は {@link #invalidate()} を呼び出してください。
  *
  * <p>
  * Usage:
@@ -27,6 +41,9 @@ public class ViewFinder {
     /** Root view。 */
     private final View mRootView;
 
+    /** ID 毎の見つけた view。 */
+    private final SparseArray<View> mCache = new SparseArray<>();
+
     /**
      * @param rootView 見つけるすべての view を子孫に持つ root view です。
      */
@@ -37,14 +54,20 @@ public class ViewFinder {
     /**
      * 指定した viewId に該当する view を見つけ、指定された型に cast して view を返します。
      *
+     * parent の {@link ViewFinder} を parent の tag に保持し、2回目以降はその cache から見つけます。
+     *
      * @param parent 見つける view を子孫に持つ親 view です。
      * @param viewId 見つける view の ID です。
      * @param <V> 見つける view の型です。
      * @return viewId で指定された view を返します。
      */
     public static <V extends View> V find(View parent, @IdRes int viewId) {
-        //noinspection unchecked
-        return (V) parent.findViewById(viewId);
+        ViewFinder finder = (ViewFinder) parent.getTag(R.id.tag_view_finder);
+        if (finder == null) {
+            finder = new ViewFinder(parent);
+            parent.setTag(R.id.tag_view_finder, finder);
+        }
+        return finder.find(viewId);
     }
 
     /**
@@ -55,7 +78,74 @@ public class ViewFinder {
      * @return viewId で指定された view を返します。
      */
     public <V extends View> V find(@IdRes int viewId) {
+        View view = mCache.get(viewId);
+        if (view == null || !isAttached(view, viewId)) {
+            view = mRootView.findViewById(viewId);
+            if (view != null) {
+                mCache.put(viewId, view);
+            } else {
+                mCache.remove(viewId);
+            }
+        }
         //noinspection unchecked
-        return (V) mRootView.findViewById(viewId);
+        return (V) view;
+    }
+
+    /**
+     * Root view 以下を1回走査し、 ID を持つ全ての view を cache します。
+     *
+     * {@link View#findViewById(int)} と同じく pre-order で走査し、同じ ID の view が複数有る場合は最初の view を cache します。
+     *
+     * @return this を返します。
+     */
+    public ViewFinder indexAll() {
+        mCache.clear();
+        Deque<View> stack = new ArrayDeque<>();
+        stack.push(mRootView);
+        while (!stack.isEmpty()) {
+            View view = stack.pop();
+            final int id = view.getId();
+            if (id != View.NO_ID && mCache.get(id) == null) {
+                mCache.put(id, view);
+            }
+            if (view instanceof ViewGroup) {
+                ViewGroup group = (ViewGroup) view;
+                for (int index = group.getChildCount() - 1; index >= 0; index--) {
+                    stack.push(group.getChildAt(index));
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Cache を破棄します。
+     *
+     * View を追加、置き換えた場合に呼び出してください。
+     */
+    public void invalidate() {
+        mCache.clear();
+    }
+
+    /**
+     * Cache した view が、まだ指定した ID で root view の子孫であるかどうかを判定します。
+     *
+     * @param view Cache した view です。
+     * @param viewId Cache した時の ID です。
+     * @return 子孫である場合は true を返します。
+     */
+    private boolean isAttached(View view, int viewId) {
+        if (view.getId() != viewId) {
+            return false;
+        }
+        if (view == mRootView) {
+            return true;
+        }
+        for (ViewParent parent = view.getParent(); parent != null; parent = parent.getParent()) {
+            if (parent == mRootView) {
+                return true;
+            }
+        }
+        return false;
     }
 }
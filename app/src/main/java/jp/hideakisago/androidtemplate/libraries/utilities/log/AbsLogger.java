@@ -2,12 +2,9 @@ package jp.hideakisago.androidtemplate.libraries.utilities.log;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.support.annotation.Nullable;
 import android.util.Log;
 
-import java.util.Arrays;
-
-import jp.hideakisago.androidtemplate.libraries.utilities.StackTraceUtils;
-
 /**
  * Log 出力を行う class です。
  */
@@ -16,127 +13,393 @@ abstract class AbsLogger implements Logger {
     /** Tag。 */
     private final String mTag;
 
+    /** 出力先。 null の場合は {@link Logger.Factory#getWriter()} に出力します。 */
+    private final LogWriter mWriter;
+
+    /** 出力する最低の log level。 {@link LogLevels} によって実行時に変更されます。 */
+    private volatile int mMinLevel = Log.VERBOSE;
+
     /**
      * Log 出力時の tag を指定して生成します。
+     * 出力先は {@link Logger.Factory#getWriter()} です。
      *
      * @param tag Log 出力時の tag です。
      */
     public AbsLogger(String tag) {
-        mTag = tag;
+        this(tag, null);
     }
 
-    @Override
-    public void trace() {
-        v(getTraceMessage(StackTraceUtils.getStackTraceElement(-1)));
+    /**
+     * Log 出力時の tag と出力先を指定して生成します。
+     *
+     * @param tag Log 出力時の tag です。
+     * @param writer Log の出力先です。 null の場合は {@link Logger.Factory#getWriter()} に出力します。
+     */
+    public AbsLogger(String tag, @Nullable LogWriter writer) {
+        mTag = tag;
+        mWriter = writer;
     }
 
-    @Override
-    public void trace(Object... args) {
-        v(getTraceMessage(StackTraceUtils.getStackTraceElement(-1))
-                + " args:" + Arrays.toString(args));
+    /**
+     * Log を出力先に書き込みます。
+     *
+     * @param priority Log level です。
+     * @param msg Log に出力するメッセージです。
+     * @param tr Log に出力する例外です。 例外が無い場合は null を指定します。
+     */
+    protected void println(int priority, String msg, @Nullable Throwable tr) {
+        if (priority < mMinLevel) {
+            return;
+        }
+        LogWriter writer = mWriter != null ? mWriter : Logger.Factory.getWriter();
+        writer.write(System.currentTimeMillis(), priority, mTag, msg, tr);
     }
 
     /**
-     * {@link #trace()} で出力する message を取得します。
+     * 指定した log level の log を出力するかどうかを判定します。
      *
-     * @param element Trace log として出力したい method の stack element です。
-     * @return 以下の format の文字列を返します。<br>
-     * &lt;Simple class name>.&lt;Method name>(&lt;File name>:&lt;Line number>)
-     * 例: <pre><code>SampleFragment.onCreate(SampleFragment:120)</code></pre>
+     * 出力しない場合、呼び出し元の解決や message の生成を行わずに処理を終えるために利用します。
+     *
+     * @param priority 判定する log level です。 {@link Log#VERBOSE} などを指定します。
+     * @return 出力する場合は true を返します。
+     */
+    protected boolean isLoggable(int priority) {
+        return priority >= mMinLevel;
+    }
+
+    /**
+     * @return Log 出力時の tag を返します。
      */
-    private static String getTraceMessage(StackTraceElement element) {
-        return getSimpleName(element.getClassName()) + "." + element.getMethodName()
-                + "(" + element.getFileName() + ":" + element.getLineNumber() + ")";
+    String getTag() {
+        return mTag;
     }
 
     /**
-     * クラスの正式名称（jp...SampleClass）から単純なクラス名（SimpleClass）を取得します。
+     * 出力する最低の log level を設定します。
      *
-     * @param className 単純なクラス名を取得する、クラスの正式名称を指定します。
-     * @return パッケージ名を除いた、単純なクラス名を返します。
+     * @param level 出力する最低の log level です。 {@link Log#VERBOSE} などを指定します。
+     * @see LogLevels
      */
-    private static String getSimpleName(String className) {
-        final int lastIndexOfDot = className.lastIndexOf(".");
-        if (lastIndexOfDot < 0) {
-            return className;
+    void setMinLevel(int level) {
+        mMinLevel = level;
+    }
+
+    @Override
+    public void trace() {
+        if (!isLoggable(Log.VERBOSE)) {
+            return;
+        }
+        v(CallSites.resolve(1));
+    }
+
+    @Override
+    public void trace(Object... args) {
+        if (!isLoggable(Log.VERBOSE)) {
+            return;
         }
-        return className.substring(lastIndexOfDot + 1);
+        v(MessageFormatter.formatArgs(CallSites.resolve(1), args));
     }
 
     @Override
     public void dump(Intent intent) {
+        if (!isLoggable(Log.VERBOSE)) {
+            return;
+        }
         Bundle extras = intent.getExtras();
-        v("intent: " + intent + ", extras: " + extras);
+        v("intent: {}, extras: {}", intent, extras);
     }
 
     @Override
     public void v(String msg) {
-        Log.v(mTag, msg);
+        println(Log.VERBOSE, msg, null);
+    }
+
+    @Override
+    public void v(String format, Object arg) {
+        if (isLoggable(Log.VERBOSE)) {
+            println(Log.VERBOSE, MessageFormatter.format(format, arg), null);
+        }
+    }
+
+    @Override
+    public void v(String format, int arg) {
+        if (isLoggable(Log.VERBOSE)) {
+            println(Log.VERBOSE, MessageFormatter.format(format, arg), null);
+        }
+    }
+
+    @Override
+    public void v(String format, long arg) {
+        if (isLoggable(Log.VERBOSE)) {
+            println(Log.VERBOSE, MessageFormatter.format(format, arg), null);
+        }
+    }
+
+    @Override
+    public void v(String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.VERBOSE)) {
+            println(Log.VERBOSE, MessageFormatter.format(format, arg1, arg2), null);
+        }
+    }
+
+    @Override
+    public void v(String format, int arg1, Object arg2) {
+        if (isLoggable(Log.VERBOSE)) {
+            println(Log.VERBOSE, MessageFormatter.format(format, arg1, arg2), null);
+        }
+    }
+
+    @Override
+    public void v(String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(Log.VERBOSE)) {
+            println(Log.VERBOSE, MessageFormatter.format(format, arg1, arg2, arg3), null);
+        }
     }
 
     @Override
     public void m(String msg) {
-        final String methodName = StackTraceUtils.getStackTraceElement(-1).getMethodName();
-        Log.d(mTag, methodName + " - " + msg);
+        if (!isLoggable(Log.DEBUG)) {
+            return;
+        }
+        final String methodName = CallSites.resolveMethodName(1);
+        println(Log.DEBUG, methodName + " - " + msg, null);
     }
 
     @Override
     public void d(String msg) {
-        Log.d(mTag, msg);
+        println(Log.DEBUG, msg, null);
     }
 
     @Override
     public void d(Throwable e) {
-        Log.d(mTag, e.getMessage(), e);
+        println(Log.DEBUG, e.getMessage(), e);
     }
 
     @Override
     public void d(String msg, Throwable e) {
-        Log.d(mTag, msg, e);
+        println(Log.DEBUG, msg, e);
+    }
+
+    @Override
+    public void d(String format, Object arg) {
+        if (isLoggable(Log.DEBUG)) {
+            println(Log.DEBUG, MessageFormatter.format(format, arg), null);
+        }
+    }
+
+    @Override
+    public void d(String format, int arg) {
+        if (isLoggable(Log.DEBUG)) {
+            println(Log.DEBUG, MessageFormatter.format(format, arg), null);
+        }
+    }
+
+    @Override
+    public void d(String format, long arg) {
+        if (isLoggable(Log.DEBUG)) {
+            println(Log.DEBUG, MessageFormatter.format(format, arg), null);
+        }
+    }
+
+    @Override
+    public void d(String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.DEBUG)) {
+            println(Log.DEBUG, MessageFormatter.format(format, arg1, arg2), null);
+        }
+    }
+
+    @Override
+    public void d(String format, int arg1, Object arg2) {
+        if (isLoggable(Log.DEBUG)) {
+            println(Log.DEBUG, MessageFormatter.format(format, arg1, arg2), null);
+        }
+    }
+
+    @Override
+    public void d(String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(Log.DEBUG)) {
+            println(Log.DEBUG, MessageFormatter.format(format, arg1, arg2, arg3), null);
+        }
     }
 
     @Override
     public void i(String msg) {
-        Log.i(mTag, msg);
+        println(Log.INFO, msg, null);
     }
 
     @Override
     public void i(Throwable e) {
-        Log.i(mTag, e.getMessage(), e);
+        println(Log.INFO, e.getMessage(), e);
     }
 
     @Override
     public void i(String msg, Throwable e) {
-        Log.i(mTag, msg, e);
+        println(Log.INFO, msg, e);
+    }
+
+    @Override
+    public void i(String format, Object arg) {
+        if (isLoggable(Log.INFO)) {
+            println(Log.INFO, MessageFormatter.format(format, arg), null);
+        }
+    }
+
+    @Override
+    public void i(String format, int arg) {
+        if (isLoggable(Log.INFO)) {
+            println(Log.INFO, MessageFormatter.format(format, arg), null);
+        }
+    }
+
+    @Override
+    public void i(String format, long arg) {
+        if (isLoggable(Log.INFO)) {
+            println(Log.INFO, MessageFormatter.format(format, arg), null);
+        }
+    }
+
+    @Override
+    public void i(String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.INFO)) {
+            println(Log.INFO, MessageFormatter.format(format, arg1, arg2), null);
+        }
+    }
+
+    @Override
+    public void i(String format, int arg1, Object arg2) {
+        if (isLoggable(Log.INFO)) {
+            println(Log.INFO, MessageFormatter.format(format, arg1, arg2), null);
+        }
+    }
+
+    @Override
+    public void i(String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(Log.INFO)) {
+            println(Log.INFO, MessageFormatter.format(format, arg1, arg2, arg3), null);
+        }
     }
 
     @Override
     public void w(String msg) {
-        Log.w(mTag, msg);
+        println(Log.WARN, msg, null);
     }
 
     @Override
     public void w(Throwable e) {
-        Log.w(mTag, e.getMessage(), e);
+        println(Log.WARN, e.getMessage(), e);
     }
 
     @Override
     public void w(String msg, Throwable e) {
-        Log.w(mTag, msg, e);
+        println(Log.WARN, msg, e);
+    }
+
+    @Override
+    public void w(String format, Object arg) {
+        if (isLoggable(Log.WARN)) {
+            println(Log.WARN, MessageFormatter.format(format, arg), null);
+        }
+    }
+
+    @Override
+    public void w(String format, int arg) {
+        if (isLoggable(Log.WARN)) {
+            println(Log.WARN, MessageFormatter.format(format, arg), null);
+        }
+    }
+
+    @Override
+    public void w(String format, long arg) {
+        if (isLoggable(Log.WARN)) {
+            println(Log.WARN, MessageFormatter.format(format, arg), null);
+        }
+    }
+
+    @Override
+    public void w(String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.WARN)) {
+            println(Log.WARN, MessageFormatter.format(format, arg1, arg2), null);
+        }
+    }
+
+    @Override
+    public void w(String format, int arg1, Object arg2) {
+        if (isLoggable(Log.WARN)) {
+            println(Log.WARN, MessageFormatter.format(format, arg1, arg2), null);
+        }
+    }
+
+    @Override
+    public void w(String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(Log.WARN)) {
+            println(Log.WARN, MessageFormatter.format(format, arg1, arg2, arg3), null);
+        }
     }
 
     @Override
     public void e(String msg) {
-        Log.e(mTag, msg);
+        println(Log.ERROR, msg, null);
     }
 
     @Override
     public void e(Throwable e) {
-        Log.e(mTag, e.getMessage(), e);
+        println(Log.ERROR, e.getMessage(), e);
     }
 
     @Override
     public void e(String msg, Throwable e) {
-        Log.e(mTag, msg, e);
+        println(Log.ERROR, msg, e);
+    }
+
+    @Override
+    public void e(String format, Object arg) {
+        if (isLoggable(Log.ERROR)) {
+            println(Log.ERROR, MessageFormatter.format(format, arg), null);
+        }
+    }
+
+    @Override
+    public void e(String format, int arg) {
+        if (isLoggable(Log.ERROR)) {
+            println(Log.ERROR, MessageFormatter.format(format, arg), null);
+        }
+    }
+
+    @Override
+    public void e(String format, long arg) {
+        if (isLoggable(Log.ERROR)) {
+            println(Log.ERROR, MessageFormatter.format(format, arg), null);
+        }
+    }
+
+    @Override
+    public void e(String format, Object arg1, Object arg2) {
+        if (isLoggable(Log.ERROR)) {
+            println(Log.ERROR, MessageFormatter.format(format, arg1, arg2), null);
+        }
+    }
+
+    @Override
+    public void e(String format, int arg1, Object arg2) {
+        if (isLoggable(Log.ERROR)) {
+            println(Log.ERROR, MessageFormatter.format(format, arg1, arg2), null);
+        }
+    }
+
+    @Override
+    public void e(String format, Object arg1, Object arg2, Object arg3) {
+        if (isLoggable(Log.ERROR)) {
+            println(Log.ERROR, MessageFormatter.format(format, arg1, arg2, arg3), null);
+        }
+    }
+
+    @Override
+    public void beginSection(String name) {
+        TraceSections.beginSection(mTag, name);
+    }
+
+    @Override
+    public void endSection() {
+        TraceSections.endSection();
     }
 }
@@ -0,0 +1,329 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import android.os.Process;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Log record を ring buffer に積み、 background の書き込み thread で一括して出力する {@link LogWriter} です。
+ *
+ * 呼び出し元の thread (主に UI thread) では、事前に確保した record への代入のみを行い、
+ * 実際の出力は書き込み thread が batch 単位で委譲先の {@link LogWriter} に行います。
+ * Ring buffer は lock を使わない bounded queue で、容量を超えた場合は {@link OverflowPolicy} に従います。
+ * <p>
+ * usage:
+ * <pre><code>
+ * Logger.Factory.setWriter(new AsyncLogWriter(
+ *         Logger.Factory.getWriter(), 1024, AsyncLogWriter.OverflowPolicy.DROP_OLDEST));
+ * </code></pre>
+ */
+public class AsyncLogWriter implements LogWriter {
+
+    /**
+     * Ring buffer が一杯の時の振る舞いです。
+     */
+    public enum OverflowPolicy {
+        /** 最も古い record を破棄して、新しい record を積みます。 */
+        DROP_OLDEST,
+        /** 新しい record を破棄します。 */
+        DROP_NEWEST,
+        /** 空きができるまで呼び出し元の thread を待たせます。 */
+        BLOCK,
+    }
+
+    /** 1回の batch で書き込む record の最大数。 */
+    private static final int MAX_BATCH_SIZE = 64;
+
+    /** 書き込み thread が record を待つ最大時間。 */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /** {@link OverflowPolicy#BLOCK} で空きを待つ間隔。 */
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /** 書き込み thread を background の優先度で実行する factory。 */
+    private static final ThreadFactory WRITER_THREAD_FACTORY = runnable -> new Thread(() -> {
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        runnable.run();
+    }, "AsyncLogWriter");
+
+    /** 委譲先。 */
+    private final LogWriter mDelegate;
+
+    /** 容量超過時の振る舞い。 */
+    private final OverflowPolicy mPolicy;
+
+    /** 事前に確保した record。 */
+    private final Record[] mRecords;
+
+    /** 各 record の sequence 番号。 */
+    private final AtomicLongArray mSequences;
+
+    /** Index を求めるための mask。 */
+    private final int mMask;
+
+    /** 次に積む位置。 */
+    private final AtomicLong mEnqueuePosition = new AtomicLong();
+
+    /** 次に取り出す位置。 */
+    private final AtomicLong mDequeuePosition = new AtomicLong();
+
+    /** 破棄した record の数。 */
+    private final AtomicLong mDroppedCount = new AtomicLong();
+
+    /** 書き込み thread。 */
+    private final Thread mWriterThread;
+
+    /** 書き込み thread が record を待っているかどうか。 */
+    private volatile boolean mWaiting;
+
+    /** 書き込み thread が batch を書き込み中かどうか。 */
+    private volatile boolean mWriting;
+
+    /**
+     * 委譲先、容量、容量超過時の振る舞いを指定して生成し、書き込み thread を開始します。
+     *
+     * @param delegate 実際に log を出力する委譲先です。 書き込み thread からのみ呼び出されます。
+     * @param capacity Ring buffer の容量です。 2 の累乗に切り上げられます。
+     * @param policy Ring buffer が一杯の時の振る舞いです。
+     */
+    public AsyncLogWriter(LogWriter delegate, int capacity, OverflowPolicy policy) {
+        this(delegate, capacity, policy, WRITER_THREAD_FACTORY);
+    }
+
+    /**
+     * 書き込み thread の生成方法も指定して生成し、書き込み thread を開始します。
+     *
+     * @param delegate 実際に log を出力する委譲先です。 書き込み thread からのみ呼び出されます。
+     * @param capacity Ring buffer の容量です。 2 の累乗に切り上げられます。
+     * @param policy Ring buffer が一杯の時の振る舞いです。
+     * @param threadFactory 書き込み thread を生成する factory です。
+     */
+    @VisibleForTesting
+    AsyncLogWriter(LogWriter delegate, int capacity, OverflowPolicy policy, ThreadFactory threadFactory) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("capacity must be 2 or more: " + capacity);
+        }
+        mDelegate = delegate;
+        mPolicy = policy;
+
+        final int size = Integer.highestOneBit(capacity - 1) << 1;
+        mRecords = new Record[size];
+        mSequences = new AtomicLongArray(size);
+        for (int index = 0; index < size; index++) {
+            mRecords[index] = new Record();
+            mSequences.set(index, index);
+        }
+        mMask = size - 1;
+
+        mWriterThread = threadFactory.newThread(this::runWriter);
+        mWriterThread.setDaemon(true);
+        mWriterThread.start();
+    }
+
+    @Override
+    public void write(long timeMillis, int priority, String tag, String msg, @Nullable Throwable tr) {
+        if (Thread.currentThread() == mWriterThread) {
+            // 委譲先が log を出力した場合に自身を待たないよう、直接書き込みます。
+            mDelegate.write(timeMillis, priority, tag, msg, tr);
+            return;
+        }
+
+        while (!offer(timeMillis, priority, tag, msg, tr)) {
+            switch (mPolicy) {
+                case DROP_OLDEST:
+                    if (poll(null)) {
+                        mDroppedCount.incrementAndGet();
+                    }
+                    break;
+                case DROP_NEWEST:
+                    mDroppedCount.incrementAndGet();
+                    return;
+                case BLOCK:
+                    wakeUpWriter();
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                    break;
+            }
+        }
+        wakeUpWriter();
+    }
+
+    /**
+     * @return 容量超過によって破棄した record の数を返します。
+     */
+    public long getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * @return Ring buffer の容量を返します。
+     */
+    public int getCapacity() {
+        return mRecords.length;
+    }
+
+    /**
+     * この method を呼び出した時点までに積まれた record が書き込まれるまで待ちます。
+     *
+     * Process が終了する直前など、確実に出力したい箇所で呼び出します。
+     *
+     * @param timeout 待つ最大時間です。
+     * @param unit timeout の単位です。
+     * @return 全て書き込まれた場合は true, timeout した場合は false を返します。
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        final long target = mEnqueuePosition.get();
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        wakeUpWriter();
+        while (mDequeuePosition.get() < target || mWriting) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+        }
+        return true;
+    }
+
+    /**
+     * Ring buffer に record を積みます。
+     *
+     * @return 積めた場合は true, 一杯だった場合は false を返します。
+     */
+    private boolean offer(long timeMillis, int priority, String tag, String msg, Throwable tr) {
+        long position = mEnqueuePosition.get();
+        while (true) {
+            final int index = (int) (position & mMask);
+            final long difference = mSequences.get(index) - position;
+            if (difference == 0) {
+                if (mEnqueuePosition.compareAndSet(position, position + 1)) {
+                    mRecords[index].set(timeMillis, priority, tag, msg, tr);
+                    mSequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = mEnqueuePosition.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = mEnqueuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * Ring buffer から最も古い record を取り出します。
+     *
+     * @param out 取り出した record の内容を copy する先です。 null の場合は破棄します。
+     * @return 取り出せた場合は true, 空だった場合は false を返します。
+     */
+    private boolean poll(@Nullable Record out) {
+        long position = mDequeuePosition.get();
+        while (true) {
+            final int index = (int) (position & mMask);
+            final long difference = mSequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (mDequeuePosition.compareAndSet(position, position + 1)) {
+                    Record record = mRecords[index];
+                    if (out != null) {
+                        out.set(record.timeMillis, record.priority, record.tag, record.msg, record.tr);
+                    }
+                    record.clear();
+                    mSequences.lazySet(index, position + mMask + 1);
+                    return true;
+                }
+                position = mDequeuePosition.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = mDequeuePosition.get();
+            }
+        }
+    }
+
+    /**
+     * 書き込み thread が待機している場合は起こします。
+     */
+    private void wakeUpWriter() {
+        if (mWaiting) {
+            mWaiting = false;
+            LockSupport.unpark(mWriterThread);
+        }
+    }
+
+    /**
+     * 書き込み thread の処理です。
+     */
+    private void runWriter() {
+        final Record[] batch = new Record[MAX_BATCH_SIZE];
+        for (int index = 0; index < batch.length; index++) {
+            batch[index] = new Record();
+        }
+
+        while (true) {
+            mWriting = true;
+            int count = 0;
+            while (count < batch.length && poll(batch[count])) {
+                count++;
+            }
+            for (int index = 0; index < count; index++) {
+                Record record = batch[index];
+                try {
+                    mDelegate.write(record.timeMillis, record.priority, record.tag, record.msg, record.tr);
+                } catch (RuntimeException e) {
+                    // 出力の失敗で書き込み thread を止めないようにします。
+                    mDroppedCount.incrementAndGet();
+                }
+                record.clear();
+            }
+            mWriting = false;
+
+            if (count == 0) {
+                mWaiting = true;
+                if (mDequeuePosition.get() == mEnqueuePosition.get()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                mWaiting = false;
+            }
+        }
+    }
+
+    /**
+     * Ring buffer の1要素です。
+     */
+    private static final class Record {
+        /** 記録時刻。 */
+        long timeMillis;
+        /** Log level。 */
+        int priority;
+        /** Tag。 */
+        String tag;
+        /** Message。 */
+        String msg;
+        /** 例外。 */
+        Throwable tr;
+
+        /**
+         * 各値を設定します。
+         */
+        void set(long timeMillis, int priority, String tag, String msg, Throwable tr) {
+            this.timeMillis = timeMillis;
+            this.priority = priority;
+            this.tag = tag;
+            this.msg = msg;
+            this.tr = tr;
+        }
+
+        /**
+         * 参照を解放します。
+         */
+        void clear() {
+            tag = null;
+            msg = null;
+            tr = null;
+        }
+    }
+}
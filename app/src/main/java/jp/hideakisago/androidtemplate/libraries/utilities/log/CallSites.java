@@ -0,0 +1,108 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import android.support.annotation.IntRange;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Log を出力した呼び出し元 (call site) を解決するための class です。
+ *
+ * {@link Thread#getStackTrace()} は VMStack 経由で thread の stack 全体を取得するため、
+ * 呼び出す度に大きな配列の生成が発生します。
+ * この class は {@link Throwable} で呼び出し元の frame を捕捉し、
+ * 整形済みの文字列を call site 毎に cache することで、2回目以降の文字列生成を省略します。
+ */
+final class CallSites {
+
+    /** {@link #getElement(int)} と {@link #resolve(int)} の frame 数。 */
+    private static final int FRAME_OFFSET = 2;
+
+    /** Call site 毎に整形済みの文字列を保持する cache。 */
+    private static final ConcurrentMap<StackTraceElement, String> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * Instance を生成させないための private constructor です。
+     */
+    private CallSites() {
+        // 空実装
+    }
+
+    /**
+     * 指定した深さの呼び出し元を、整形済みの文字列で取得します。
+     *
+     * @param depth 取得する method の深さです。
+     * depth に対応する method は以下の通りです。
+     * <ul>
+     * <li>0: この method を呼び出した method</li>
+     * <li>1: その1つ前の method</li>
+     * <li>...</li>
+     * </ul>
+     * @return 以下の format の文字列を返します。 該当する frame が存在しない場合は "unknown" を返します。<br>
+     * &lt;Simple class name>.&lt;Method name>(&lt;File name>:&lt;Line number>)
+     * 例: <pre><code>SampleFragment.onCreate(SampleFragment.java:120)</code></pre>
+     */
+    static String resolve(@IntRange(from = 0) int depth) {
+        StackTraceElement element = getElement(depth);
+        if (element == null) {
+            return "unknown";
+        }
+        String message = CACHE.get(element);
+        if (message == null) {
+            message = format(element);
+            CACHE.putIfAbsent(element, message);
+        }
+        return message;
+    }
+
+    /**
+     * 指定した深さの呼び出し元の method 名を取得します。
+     *
+     * @param depth 取得する method の深さです。 {@link #resolve(int)} と同様です。
+     * @return 呼び出し元の method 名を返します。 該当する frame が存在しない場合は "unknown" を返します。
+     */
+    static String resolveMethodName(@IntRange(from = 0) int depth) {
+        StackTraceElement element = getElement(depth);
+        return element != null ? element.getMethodName() : "unknown";
+    }
+
+    /**
+     * 指定した深さの stack trace element を取得します。
+     *
+     * @param depth {@link #resolve(int)} 等を呼び出した method を 0 とした深さです。
+     * @return 該当する stack trace element を返します。 存在しない場合は null を返します。
+     */
+    private static StackTraceElement getElement(int depth) {
+        StackTraceElement[] elements = new Throwable().getStackTrace();
+        final int index = FRAME_OFFSET + depth;
+        if (index >= elements.length) {
+            return null;
+        }
+        return elements[index];
+    }
+
+    /**
+     * Stack trace element を log 出力用の文字列に整形します。
+     *
+     * @param element 整形する stack trace element です。
+     * @return 整形した文字列を返します。
+     */
+    private static String format(StackTraceElement element) {
+        return getSimpleName(element.getClassName()) + "." + element.getMethodName()
+                + "(" + element.getFileName() + ":" + element.getLineNumber() + ")";
+    }
+
+    /**
+     * クラスの正式名称（jp...SampleClass）から単純なクラス名（SimpleClass）を取得します。
+     *
+     * @param className 単純なクラス名を取得する、クラスの正式名称を指定します。
+     * @return パッケージ名を除いた、単純なクラス名を返します。
+     */
+    private static String getSimpleName(String className) {
+        final int lastIndexOfDot = className.lastIndexOf('.');
+        if (lastIndexOfDot < 0) {
+            return className;
+        }
+        return className.substring(lastIndexOfDot + 1);
+    }
+}
@@ -0,0 +1,50 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * 複数の {@link LogWriter} に同じ log record を出力する {@link LogWriter} です。
+ *
+ * 出力先は {@link #add(LogWriter)} で後から追加できます。 開くのに時間がかかる出力先は、
+ * 先に設定しておいた instance に background thread で追加してください。
+ * <p>
+ * usage:
+ * <pre><code>
+ * Logger.Factory.setWriter(new CompositeLogWriter(
+ *         Logger.Factory.getWriter(), MappedFileLogWriter.create(context)));
+ * </code></pre>
+ */
+public class CompositeLogWriter implements LogWriter {
+
+    /** 出力先。 追加時は copy を差し替えるため、出力時は lock を取得しません。 */
+    private volatile LogWriter[] mWriters;
+
+    /**
+     * 出力先を指定して生成します。
+     *
+     * @param writers 出力先です。 指定した順に出力します。
+     */
+    public CompositeLogWriter(LogWriter... writers) {
+        mWriters = writers.clone();
+    }
+
+    /**
+     * 出力先を追加します。 追加した後に出力された log record から出力します。
+     *
+     * @param writer 追加する出力先です。 既存の出力先の後に出力します。
+     */
+    public synchronized void add(LogWriter writer) {
+        LogWriter[] writers = Arrays.copyOf(mWriters, mWriters.length + 1);
+        writers[mWriters.length] = writer;
+        mWriters = writers;
+    }
+
+    @Override
+    public void write(long timeMillis, int priority, String tag, String msg, @Nullable Throwable tr) {
+        for (LogWriter writer : mWriters) {
+            writer.write(timeMillis, priority, tag, msg, tr);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Broadcast で {@link LogLevels} を変更するための receiver です。
+ *
+ * {@code android.permission.DUMP} を持つ送信元 (adb shell など) からのみ受け付けます。
+ * <p>
+ * usage:
+ * <pre><code>
+ * # SampleFragment の log を VERBOSE まで出力する
+ * adb shell am broadcast -a jp.hideakisago.androidtemplate.action.SET_LOG_LEVEL \
+ *         --es tag SampleFragment --es level V
+ * # SampleFragment の設定を解除する
+ * adb shell am broadcast -a jp.hideakisago.androidtemplate.action.SET_LOG_LEVEL --es tag SampleFragment
+ * # 全ての tag の default を WARN にする
+ * adb shell am broadcast -a jp.hideakisago.androidtemplate.action.SET_LOG_LEVEL --es level W
+ * # 全ての設定を解除する
+ * adb shell am broadcast -a jp.hideakisago.androidtemplate.action.SET_LOG_LEVEL
+ * </code></pre>
+ */
+public class LogLevelReceiver extends BroadcastReceiver {
+
+    /** Log level を変更する action。 */
+    public static final String ACTION_SET_LOG_LEVEL = "jp.hideakisago.androidtemplate.action.SET_LOG_LEVEL";
+
+    /** 対象の tag を指定する extra。 省略した場合は全ての tag が対象です。 */
+    public static final String EXTRA_TAG = "tag";
+
+    /** Log level を指定する extra。 省略した場合は設定を解除します。 */
+    public static final String EXTRA_LEVEL = "level";
+
+    /** ログ。 */
+    private final Logger mLog = Logger.Factory.create(this);
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (!ACTION_SET_LOG_LEVEL.equals(intent.getAction())) {
+            return;
+        }
+
+        final String tag = intent.getStringExtra(EXTRA_TAG);
+        final String levelName = intent.getStringExtra(EXTRA_LEVEL);
+        try {
+            if (tag == null) {
+                if (levelName == null) {
+                    LogLevels.reset();
+                } else {
+                    LogLevels.setDefaultLevel(LogLevels.parse(levelName));
+                }
+            } else {
+                if (levelName == null) {
+                    LogLevels.clearLevel(tag);
+                } else {
+                    LogLevels.setLevel(tag, LogLevels.parse(levelName));
+                }
+            }
+            mLog.i("log level changed. tag: {}, level: {}", tag, levelName);
+        } catch (IllegalArgumentException e) {
+            mLog.w(e);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.util.Log;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Tag 毎に出力する最低の log level を管理する class です。
+ *
+ * {@link Logger.Factory} で生成した {@link Logger} は、生成時に以下の順で level を決定し、 instance に保持します。
+ * <ol>
+ * <li>{@link #setLevel(String, int)} で tag に設定された level</li>
+ * <li>{@link #setDefaultLevel(Integer)} で設定された level</li>
+ * <li>Build type 毎の default (debug: {@link Log#VERBOSE}, release: {@link Log#INFO})。
+ * ただし {@link Log#isLoggable(String, int)} (adb shell setprop log.tag.&lt;TAG> &lt;LEVEL>) で
+ * より低い level が許可されている場合はその level</li>
+ * </ol>
+ * 実行時に level を変更した場合は、生成済みの {@link Logger} にも反映されます。
+ * Log 出力時の判定は各 instance が保持する int の比較のみです。
+ *
+ * @see LogLevelReceiver
+ */
+public final class LogLevels {
+
+    /** Lock object。 */
+    private static final Object LOCK = new Object();
+
+    /** Tag 毎に設定された level。 */
+    private static final Map<String, Integer> LEVELS = new HashMap<>();
+
+    /** Tag 毎の生成済み logger。 読み込みは lock を取得せずに行います。 */
+    private static final ConcurrentMap<String, AbsLogger> LOGGERS = new ConcurrentHashMap<>();
+
+    /** {@link Log#isLoggable(String, int)} を呼び出す判定処理。 */
+    private static final PropertyCheck PLATFORM_CHECK = Log::isLoggable;
+
+    /** Tag に設定が無い場合の level。 未設定の場合は null です。 */
+    private static Integer sDefaultLevel;
+
+    /** 端末の設定で log level が許可されているかどうかの判定処理。 */
+    private static volatile PropertyCheck sPropertyCheck = PLATFORM_CHECK;
+
+    /**
+     * Instance を生成させないための private constructor です。
+     */
+    private LogLevels() {
+        // 空実装
+    }
+
+    /**
+     * 指定した tag で出力する最低の log level を設定します。
+     *
+     * @param tag 設定する tag です。
+     * @param level 出力する最低の log level です。 {@link Log#VERBOSE} などを指定します。
+     */
+    public static void setLevel(String tag, int level) {
+        synchronized (LOCK) {
+            LEVELS.put(tag, level);
+            apply(tag);
+        }
+    }
+
+    /**
+     * 指定した tag に設定した log level を解除し、 default の level に戻します。
+     *
+     * @param tag 解除する tag です。
+     */
+    public static void clearLevel(String tag) {
+        synchronized (LOCK) {
+            LEVELS.remove(tag);
+            apply(tag);
+        }
+    }
+
+    /**
+     * Tag 毎の設定が無い場合に出力する最低の log level を設定します。
+     *
+     * @param level 出力する最低の log level です。 null を指定した場合は build type 毎の default に戻します。
+     */
+    public static void setDefaultLevel(Integer level) {
+        synchronized (LOCK) {
+            sDefaultLevel = level;
+            for (String tag : LOGGERS.keySet()) {
+                apply(tag);
+            }
+        }
+    }
+
+    /**
+     * 全ての設定を解除し、 build type 毎の default に戻します。
+     */
+    public static void reset() {
+        synchronized (LOCK) {
+            LEVELS.clear();
+            sDefaultLevel = null;
+            for (String tag : LOGGERS.keySet()) {
+                apply(tag);
+            }
+        }
+    }
+
+    /**
+     * 端末の設定で log level が許可されているかどうかの判定処理を差し替えます。
+     *
+     * Unit test の android.jar の {@link Log#isLoggable(String, int)} は呼び出すと例外を throw するため、
+     * release build の default level ({@link Log#INFO}) で logger を生成する test で利用します。
+     * 生成済みの logger の level は変更しません。
+     *
+     * @param check 判定処理です。 null を指定した場合は {@link Log#isLoggable(String, int)} に戻します。
+     */
+    @VisibleForTesting
+    static void setPropertyCheck(@Nullable PropertyCheck check) {
+        sPropertyCheck = check != null ? check : PLATFORM_CHECK;
+    }
+
+    /**
+     * 指定した tag の生成済み logger を取得します。
+     *
+     * @param tag Log 出力時の tag です。
+     * @return 生成済みの logger を返します。 未生成の場合は null を返します。
+     */
+    @Nullable
+    static AbsLogger find(String tag) {
+        return LOGGERS.get(tag);
+    }
+
+    /**
+     * 生成した logger を登録し、 tag に対応する level を設定します。
+     * 同じ tag の logger が既に登録されている場合は、その logger を返します。
+     *
+     * @param logger 登録する logger です。
+     * @return 登録された logger を返します。
+     */
+    static AbsLogger register(AbsLogger logger) {
+        final String tag = logger.getTag();
+        synchronized (LOCK) {
+            AbsLogger registered = LOGGERS.get(tag);
+            if (registered != null) {
+                return registered;
+            }
+            logger.setMinLevel(resolve(tag));
+            LOGGERS.put(tag, logger);
+            return logger;
+        }
+    }
+
+    /**
+     * 指定した tag の生成済み logger に level を反映します。
+     * {@link #LOCK} を取得した状態で呼び出してください。
+     *
+     * @param tag 反映する tag です。
+     */
+    private static void apply(String tag) {
+        AbsLogger logger = LOGGERS.get(tag);
+        if (logger != null) {
+            logger.setMinLevel(resolve(tag));
+        }
+    }
+
+    /**
+     * 指定した tag で出力する最低の log level を決定します。
+     * {@link #LOCK} を取得した状態で呼び出してください。
+     *
+     * @param tag 決定する tag です。
+     * @return 出力する最低の log level を返します。
+     */
+    private static int resolve(String tag) {
+        Integer level = LEVELS.get(tag);
+        if (level != null) {
+            return level;
+        }
+        if (sDefaultLevel != null) {
+            return sDefaultLevel;
+        }
+        for (int priority = Log.VERBOSE; priority < LoggerImpl.DEFAULT_MIN_LEVEL; priority++) {
+            if (isLoggable(tag, priority)) {
+                return priority;
+            }
+        }
+        return LoggerImpl.DEFAULT_MIN_LEVEL;
+    }
+
+    /**
+     * {@link Log#isLoggable(String, int)} を呼び出します。
+     *
+     * @return 許可されている場合は true を返します。 Tag が長すぎるなどで判定できない場合は false を返します。
+     */
+    private static boolean isLoggable(String tag, int priority) {
+        try {
+            return sPropertyCheck.isLoggable(tag, priority);
+        } catch (IllegalArgumentException e) {
+            // API 24 未満では 23 文字を超える tag は判定できません。
+            return false;
+        }
+    }
+
+    /**
+     * 端末の設定 (adb shell setprop log.tag.&lt;TAG> &lt;LEVEL>) で log level が許可されているかどうかを判定する処理です。
+     */
+    @VisibleForTesting
+    interface PropertyCheck {
+        /**
+         * @param tag 判定する tag です。
+         * @param priority 判定する log level です。
+         * @return 許可されている場合は true を返します。
+         */
+        boolean isLoggable(String tag, int priority);
+    }
+
+    /**
+     * Log level を表す文字列を解析します。
+     *
+     * @param level "V", "D", "I", "W", "E", "A" (または "VERBOSE" などの名称) か、数値の文字列です。
+     * @return 対応する log level を返します。
+     * @throws IllegalArgumentException 解析できない場合に throw します。
+     */
+    public static int parse(String level) {
+        switch (level.toUpperCase(Locale.US)) {
+            case "V":
+            case "VERBOSE":
+                return Log.VERBOSE;
+            case "D":
+            case "DEBUG":
+                return Log.DEBUG;
+            case "I":
+            case "INFO":
+                return Log.INFO;
+            case "W":
+            case "WARN":
+                return Log.WARN;
+            case "E":
+            case "ERROR":
+                return Log.ERROR;
+            case "A":
+            case "ASSERT":
+                return Log.ASSERT;
+            default:
+                try {
+                    return Integer.parseInt(level);
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Unknown log level: " + level, e);
+                }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+/**
+ * {@link Logger} が生成した log record の出力先を表す interface です。
+ *
+ * {@link Logger.Factory#setWriter(LogWriter)} で設定すると、
+ * 以降に生成される {@link Logger} の出力先になります。
+ */
+public interface LogWriter {
+
+    /**
+     * Log record を1件出力します。
+     *
+     * @param timeMillis Log が記録された時刻です。 {@link System#currentTimeMillis()} の値です。
+     * @param priority Log level です。 {@link Log#VERBOSE} などを指定します。
+     * @param tag Log 出力時の tag です。
+     * @param msg Log に出力するメッセージです。
+     * @param tr Log に出力する例外です。 例外が無い場合は null です。
+     */
+    void write(long timeMillis, int priority, String tag, String msg, @Nullable Throwable tr);
+}
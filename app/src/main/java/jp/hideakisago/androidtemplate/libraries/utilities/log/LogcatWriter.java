@@ -0,0 +1,31 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+/**
+ * {@link Log} を利用して logcat に出力する {@link LogWriter} です。
+ *
+ * Logcat は書き込み時に自身で時刻を付与するため、 timeMillis は利用しません。
+ */
+final class LogcatWriter implements LogWriter {
+
+    /** Singleton instance。 */
+    static final LogcatWriter INSTANCE = new LogcatWriter();
+
+    /**
+     * Singleton にするための private constructor です。
+     */
+    private LogcatWriter() {
+    }
+
+    @Override
+    public void write(long timeMillis, int priority, String tag, String msg, @Nullable Throwable tr) {
+        if (tr != null) {
+            msg = msg + '\n' + Log.getStackTraceString(tr);
+        } else if (msg == null) {
+            msg = "null";
+        }
+        Log.println(priority, tag, msg);
+    }
+}
@@ -3,8 +3,18 @@ package jp.hideakisago.androidtemplate.libraries.utilities.log;
 import android.content.Intent;
 import android.util.Log;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 /**
  * Log 出力のための interface です。
+ * <p>
+ * Message を引数から組み立てる場合は、 "{}" を含む format を受け取る method を利用してください。
+ * 出力しない log level の場合は message の組み立て自体を行わないため、文字列の連結や boxing が発生しません。
+ * <pre><code>
+ * mLog.d("{} {}", index, entry);
+ * </code></pre>
+ * 最後の引数が {@link Throwable} の場合は、例外を dump する method が呼び出されることに注意してください。
  */
 public interface Logger {
 
@@ -53,6 +63,46 @@ public interface Logger {
      */
     void v(String msg);
 
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     */
+    void v(String format, Object arg);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     */
+    void v(String format, int arg);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     */
+    void v(String format, long arg);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     */
+    void v(String format, Object arg1, Object arg2);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     */
+    void v(String format, int arg1, Object arg2);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     * @param arg3 3つ目の "{}" を置き換える値です。
+     */
+    void v(String format, Object arg1, Object arg2, Object arg3);
+
     /**
      * メッセージの先頭に「&lt;呼び出し元の method name> - 」を付加してメッセージを出力します。
      * ログ レベルは {@link Log#DEBUG} です。
@@ -77,6 +127,46 @@ public interface Logger {
      */
     void d(String msg, Throwable e);
 
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     */
+    void d(String format, Object arg);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     */
+    void d(String format, int arg);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     */
+    void d(String format, long arg);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     */
+    void d(String format, Object arg1, Object arg2);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     */
+    void d(String format, int arg1, Object arg2);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     * @param arg3 3つ目の "{}" を置き換える値です。
+     */
+    void d(String format, Object arg1, Object arg2, Object arg3);
+
     /**
      * @param msg ログに出力するメッセージです。
      */
@@ -93,6 +183,46 @@ public interface Logger {
      */
     void i(String msg, Throwable e);
 
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     */
+    void i(String format, Object arg);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     */
+    void i(String format, int arg);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     */
+    void i(String format, long arg);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     */
+    void i(String format, Object arg1, Object arg2);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     */
+    void i(String format, int arg1, Object arg2);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     * @param arg3 3つ目の "{}" を置き換える値です。
+     */
+    void i(String format, Object arg1, Object arg2, Object arg3);
+
     /**
      * @param msg ログに出力するメッセージです。
      */
@@ -109,6 +239,46 @@ public interface Logger {
      */
     void w(String msg, Throwable e);
 
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     */
+    void w(String format, Object arg);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     */
+    void w(String format, int arg);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     */
+    void w(String format, long arg);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     */
+    void w(String format, Object arg1, Object arg2);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     */
+    void w(String format, int arg1, Object arg2);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     * @param arg3 3つ目の "{}" を置き換える値です。
+     */
+    void w(String format, Object arg1, Object arg2, Object arg3);
+
     /**
      * @param msg ログに出力するメッセージです。
      */
@@ -125,10 +295,114 @@ public interface Logger {
      */
     void e(String msg, Throwable e);
 
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     */
+    void e(String format, Object arg);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     */
+    void e(String format, int arg);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     */
+    void e(String format, long arg);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     */
+    void e(String format, Object arg1, Object arg2);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     */
+    void e(String format, int arg1, Object arg2);
+
+    /**
+     * @param format ログに出力するメッセージです。 "{}" は引数の値で置き換えられます。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     * @param arg3 3つ目の "{}" を置き換える値です。
+     */
+    void e(String format, Object arg1, Object arg2, Object arg3);
+
+    /**
+     * 呼び出し元の thread で trace の section を開始します。
+     * <p>
+     * Section 名は「&lt;tag>#&lt;name>」になり、 systrace / Perfetto で slice として表示されます。
+     * {@link android.os.Trace} を利用できない端末では {@link TraceSections#getBuffer()} に記録します。
+     * Log level に関わらず記録されます。 {@link TraceSections#isEnabled()} が false の場合は section 名を生成しません。
+     * <p>
+     * usage:
+     * <pre><code>
+     * mLog.beginSection("inflate");
+     * try {
+     *     ...
+     * } finally {
+     *     mLog.endSection();
+     * }
+     * </code></pre>
+     *
+     * @param name Section 名です。
+     */
+    void beginSection(String name);
+
+    /**
+     * 呼び出し元の thread で直近に開始した trace の section を終了します。
+     *
+     * @see #beginSection(String)
+     */
+    void endSection();
 
+    /**
+     * {@link Logger} instance を取得するための factory です。
+     *
+     * 同じ tag の {@link Logger} は1つの instance を共有します。
+     * Class を指定した場合は class 毎に cache するため、2回目以降は reflection も object の生成も行いません。
+     * 取得した instance は thread safe です。
+     */
     class Factory {
+
+        /** Log の出力先。 */
+        private static volatile LogWriter sWriter = LogcatWriter.INSTANCE;
+
+        /** Class 毎の instance。 */
+        private static final ConcurrentMap<Class<?>, Logger> CLASS_LOGGERS = new ConcurrentHashMap<>();
+
+        /**
+         * Log の出力先を設定します。
+         * 生成済みの {@link Logger} の出力先も変更されます。
+         * <p>
+         * usage:
+         * <pre><code>
+         * Logger.Factory.setWriter(new AsyncLogWriter(
+         *         Logger.Factory.getWriter(), 1024, AsyncLogWriter.OverflowPolicy.DROP_OLDEST));
+         * </code></pre>
+         *
+         * @param writer Log の出力先です。
+         */
+        public static void setWriter(LogWriter writer) {
+            sWriter = writer;
+        }
+
+        /**
+         * @return 現在の出力先を返します。 初期値は logcat です。
+         */
+        public static LogWriter getWriter() {
+            return sWriter;
+        }
+
         /**
-         * 引数で指定した instance (Class) の simple name を tag として設定し、 {@link Logger} instance を生成します。
+         * 引数で指定した instance (Class) の simple name を tag とする {@link Logger} instance を取得します。
          *
          * @param thiz Class の simple name を tag として設定する instance です。
          */
@@ -137,21 +411,31 @@ public interface Logger {
         }
 
         /**
-         * 引数で指定した Class の simple name を tag として設定し、 {@link Logger} instance を生成します。
+         * 引数で指定した Class の simple name を tag とする {@link Logger} instance を取得します。
          *
          * @param clazz simple name を tag として設定する Class です。
          */
         public static Logger create(Class<?> clazz) {
-            return create(clazz.getSimpleName());
+            Logger logger = CLASS_LOGGERS.get(clazz);
+            if (logger == null) {
+                logger = create(clazz.getSimpleName());
+                CLASS_LOGGERS.putIfAbsent(clazz, logger);
+            }
+            return logger;
         }
 
         /**
-         * 引数で指定した tag を log 出力時の tag として設定し、 {@link Logger} instance を生成します。
+         * 引数で指定した tag を log 出力時の tag とする {@link Logger} instance を取得します。
+         * 初めての tag の場合は生成し、出力する log level を {@link LogLevels} で決定して instance に保持します。
          *
          * @param tag Log 出力時の tag です。
          */
         public static Logger create(String tag) {
-            return new LoggerImpl(tag);
+            AbsLogger logger = LogLevels.find(tag);
+            if (logger == null) {
+                logger = LogLevels.register(new LoggerImpl(tag.intern()));
+            }
+            return logger;
         }
     }
 }
@@ -0,0 +1,333 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memory map した固定 size の file に、 log record を循環して書き込む {@link LogWriter} です。
+ *
+ * Logcat が rotate した後でも直近の log を調べられるように、 process をまたいで file に残します。
+ * 書き込みは mapping への copy のみで、 record 毎の system call は発生しません。
+ * 容量を超えた場合は古い record から上書きします。
+ * File の内容は {@link MappedLogFileDecoder} で text に変換できます。
+ * <p>
+ * File format (数値は全て big endian):
+ * <pre>
+ * [Header: {@value #HEADER_SIZE} bytes]
+ *   int magic, int version, int fileSize, int tagCount, int head, int tail, int recordCount
+ * [Tag table: {@value #TAG_SLOTS} slots x {@value #TAG_SLOT_SIZE} bytes]
+ *   u8 length, UTF-8 bytes
+ * [Data: 以降 file の末尾まで]
+ *   u16 length, u8 priority, u8 reserved, u16 tagId, i64 timeMillis, UTF-8 message
+ *   length が 0 の record、 または record header が入りきらない位置は data 領域の先頭に戻ることを表します。
+ * </pre>
+ * <p>
+ * usage:
+ * <pre><code>
+ * Logger.Factory.setWriter(new CompositeLogWriter(
+ *         Logger.Factory.getWriter(), MappedFileLogWriter.create(context)));
+ * </code></pre>
+ */
+public class MappedFileLogWriter implements LogWriter {
+
+    /** File の識別子。 */
+    static final int MAGIC = 0x4c4f4721;
+
+    /** File format の version。 */
+    static final int VERSION = 1;
+
+    /** Header の size。 */
+    static final int HEADER_SIZE = 64;
+
+    /** Header 内の file size の位置。 */
+    static final int OFFSET_FILE_SIZE = 8;
+
+    /** Header 内の tag 数の位置。 */
+    static final int OFFSET_TAG_COUNT = 12;
+
+    /** Header 内の次の書き込み位置の位置。 */
+    static final int OFFSET_HEAD = 16;
+
+    /** Header 内の最も古い record の位置の位置。 */
+    static final int OFFSET_TAIL = 20;
+
+    /** Header 内の record 数の位置。 */
+    static final int OFFSET_RECORD_COUNT = 24;
+
+    /** Tag table の slot 数。 */
+    static final int TAG_SLOTS = 256;
+
+    /** Tag table の1 slot の size。 */
+    static final int TAG_SLOT_SIZE = 48;
+
+    /** Tag table に入りきらなかった tag の id。 */
+    static final int UNKNOWN_TAG_ID = 0xffff;
+
+    /** Data 領域の開始位置。 */
+    static final int DATA_START = HEADER_SIZE + TAG_SLOTS * TAG_SLOT_SIZE;
+
+    /** Record header の size。 */
+    static final int RECORD_HEADER_SIZE = 14;
+
+    /** 1 record の message の最大 byte 数。 */
+    static final int MAX_MESSAGE_BYTES = 4 * 1024;
+
+    /** Default の file 名。 */
+    public static final String DEFAULT_FILE_NAME = "diagnostics.mlog";
+
+    /** Default の file size。 */
+    public static final int DEFAULT_FILE_SIZE = 1024 * 1024;
+
+    /** File の文字 encoding。 */
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Mapping。 */
+    private final MappedByteBuffer mBuffer;
+
+    /** File size。 */
+    private final int mFileSize;
+
+    /** Tag と tag id の対応。 */
+    private final Map<String, Integer> mTagIds = new HashMap<>();
+
+    /** Message の encoder。 */
+    private final CharsetEncoder mEncoder = UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+    /** Message を encode する作業領域。 */
+    private final ByteBuffer mScratch = ByteBuffer.allocate(MAX_MESSAGE_BYTES);
+
+    /** 次の書き込み位置。 */
+    private int mHead;
+
+    /** 最も古い record の位置。 */
+    private int mTail;
+
+    /** Record 数。 */
+    private int mRecordCount;
+
+    /**
+     * App の files dir に default の file 名と size で生成します。
+     *
+     * @param context Files dir を取得するための context です。
+     * @return 生成した instance を返します。
+     * @throws IOException File を開けなかった場合に throw します。
+     */
+    public static MappedFileLogWriter create(Context context) throws IOException {
+        return new MappedFileLogWriter(new File(context.getFilesDir(), DEFAULT_FILE_NAME), DEFAULT_FILE_SIZE);
+    }
+
+    /**
+     * 書き込む file と size を指定して生成します。
+     * 同じ size の既存の file が有る場合は、その続きから書き込みます。
+     *
+     * @param file 書き込む file です。
+     * @param fileSize File の size です。
+     * @throws IOException File を開けなかった場合に throw します。
+     */
+    public MappedFileLogWriter(File file, int fileSize) throws IOException {
+        if (fileSize < DATA_START + 2 * (RECORD_HEADER_SIZE + MAX_MESSAGE_BYTES)) {
+            throw new IllegalArgumentException("fileSize is too small: " + fileSize);
+        }
+        mFileSize = fileSize;
+
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(fileSize);
+            mBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSize);
+        } finally {
+            // Mapping は channel を閉じても有効です。
+            raf.close();
+        }
+
+        if (!restore()) {
+            initialize();
+        }
+    }
+
+    @Override
+    public synchronized void write(
+            long timeMillis, int priority, String tag, String msg, @Nullable Throwable tr) {
+        final int tagId = getTagId(tag);
+        encode(msg, tr);
+        final int length = RECORD_HEADER_SIZE + mScratch.remaining();
+
+        if (mHead + length > mFileSize) {
+            evict(mHead, mFileSize);
+            if (mHead + 2 <= mFileSize) {
+                mBuffer.putShort(mHead, (short) 0);
+            }
+            mHead = DATA_START;
+        }
+        evict(mHead, mHead + length);
+        if (mRecordCount == 0) {
+            mTail = mHead;
+        }
+
+        mBuffer.putShort(mHead, (short) length);
+        mBuffer.put(mHead + 2, (byte) priority);
+        mBuffer.put(mHead + 3, (byte) 0);
+        mBuffer.putShort(mHead + 4, (short) tagId);
+        mBuffer.putLong(mHead + 6, timeMillis);
+        mBuffer.position(mHead + RECORD_HEADER_SIZE);
+        mBuffer.put(mScratch);
+
+        mHead += length;
+        mRecordCount++;
+        writePositions();
+    }
+
+    /**
+     * 書き込んだ内容を storage に同期します。
+     *
+     * 通常の書き込みは OS に任せて非同期に反映されるため、端末の電源断に備える場合などに呼び出します。
+     */
+    public synchronized void sync() {
+        mBuffer.force();
+    }
+
+    /**
+     * 指定した範囲に開始位置が含まれる record を、古い順に破棄します。
+     *
+     * @param from 範囲の開始位置です。
+     * @param to 範囲の終了位置です。 この位置は含みません。
+     */
+    private void evict(int from, int to) {
+        while (mRecordCount > 0 && from <= mTail && mTail < to) {
+            mTail += mBuffer.getShort(mTail) & 0xffff;
+            mRecordCount--;
+            if (isWrapPoint(mTail)) {
+                mTail = DATA_START;
+            }
+        }
+        writePositions();
+    }
+
+    /**
+     * @param position 判定する位置です。
+     * @return Data 領域の先頭に戻る位置の場合は true を返します。
+     */
+    private boolean isWrapPoint(int position) {
+        return position + RECORD_HEADER_SIZE > mFileSize || mBuffer.getShort(position) == 0;
+    }
+
+    /**
+     * Message と例外を作業領域に encode します。
+     * 最大 byte 数を超えた部分は切り捨てます。
+     */
+    private void encode(String msg, @Nullable Throwable tr) {
+        if (tr != null) {
+            StringWriter writer = new StringWriter();
+            PrintWriter printer = new PrintWriter(writer);
+            printer.println(msg);
+            tr.printStackTrace(printer);
+            printer.flush();
+            msg = writer.toString();
+        } else if (msg == null) {
+            msg = "null";
+        }
+        mScratch.clear();
+        mEncoder.reset();
+        mEncoder.encode(CharBuffer.wrap(msg), mScratch, true);
+        mEncoder.flush(mScratch);
+        mScratch.flip();
+    }
+
+    /**
+     * Tag の id を取得します。 初めての tag の場合は tag table に追加します。
+     *
+     * @param tag Tag です。
+     * @return Tag の id を返します。 Tag table が一杯の場合は {@link #UNKNOWN_TAG_ID} を返します。
+     */
+    private int getTagId(String tag) {
+        Integer id = mTagIds.get(tag);
+        if (id != null) {
+            return id;
+        }
+        final int count = mTagIds.size();
+        if (count >= TAG_SLOTS) {
+            return UNKNOWN_TAG_ID;
+        }
+
+        byte[] bytes = tag.getBytes(UTF_8);
+        final int length = Math.min(bytes.length, TAG_SLOT_SIZE - 1);
+        final int offset = HEADER_SIZE + count * TAG_SLOT_SIZE;
+        mBuffer.put(offset, (byte) length);
+        mBuffer.position(offset + 1);
+        mBuffer.put(bytes, 0, length);
+        mBuffer.putInt(OFFSET_TAG_COUNT, count + 1);
+
+        mTagIds.put(tag, count);
+        return count;
+    }
+
+    /**
+     * 書き込み位置を header に反映します。
+     */
+    private void writePositions() {
+        mBuffer.putInt(OFFSET_HEAD, mHead);
+        mBuffer.putInt(OFFSET_TAIL, mTail);
+        mBuffer.putInt(OFFSET_RECORD_COUNT, mRecordCount);
+    }
+
+    /**
+     * 既存の file の内容から状態を復元します。
+     *
+     * @return 復元できた場合は true を返します。
+     */
+    private boolean restore() {
+        if (mBuffer.getInt(0) != MAGIC
+                || mBuffer.getInt(4) != VERSION
+                || mBuffer.getInt(OFFSET_FILE_SIZE) != mFileSize) {
+            return false;
+        }
+        final int tagCount = mBuffer.getInt(OFFSET_TAG_COUNT);
+        final int head = mBuffer.getInt(OFFSET_HEAD);
+        final int tail = mBuffer.getInt(OFFSET_TAIL);
+        final int recordCount = mBuffer.getInt(OFFSET_RECORD_COUNT);
+        if (tagCount < 0 || tagCount > TAG_SLOTS
+                || head < DATA_START || head > mFileSize
+                || tail < DATA_START || tail > mFileSize
+                || recordCount < 0) {
+            return false;
+        }
+
+        for (int id = 0; id < tagCount; id++) {
+            mTagIds.put(MappedLogFileDecoder.readTag(mBuffer, id), id);
+        }
+        mHead = head;
+        mTail = tail;
+        mRecordCount = recordCount;
+        return true;
+    }
+
+    /**
+     * File を空の状態で初期化します。
+     */
+    private void initialize() {
+        mBuffer.putInt(0, MAGIC);
+        mBuffer.putInt(4, VERSION);
+        mBuffer.putInt(OFFSET_FILE_SIZE, mFileSize);
+        mBuffer.putInt(OFFSET_TAG_COUNT, 0);
+        mHead = DATA_START;
+        mTail = DATA_START;
+        mRecordCount = 0;
+        writePositions();
+    }
+}
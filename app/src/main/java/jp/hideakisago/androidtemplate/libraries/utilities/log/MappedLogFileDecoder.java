@@ -0,0 +1,206 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import static jp.hideakisago.androidtemplate.libraries.utilities.log.MappedFileLogWriter.DATA_START;
+import static jp.hideakisago.androidtemplate.libraries.utilities.log.MappedFileLogWriter.HEADER_SIZE;
+import static jp.hideakisago.androidtemplate.libraries.utilities.log.MappedFileLogWriter.MAGIC;
+import static jp.hideakisago.androidtemplate.libraries.utilities.log.MappedFileLogWriter.OFFSET_FILE_SIZE;
+import static jp.hideakisago.androidtemplate.libraries.utilities.log.MappedFileLogWriter.OFFSET_RECORD_COUNT;
+import static jp.hideakisago.androidtemplate.libraries.utilities.log.MappedFileLogWriter.OFFSET_TAG_COUNT;
+import static jp.hideakisago.androidtemplate.libraries.utilities.log.MappedFileLogWriter.OFFSET_TAIL;
+import static jp.hideakisago.androidtemplate.libraries.utilities.log.MappedFileLogWriter.RECORD_HEADER_SIZE;
+import static jp.hideakisago.androidtemplate.libraries.utilities.log.MappedFileLogWriter.TAG_SLOTS;
+import static jp.hideakisago.androidtemplate.libraries.utilities.log.MappedFileLogWriter.TAG_SLOT_SIZE;
+import static jp.hideakisago.androidtemplate.libraries.utilities.log.MappedFileLogWriter.UTF_8;
+import static jp.hideakisago.androidtemplate.libraries.utilities.log.MappedFileLogWriter.VERSION;
+
+/**
+ * {@link MappedFileLogWriter} が書き込んだ file を text に変換する class です。
+ *
+ * Android に依存しないため、 unit test や開発機の JVM 上で実行できます。
+ * <p>
+ * usage:
+ * <pre><code>
+ * adb exec-out run-as jp.hideakisago.androidtemplate cat files/diagnostics.mlog > diagnostics.mlog
+ * java -cp &lt;classes> jp.hideakisago.androidtemplate.libraries.utilities.log.MappedLogFileDecoder diagnostics.mlog
+ * </code></pre>
+ */
+public final class MappedLogFileDecoder {
+
+    /** Log level を表す文字。 index は log level の値です。 */
+    private static final String PRIORITY_CHARS = "??VDIWEA";
+
+    /**
+     * Instance を生成させないための private constructor です。
+     */
+    private MappedLogFileDecoder() {
+        // 空実装
+    }
+
+    /**
+     * 引数で指定した file を text に変換し、標準出力に出力します。
+     *
+     * @param args 変換する file の path です。
+     * @throws IOException File を読み込めなかった場合に throw します。
+     */
+    public static void main(String[] args) throws IOException {
+        Writer out = new OutputStreamWriter(System.out, UTF_8);
+        for (String path : args) {
+            decode(new File(path), out);
+        }
+        out.flush();
+    }
+
+    /**
+     * File を読み込み、 record を古い順に text で出力します。
+     *
+     * @param file {@link MappedFileLogWriter} が書き込んだ file です。
+     * @param out 出力先です。
+     * @throws IOException File を読み込めなかった場合や、 format が不正な場合に throw します。
+     */
+    public static void decode(File file, Writer out) throws IOException {
+        PrintWriter printer = new PrintWriter(out);
+        for (Record record : read(file)) {
+            printer.println(record);
+        }
+        printer.flush();
+    }
+
+    /**
+     * File を読み込み、 record を古い順に取得します。
+     *
+     * @param file {@link MappedFileLogWriter} が書き込んだ file です。
+     * @return Record の list を返します。
+     * @throws IOException File を読み込めなかった場合や、 format が不正な場合に throw します。
+     */
+    public static List<Record> read(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Buffer から record を古い順に取得します。
+     *
+     * @param buffer {@link MappedFileLogWriter} が書き込んだ file の内容です。
+     * @return Record の list を返します。
+     * @throws IOException Format が不正な場合に throw します。
+     */
+    public static List<Record> read(ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < DATA_START || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a mapped log file.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported version: " + buffer.getInt(4));
+        }
+        final int fileSize = buffer.getInt(OFFSET_FILE_SIZE);
+        final int tagCount = buffer.getInt(OFFSET_TAG_COUNT);
+        final int recordCount = buffer.getInt(OFFSET_RECORD_COUNT);
+        if (fileSize != buffer.capacity() || tagCount < 0 || tagCount > TAG_SLOTS || recordCount < 0) {
+            throw new IOException("Broken header.");
+        }
+
+        String[] tags = new String[tagCount];
+        for (int id = 0; id < tagCount; id++) {
+            tags[id] = readTag(buffer, id);
+        }
+
+        List<Record> records = new ArrayList<>(recordCount);
+        int position = buffer.getInt(OFFSET_TAIL);
+        for (int index = 0; index < recordCount; index++) {
+            if (position + RECORD_HEADER_SIZE > fileSize || buffer.getShort(position) == 0) {
+                position = DATA_START;
+            }
+            final int length = buffer.getShort(position) & 0xffff;
+            if (length < RECORD_HEADER_SIZE || position + length > fileSize) {
+                throw new IOException("Broken record at " + position);
+            }
+            final int priority = buffer.get(position + 2);
+            final int tagId = buffer.getShort(position + 4) & 0xffff;
+            final long timeMillis = buffer.getLong(position + 6);
+
+            byte[] message = new byte[length - RECORD_HEADER_SIZE];
+            ByteBuffer source = buffer.duplicate();
+            source.position(position + RECORD_HEADER_SIZE);
+            source.get(message);
+
+            records.add(new Record(
+                    timeMillis,
+                    priority,
+                    tagId < tags.length ? tags[tagId] : "?",
+                    new String(message, UTF_8)));
+            position += length;
+        }
+        return Collections.unmodifiableList(records);
+    }
+
+    /**
+     * Tag table から tag を読み込みます。
+     *
+     * @param buffer File の内容です。
+     * @param id 読み込む tag の id です。
+     * @return Tag を返します。
+     */
+    static String readTag(ByteBuffer buffer, int id) {
+        final int offset = HEADER_SIZE + id * TAG_SLOT_SIZE;
+        final int length = Math.min(buffer.get(offset) & 0xff, TAG_SLOT_SIZE - 1);
+        byte[] bytes = new byte[length];
+        ByteBuffer source = buffer.duplicate();
+        source.position(offset + 1);
+        source.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * 復元した log record です。
+     */
+    public static final class Record {
+        /** 記録時刻。 */
+        public final long timeMillis;
+        /** Log level。 */
+        public final int priority;
+        /** Tag。 */
+        public final String tag;
+        /** Message。 */
+        public final String message;
+
+        /**
+         * 各値を指定して生成します。
+         */
+        Record(long timeMillis, int priority, String tag, String message) {
+            this.timeMillis = timeMillis;
+            this.priority = priority;
+            this.tag = tag;
+            this.message = message;
+        }
+
+        /**
+         * @return logcat に似た「MM-dd HH:mm:ss.SSS &lt;Level>/&lt;Tag>: &lt;Message>」の形式の文字列を返します。
+         */
+        @Override
+        public String toString() {
+            final char level = priority >= 0 && priority < PRIORITY_CHARS.length()
+                    ? PRIORITY_CHARS.charAt(priority) : '?';
+            return new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US).format(new Date(timeMillis))
+                    + " " + level + "/" + tag + ": " + message;
+        }
+    }
+}
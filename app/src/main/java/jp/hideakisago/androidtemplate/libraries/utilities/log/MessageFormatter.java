@@ -0,0 +1,269 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+/**
+ * "{}" を引数で置き換える形式の message を組み立てる class です。
+ *
+ * Thread 毎に再利用する {@link StringBuilder} で組み立てるため、
+ * 組み立てに伴う一時 object の生成は結果の文字列のみです。
+ * 引数の {@link Object#toString()} の中で log を出力するなど、組み立て中に同じ thread で呼び出された場合は、
+ * 外側の message を壊さないよう新しい {@link StringBuilder} で組み立てます。
+ * Primitive の引数は boxing せずにそのまま追加します。
+ * <p>
+ * 引数より "{}" が多い場合、余った "{}" はそのまま出力します。 引数が多い場合、余った引数は無視します。
+ */
+final class MessageFormatter {
+
+    /** 置き換え対象の文字列。 */
+    private static final String ANCHOR = "{}";
+
+    /** 再利用する {@link StringBuilder} の初期容量。 */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** 再利用する {@link StringBuilder} の最大容量。 これを超えた場合は破棄して作り直します。 */
+    private static final int MAX_RETAINED_CAPACITY = 8 * 1024;
+
+    /** Thread 毎に再利用する {@link StringBuilder}。 */
+    private static final ThreadLocal<Buffer> BUFFER = new ThreadLocal<Buffer>() {
+        @Override
+        protected Buffer initialValue() {
+            return new Buffer();
+        }
+    };
+
+    /** Thread 毎に再利用する {@link StringBuilder} と、その利用状況です。 */
+    private static final class Buffer {
+        /** 再利用する {@link StringBuilder}。 */
+        StringBuilder builder = new StringBuilder(INITIAL_CAPACITY);
+        /** 組み立て中かどうか。 */
+        boolean inUse;
+    }
+
+    /**
+     * Instance を生成させないための private constructor です。
+     */
+    private MessageFormatter() {
+        // 空実装
+    }
+
+    /**
+     * @param format "{}" を含む message です。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     * @return 組み立てた message を返します。
+     */
+    static String format(String format, Object arg) {
+        StringBuilder builder = obtain();
+        try {
+            int position = appendUntilAnchor(builder, format, 0);
+            if (position >= 0) {
+                builder.append(arg);
+                appendRest(builder, format, position);
+            }
+            return builder.toString();
+        } finally {
+            release(builder);
+        }
+    }
+
+    /**
+     * @param format "{}" を含む message です。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     * @return 組み立てた message を返します。
+     */
+    static String format(String format, int arg) {
+        StringBuilder builder = obtain();
+        try {
+            int position = appendUntilAnchor(builder, format, 0);
+            if (position >= 0) {
+                builder.append(arg);
+                appendRest(builder, format, position);
+            }
+            return builder.toString();
+        } finally {
+            release(builder);
+        }
+    }
+
+    /**
+     * @param format "{}" を含む message です。
+     * @param arg 1つ目の "{}" を置き換える値です。
+     * @return 組み立てた message を返します。
+     */
+    static String format(String format, long arg) {
+        StringBuilder builder = obtain();
+        try {
+            int position = appendUntilAnchor(builder, format, 0);
+            if (position >= 0) {
+                builder.append(arg);
+                appendRest(builder, format, position);
+            }
+            return builder.toString();
+        } finally {
+            release(builder);
+        }
+    }
+
+    /**
+     * @param format "{}" を含む message です。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     * @return 組み立てた message を返します。
+     */
+    static String format(String format, Object arg1, Object arg2) {
+        StringBuilder builder = obtain();
+        try {
+            int position = appendUntilAnchor(builder, format, 0);
+            if (position >= 0) {
+                builder.append(arg1);
+                position = appendUntilAnchor(builder, format, position);
+                if (position >= 0) {
+                    builder.append(arg2);
+                    appendRest(builder, format, position);
+                }
+            }
+            return builder.toString();
+        } finally {
+            release(builder);
+        }
+    }
+
+    /**
+     * @param format "{}" を含む message です。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     * @return 組み立てた message を返します。
+     */
+    static String format(String format, int arg1, Object arg2) {
+        StringBuilder builder = obtain();
+        try {
+            int position = appendUntilAnchor(builder, format, 0);
+            if (position >= 0) {
+                builder.append(arg1);
+                position = appendUntilAnchor(builder, format, position);
+                if (position >= 0) {
+                    builder.append(arg2);
+                    appendRest(builder, format, position);
+                }
+            }
+            return builder.toString();
+        } finally {
+            release(builder);
+        }
+    }
+
+    /**
+     * @param format "{}" を含む message です。
+     * @param arg1 1つ目の "{}" を置き換える値です。
+     * @param arg2 2つ目の "{}" を置き換える値です。
+     * @param arg3 3つ目の "{}" を置き換える値です。
+     * @return 組み立てた message を返します。
+     */
+    static String format(String format, Object arg1, Object arg2, Object arg3) {
+        StringBuilder builder = obtain();
+        try {
+            int position = appendUntilAnchor(builder, format, 0);
+            if (position >= 0) {
+                builder.append(arg1);
+                position = appendUntilAnchor(builder, format, position);
+                if (position >= 0) {
+                    builder.append(arg2);
+                    position = appendUntilAnchor(builder, format, position);
+                    if (position >= 0) {
+                        builder.append(arg3);
+                        appendRest(builder, format, position);
+                    }
+                }
+            }
+            return builder.toString();
+        } finally {
+            release(builder);
+        }
+    }
+
+    /**
+     * 呼び出し元と引数の一覧を組み立てます。
+     *
+     * @param callSite 呼び出し元を表す文字列です。
+     * @param args 引数の一覧です。
+     * @return 「&lt;callSite> args:[&lt;arg1>, &lt;arg2>, ...]」の形式の文字列を返します。
+     */
+    static String formatArgs(String callSite, Object[] args) {
+        StringBuilder builder = obtain();
+        try {
+            builder.append(callSite).append(" args:");
+            if (args == null) {
+                builder.append("null");
+            } else {
+                builder.append('[');
+                for (int index = 0; index < args.length; index++) {
+                    if (index > 0) {
+                        builder.append(", ");
+                    }
+                    builder.append(args[index]);
+                }
+                builder.append(']');
+            }
+            return builder.toString();
+        } finally {
+            release(builder);
+        }
+    }
+
+    /**
+     * 次の "{}" の手前までを追加します。
+     *
+     * @param builder 追加先です。
+     * @param format "{}" を含む message です。
+     * @param from 追加を開始する位置です。
+     * @return "{}" の直後の位置を返します。 "{}" が無かった場合は末尾まで追加して -1 を返します。
+     */
+    private static int appendUntilAnchor(StringBuilder builder, String format, int from) {
+        final int anchor = format.indexOf(ANCHOR, from);
+        if (anchor < 0) {
+            builder.append(format, from, format.length());
+            return -1;
+        }
+        builder.append(format, from, anchor);
+        return anchor + ANCHOR.length();
+    }
+
+    /**
+     * 指定した位置から末尾までを追加します。
+     *
+     * @param builder 追加先です。
+     * @param format "{}" を含む message です。
+     * @param from 追加を開始する位置です。
+     */
+    private static void appendRest(StringBuilder builder, String format, int from) {
+        builder.append(format, from, format.length());
+    }
+
+    /**
+     * @return 現在の thread で再利用する、空の {@link StringBuilder} を返します。
+     *         同じ thread で組み立て中の場合は、新しい {@link StringBuilder} を返します。
+     */
+    private static StringBuilder obtain() {
+        Buffer buffer = BUFFER.get();
+        if (buffer.inUse) {
+            return new StringBuilder(INITIAL_CAPACITY);
+        }
+        buffer.inUse = true;
+        buffer.builder.setLength(0);
+        return buffer.builder;
+    }
+
+    /**
+     * 再利用する {@link StringBuilder} を返却し、大きくなりすぎた場合は破棄します。
+     *
+     * @param builder {@link #obtain()} で取得した {@link StringBuilder} です。
+     */
+    private static void release(StringBuilder builder) {
+        Buffer buffer = BUFFER.get();
+        if (builder != buffer.builder) {
+            return;
+        }
+        if (builder.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer.builder = new StringBuilder(INITIAL_CAPACITY);
+        }
+        buffer.inUse = false;
+    }
+}
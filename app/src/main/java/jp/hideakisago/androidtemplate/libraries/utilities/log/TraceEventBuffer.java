@@ -0,0 +1,184 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import android.os.Process;
+import android.support.annotation.VisibleForTesting;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Trace の section の開始 / 終了を memory 上に記録する固定長の ring buffer です。
+ *
+ * {@link android.os.Trace} を利用できない端末で、 {@link Logger#beginSection(String)} の記録先として利用します。
+ * 容量を超えた場合は古い event から上書きします。
+ * 記録した event は {@link #writeJson(Writer)} で Chrome の trace event format (JSON) として出力でき、
+ * Perfetto UI や chrome://tracing で systrace と同様に slice として表示できます。
+ */
+public final class TraceEventBuffer {
+
+    /** Section の開始を表す event の種類。 */
+    static final byte BEGIN = 'B';
+
+    /** Section の終了を表す event の種類。 */
+    static final byte END = 'E';
+
+    /** Event の種類。 */
+    private final byte[] mTypes;
+
+    /** Event の発生時刻 (nanosecond)。 */
+    private final long[] mTimes;
+
+    /** Event を発生させた thread の id。 */
+    private final long[] mThreadIds;
+
+    /** Section 名。 {@link #END} の場合は null です。 */
+    private final String[] mNames;
+
+    /** 次に書き込む位置。 */
+    private int mHead;
+
+    /** 記録している event 数。 */
+    private int mCount;
+
+    /**
+     * @param capacity 記録する最大の event 数です。
+     */
+    public TraceEventBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        mTypes = new byte[capacity];
+        mTimes = new long[capacity];
+        mThreadIds = new long[capacity];
+        mNames = new String[capacity];
+    }
+
+    /**
+     * 呼び出し元の thread で section を開始した event を記録します。
+     *
+     * @param name Section 名です。
+     */
+    public void begin(String name) {
+        record(BEGIN, name);
+    }
+
+    /**
+     * 呼び出し元の thread で直近に開始した section を終了した event を記録します。
+     */
+    public void end() {
+        record(END, null);
+    }
+
+    /**
+     * @return 記録している event 数を返します。
+     */
+    public synchronized int getCount() {
+        return mCount;
+    }
+
+    /**
+     * 記録を全て消去します。
+     */
+    public synchronized void clear() {
+        Arrays.fill(mNames, null);
+        mHead = 0;
+        mCount = 0;
+    }
+
+    /**
+     * 記録している event を古い順に Chrome の trace event format (JSON) で出力します。
+     *
+     * @param out 出力先です。
+     * @throws IOException 出力に失敗した場合に throw します。
+     */
+    public void writeJson(Writer out) throws IOException {
+        writeJson(out, Process.myPid());
+    }
+
+    /**
+     * 記録している event を古い順に Chrome の trace event format (JSON) で出力します。
+     *
+     * @param out 出力先です。
+     * @param pid Event に記録する process id です。
+     * @throws IOException 出力に失敗した場合に throw します。
+     */
+    @VisibleForTesting
+    void writeJson(Writer out, int pid) throws IOException {
+        byte[] types;
+        long[] times;
+        long[] threadIds;
+        String[] names;
+        synchronized (this) {
+            types = new byte[mCount];
+            times = new long[mCount];
+            threadIds = new long[mCount];
+            names = new String[mCount];
+            final int capacity = mTypes.length;
+            final int first = (mHead - mCount + capacity) % capacity;
+            for (int index = 0; index < mCount; index++) {
+                final int position = (first + index) % capacity;
+                types[index] = mTypes[position];
+                times[index] = mTimes[position];
+                threadIds[index] = mThreadIds[position];
+                names[index] = mNames[position];
+            }
+        }
+
+        out.write("{\"traceEvents\":[");
+        for (int index = 0; index < types.length; index++) {
+            if (index > 0) {
+                out.write(',');
+            }
+            out.write(String.format(Locale.US, "{\"ph\":\"%c\",\"pid\":%d,\"tid\":%d,\"ts\":%.3f",
+                    (char) types[index], pid, threadIds[index], times[index] / 1000.0));
+            if (names[index] != null) {
+                out.write(",\"name\":\"");
+                writeEscaped(out, names[index]);
+                out.write('"');
+            }
+            out.write('}');
+        }
+        out.write("]}");
+        out.flush();
+    }
+
+    /**
+     * Event を記録します。
+     *
+     * @param type Event の種類です。
+     * @param name Section 名です。
+     */
+    private synchronized void record(byte type, String name) {
+        mTypes[mHead] = type;
+        mTimes[mHead] = System.nanoTime();
+        mThreadIds[mHead] = Thread.currentThread().getId();
+        mNames[mHead] = name;
+        mHead = (mHead + 1) % mTypes.length;
+        if (mCount < mTypes.length) {
+            mCount++;
+        }
+    }
+
+    /**
+     * JSON の文字列として escape して出力します。
+     *
+     * @param out 出力先です。
+     * @param value 出力する文字列です。
+     * @throws IOException 出力に失敗した場合に throw します。
+     */
+    private static void writeEscaped(Writer out, String value) throws IOException {
+        for (int index = 0; index < value.length(); index++) {
+            final char c = value.charAt(index);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c < 0x20) {
+                out.write(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                out.write(c);
+            }
+        }
+    }
+}
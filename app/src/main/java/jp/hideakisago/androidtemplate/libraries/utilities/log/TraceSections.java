@@ -0,0 +1,159 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Trace;
+
+import java.lang.reflect.Method;
+
+/**
+ * Trace の section を記録する class です。
+ *
+ * {@link Trace} を利用できる端末 (API 18 以上) では systrace / Perfetto の slice として記録し、
+ * 利用できない端末では {@link #getBuffer()} の {@link TraceEventBuffer} に記録します。
+ * Section は開始した thread で、開始と逆の順に終了する必要があります。
+ *
+ * @see Logger#beginSection(String)
+ */
+public final class TraceSections {
+
+    /** {@link Trace} の section 名の最大長。 */
+    private static final int MAX_SECTION_NAME_LENGTH = 127;
+
+    /** {@link TraceEventBuffer} に記録する最大の event 数。 */
+    private static final int BUFFER_CAPACITY = 4096;
+
+    /** {@link Trace} を利用できるかどうか。 */
+    private static final boolean PLATFORM_TRACE_AVAILABLE =
+            Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+
+    /** App の section を記録する tag (android.os.Trace#TRACE_TAG_APP)。 Method 呼び出しの度に boxing しないよう保持します。 */
+    private static final Long TRACE_TAG_APP = 1L << 12;
+
+    /**
+     * Instance を生成させないための private constructor です。
+     */
+    private TraceSections() {
+        // 空実装
+    }
+
+    /**
+     * 呼び出し元の thread で section を開始します。
+     *
+     * @param name Section 名です。 {@value #MAX_SECTION_NAME_LENGTH} 文字を超える部分は切り捨てます。
+     */
+    public static void beginSection(String name) {
+        if (name.length() > MAX_SECTION_NAME_LENGTH) {
+            name = name.substring(0, MAX_SECTION_NAME_LENGTH);
+        }
+        if (PLATFORM_TRACE_AVAILABLE) {
+            beginPlatformSection(name);
+        } else {
+            BufferHolder.BUFFER.begin(name);
+        }
+    }
+
+    /**
+     * 呼び出し元の thread で「&lt;tag>#&lt;name>」の section を開始します。
+     *
+     * {@link #isEnabled()} が false の場合は section 名を生成しません。
+     *
+     * @param tag Section 名の前半です。
+     * @param name Section 名の後半です。
+     */
+    public static void beginSection(String tag, String name) {
+        if (isEnabled()) {
+            beginSection(tag + '#' + name);
+        }
+    }
+
+    /**
+     * 呼び出し元の thread で直近に開始した section を終了します。
+     *
+     * 開始しなかった section を終了しても、記録は変わりません。
+     */
+    public static void endSection() {
+        if (PLATFORM_TRACE_AVAILABLE) {
+            endPlatformSection();
+        } else {
+            BufferHolder.BUFFER.end();
+        }
+    }
+
+    /**
+     * @return {@link Trace} を利用できる場合は true を返します。
+     * この場合 {@link #getBuffer()} には記録されません。
+     */
+    public static boolean isPlatformTraceAvailable() {
+        return PLATFORM_TRACE_AVAILABLE;
+    }
+
+    /**
+     * @return Section を記録する場合は true を返します。
+     * {@link Trace} を利用できる端末では、 systrace / Perfetto で app の記録を開始している場合のみ true を返します。
+     * {@link Trace} を利用できない端末では、常に {@link #getBuffer()} に記録するため true を返します。
+     */
+    public static boolean isEnabled() {
+        return !PLATFORM_TRACE_AVAILABLE || PlatformHolder.isTagEnabled();
+    }
+
+    /**
+     * @return {@link Trace} を利用できない場合の記録先を返します。
+     */
+    public static TraceEventBuffer getBuffer() {
+        return BufferHolder.BUFFER;
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginPlatformSection(String name) {
+        Trace.beginSection(name);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endPlatformSection() {
+        Trace.endSection();
+    }
+
+    /**
+     * Trace#isTagEnabled(long) を初めて利用する時に取得するための holder です。
+     *
+     * Trace#isEnabled() は API 29 で追加されたため、それ以前から存在する非公開 method を reflection で呼び出します。
+     */
+    private static final class PlatformHolder {
+        /** Trace#isTagEnabled(long)。 取得できなかった場合は null。 */
+        static final Method IS_TAG_ENABLED = findIsTagEnabled();
+
+        /**
+         * @return Trace#isTagEnabled(long) を返します。 取得できなかった場合は null を返します。
+         */
+        private static Method findIsTagEnabled() {
+            try {
+                return Trace.class.getMethod("isTagEnabled", long.class);
+            } catch (Exception e) {
+                return null;
+            }
+        }
+
+        /**
+         * @return App の section を記録している場合は true を返します。 判定できない場合も true を返します。
+         */
+        static boolean isTagEnabled() {
+            if (IS_TAG_ENABLED == null) {
+                return true;
+            }
+            try {
+                return (Boolean) IS_TAG_ENABLED.invoke(null, TRACE_TAG_APP);
+            } catch (Exception e) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * {@link TraceEventBuffer} を初めて利用する時に生成するための holder です。
+     */
+    private static final class BufferHolder {
+        /** 記録先。 */
+        static final TraceEventBuffer BUFFER = new TraceEventBuffer(BUFFER_CAPACITY);
+    }
+}
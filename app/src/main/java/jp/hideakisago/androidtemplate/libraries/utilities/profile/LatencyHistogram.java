@@ -0,0 +1,182 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.profile;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency (nanosecond) の分布を記録する histogram です。
+ *
+ * HdrHistogram と同様に、2 の累乗毎の区間をさらに {@value #SUB_BUCKET_COUNT} 分割した bucket に記録するため、
+ * 値の大きさに関わらず相対誤差 約3% 以内で percentile を求められます。
+ * 記録は固定長の配列の更新のみで、 lock も object の生成も行わないため、複数の thread から同時に記録できます。
+ * 記録できる最大値は 約68秒 で、それを超える値は最大値として記録します。
+ */
+public class LatencyHistogram {
+
+    /** 2 の累乗毎の区間の分割数の bit 数。 */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /** 2 の累乗毎の区間の分割数。 */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** 記録できる最大値の bit 数。 */
+    private static final int MAX_VALUE_BITS = 36;
+
+    /** 記録できる最大値。 */
+    private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+
+    /** Bucket 数。 */
+    private static final int BUCKET_COUNT = indexOf(MAX_VALUE) + 1;
+
+    /** Bucket 毎の記録数。 */
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKET_COUNT);
+
+    /** 記録数。 */
+    private final AtomicLong mTotalCount = new AtomicLong();
+
+    /** 記録した値の合計。 */
+    private final AtomicLong mTotalValue = new AtomicLong();
+
+    /** 記録した値の最小値。 */
+    private final AtomicLong mMin = new AtomicLong(Long.MAX_VALUE);
+
+    /** 記録した値の最大値。 */
+    private final AtomicLong mMax = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * 値を記録します。
+     *
+     * @param valueNanos 記録する値 (nanosecond) です。 負の値は 0 として記録します。
+     */
+    public void record(long valueNanos) {
+        final long value = Math.min(Math.max(valueNanos, 0), MAX_VALUE);
+        mCounts.incrementAndGet(indexOf(value));
+        mTotalCount.incrementAndGet();
+        mTotalValue.addAndGet(value);
+
+        long min = mMin.get();
+        while (value < min && !mMin.compareAndSet(min, value)) {
+            min = mMin.get();
+        }
+        long max = mMax.get();
+        while (value > max && !mMax.compareAndSet(max, value)) {
+            max = mMax.get();
+        }
+    }
+
+    /**
+     * @return 記録数を返します。
+     */
+    public long getCount() {
+        return mTotalCount.get();
+    }
+
+    /**
+     * @return 記録した値の最小値 (nanosecond) を返します。 記録が無い場合は 0 を返します。
+     */
+    public long getMin() {
+        return getCount() == 0 ? 0 : mMin.get();
+    }
+
+    /**
+     * @return 記録した値の最大値 (nanosecond) を返します。 記録が無い場合は 0 を返します。
+     */
+    public long getMax() {
+        return getCount() == 0 ? 0 : mMax.get();
+    }
+
+    /**
+     * @return 記録した値の平均値 (nanosecond) を返します。 記録が無い場合は 0 を返します。
+     */
+    public double getMean() {
+        final long count = getCount();
+        return count == 0 ? 0 : (double) mTotalValue.get() / count;
+    }
+
+    /**
+     * 指定した percentile の値を取得します。
+     *
+     * @param percentile 0 から 100 の percentile です。 例えば p95 の場合は 95 を指定します。
+     * @return 指定した percentile の値 (nanosecond) を返します。 記録が無い場合は 0 を返します。
+     */
+    public long getPercentile(double percentile) {
+        final long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        final double ratio = Math.min(Math.max(percentile, 0), 100) / 100;
+        final long target = Math.max(1, (long) Math.ceil(ratio * count));
+
+        long accumulated = 0;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            accumulated += mCounts.get(index);
+            if (accumulated >= target) {
+                return Math.min(Math.max(valueOf(index), getMin()), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * 記録を全て消去します。
+     */
+    public void reset() {
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            mCounts.set(index, 0);
+        }
+        mTotalCount.set(0);
+        mTotalValue.set(0);
+        mMin.set(Long.MAX_VALUE);
+        mMax.set(Long.MIN_VALUE);
+    }
+
+    /**
+     * @return 「count=&lt;記録数> p50=&lt;ms> p95=&lt;ms> p99=&lt;ms> max=&lt;ms>」の形式の文字列を返します。
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "count=%d p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms",
+                getCount(),
+                toMillis(getPercentile(50)),
+                toMillis(getPercentile(95)),
+                toMillis(getPercentile(99)),
+                toMillis(getMax()));
+    }
+
+    /**
+     * @param nanos Nanosecond の値です。
+     * @return Millisecond に変換した値を返します。
+     */
+    public static double toMillis(long nanos) {
+        return (double) nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * @param value 記録する値です。 0 以上 {@link #MAX_VALUE} 以下です。
+     * @return 値を記録する bucket の index を返します。
+     */
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int shift = exponent - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * @param index Bucket の index です。
+     * @return Bucket の代表値 (区間の中央値) を返します。
+     */
+    private static long valueOf(int index) {
+        if (index < 2 * SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = index / SUB_BUCKET_COUNT - 1;
+        final long mantissa = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        final long lower = mantissa << shift;
+        return lower + (1L << shift) / 2;
+    }
+}
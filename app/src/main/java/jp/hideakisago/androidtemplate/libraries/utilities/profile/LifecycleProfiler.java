@@ -0,0 +1,269 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.profile;
+
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import jp.hideakisago.androidtemplate.libraries.utilities.log.Logger;
+
+/**
+ * Fragment の lifecycle callback 間の所要時間を計測し、 fragment の class 毎に集計する class です。
+ *
+ * {@link #setEnabled(boolean)} で有効にすると、以降に生成された fragment の各 callback の開始時刻を記録し、
+ * {@link Phase} で定義した callback の組毎に {@link LatencyHistogram} に集計します。
+ * 集計結果は {@link #getStats(Class)} で取得するか、 {@link #dump()} で log に出力できます。
+ *
+ * @see jp.hideakisago.androidtemplate.viewcontrollers.LoggerFragment
+ */
+public final class LifecycleProfiler {
+
+    /**
+     * 計測する lifecycle callback です。
+     */
+    public enum Callback {
+        ON_ATTACH,
+        ON_CREATE,
+        ON_CREATE_VIEW,
+        ON_VIEW_CREATED,
+        ON_ACTIVITY_CREATED,
+        ON_START,
+        ON_RESUME,
+        /** onResume の後、 UI thread の message queue で最初に処理された時点です。 */
+        RESUMED,
+        ON_PAUSE,
+        ON_STOP,
+        ON_DESTROY_VIEW,
+        ON_DESTROY,
+        ON_DETACH,
+    }
+
+    /**
+     * 集計する callback の組です。 開始 callback の開始時刻から終了 callback の開始時刻までを計測します。
+     */
+    public enum Phase {
+        ATTACH(Callback.ON_ATTACH, Callback.ON_CREATE),
+        CREATE(Callback.ON_CREATE, Callback.ON_CREATE_VIEW),
+        CREATE_VIEW(Callback.ON_CREATE_VIEW, Callback.ON_VIEW_CREATED),
+        VIEW_CREATED(Callback.ON_VIEW_CREATED, Callback.ON_ACTIVITY_CREATED),
+        ACTIVITY_CREATED(Callback.ON_ACTIVITY_CREATED, Callback.ON_START),
+        START(Callback.ON_START, Callback.ON_RESUME),
+        RESUME(Callback.ON_RESUME, Callback.RESUMED),
+        /** View の生成から操作可能になるまでです。 */
+        VIEW_TO_INTERACTIVE(Callback.ON_CREATE_VIEW, Callback.RESUMED),
+        /** Attach から操作可能になるまでです。 */
+        TIME_TO_INTERACTIVE(Callback.ON_ATTACH, Callback.RESUMED),
+        PAUSE(Callback.ON_PAUSE, Callback.ON_STOP),
+        STOP(Callback.ON_STOP, Callback.ON_DESTROY_VIEW),
+        DESTROY_VIEW(Callback.ON_DESTROY_VIEW, Callback.ON_DESTROY),
+        DESTROY(Callback.ON_DESTROY, Callback.ON_DETACH);
+
+        /** 開始 callback。 */
+        public final Callback begin;
+        /** 終了 callback。 */
+        public final Callback end;
+
+        /**
+         * @param begin 開始 callback です。
+         * @param end 終了 callback です。
+         */
+        Phase(Callback begin, Callback end) {
+            this.begin = begin;
+            this.end = end;
+        }
+    }
+
+    /** Callback 毎の、その callback で終了する phase。 */
+    private static final Phase[][] PHASES_BY_END = new Phase[Callback.values().length][];
+
+    static {
+        for (Callback callback : Callback.values()) {
+            int count = 0;
+            for (Phase phase : Phase.values()) {
+                if (phase.end == callback) {
+                    count++;
+                }
+            }
+            Phase[] phases = new Phase[count];
+            count = 0;
+            for (Phase phase : Phase.values()) {
+                if (phase.end == callback) {
+                    phases[count++] = phase;
+                }
+            }
+            PHASES_BY_END[callback.ordinal()] = phases;
+        }
+    }
+
+    /** Fragment の class 毎の集計結果。 */
+    private static final ConcurrentMap<Class<?>, Stats> STATS = new ConcurrentHashMap<>();
+
+    /** 計測が有効かどうか。 */
+    private static volatile boolean sEnabled;
+
+    /**
+     * Instance を生成させないための private constructor です。
+     */
+    private LifecycleProfiler() {
+        // 空実装
+    }
+
+    /**
+     * 計測の有効 / 無効を設定します。
+     * 既に生成済みの fragment には反映されません。
+     *
+     * @param enabled 計測する場合は true を指定します。
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * @return 計測が有効な場合は true を返します。
+     */
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    /**
+     * Fragment 1 instance 分の計測を開始します。
+     *
+     * @param fragmentClass 計測する fragment の class です。
+     * @return 計測が有効な場合は {@link Session} を返します。 無効な場合は null を返します。
+     */
+    @Nullable
+    public static Session startSession(Class<?> fragmentClass) {
+        if (!sEnabled) {
+            return null;
+        }
+        Stats stats = STATS.get(fragmentClass);
+        if (stats == null) {
+            stats = new Stats();
+            Stats existing = STATS.putIfAbsent(fragmentClass, stats);
+            if (existing != null) {
+                stats = existing;
+            }
+        }
+        return new Session(stats);
+    }
+
+    /**
+     * 指定した fragment の class の集計結果を取得します。
+     *
+     * @param fragmentClass Fragment の class です。
+     * @return 集計結果を返します。 計測していない場合は null を返します。
+     */
+    @Nullable
+    public static Stats getStats(Class<?> fragmentClass) {
+        return STATS.get(fragmentClass);
+    }
+
+    /**
+     * @return Fragment の class 毎の集計結果を返します。
+     */
+    public static Map<Class<?>, Stats> getAllStats() {
+        return Collections.unmodifiableMap(STATS);
+    }
+
+    /**
+     * 集計結果を全て消去します。
+     */
+    public static void reset() {
+        STATS.clear();
+    }
+
+    /**
+     * 集計結果を log に出力します。
+     */
+    public static void dump() {
+        Logger log = Logger.Factory.create(LifecycleProfiler.class);
+        for (Map.Entry<Class<?>, Stats> entry : STATS.entrySet()) {
+            for (Map.Entry<Phase, LatencyHistogram> phase : entry.getValue().getHistograms().entrySet()) {
+                log.i("{}.{} {}", entry.getKey().getSimpleName(), phase.getKey(), phase.getValue());
+            }
+        }
+    }
+
+    /**
+     * Fragment の class 1つ分の集計結果です。
+     */
+    public static final class Stats {
+        /** Phase 毎の histogram。 */
+        private final LatencyHistogram[] mHistograms = new LatencyHistogram[Phase.values().length];
+
+        /**
+         * 各 phase の histogram を生成します。
+         */
+        private Stats() {
+            for (int index = 0; index < mHistograms.length; index++) {
+                mHistograms[index] = new LatencyHistogram();
+            }
+        }
+
+        /**
+         * @param phase 取得する phase です。
+         * @return 指定した phase の histogram を返します。
+         */
+        public LatencyHistogram getHistogram(Phase phase) {
+            return mHistograms[phase.ordinal()];
+        }
+
+        /**
+         * @return 記録が有る phase の histogram を、 phase の定義順に返します。
+         */
+        public Map<Phase, LatencyHistogram> getHistograms() {
+            Map<Phase, LatencyHistogram> histograms = new LinkedHashMap<>();
+            for (Phase phase : Phase.values()) {
+                LatencyHistogram histogram = mHistograms[phase.ordinal()];
+                if (histogram.getCount() > 0) {
+                    histograms.put(phase, histogram);
+                }
+            }
+            return histograms;
+        }
+    }
+
+    /**
+     * Fragment 1 instance 分の計測です。
+     *
+     * Fragment の lifecycle callback と同じく UI thread から呼び出してください。
+     */
+    public static final class Session {
+        /** 集計先。 */
+        private final Stats mStats;
+        /** Callback 毎の直近の開始時刻。 */
+        private final long[] mMarks = new long[Callback.values().length];
+        /** Phase 毎の、集計済みの開始時刻。 */
+        private final long[] mConsumed = new long[Phase.values().length];
+
+        /**
+         * @param stats 集計先です。
+         */
+        private Session(Stats stats) {
+            mStats = stats;
+        }
+
+        /**
+         * Callback の開始を記録し、この callback で終了する phase を集計します。
+         *
+         * @param callback 開始した callback です。
+         */
+        public void mark(Callback callback) {
+            final long now = System.nanoTime();
+            mMarks[callback.ordinal()] = now;
+
+            for (Phase phase : PHASES_BY_END[callback.ordinal()]) {
+                final long begin = mMarks[phase.begin.ordinal()];
+                // 開始 callback が前回の集計以降に呼び出されていない場合は、組になっていないため集計しません。
+                if (begin == 0 || begin == mConsumed[phase.ordinal()]) {
+                    continue;
+                }
+                mConsumed[phase.ordinal()] = begin;
+                mStats.getHistogram(phase).record(now - begin);
+            }
+        }
+    }
+}
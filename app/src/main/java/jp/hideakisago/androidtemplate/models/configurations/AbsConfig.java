@@ -2,15 +2,75 @@ package jp.hideakisago.androidtemplate.models.configurations;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+import android.view.Choreographer;
 
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jp.hideakisago.androidtemplate.libraries.utilities.log.Logger;
+import jp.hideakisago.androidtemplate.models.configurations.storage.VersionedPreferences;
 
 /**
  * 設定を SharedPreferences に保存するための抽象 wrapper class です。
  * <p>
+ * 読み込んだ値は型毎の primitive 配列を持つ不変の snapshot ({@link ConfigSnapshot}) に保持するため、
+ * 2回目以降の get は SharedPreferences の lock も boxing も伴わず、 volatile field の参照と配列の参照のみで完了します。
+ * Snapshot は set や {@link Editor#apply()} の時点で更新し、
+ * 他から SharedPreferences が変更された場合は {@link SharedPreferences.OnSharedPreferenceChangeListener} で
+ * 該当する値を読み込み直します。
+ * <p>
+ * {@link #setWriteCoalescing(long)} を指定すると、一定時間内 または UI thread が idle になるまでの set や remove を
+ * まとめて1回で書き込みます。 書き込みを待たずに読み込んだ値には、書き込み前の値も反映されています。
+ * <p>
+ * 保存先が {@link VersionedPreferences} の場合は、 get の度に保存先の version を lock 無しで確認し、
+ * 他の process が変更していれば変更された key の値だけを読み込み直します。
+ * <p>
+ * {@link #registerOnConfigChangeListener(OnConfigChangeListener, AbsEntry...)} で entry の変更を監視できます。
+ * 値が変わった entry は次の frame までまとめ、 listener 毎に1回だけ通知します。
+ * <p>
+ * {@link #preload(Executor)} を呼び出すと、 SharedPreferences の file と schema の全ての entry の読み込みを
+ * background thread で開始します。 この時、保存されている値の型が entry の型と一致することを検証します。
+ * 先読みしない場合は一括の検証を行わず、 entry を読み込む時に型が一致しなければ、その entry 毎に log に出力して default 値を利用します。
+ * 読み込みの完了前に UI thread で get した場合は、待った時間を log に出力し、
+ * {@link #getBlockedReadCount()} と {@link #getBlockedReadNanos()} に計上します。
+ * Schema に {@link ConfigMigration} が有る場合、移行は先読みの thread でのみ行い、
+ * 先読みの完了前の読み書きは UI thread でも先読みの完了を待ちます。 先読みしない場合は、最初の読み書きの thread で移行します。
+ * <p>
+ * Entry は派生 class 毎の {@link ConfigSchema} に宣言します。 Schema が entry に連番を割り当てるため、
+ * {@link #exportValues()}, {@link #importValues(Map)}, {@link #dump(PrintWriter)} で全ての値を一括で扱えます。
+ * <p>
+ * 要素を1つずつ追加、削除する set は {@link SortedStringSetEntry} で宣言します。
+ * 要素毎に key を分けて保存するため、追加や削除では変更した要素の key だけを書き込みます。
+ * <p>
  * usage:
  * <pre><code>
- * private static final BooleanEntry CONFIG1 = new BooleanEntry("config1", true);
+ * private static final ConfigSchema SCHEMA = new ConfigSchema();
+ * private static final BooleanEntry CONFIG1 = new BooleanEntry(SCHEMA, "config1", true);
  *
  * public void setConfig1(boolean config1) {
  *     set(CONFIG1, config1);
@@ -23,18 +83,166 @@ import java.util.Set;
  */
 public abstract class AbsConfig {
 
+    /** Log。 */
+    private final Logger mLog = Logger.Factory.create(this);
+
     /** Shared preferences。 */
     protected final SharedPreferences mPrefs;
 
+    /** Snapshot の更新と SharedPreferences への書き込みを直列化するための lock。 */
+    private final Object mLock = new Object();
+
+    /** Entry を登録した schema。 */
+    private final ConfigSchema mSchema;
+
+    /** 何も読み込んでいない snapshot。 */
+    private final ConfigSnapshot mEmptySnapshot;
+
+    /** 全ての entry に default 値を読み込んだ snapshot。 消去された entry の変更を判定するために利用します。 */
+    private final ConfigSnapshot mDefaultSnapshot;
+
+    /** 読み込んだ値の snapshot。 更新は {@link #mLock} を取得して行います。 */
+    private volatile ConfigSnapshot mSnapshot;
+
+    /** 他の process の変更を検出できる保存先。 対応しない場合は null です。 */
+    private final VersionedPreferences mVersionedPrefs;
+
+    /** Snapshot に反映済みの保存先の version。 更新は {@link #mLock} を取得して行います。 */
+    private volatile long mSyncedVersion;
+
+    /**
+     * 他から SharedPreferences が変更された時に snapshot を更新する listener。
+     * SharedPreferences は listener を弱参照で保持するため field で保持します。
+     */
+    private final SharedPreferences.OnSharedPreferenceChangeListener mPrefsListener =
+            (prefs, key) -> onPreferenceChanged(key);
+
+    /** set や remove を即座に書き込む場合に {@link #setWriteCoalescing(long)} に指定する値です。 */
+    public static final long WRITE_IMMEDIATELY = -1;
+
+    /** set や remove を UI thread が idle になるまでまとめる場合に {@link #setWriteCoalescing(long)} に指定する値です。 */
+    public static final long WRITE_ON_IDLE = 0;
+
+    /** set や remove をまとめる時間 (millisecond)。 {@link #mLock} を取得して参照します。 */
+    private long mCoalescingWindowMillis = WRITE_IMMEDIATELY;
+
+    /** まとめて書き込むまで保持している editor。 書き込む値が無い場合は null です。 */
+    private SharedPreferences.Editor mPendingEditor;
+
+    /** {@link #mPendingEditor} で書き込む予定の key。 */
+    private final Set<String> mPendingKeys = new HashSet<>();
+
+    /** UI thread で処理を実行する scheduler。 */
+    private volatile Scheduler mScheduler = MAIN_THREAD_SCHEDULER;
+
+    /** まとめた書き込みを実行する処理。 */
+    private final Runnable mFlushTask = this::flush;
+
+    /** UI thread が idle になった時に、まとめた書き込みを実行する処理。 */
+    private final MessageQueue.IdleHandler mIdleFlushTask = () -> {
+        flush();
+        return false;
+    };
+
+    /** UI thread の message queue に {@link #mIdleFlushTask} を登録する処理。 */
+    private final Runnable mAddIdleFlushTask = () -> mScheduler.addIdleHandler(mIdleFlushTask);
+
+    /** 変更を監視する listener と、監視する entry の ordinal。 全て監視する場合は null です。 弱参照で保持します。 */
+    private final Map<OnConfigChangeListener, BitSet> mListeners = new WeakHashMap<>();
+
+    /** Listener を登録したことが有るかどうか。 無い場合は変更を記録しません。 */
+    private volatile boolean mObserved;
+
+    /** 通知を待っている、変更された entry の ordinal。 {@link #mLock} を取得して参照します。 */
+    private final BitSet mChangedOrdinals = new BitSet();
+
+    /** 変更の通知を予約済みかどうか。 {@link #mLock} を取得して参照します。 */
+    private boolean mDispatchScheduled;
+
+    /** Listener を呼び出す executor。 */
+    private volatile Executor mNotificationExecutor = Runnable::run;
+
+    /** 次の frame で変更を通知する callback。 */
+    private final Choreographer.FrameCallback mDispatchFrameCallback = frameTimeNanos -> dispatchChanges();
+
+    /** UI thread で {@link #mDispatchFrameCallback} を登録する処理。 */
+    private final Runnable mScheduleDispatchTask = () -> mScheduler.postFrameCallback(mDispatchFrameCallback);
+
+    /** 先読みしない場合の、完了済みの future。 */
+    private static final FutureTask<Void> COMPLETED = new FutureTask<>(() -> { }, null);
+
+    static {
+        COMPLETED.run();
+    }
+
+    /** 先読みの完了を表す future。 {@link #preload(Executor)} を呼び出すまでは {@link #COMPLETED} です。 */
+    private volatile FutureTask<Void> mPreload = COMPLETED;
+
+    /** 保存先の値を schema version まで移行したかどうか。 */
+    private volatile boolean mMigrated;
+
+    /** 先読みの完了前に UI thread が読み込みを待った回数。 */
+    private final AtomicInteger mBlockedReadCount = new AtomicInteger();
+
+    /** 先読みの完了前に UI thread が読み込みを待った時間の合計 (nanosecond)。 */
+    private final AtomicLong mBlockedReadNanos = new AtomicLong();
+
     /**
      * Context から SharedPreferences の instance を取得して生成する constructor です。
+     * 保存先は {@link ConfigStorage#XML} です。
      *
      * @param context SharedPreferences を取得するための context です。
+     * @param schema 派生 class の entry を登録した schema です。
+     */
+    public AbsConfig(Context context, ConfigSchema schema) {
+        this(context, ConfigStorage.XML, schema);
+    }
+
+    /**
+     * Context と保存先を指定して生成する constructor です。
+     *
+     * @param context 保存先を開くための context です。
+     * @param storage 保存先です。
+     * @param schema 派生 class の entry を登録した schema です。
      */
-    public AbsConfig(Context context) {
-        mPrefs = context.getSharedPreferences(
-                context.getPackageName() + ":" + getClass().getName(),
-                Context.MODE_PRIVATE);
+    public AbsConfig(Context context, ConfigStorage storage, ConfigSchema schema) {
+        this(configClass -> storage.open(context, context.getPackageName() + ":" + configClass.getName()), schema);
+    }
+
+    /**
+     * 保存先の SharedPreferences を指定して生成する constructor です。
+     *
+     * @param prefs 保存先の SharedPreferences です。
+     * @param schema 派生 class の entry を登録した schema です。
+     */
+    protected AbsConfig(SharedPreferences prefs, ConfigSchema schema) {
+        this(configClass -> prefs, schema);
+    }
+
+    /**
+     * 全ての constructor から呼び出され、保存先を開いて初期化する constructor です。
+     *
+     * 保存先の名前に派生 class を使うため、 explicit constructor invocation の引数では参照できない
+     * {@link #getClass()} をここで渡します。
+     *
+     * @param opener 保存先を開く処理です。
+     * @param schema 派生 class の entry を登録した schema です。
+     */
+    private AbsConfig(PreferencesOpener opener, ConfigSchema schema) {
+        mPrefs = opener.open(getClass());
+        schema.freeze();
+        mSchema = schema;
+        mEmptySnapshot = ConfigSnapshot.empty(schema);
+        ConfigSnapshot.Builder defaults = mEmptySnapshot.edit();
+        for (AbsEntry entry : schema.getEntries()) {
+            entry.loadDefault(defaults);
+        }
+        mDefaultSnapshot = defaults.build();
+        mSnapshot = mEmptySnapshot;
+        mVersionedPrefs = mPrefs instanceof VersionedPreferences ? (VersionedPreferences) mPrefs : null;
+        mSyncedVersion = mVersionedPrefs != null ? mVersionedPrefs.getVersion() : 0;
+        mMigrated = schema.getVersion() == 0;
+        mPrefs.registerOnSharedPreferenceChangeListener(mPrefsListener);
     }
 
     /**
@@ -45,7 +253,11 @@ public abstract class AbsConfig {
      * @see SharedPreferences#getBoolean(String, boolean)
      */
     protected boolean get(BooleanEntry entry) {
-        return mPrefs.getBoolean(entry.key, entry.defaultValue);
+        ConfigSnapshot snapshot = currentSnapshot();
+        if (entry.schema == mSchema && snapshot.isLoaded(entry.ordinal)) {
+            return snapshot.booleans[entry.slot];
+        }
+        return load(entry).booleans[entry.slot];
     }
 
     /**
@@ -56,7 +268,11 @@ public abstract class AbsConfig {
      * @see SharedPreferences#getInt(String, int)
      */
     protected int get(IntEntry entry) {
-        return mPrefs.getInt(entry.key, entry.defaultValue);
+        ConfigSnapshot snapshot = currentSnapshot();
+        if (entry.schema == mSchema && snapshot.isLoaded(entry.ordinal)) {
+            return snapshot.ints[entry.slot];
+        }
+        return load(entry).ints[entry.slot];
     }
 
     /**
@@ -66,7 +282,11 @@ public abstract class AbsConfig {
      * @see SharedPreferences#getLong(String, long)
      */
     protected long get(LongEntry entry) {
-        return mPrefs.getLong(entry.key, entry.defaultValue);
+        ConfigSnapshot snapshot = currentSnapshot();
+        if (entry.schema == mSchema && snapshot.isLoaded(entry.ordinal)) {
+            return snapshot.longs[entry.slot];
+        }
+        return load(entry).longs[entry.slot];
     }
 
     /**
@@ -77,7 +297,11 @@ public abstract class AbsConfig {
      * @see SharedPreferences#getFloat(String, float)
      */
     protected float get(FloatEntry entry) {
-        return mPrefs.getFloat(entry.key, entry.defaultValue);
+        ConfigSnapshot snapshot = currentSnapshot();
+        if (entry.schema == mSchema && snapshot.isLoaded(entry.ordinal)) {
+            return snapshot.floats[entry.slot];
+        }
+        return load(entry).floats[entry.slot];
     }
 
     /**
@@ -88,7 +312,11 @@ public abstract class AbsConfig {
      * @see SharedPreferences#getString(String, String)
      */
     protected String get(StringEntry entry) {
-        return mPrefs.getString(entry.key, entry.defaultValue);
+        ConfigSnapshot snapshot = currentSnapshot();
+        if (entry.schema == mSchema && snapshot.isLoaded(entry.ordinal)) {
+            return (String) snapshot.objects[entry.slot];
+        }
+        return (String) load(entry).objects[entry.slot];
     }
 
     /**
@@ -99,7 +327,28 @@ public abstract class AbsConfig {
      * @see SharedPreferences#getStringSet(String, Set)
      */
     protected Set<String> get(StringSetEntry entry) {
-        return mPrefs.getStringSet(entry.key, entry.defaultValue);
+        ConfigSnapshot snapshot = currentSnapshot();
+        if (entry.schema == mSchema && snapshot.isLoaded(entry.ordinal)) {
+            //noinspection unchecked
+            return (Set<String>) snapshot.objects[entry.slot];
+        }
+        //noinspection unchecked
+        return (Set<String>) load(entry).objects[entry.slot];
+    }
+
+    /**
+     * 保存している sorted string set の値を取得します。
+     *
+     * @param entry 取得する値の {@link SortedStringSetEntry entry} です。
+     * @return 保存している値を返します。 Snapshot が保持する変更不可能な instance のため、複製せずに参照できます。
+     */
+    @NonNull
+    protected SortedStringSet get(SortedStringSetEntry entry) {
+        ConfigSnapshot snapshot = currentSnapshot();
+        if (entry.schema == mSchema && snapshot.isLoaded(entry.ordinal)) {
+            return (SortedStringSet) snapshot.objects[entry.slot];
+        }
+        return (SortedStringSet) load(entry).objects[entry.slot];
     }
 
     /**
@@ -111,9 +360,15 @@ public abstract class AbsConfig {
      * @see SharedPreferences.Editor#putBoolean(String, boolean)
      */
     protected void set(BooleanEntry entry, boolean value) {
-        mPrefs.edit()
-                .putBoolean(entry.key, value)
-                .apply();
+        checkSchema(entry);
+        awaitMigration(entry.key);
+        synchronized (mLock) {
+            ConfigSnapshot before = mSnapshot;
+            endWrite(beginWrite(entry.key)
+                    .putBoolean(entry.key, value));
+            publish(mSnapshot.edit().putBoolean(entry.ordinal, entry.slot, value));
+            markChanged(before, entry);
+        }
     }
 
     /**
@@ -125,9 +380,15 @@ public abstract class AbsConfig {
      * @see SharedPreferences.Editor#putInt(String, int)
      */
     protected void set(IntEntry entry, int value) {
-        mPrefs.edit()
-                .putInt(entry.key, value)
-                .apply();
+        checkSchema(entry);
+        awaitMigration(entry.key);
+        synchronized (mLock) {
+            ConfigSnapshot before = mSnapshot;
+            endWrite(beginWrite(entry.key)
+                    .putInt(entry.key, value));
+            publish(mSnapshot.edit().putInt(entry.ordinal, entry.slot, value));
+            markChanged(before, entry);
+        }
     }
 
     /**
@@ -138,75 +399,932 @@ public abstract class AbsConfig {
      * @see #edit()
      * @see SharedPreferences.Editor#putLong(String, long)
      */
-    protected void set(LongEntry entry, long value) {
-        mPrefs.edit()
-                .putLong(entry.key, value)
-                .apply();
+    protected void set(LongEntry entry, long value) {
+        checkSchema(entry);
+        awaitMigration(entry.key);
+        synchronized (mLock) {
+            ConfigSnapshot before = mSnapshot;
+            endWrite(beginWrite(entry.key)
+                    .putLong(entry.key, value));
+            publish(mSnapshot.edit().putLong(entry.ordinal, entry.slot, value));
+            markChanged(before, entry);
+        }
+    }
+
+    /**
+     * Float の値を保存します。
+     *
+     * @param entry 保存する値の {@link FloatEntry entry} です。
+     * @param value 保存する値です。
+     * @see #edit()
+     * @see SharedPreferences.Editor#putFloat(String, float)
+     */
+    protected void set(FloatEntry entry, float value) {
+        checkSchema(entry);
+        awaitMigration(entry.key);
+        synchronized (mLock) {
+            ConfigSnapshot before = mSnapshot;
+            endWrite(beginWrite(entry.key)
+                    .putFloat(entry.key, value));
+            publish(mSnapshot.edit().putFloat(entry.ordinal, entry.slot, value));
+            markChanged(before, entry);
+        }
+    }
+
+    /**
+     * String の値を保存します。
+     *
+     * @param entry 保存する値の {@link StringEntry entry} です。
+     * @param value 保存する値です。
+     * @see #edit()
+     * @see SharedPreferences.Editor#putString(String, String)
+     */
+    protected void set(StringEntry entry, String value) {
+        checkSchema(entry);
+        awaitMigration(entry.key);
+        synchronized (mLock) {
+            ConfigSnapshot before = mSnapshot;
+            endWrite(beginWrite(entry.key)
+                    .putString(entry.key, value));
+            publish(mSnapshot.edit().putObject(entry.ordinal, entry.slot, value));
+            markChanged(before, entry);
+        }
+    }
+
+    /**
+     * String set の値を保存します。
+     *
+     * @param entry 保存する値の {@link StringSetEntry entry} です。
+     * @param value 保存する値です。
+     * @see #edit()
+     * @see SharedPreferences.Editor#putStringSet(String, Set)
+     */
+    protected void set(StringSetEntry entry, Set<String> value) {
+        checkSchema(entry);
+        awaitMigration(entry.key);
+        final Set<String> copy = StringSetEntry.copyOf(value);
+        synchronized (mLock) {
+            ConfigSnapshot before = mSnapshot;
+            endWrite(beginWrite(entry.key)
+                    .putStringSet(entry.key, copy));
+            publish(mSnapshot.edit().putObject(entry.ordinal, entry.slot, copy));
+            markChanged(before, entry);
+        }
+    }
+
+    /**
+     * 指定した configuration entry を消去します。
+     *
+     * @see SharedPreferences.Editor#remove(String)
+     */
+    protected void remove(AbsEntry entry) {
+        checkSchema(entry);
+        awaitMigration(entry.key);
+        synchronized (mLock) {
+            ConfigSnapshot before = loaded(entry);
+            SharedPreferences.Editor editor = beginWrite(entry.key);
+            entry.remove(editor, before);
+            endWrite(editor);
+            ConfigSnapshot.Builder builder = mSnapshot.edit();
+            entry.loadDefault(builder);
+            publish(builder);
+            markChanged(before, entry);
+        }
+    }
+
+    /**
+     * Sorted string set の値を保存します。 現在の値との差分の要素の key だけを書き込みます。
+     *
+     * @param entry 保存する値の {@link SortedStringSetEntry entry} です。
+     * @param value 保存する値です。
+     * @see #edit()
+     */
+    protected void set(SortedStringSetEntry entry, Collection<String> value) {
+        checkSchema(entry);
+        awaitMigration(entry.key);
+        synchronized (mLock) {
+            ConfigSnapshot before = loaded(entry);
+            SortedStringSet members = SortedStringSet.of(value);
+            SharedPreferences.Editor editor = beginWrite(entry.key);
+            entry.putDelta(editor, (SortedStringSet) entry.valueOf(before), members);
+            endWrite(editor);
+            publish(mSnapshot.edit().putObject(entry.ordinal, entry.slot, members));
+            markChanged(before, entry);
+        }
+    }
+
+    /**
+     * Sorted string set に要素を追加します。 追加した要素の key だけを書き込みます。
+     *
+     * @param entry 追加する {@link SortedStringSetEntry entry} です。
+     * @param member 追加する要素です。
+     */
+    protected void add(SortedStringSetEntry entry, String member) {
+        checkSchema(entry);
+        awaitMigration(entry.key);
+        synchronized (mLock) {
+            ConfigSnapshot before = loaded(entry);
+            SortedStringSet members = ((SortedStringSet) entry.valueOf(before)).with(member);
+            endWrite(beginWrite(entry.key)
+                    .putBoolean(entry.memberKey(member), true));
+            publish(mSnapshot.edit().putObject(entry.ordinal, entry.slot, members));
+            markChanged(before, entry);
+        }
+    }
+
+    /**
+     * Sorted string set から要素を削除します。 削除した要素の key だけを書き込みます。
+     *
+     * @param entry 削除する {@link SortedStringSetEntry entry} です。
+     * @param member 削除する要素です。
+     */
+    protected void remove(SortedStringSetEntry entry, String member) {
+        checkSchema(entry);
+        awaitMigration(entry.key);
+        synchronized (mLock) {
+            ConfigSnapshot before = loaded(entry);
+            SortedStringSet members = ((SortedStringSet) entry.valueOf(before)).without(member);
+            endWrite(beginWrite(entry.key)
+                    .remove(entry.memberKey(member)));
+            publish(mSnapshot.edit().putObject(entry.ordinal, entry.slot, members));
+            markChanged(before, entry);
+        }
+    }
+
+    /**
+     * 全ての configuration entry を消去します。
+     *
+     * @see SharedPreferences.Editor#clear()
+     */
+    protected void clear() {
+        synchronized (mLock) {
+            ConfigSnapshot before = mSnapshot;
+            discardPendingWrites();
+            SharedPreferences.Editor editor = mPrefs.edit().clear();
+            if (mSchema.getVersion() > 0) {
+                // 消去後に保存した値へ migration を再度適用しないよう、 version は残します。
+                editor.putInt(ConfigSchema.VERSION_KEY, mSchema.getVersion());
+            }
+            editor.apply();
+            mMigrated = true;
+            mSnapshot = mEmptySnapshot;
+            markAllChanged(before);
+        }
+    }
+
+    /**
+     * SharedPreferences の file の読み込みを background thread で開始します。
+     *
+     * Framework の SharedPreferences は file を読み込み終えるまで最初の get を待たせるため、
+     * Application#onCreate で呼び出しておくことで、 UI thread での最初の get が待たずに済むようにします。
+     * Schema に {@link ConfigMigration} が有る場合は、読み込みの前に保存済みの値を移行します。
+     * 移行の完了前に他の thread で読み書きした場合は、この読み込みの完了を待つため、 executor は UI thread 以外で実行してください。
+     * 2回目以降の呼び出しでは、最初の呼び出しで返した future を返します。
+     *
+     * @param executor 読み込みを行う executor です。
+     * @return 読み込みの完了を表す future を返します。
+     */
+    @NonNull
+    public Future<Void> preload(@NonNull Executor executor) {
+        FutureTask<Void> task;
+        synchronized (mLock) {
+            if (mPreload != COMPLETED) {
+                return mPreload;
+            }
+            task = new FutureTask<>(this::loadAll, null);
+            mPreload = task;
+        }
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * 指定した entry の変更を監視する listener を登録します。
+     *
+     * Listener は弱参照で保持するため、監視する間は呼び出し側で参照を保持してください。
+     * 同じ listener を再度登録した場合は、監視する entry を追加します。
+     * 監視する entry は登録時に読み込み、以降に他から変更された場合も通知します。
+     *
+     * @param listener 登録する listener です。
+     * @param entries 監視する entry です。 指定しない場合は全ての entry を監視します。
+     */
+    public void registerOnConfigChangeListener(@NonNull OnConfigChangeListener listener,
+                                               @NonNull AbsEntry... entries) {
+        BitSet ordinals = null;
+        if (entries.length == 0) {
+            loadAllEntries();
+        } else {
+            ordinals = new BitSet(mSchema.size());
+            for (AbsEntry entry : entries) {
+                checkSchema(entry);
+                ordinals.set(entry.ordinal);
+                if (!mSnapshot.isLoaded(entry.ordinal)) {
+                    load(entry);
+                }
+            }
+        }
+        synchronized (mListeners) {
+            if (mListeners.containsKey(listener)) {
+                BitSet registered = mListeners.get(listener);
+                if (registered == null || ordinals == null) {
+                    ordinals = null;
+                } else {
+                    ordinals.or(registered);
+                }
+            }
+            mListeners.put(listener, ordinals);
+        }
+        mObserved = true;
+    }
+
+    /**
+     * {@link #registerOnConfigChangeListener(OnConfigChangeListener, AbsEntry...)} で登録した listener を解除します。
+     *
+     * @param listener 解除する listener です。
+     */
+    public void unregisterOnConfigChangeListener(@NonNull OnConfigChangeListener listener) {
+        synchronized (mListeners) {
+            mListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Listener を呼び出す executor を設定します。
+     *
+     * @param executor Listener を呼び出す executor です。 Default は、変更をまとめた frame の UI thread で直接呼び出します。
+     */
+    public void setNotificationExecutor(@NonNull Executor executor) {
+        mNotificationExecutor = executor;
+    }
+
+    /**
+     * UI thread で処理を実行する scheduler を設定します。
+     *
+     * @param scheduler UI thread で処理を実行する scheduler です。 Default は {@link Handler} などで UI thread に投稿します。
+     */
+    @VisibleForTesting
+    void setScheduler(@NonNull Scheduler scheduler) {
+        mScheduler = scheduler;
+    }
+
+    /**
+     * @return {@link #preload(Executor)} の完了を表す future を返します。 先読みしていない場合は完了済みの future です。
+     */
+    @NonNull
+    public Future<Void> getReadiness() {
+        return mPreload;
+    }
+
+    /**
+     * @return 先読みの完了前に UI thread が読み込みを待った回数を返します。
+     */
+    public int getBlockedReadCount() {
+        return mBlockedReadCount.get();
+    }
+
+    /**
+     * @return 先読みの完了前に UI thread が読み込みを待った時間の合計 (nanosecond) を返します。
+     */
+    public long getBlockedReadNanos() {
+        return mBlockedReadNanos.get();
+    }
+
+    /**
+     * 保存されている値を移行して型を検証し、 schema の全ての entry を読み込みます。
+     * {@link #preload(Executor)} の executor で呼び出されます。
+     */
+    private void loadAll() {
+        mLog.beginSection("preload");
+        try {
+            Map<String, ?> stored = mPrefs.getAll();
+            synchronized (mLock) {
+                if (!mMigrated) {
+                    stored = migrateLocked(stored);
+                }
+            }
+            validate(stored);
+            loadAllEntries();
+        } finally {
+            mLog.endSection();
+        }
+    }
+
+    /**
+     * 先読みで移行する場合は、先読みの完了を待ちます。 {@link #mLock} を取得せずに呼び出してください。
+     *
+     * 先読み中に UI thread が移行を行わないよう、 {@link #ensureMigratedLocked()} より前に呼び出します。
+     * UI thread で待った場合は、待った時間を log に出力して計上します。
+     *
+     * @param key 読み書きする key です。
+     */
+    private void awaitMigration(String key) {
+        final FutureTask<Void> preload = mPreload;
+        if (mMigrated || preload.isDone()) {
+            return;
+        }
+        final boolean mainThread = mScheduler.isMainThread();
+        final long start = mainThread ? System.nanoTime() : 0;
+        try {
+            preload.get();
+        } catch (ExecutionException e) {
+            // 先読みに失敗した場合は、呼び出し元の thread で移行します。
+            mLog.e("Preload failed before migration.", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (mainThread) {
+            recordBlockedRead(start, key);
+        }
+    }
+
+    /**
+     * 保存先の値を移行していなければ移行します。 {@link #mLock} を取得して呼び出してください。
+     *
+     * 先読みより先に読み書きされた場合に、古い形式の値を読み書きしないよう呼び出します。
+     * 先読みを開始している場合は、呼び出す前に {@link #awaitMigration(String)} で先読みを待つため、ここでは移行しません。
+     */
+    private void ensureMigratedLocked() {
+        if (!mMigrated) {
+            migrateLocked(mPrefs.getAll());
+        }
+    }
+
+    /**
+     * 保存されている version より新しい全ての migration を適用し、差分と新しい version を1回の commit で書き込みます。
+     * {@link #mLock} を取得して呼び出してください。
+     *
+     * Step 数に関わらず、保存先の読み込みは呼び出し元の1回、書き込みは1回です。
+     * 書き込みに失敗した場合も移行後の値で動作し、次回の起動で再度移行します。
+     *
+     * @param stored 保存されている全ての値です。
+     * @return 移行後の全ての値を返します。
+     */
+    private Map<String, ?> migrateLocked(Map<String, ?> stored) {
+        try {
+            return migrateStepsLocked(stored);
+        } finally {
+            // 失敗した場合も、読み書きの度に移行し直さないようにします。
+            mMigrated = true;
+        }
+    }
+
+    /**
+     * {@link #migrateLocked(Map)} の本体です。 {@link #mLock} を取得して呼び出してください。
+     *
+     * @param stored 保存されている全ての値です。
+     * @return 移行後の全ての値を返します。
+     */
+    private Map<String, ?> migrateStepsLocked(Map<String, ?> stored) {
+        final int version = mSchema.getVersion();
+        final Object storedVersion = stored.get(ConfigSchema.VERSION_KEY);
+        final int from = storedVersion instanceof Integer ? (Integer) storedVersion : 0;
+        if (from >= version) {
+            if (from > version) {
+                mLog.w("Config is stored by newer schema version {} (current {}).", from, (Integer) version);
+            }
+            return stored;
+        }
+
+        mLog.beginSection("migrate");
+        try {
+            Map<String, Object> values = new HashMap<>(stored);
+            for (ConfigMigration migration : mSchema.getMigrations()) {
+                if (migration.version > from) {
+                    migration.migrate(values);
+                }
+            }
+            values.put(ConfigSchema.VERSION_KEY, version);
+
+            SharedPreferences.Editor editor = mPrefs.edit();
+            for (String key : stored.keySet()) {
+                if (!values.containsKey(key)) {
+                    editor.remove(key);
+                }
+            }
+            for (Map.Entry<String, Object> value : values.entrySet()) {
+                Object before = stored.get(value.getKey());
+                if (value.getValue() == null) {
+                    editor.remove(value.getKey());
+                } else if (!value.getValue().equals(before)) {
+                    putValue(editor, value.getKey(), value.getValue());
+                }
+            }
+            if (editor.commit()) {
+                mLog.i("Migrated config from version {} to {}.", from, (Integer) version);
+            } else {
+                mLog.e("Failed to persist config migration to version {}.", version);
+            }
+            return values;
+        } finally {
+            mLog.endSection();
+        }
+    }
+
+    /**
+     * @param editor 値を設定する editor です。
+     * @param key 値の key です。
+     * @param value SharedPreferences に保存できる型の値です。
+     * @throws IllegalArgumentException 保存できない型の場合に throw します。
+     */
+    private static void putValue(SharedPreferences.Editor editor, String key, Object value) {
+        if (value instanceof Boolean) {
+            editor.putBoolean(key, (Boolean) value);
+        } else if (value instanceof Integer) {
+            editor.putInt(key, (Integer) value);
+        } else if (value instanceof Long) {
+            editor.putLong(key, (Long) value);
+        } else if (value instanceof Float) {
+            editor.putFloat(key, (Float) value);
+        } else if (value instanceof String) {
+            editor.putString(key, (String) value);
+        } else if (value instanceof Set) {
+            //noinspection unchecked
+            editor.putStringSet(key, (Set<String>) value);
+        } else {
+            throw new IllegalArgumentException("Config \"" + key + "\" has unsupported type "
+                    + value.getClass().getName() + ".");
+        }
+    }
+
+    /**
+     * 保存されている値の型が schema の entry の型と一致することを検証し、一致しない key を log に出力します。
+     *
+     * 一致しない entry は、読み込む時に default 値を利用します。
+     * {@link #preload(Executor)} からのみ呼び出すため、先読みしない config では一括の検証を行いません。
+     *
+     * @param stored 保存されている全ての値です。
+     */
+    private void validate(Map<String, ?> stored) {
+        for (AbsEntry entry : mSchema.getEntries()) {
+            Object value = stored.get(entry.key);
+            if (value != null && !entry.accepts(value)) {
+                mLog.e("Config \"{}\" is declared as {} but stored as {}.",
+                        entry.key, entry.getClass().getSimpleName(), value.getClass().getSimpleName());
+            }
+        }
+    }
+
+    /**
+     * Schema の全ての entry を読み込み、 snapshot を公開します。
+     *
+     * @return 全ての entry を読み込んだ snapshot を返します。
+     */
+    private ConfigSnapshot loadAllEntries() {
+        awaitMigration(ConfigSchema.VERSION_KEY);
+        synchronized (mLock) {
+            ensureMigratedLocked();
+            ConfigSnapshot.Builder builder = null;
+            for (AbsEntry entry : mSchema.getEntries()) {
+                if (!mSnapshot.isLoaded(entry.ordinal)) {
+                    if (builder == null) {
+                        builder = mSnapshot.edit();
+                    }
+                    loadEntry(entry, builder);
+                }
+            }
+            if (builder != null) {
+                mSnapshot = builder.build();
+            }
+            return mSnapshot;
+        }
+    }
+
+    /**
+     * Schema の全ての entry の値を取得します。
+     *
+     * @return 宣言順に、 key 毎の値を返します。 値が設定されていない entry は default 値です。
+     */
+    @NonNull
+    public Map<String, Object> exportValues() {
+        ConfigSnapshot snapshot = loadAllEntries();
+        Map<String, Object> values = new LinkedHashMap<>();
+        for (AbsEntry entry : mSchema.getEntries()) {
+            values.put(entry.key, entry.valueOf(snapshot));
+        }
+        return values;
+    }
+
+    /**
+     * {@link #exportValues()} で取得した値を一括で保存します。
+     *
+     * 全ての値を検証してから1回の {@link Editor#apply()} で保存します。
+     * 値が null の entry は削除し、 schema に無い key は無視します。
+     *
+     * @param values key 毎の値です。
+     * @throws IllegalArgumentException 値の型が entry の型と一致しない場合に throw します。 何も保存しません。
+     */
+    public void importValues(@NonNull Map<String, ?> values) {
+        Editor editor = edit();
+        for (Map.Entry<String, ?> value : values.entrySet()) {
+            AbsEntry entry = mSchema.find(value.getKey());
+            if (entry == null) {
+                mLog.w("Ignored unknown config \"{}\".", value.getKey());
+            } else if (value.getValue() == null) {
+                editor.remove(entry);
+            } else if (entry.accepts(value.getValue())) {
+                entry.put(editor, value.getValue());
+            } else {
+                throw new IllegalArgumentException("Config \"" + entry.key + "\" is declared as "
+                        + entry.getClass().getSimpleName() + " but the value is "
+                        + value.getValue().getClass().getSimpleName() + ".");
+            }
+        }
+        editor.apply();
+    }
+
+    /**
+     * Schema の全ての entry の値を "key = value" の形式で出力します。
+     *
+     * @param writer 出力先です。
+     */
+    public void dump(@NonNull PrintWriter writer) {
+        writer.println(getClass().getSimpleName() + ":");
+        for (Map.Entry<String, Object> value : exportValues().entrySet()) {
+            writer.println("  " + value.getKey() + " = " + value.getValue());
+        }
+        writer.flush();
+    }
+
+    /**
+     * set や remove をまとめて書き込むように設定します。
+     *
+     * Back-to-back の set はそれぞれ preferences file 全体の書き込みを予約するため、
+     * 設定を連続して変更する画面などでは、まとめることで disk への書き込みと
+     * onPause / onStop での書き込み待ちを減らせます。
+     * 必ず保存したい時点では {@link #flush()} を呼び出してください。
+     *
+     * @param windowMillis まとめる時間 (millisecond) です。
+     *                     {@link #WRITE_ON_IDLE} の場合は UI thread が次に idle になるまでまとめます。
+     *                     {@link #WRITE_IMMEDIATELY} の場合はまとめずに都度書き込みます。 これが default です。
+     */
+    public void setWriteCoalescing(long windowMillis) {
+        synchronized (mLock) {
+            flushLocked();
+            mCoalescingWindowMillis = windowMillis;
+        }
+    }
+
+    /**
+     * まとめている set や remove を書き込みます。
+     *
+     * {@link SharedPreferences.Editor#apply()} で書き込むため、 disk への書き込み完了は待ちません。
+     */
+    public void flush() {
+        synchronized (mLock) {
+            flushLocked();
+        }
+    }
+
+    /**
+     * まとめている set や remove を書き込みます。 {@link #mLock} を取得して呼び出してください。
+     */
+    private void flushLocked() {
+        if (mPendingEditor == null) {
+            return;
+        }
+        SharedPreferences.Editor editor = mPendingEditor;
+        mPendingEditor = null;
+        mPendingKeys.clear();
+        mScheduler.removeCallbacks(mFlushTask);
+        mScheduler.removeCallbacks(mAddIdleFlushTask);
+        editor.apply();
+    }
+
+    /**
+     * まとめている set や remove を書き込まずに破棄します。 {@link #mLock} を取得して呼び出してください。
+     */
+    private void discardPendingWrites() {
+        if (mPendingEditor != null) {
+            mPendingEditor = null;
+            mPendingKeys.clear();
+            mScheduler.removeCallbacks(mFlushTask);
+            mScheduler.removeCallbacks(mAddIdleFlushTask);
+        }
+    }
+
+    /**
+     * 1つの値の書き込みを開始します。 {@link #mLock} を取得して呼び出してください。
+     *
+     * @param key 書き込む key です。
+     * @return 値を設定する editor を返します。 設定後に {@link #endWrite(SharedPreferences.Editor)} を呼び出してください。
+     */
+    private SharedPreferences.Editor beginWrite(String key) {
+        ensureMigratedLocked();
+        syncLocked();
+        if (mCoalescingWindowMillis == WRITE_IMMEDIATELY) {
+            return mPrefs.edit();
+        }
+        if (mPendingEditor == null) {
+            mPendingEditor = mPrefs.edit();
+            if (mCoalescingWindowMillis == WRITE_ON_IDLE) {
+                mScheduler.post(mAddIdleFlushTask);
+            } else {
+                mScheduler.postDelayed(mFlushTask, mCoalescingWindowMillis);
+            }
+        }
+        mPendingKeys.add(key);
+        return mPendingEditor;
+    }
+
+    /**
+     * 1つの値の書き込みを終了します。 まとめて書き込む場合は、書き込みを予約済みのため何もしません。
+     *
+     * @param editor {@link #beginWrite(String)} で取得した editor です。
+     */
+    private void endWrite(SharedPreferences.Editor editor) {
+        if (editor != mPendingEditor) {
+            editor.apply();
+        }
+    }
+
+    /**
+     * @param entry 読み込む entry です。
+     * @return Entry を読み込み済みの snapshot を返します。
+     */
+    private ConfigSnapshot loaded(AbsEntry entry) {
+        ConfigSnapshot snapshot = currentSnapshot();
+        if (entry.schema == mSchema && snapshot.isLoaded(entry.ordinal)) {
+            return snapshot;
+        }
+        return load(entry);
+    }
+
+    /**
+     * Snapshot に無い entry の値を SharedPreferences から読み込み、 snapshot を公開します。
+     *
+     * 先読みの完了前に UI thread から呼び出された場合は、待った時間を log に出力して計上します。
+     *
+     * @param entry 読み込む entry です。
+     * @return 読み込んだ値を含む snapshot を返します。
+     */
+    private ConfigSnapshot load(AbsEntry entry) {
+        awaitMigration(entry.key);
+        final boolean blocking = !mPreload.isDone() && mScheduler.isMainThread();
+        final long start = blocking ? System.nanoTime() : 0;
+        ConfigSnapshot snapshot;
+        synchronized (mLock) {
+            checkSchema(entry);
+            ensureMigratedLocked();
+            ConfigSnapshot.Builder builder = mSnapshot.edit();
+            loadEntry(entry, builder);
+            publish(builder);
+            snapshot = mSnapshot;
+        }
+        if (blocking) {
+            recordBlockedRead(start, entry.key);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 先読みの完了前に UI thread が待った時間を log に出力して計上します。
+     *
+     * @param start 待ち始めた時刻 ({@link System#nanoTime()}) です。
+     * @param key 読み書きした key です。
+     */
+    private void recordBlockedRead(long start, String key) {
+        final long blockedNanos = System.nanoTime() - start;
+        mBlockedReadCount.incrementAndGet();
+        mBlockedReadNanos.addAndGet(blockedNanos);
+        mLog.w("UI thread blocked {}us reading \"{}\" before preload completed.",
+                TimeUnit.NANOSECONDS.toMicros(blockedNanos), key);
+    }
+
+    /**
+     * 変更した snapshot を公開します。 {@link #mLock} を取得し、 entry を {@link #checkSchema(AbsEntry)} で確認してから呼び出してください。
+     *
+     * @param builder 変更した snapshot の builder です。
+     */
+    private void publish(ConfigSnapshot.Builder builder) {
+        mSnapshot = builder.build();
+    }
+
+    /**
+     * Entry の値が変わっていれば、通知を予約します。 {@link #mLock} を取得し、 snapshot を公開した後に呼び出してください。
+     *
+     * 消去などで読み込み済みでなくなった entry は、次に読み込む default 値と比較します。
+     *
+     * @param before 変更前の snapshot です。
+     * @param entry 変更した entry です。
+     */
+    private void markChanged(ConfigSnapshot before, AbsEntry entry) {
+        if (!mObserved) {
+            return;
+        }
+        if (before.isLoaded(entry.ordinal)) {
+            Object oldValue = entry.valueOf(before);
+            Object newValue = entry.valueOf(mSnapshot.isLoaded(entry.ordinal) ? mSnapshot : mDefaultSnapshot);
+            if (oldValue == null ? newValue == null : oldValue.equals(newValue)) {
+                return;
+            }
+        }
+        mChangedOrdinals.set(entry.ordinal);
+        scheduleDispatchLocked();
+    }
+
+    /**
+     * 読み込み済みだった全ての entry の通知を予約します。 {@link #mLock} を取得して呼び出してください。
+     *
+     * @param before 変更前の snapshot です。
+     */
+    private void markAllChanged(ConfigSnapshot before) {
+        if (!mObserved) {
+            return;
+        }
+        for (AbsEntry entry : mSchema.getEntries()) {
+            markChanged(before, entry);
+        }
+    }
+
+    /**
+     * 次の frame での通知を予約します。 {@link #mLock} を取得して呼び出してください。
+     */
+    private void scheduleDispatchLocked() {
+        if (mDispatchScheduled) {
+            return;
+        }
+        mDispatchScheduled = true;
+        if (mScheduler.isMainThread()) {
+            mScheduleDispatchTask.run();
+        } else {
+            mScheduler.post(mScheduleDispatchTask);
+        }
+    }
+
+    /**
+     * 前回の通知以降に変更された entry を、監視している listener 毎にまとめて通知します。
+     */
+    @MainThread
+    private void dispatchChanges() {
+        final BitSet changed;
+        synchronized (mLock) {
+            mDispatchScheduled = false;
+            if (mChangedOrdinals.isEmpty()) {
+                return;
+            }
+            changed = (BitSet) mChangedOrdinals.clone();
+            mChangedOrdinals.clear();
+        }
+        final List<OnConfigChangeListener> listeners = new ArrayList<>();
+        final List<BitSet> ordinals = new ArrayList<>();
+        synchronized (mListeners) {
+            for (Map.Entry<OnConfigChangeListener, BitSet> registration : mListeners.entrySet()) {
+                listeners.add(registration.getKey());
+                ordinals.add(registration.getValue());
+            }
+        }
+        final List<AbsEntry> entries = mSchema.getEntries();
+        for (int index = 0; index < listeners.size(); index++) {
+            BitSet matched = (BitSet) changed.clone();
+            if (ordinals.get(index) != null) {
+                matched.and(ordinals.get(index));
+            }
+            if (matched.isEmpty()) {
+                continue;
+            }
+            final Set<AbsEntry> changedEntries = new LinkedHashSet<>();
+            for (int ordinal = matched.nextSetBit(0); ordinal >= 0; ordinal = matched.nextSetBit(ordinal + 1)) {
+                changedEntries.add(entries.get(ordinal));
+            }
+            final OnConfigChangeListener listener = listeners.get(index);
+            mNotificationExecutor.execute(
+                    () -> listener.onConfigChanged(this, Collections.unmodifiableSet(changedEntries)));
+        }
+    }
+
+    /**
+     * {@link Editor#apply()} で、 sorted string set の要素の追加や削除を snapshot に反映します。 {@link #mLock} を取得して呼び出してください。
+     *
+     * @param entry 変更する entry です。
+     * @param builder 反映する snapshot の builder です。
+     * @param add 追加する場合は true 、削除する場合は false です。
+     * @param member 追加、削除する要素です。
+     */
+    private void updateMembers(SortedStringSetEntry entry, ConfigSnapshot.Builder builder, boolean add,
+                               String member) {
+        if (!builder.isLoaded(entry.ordinal)) {
+            // 保存先には書き込み済みのため、読み込むと変更も反映されます。
+            loadEntry(entry, builder);
+            return;
+        }
+        SortedStringSet members = (SortedStringSet) builder.getObject(entry.slot);
+        builder.putObject(entry.ordinal, entry.slot, add ? members.with(member) : members.without(member));
+    }
+
+    /**
+     * Entry がこの config の schema に登録されていることを確認します。
+     *
+     * @param entry 確認する entry です。
+     * @throws IllegalArgumentException 他の schema の entry の場合に throw します。
+     */
+    private void checkSchema(AbsEntry entry) {
+        if (entry.schema != mSchema) {
+            throw new IllegalArgumentException("\"" + entry.key + "\" is not declared in the schema of "
+                    + getClass().getName() + ".");
+        }
+    }
+
+    /**
+     * Entry の値を SharedPreferences から読み込み、 snapshot に設定します。 {@link #mLock} を取得して呼び出してください。
+     *
+     * 保存されている値の型が entry の型と異なる場合は、 log に出力して default 値を設定します。
+     *
+     * @param entry 読み込む entry です。
+     * @param builder 設定する snapshot の builder です。
+     */
+    private void loadEntry(AbsEntry entry, ConfigSnapshot.Builder builder) {
+        try {
+            entry.load(mPrefs, builder);
+        } catch (ClassCastException e) {
+            mLog.e("Config \"" + entry.key + "\" is stored with an unexpected type. Using the default value.", e);
+            entry.loadDefault(builder);
+        }
     }
 
     /**
-     * Float の値を保存します。
+     * 他の場所で変更された preference key の値を読み込み直し、 snapshot に設定します。 {@link #mLock} を取得して呼び出してください。
      *
-     * @param entry 保存する値の {@link FloatEntry entry} です。
-     * @param value 保存する値です。
-     * @see #edit()
-     * @see SharedPreferences.Editor#putFloat(String, float)
+     * 保存されている値の型が entry の型と異なる場合は、 log に出力して default 値を設定します。
+     *
+     * @param entry 読み込み直す entry です。
+     * @param preferenceKey 変更された preference key です。
+     * @param builder Entry を読み込み済みの snapshot の builder です。
      */
-    protected void set(FloatEntry entry, float value) {
-        mPrefs.edit()
-                .putFloat(entry.key, value)
-                .apply();
+    private void reloadEntry(AbsEntry entry, String preferenceKey, ConfigSnapshot.Builder builder) {
+        try {
+            entry.reload(mPrefs, preferenceKey, builder);
+        } catch (ClassCastException e) {
+            mLog.e("Config \"" + entry.key + "\" is stored with an unexpected type. Using the default value.", e);
+            entry.loadDefault(builder);
+        }
     }
 
     /**
-     * String の値を保存します。
+     * SharedPreferences が変更された時に呼び出され、該当する entry の値を読み込み直します。
      *
-     * @param entry 保存する値の {@link StringEntry entry} です。
-     * @param value 保存する値です。
-     * @see #edit()
-     * @see SharedPreferences.Editor#putString(String, String)
+     * @param key 変更された key です。 全て消去された場合は null です。
      */
-    protected void set(StringEntry entry, String value) {
-        mPrefs.edit()
-                .putString(entry.key, value)
-                .apply();
+    private void onPreferenceChanged(String key) {
+        synchronized (mLock) {
+            reloadLocked(key);
+        }
     }
 
     /**
-     * String set の値を保存します。
+     * 該当する entry の値を読み込み直します。 {@link #mLock} を取得して呼び出してください。
      *
-     * @param entry 保存する値の {@link StringSetEntry entry} です。
-     * @param value 保存する値です。
-     * @see #edit()
-     * @see SharedPreferences.Editor#putStringSet(String, Set)
+     * @param key 変更された key です。 全て消去された場合は null です。
      */
-    protected void set(StringSetEntry entry, Set<String> value) {
-        mPrefs.edit()
-                .putStringSet(entry.key, value)
-                .apply();
+    private void reloadLocked(String key) {
+        ConfigSnapshot before = mSnapshot;
+        if (key == null) {
+            mSnapshot = mEmptySnapshot;
+            markAllChanged(before);
+            return;
+        }
+        AbsEntry entry = mSchema.findOwner(key);
+        if (entry != null && mPendingKeys.contains(entry.key)) {
+            // まだ書き込んでいない値を優先します。
+            return;
+        }
+        if (entry != null && mSnapshot.isLoaded(entry.ordinal)) {
+            ConfigSnapshot.Builder builder = mSnapshot.edit();
+            reloadEntry(entry, key, builder);
+            mSnapshot = builder.build();
+            markChanged(before, entry);
+        }
     }
 
     /**
-     * 指定した configuration entry を消去します。
+     * 他の process の変更を反映した snapshot を返します。
      *
-     * @see SharedPreferences.Editor#remove(String)
+     * 保存先の version の確認は lock 無しで行い、変わっていた場合のみ lock を取得して変更された key を読み込み直します。
+     *
+     * @return 現在の snapshot を返します。
      */
-    protected void remove(AbsEntry entry) {
-        mPrefs.edit()
-                .remove(entry.key)
-                .apply();
+    private ConfigSnapshot currentSnapshot() {
+        if (mVersionedPrefs != null && mVersionedPrefs.getVersion() != mSyncedVersion) {
+            synchronized (mLock) {
+                syncLocked();
+            }
+        }
+        return mSnapshot;
     }
 
-
     /**
-     * 全ての configuration entry を消去します。
+     * 他の process の変更を取り込み、変更された key を読み込み直します。 {@link #mLock} を取得して呼び出してください。
      *
-     * @see SharedPreferences.Editor#clear()
+     * 書き込む前にも呼び出し、書き込みの中で取り込まれた変更を snapshot に反映し損なわないようにします。
      */
-    protected void clear() {
-        mPrefs.edit()
-                .clear()
-                .apply();
+    private void syncLocked() {
+        if (mVersionedPrefs == null) {
+            return;
+        }
+        // 取り込み中の変更を次回に検出できるよう、先に version を記録します。
+        mSyncedVersion = mVersionedPrefs.getVersion();
+        for (String key : mVersionedPrefs.sync()) {
+            reloadLocked(key);
+        }
     }
 
     /**
@@ -236,6 +1354,10 @@ public abstract class AbsConfig {
     protected class Editor {
         /** SharedPreferences editor。 */
         private final SharedPreferences.Editor mEditor = mPrefs.edit();
+        /** {@link #apply()} 時に snapshot に反映する変更。 */
+        private final List<SnapshotUpdate> mUpdates = new ArrayList<>();
+        /** 編集した entry。 */
+        private final List<AbsEntry> mEditedEntries = new ArrayList<>();
 
         /**
          * boolean の値を保存するように設定します。
@@ -246,7 +1368,10 @@ public abstract class AbsConfig {
          * @return Method chain で呼び出せるようにするため this を返します。
          */
         public Editor put(BooleanEntry entry, boolean value) {
+            checkSchema(entry);
             mEditor.putBoolean(entry.key, value);
+            mEditedEntries.add(entry);
+            mUpdates.add(builder -> builder.putBoolean(entry.ordinal, entry.slot, value));
             return this;
         }
 
@@ -259,7 +1384,10 @@ public abstract class AbsConfig {
          * @return Method chain で呼び出せるようにするため this を返します。
          */
         public Editor put(IntEntry entry, int value) {
+            checkSchema(entry);
             mEditor.putInt(entry.key, value);
+            mEditedEntries.add(entry);
+            mUpdates.add(builder -> builder.putInt(entry.ordinal, entry.slot, value));
             return this;
         }
 
@@ -272,7 +1400,10 @@ public abstract class AbsConfig {
          * @return Method chain で呼び出せるようにするため this を返します。
          */
         public Editor put(LongEntry entry, long value) {
+            checkSchema(entry);
             mEditor.putLong(entry.key, value);
+            mEditedEntries.add(entry);
+            mUpdates.add(builder -> builder.putLong(entry.ordinal, entry.slot, value));
             return this;
         }
 
@@ -285,7 +1416,10 @@ public abstract class AbsConfig {
          * @return Method chain で呼び出せるようにするため this を返します。
          */
         public Editor put(FloatEntry entry, float value) {
+            checkSchema(entry);
             mEditor.putFloat(entry.key, value);
+            mEditedEntries.add(entry);
+            mUpdates.add(builder -> builder.putFloat(entry.ordinal, entry.slot, value));
             return this;
         }
 
@@ -298,7 +1432,10 @@ public abstract class AbsConfig {
          * @return Method chain で呼び出せるようにするため this を返します。
          */
         public Editor put(StringEntry entry, String value) {
+            checkSchema(entry);
             mEditor.putString(entry.key, value);
+            mEditedEntries.add(entry);
+            mUpdates.add(builder -> builder.putObject(entry.ordinal, entry.slot, value));
             return this;
         }
 
@@ -311,7 +1448,60 @@ public abstract class AbsConfig {
          * @return Method chain で呼び出せるようにするため this を返します。
          */
         public Editor put(StringSetEntry entry, Set<String> value) {
-            mEditor.putStringSet(entry.key, value);
+            checkSchema(entry);
+            final Set<String> copy = StringSetEntry.copyOf(value);
+            mEditor.putStringSet(entry.key, copy);
+            mEditedEntries.add(entry);
+            mUpdates.add(builder -> builder.putObject(entry.ordinal, entry.slot, copy));
+            return this;
+        }
+
+        /**
+         * Sorted string set の値を保存するように設定します。 現在の値との差分の要素の key だけを書き込みます。
+         * 保存したい全ての値を設定したら {@link #apply()} で保存します。
+         *
+         * @param entry 保存するように設定する値の entry 情報です。
+         * @param value 保存するように設定する値です。
+         * @return Method chain で呼び出せるようにするため this を返します。
+         */
+        public Editor put(SortedStringSetEntry entry, Collection<String> value) {
+            checkSchema(entry);
+            SortedStringSet members = SortedStringSet.of(value);
+            entry.putDelta(mEditor, (SortedStringSet) entry.valueOf(loaded(entry)), members);
+            mEditedEntries.add(entry);
+            mUpdates.add(builder -> builder.putObject(entry.ordinal, entry.slot, members));
+            return this;
+        }
+
+        /**
+         * Sorted string set に要素を追加するように設定します。
+         * 保存したい全ての値を設定したら {@link #apply()} で保存します。
+         *
+         * @param entry 追加する entry 情報です。
+         * @param member 追加する要素です。
+         * @return Method chain で呼び出せるようにするため this を返します。
+         */
+        public Editor add(SortedStringSetEntry entry, String member) {
+            checkSchema(entry);
+            mEditor.putBoolean(entry.memberKey(member), true);
+            mEditedEntries.add(entry);
+            mUpdates.add(builder -> updateMembers(entry, builder, true, member));
+            return this;
+        }
+
+        /**
+         * Sorted string set から要素を削除するように設定します。
+         * 保存したい全ての値を設定したら {@link #apply()} で保存します。
+         *
+         * @param entry 削除する entry 情報です。
+         * @param member 削除する要素です。
+         * @return Method chain で呼び出せるようにするため this を返します。
+         */
+        public Editor remove(SortedStringSetEntry entry, String member) {
+            checkSchema(entry);
+            mEditor.remove(entry.memberKey(member));
+            mEditedEntries.add(entry);
+            mUpdates.add(builder -> updateMembers(entry, builder, false, member));
             return this;
         }
 
@@ -323,7 +1513,10 @@ public abstract class AbsConfig {
          * @return Method chain で呼び出せるようにするため this を返します。
          */
         public Editor remove(AbsEntry entry) {
-            mEditor.remove(entry.key);
+            checkSchema(entry);
+            entry.remove(mEditor, loaded(entry));
+            mEditedEntries.add(entry);
+            mUpdates.add(entry::loadDefault);
             return this;
         }
 
@@ -333,140 +1526,628 @@ public abstract class AbsConfig {
          * @see SharedPreferences.Editor#apply()
          */
         public void apply() {
-            mEditor.apply();
+            awaitMigration(ConfigSchema.VERSION_KEY);
+            synchronized (mLock) {
+                ensureMigratedLocked();
+                syncLocked();
+                // 先に行われた set や remove を先に書き込みます。
+                flushLocked();
+                mEditor.apply();
+                ConfigSnapshot before = mSnapshot;
+                ConfigSnapshot.Builder builder = mSnapshot.edit();
+                for (SnapshotUpdate update : mUpdates) {
+                    update.apply(builder);
+                }
+                mSnapshot = builder.build();
+                for (AbsEntry entry : mEditedEntries) {
+                    markChanged(before, entry);
+                }
+            }
         }
     }
 
+    /**
+     * Entry の変更を受け取る listener です。
+     *
+     * @see #registerOnConfigChangeListener(OnConfigChangeListener, AbsEntry...)
+     */
+    public interface OnConfigChangeListener {
+        /**
+         * 監視している entry の値が変わった時に、 frame 毎にまとめて呼び出されます。
+         *
+         * @param config 変更された config です。
+         * @param entries 値が変わった、監視している entry です。
+         */
+        void onConfigChanged(AbsConfig config, Set<AbsEntry> entries);
+    }
+
+    /**
+     * まとめた書き込みや変更の通知を UI thread で実行する scheduler です。
+     *
+     * Unit test では {@link #setScheduler(Scheduler)} で、実行を制御できる実装に差し替えます。
+     */
+    @VisibleForTesting
+    interface Scheduler {
+        /**
+         * @return 呼び出し元が UI thread の場合は true を返します。
+         */
+        boolean isMainThread();
+
+        /**
+         * @param task UI thread で実行する処理です。
+         */
+        void post(Runnable task);
+
+        /**
+         * @param task UI thread で実行する処理です。
+         * @param delayMillis 実行するまでの時間 (millisecond) です。
+         */
+        void postDelayed(Runnable task, long delayMillis);
+
+        /**
+         * @param task {@link #post(Runnable)} や {@link #postDelayed(Runnable, long)} で予約した、取り消す処理です。
+         */
+        void removeCallbacks(Runnable task);
+
+        /**
+         * UI thread から呼び出します。
+         *
+         * @param handler UI thread が次に idle になった時に実行する処理です。
+         */
+        void addIdleHandler(MessageQueue.IdleHandler handler);
+
+        /**
+         * UI thread から呼び出します。
+         *
+         * @param callback 次の frame で実行する処理です。
+         */
+        void postFrameCallback(Choreographer.FrameCallback callback);
+    }
+
+    /** {@link Handler}、 {@link MessageQueue}、 {@link Choreographer} で UI thread に投稿する scheduler。 */
+    private static final Scheduler MAIN_THREAD_SCHEDULER = new Scheduler() {
+        @Override
+        public boolean isMainThread() {
+            return Looper.myLooper() == Looper.getMainLooper();
+        }
+
+        @Override
+        public void post(Runnable task) {
+            MainHandlerHolder.HANDLER.post(task);
+        }
+
+        @Override
+        public void postDelayed(Runnable task, long delayMillis) {
+            MainHandlerHolder.HANDLER.postDelayed(task, delayMillis);
+        }
+
+        @Override
+        public void removeCallbacks(Runnable task) {
+            MainHandlerHolder.HANDLER.removeCallbacks(task);
+        }
+
+        @Override
+        public void addIdleHandler(MessageQueue.IdleHandler handler) {
+            Looper.myQueue().addIdleHandler(handler);
+        }
+
+        @Override
+        public void postFrameCallback(Choreographer.FrameCallback callback) {
+            Choreographer.getInstance().postFrameCallback(callback);
+        }
+    };
+
+    /** 最初に投稿する時に生成する、 UI thread の handler。 */
+    private static final class MainHandlerHolder {
+        /** UI thread の handler。 */
+        static final Handler HANDLER = new Handler(Looper.getMainLooper());
+    }
+
+    /**
+     * Config の保存先を開く処理です。
+     */
+    private interface PreferencesOpener {
+        /**
+         * @param configClass 保存先を利用する config の class です。
+         * @return 保存先の SharedPreferences を返します。
+         */
+        SharedPreferences open(Class<? extends AbsConfig> configClass);
+    }
+
+    /**
+     * {@link Editor} の変更を snapshot に反映する処理です。
+     */
+    private interface SnapshotUpdate {
+        /**
+         * @param builder 変更する snapshot の builder です。
+         */
+        void apply(ConfigSnapshot.Builder builder);
+    }
+
     /**
      * Configuration の1要素を表す抽象 class です。
      *
      * SharedPreferences の key 情報を、派生 class で default 値を持ち、1項目に必要な情報を保持します。
+     * 生成時に {@link ConfigSchema} へ登録されます。
      */
-    private static abstract class AbsEntry {
+    public static abstract class AbsEntry {
         /** Preference key。 */
         public final String key;
+        /** 登録した schema。 */
+        final ConfigSchema schema;
+        /** Schema の中での連番。 Snapshot で読み込み済みかどうかを管理するために利用します。 */
+        final int ordinal;
+        /** Schema の中の同じ型の entry の中での連番。 Snapshot の値を格納する位置です。 */
+        final int slot;
 
         /**
-         * SharedPreferences の key を指定して entry を作成します。
+         * SharedPreferences の key を指定して entry を作成し、 schema に登録します。
          *
+         * @param schema 登録する schema です。
          * @param key Preference を取得、保存するためにつける名前です。
+         * @param column 値を格納する snapshot の列です。 {@link ConfigSnapshot#BOOLEAN} などを指定します。
          */
-        public AbsEntry(String key) {
+        AbsEntry(ConfigSchema schema, String key, int column) {
             this.key = key;
+            this.schema = schema;
+            this.ordinal = schema.register(this);
+            this.slot = schema.newSlot(column);
+        }
+
+        /**
+         * @param value SharedPreferences に保存されている値です。
+         * @return この entry の型の値の場合は true を返します。
+         */
+        abstract boolean accepts(Object value);
+
+        /**
+         * @param snapshot この entry を読み込み済みの snapshot です。
+         * @return Snapshot の値を boxing して返します。
+         */
+        abstract Object valueOf(ConfigSnapshot snapshot);
+
+        /**
+         * 値を editor に設定します。
+         *
+         * @param editor 設定する editor です。
+         * @param value {@link #accepts(Object)} が true を返す値です。
+         */
+        abstract void put(Editor editor, Object value);
+
+        /**
+         * SharedPreferences から値を読み込み、 snapshot に設定します。
+         *
+         * @param prefs 読み込む SharedPreferences です。
+         * @param builder 設定する snapshot の builder です。
+         */
+        abstract void load(SharedPreferences prefs, ConfigSnapshot.Builder builder);
+
+        /**
+         * 他の場所で変更された preference key の値を SharedPreferences から読み込み直し、 snapshot に設定します。
+         *
+         * @param prefs 読み込む SharedPreferences です。
+         * @param preferenceKey 変更された、この entry が値を保存する preference key です。
+         * @param builder この entry を読み込み済みの snapshot の builder です。
+         */
+        void reload(SharedPreferences prefs, String preferenceKey, ConfigSnapshot.Builder builder) {
+            load(prefs, builder);
+        }
+
+        /**
+         * Default 値を snapshot に設定します。
+         *
+         * @param builder 設定する snapshot の builder です。
+         */
+        abstract void loadDefault(ConfigSnapshot.Builder builder);
+
+        /**
+         * 保存している値を削除するように editor に設定します。
+         *
+         * @param editor 設定する editor です。
+         * @param snapshot この entry を読み込み済みの snapshot です。
+         */
+        void remove(SharedPreferences.Editor editor, ConfigSnapshot snapshot) {
+            editor.remove(key);
+        }
+
+        /**
+         * @param preferenceKey {@link #key} と異なる preference key です。
+         * @return この entry の値の一部を保存する key の場合は true を返します。
+         */
+        boolean ownsMemberKey(String preferenceKey) {
+            return false;
         }
     }
 
     /**
      * boolean 型の default 値を持つ configuration entry です。
      */
-    protected static class BooleanEntry extends AbsEntry {
+    public static class BooleanEntry extends AbsEntry {
         /** Default 値。 */
         public final boolean defaultValue;
 
         /**
-         * SharedPreferences の key と default 値を指定して entry を作成します。
+         * SharedPreferences の key と default 値を指定して entry を作成し、 schema に登録します。
          *
+         * @param schema 登録する schema です。
          * @param key Preference を取得、保存するためにつける名前です。
          * @param defaultValue 値が保存されていない場合に利用する default 値です。
          */
-        public BooleanEntry(String key, boolean defaultValue) {
-            super(key);
+        public BooleanEntry(ConfigSchema schema, String key, boolean defaultValue) {
+            super(schema, key, ConfigSnapshot.BOOLEAN);
             this.defaultValue = defaultValue;
         }
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof Boolean;
+        }
+
+        @Override
+        Object valueOf(ConfigSnapshot snapshot) {
+            return snapshot.booleans[slot];
+        }
+
+        @Override
+        void put(Editor editor, Object value) {
+            editor.put(this, (Boolean) value);
+        }
+
+        @Override
+        void load(SharedPreferences prefs, ConfigSnapshot.Builder builder) {
+            builder.putBoolean(ordinal, slot, prefs.getBoolean(key, defaultValue));
+        }
+
+        @Override
+        void loadDefault(ConfigSnapshot.Builder builder) {
+            builder.putBoolean(ordinal, slot, defaultValue);
+        }
     }
 
     /**
      * int 型の default 値を持つ configuration entry です。
      */
-    protected static class IntEntry extends AbsEntry {
+    public static class IntEntry extends AbsEntry {
         /** Default 値。 */
         public final int defaultValue;
 
         /**
-         * SharedPreferences の key と default 値を指定して entry を作成します。
+         * SharedPreferences の key と default 値を指定して entry を作成し、 schema に登録します。
          *
+         * @param schema 登録する schema です。
          * @param key Preference を取得、保存するためにつける名前です。
          * @param defaultValue 値が保存されていない場合に利用する default 値です。
          */
-        public IntEntry(String key, int defaultValue) {
-            super(key);
+        public IntEntry(ConfigSchema schema, String key, int defaultValue) {
+            super(schema, key, ConfigSnapshot.INT);
             this.defaultValue = defaultValue;
         }
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof Integer;
+        }
+
+        @Override
+        Object valueOf(ConfigSnapshot snapshot) {
+            return snapshot.ints[slot];
+        }
+
+        @Override
+        void put(Editor editor, Object value) {
+            editor.put(this, (Integer) value);
+        }
+
+        @Override
+        void load(SharedPreferences prefs, ConfigSnapshot.Builder builder) {
+            builder.putInt(ordinal, slot, prefs.getInt(key, defaultValue));
+        }
+
+        @Override
+        void loadDefault(ConfigSnapshot.Builder builder) {
+            builder.putInt(ordinal, slot, defaultValue);
+        }
     }
 
     /**
      * long 型の default 値を持つ configuration entry です。
      */
-    protected static class LongEntry extends AbsEntry {
+    public static class LongEntry extends AbsEntry {
         /** Default 値。 */
         public final long defaultValue;
 
         /**
-         * SharedPreferences の key と default 値を指定して entry を作成します。
+         * SharedPreferences の key と default 値を指定して entry を作成し、 schema に登録します。
          *
+         * @param schema 登録する schema です。
          * @param key Preference を取得、保存するためにつける名前です。
          * @param defaultValue 値が保存されていない場合に利用する default 値です。
          */
-        public LongEntry(String key, long defaultValue) {
-            super(key);
+        public LongEntry(ConfigSchema schema, String key, long defaultValue) {
+            super(schema, key, ConfigSnapshot.LONG);
             this.defaultValue = defaultValue;
         }
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof Long;
+        }
+
+        @Override
+        Object valueOf(ConfigSnapshot snapshot) {
+            return snapshot.longs[slot];
+        }
+
+        @Override
+        void put(Editor editor, Object value) {
+            editor.put(this, (Long) value);
+        }
+
+        @Override
+        void load(SharedPreferences prefs, ConfigSnapshot.Builder builder) {
+            builder.putLong(ordinal, slot, prefs.getLong(key, defaultValue));
+        }
+
+        @Override
+        void loadDefault(ConfigSnapshot.Builder builder) {
+            builder.putLong(ordinal, slot, defaultValue);
+        }
     }
 
     /**
      * float 型の default 値を持つ configuration entry です。
      */
-    protected static class FloatEntry extends AbsEntry {
+    public static class FloatEntry extends AbsEntry {
         /** Default 値。 */
         public final float defaultValue;
 
         /**
-         * SharedPreferences の key と default 値を指定して entry を作成します。
+         * SharedPreferences の key と default 値を指定して entry を作成し、 schema に登録します。
          *
+         * @param schema 登録する schema です。
          * @param key Preference を取得、保存するためにつける名前です。
          * @param defaultValue 値が保存されていない場合に利用する default 値です。
          */
-        public FloatEntry(String key, float defaultValue) {
-            super(key);
+        public FloatEntry(ConfigSchema schema, String key, float defaultValue) {
+            super(schema, key, ConfigSnapshot.FLOAT);
             this.defaultValue = defaultValue;
         }
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof Float;
+        }
+
+        @Override
+        Object valueOf(ConfigSnapshot snapshot) {
+            return snapshot.floats[slot];
+        }
+
+        @Override
+        void put(Editor editor, Object value) {
+            editor.put(this, (Float) value);
+        }
+
+        @Override
+        void load(SharedPreferences prefs, ConfigSnapshot.Builder builder) {
+            builder.putFloat(ordinal, slot, prefs.getFloat(key, defaultValue));
+        }
+
+        @Override
+        void loadDefault(ConfigSnapshot.Builder builder) {
+            builder.putFloat(ordinal, slot, defaultValue);
+        }
     }
 
     /**
      * String 型の default 値を持つ configuration entry です。
      */
-    protected static class StringEntry extends AbsEntry {
+    public static class StringEntry extends AbsEntry {
         /** Default 値。 */
         public final String defaultValue;
 
         /**
-         * SharedPreferences の key と default 値を指定して entry を作成します。
+         * SharedPreferences の key と default 値を指定して entry を作成し、 schema に登録します。
          *
+         * @param schema 登録する schema です。
          * @param key Preference を取得、保存するためにつける名前です。
          * @param defaultValue 値が保存されていない場合に利用する default 値です。
          */
-        public StringEntry(String key, String defaultValue) {
-            super(key);
+        public StringEntry(ConfigSchema schema, String key, String defaultValue) {
+            super(schema, key, ConfigSnapshot.OBJECT);
             this.defaultValue = defaultValue;
         }
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof String;
+        }
+
+        @Override
+        Object valueOf(ConfigSnapshot snapshot) {
+            return snapshot.objects[slot];
+        }
+
+        @Override
+        void put(Editor editor, Object value) {
+            editor.put(this, (String) value);
+        }
+
+        @Override
+        void load(SharedPreferences prefs, ConfigSnapshot.Builder builder) {
+            builder.putObject(ordinal, slot, prefs.getString(key, defaultValue));
+        }
+
+        @Override
+        void loadDefault(ConfigSnapshot.Builder builder) {
+            builder.putObject(ordinal, slot, defaultValue);
+        }
     }
 
     /**
      * String set 型の default 値を持つ configuration entry です。
+     *
+     * 呼び出し元や SharedPreferences が保持している set を後から変更しても snapshot の値が変わらないよう、
+     * snapshot には変更できない複製を保持します。
      */
-    protected static class StringSetEntry extends AbsEntry {
+    public static class StringSetEntry extends AbsEntry {
         /** Default 値。 */
         public final Set<String> defaultValue;
 
         /**
-         * SharedPreferences の key と default 値を指定して entry を作成します。
+         * SharedPreferences の key と default 値を指定して entry を作成し、 schema に登録します。
          *
+         * @param schema 登録する schema です。
          * @param key Preference を取得、保存するためにつける名前です。
          * @param defaultValue 値が保存されていない場合に利用する default 値です。
          */
-        public StringSetEntry(String key, Set<String> defaultValue) {
-            super(key);
-            this.defaultValue = defaultValue;
+        public StringSetEntry(ConfigSchema schema, String key, Set<String> defaultValue) {
+            super(schema, key, ConfigSnapshot.OBJECT);
+            this.defaultValue = copyOf(defaultValue);
+        }
+
+        /**
+         * @param value 複製する set です。
+         * @return 変更できない複製を返します。 null の場合は null を返します。
+         */
+        static Set<String> copyOf(@Nullable Set<String> value) {
+            return value == null ? null : Collections.unmodifiableSet(new HashSet<>(value));
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof Set;
+        }
+
+        @Override
+        Object valueOf(ConfigSnapshot snapshot) {
+            return snapshot.objects[slot];
+        }
+
+        @Override
+        void put(Editor editor, Object value) {
+            //noinspection unchecked
+            editor.put(this, (Set<String>) value);
+        }
+
+        @Override
+        void load(SharedPreferences prefs, ConfigSnapshot.Builder builder) {
+            final Set<String> value = prefs.getStringSet(key, null);
+            builder.putObject(ordinal, slot, value != null ? copyOf(value) : defaultValue);
+        }
+
+        @Override
+        void loadDefault(ConfigSnapshot.Builder builder) {
+            builder.putObject(ordinal, slot, defaultValue);
+        }
+    }
+
+    /**
+     * 要素を1つずつ追加、削除できる string set の configuration entry です。
+     *
+     * 要素毎に「&lt;key>/&lt;要素>」の key で保存するため、追加や削除では変更した要素の key だけを書き込みます。
+     * {@link jp.hideakisago.androidtemplate.models.configurations.storage.MappedPreferences} では
+     * 変更した record のみが追記されます。 値は {@link SortedStringSet} で snapshot に保持し、 default 値は空の set です。
+     * <p>
+     * 最初の読み込みでは保存先の全ての key を走査するため、 {@link #preload(Executor)} で先読みしてください。
+     * 読み込んだ後は要素を snapshot に保持し、他の場所で変更された要素のみを反映します。
+     */
+    public static class SortedStringSetEntry extends AbsEntry {
+        /** 要素の key の prefix。 */
+        private final String mMemberPrefix;
+
+        /**
+         * SharedPreferences の key を指定して entry を作成し、 schema に登録します。
+         *
+         * @param schema 登録する schema です。
+         * @param key 要素の key の prefix につける名前です。
+         */
+        public SortedStringSetEntry(ConfigSchema schema, String key) {
+            super(schema, key, ConfigSnapshot.OBJECT);
+            mMemberPrefix = key + "/";
+        }
+
+        /**
+         * @param member 要素です。
+         * @return 要素を保存する preference key を返します。
+         */
+        String memberKey(String member) {
+            return mMemberPrefix + member;
+        }
+
+        /**
+         * 2つの値の差分の要素を editor に設定します。
+         *
+         * @param editor 設定する editor です。
+         * @param before 現在の値です。
+         * @param after 保存する値です。
+         */
+        void putDelta(SharedPreferences.Editor editor, SortedStringSet before, SortedStringSet after) {
+            for (String member : before) {
+                if (!after.contains(member)) {
+                    editor.remove(memberKey(member));
+                }
+            }
+            for (String member : after) {
+                if (!before.contains(member)) {
+                    editor.putBoolean(memberKey(member), true);
+                }
+            }
+        }
+
+        @Override
+        boolean accepts(Object value) {
+            return value instanceof Set;
+        }
+
+        @Override
+        Object valueOf(ConfigSnapshot snapshot) {
+            return snapshot.objects[slot];
+        }
+
+        @Override
+        void put(Editor editor, Object value) {
+            //noinspection unchecked
+            editor.put(this, (Set<String>) value);
+        }
+
+        @Override
+        void load(SharedPreferences prefs, ConfigSnapshot.Builder builder) {
+            List<String> members = new ArrayList<>();
+            for (String preferenceKey : prefs.getAll().keySet()) {
+                if (preferenceKey.startsWith(mMemberPrefix)) {
+                    members.add(preferenceKey.substring(mMemberPrefix.length()));
+                }
+            }
+            builder.putObject(ordinal, slot, SortedStringSet.of(members));
+        }
+
+        @Override
+        void reload(SharedPreferences prefs, String preferenceKey, ConfigSnapshot.Builder builder) {
+            if (!ownsMemberKey(preferenceKey)) {
+                load(prefs, builder);
+                return;
+            }
+            // 保存先の全ての key を走査し直さず、変更された要素のみを snapshot の要素に反映します。
+            final String member = preferenceKey.substring(mMemberPrefix.length());
+            final SortedStringSet members = (SortedStringSet) builder.getObject(slot);
+            builder.putObject(ordinal, slot,
+                    prefs.contains(preferenceKey) ? members.with(member) : members.without(member));
+        }
+
+        @Override
+        void loadDefault(ConfigSnapshot.Builder builder) {
+            builder.putObject(ordinal, slot, SortedStringSet.EMPTY);
+        }
+
+        @Override
+        void remove(SharedPreferences.Editor editor, ConfigSnapshot snapshot) {
+            putDelta(editor, (SortedStringSet) valueOf(snapshot), SortedStringSet.EMPTY);
+        }
+
+        @Override
+        boolean ownsMemberKey(String preferenceKey) {
+            return preferenceKey.startsWith(mMemberPrefix);
         }
     }
 }
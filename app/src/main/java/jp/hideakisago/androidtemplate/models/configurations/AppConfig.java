@@ -1,6 +1,7 @@
 package jp.hideakisago.androidtemplate.models.configurations;
 
 import android.content.Context;
+import android.os.AsyncTask;
 
 import jp.hideakisago.androidtemplate.App;
 
@@ -11,15 +12,26 @@ import jp.hideakisago.androidtemplate.App;
  */
 public class AppConfig extends AbsConfig {
 
+    /**
+     * Entry を登録する schema。 Entry より前に宣言します。
+     * Entry の key や型を変更する場合は {@link ConfigMigration} を追加してください。 {@link #create} の先読みで移行されます。
+     */
+    private static final ConfigSchema SCHEMA = new ConfigSchema();
+
     /**
      * Context から SharedPreferences の instance を取得して AppConfig を生成し、
      * 生成した instance を bridge で渡します。
      *
+     * 起動時の UI thread での読み込み待ちを避けるため、値の読み込みを background thread で開始します。
+     * 読み込みの完了は {@link #getReadiness()} で待てます。
+     *
      * @param context SharedPreferences を取得するための context です。
      * @param bridge 生成した instance を橋渡しします。
      */
     public static void create(Context context, App.PrivateBridge<AppConfig> bridge) {
-        bridge.pass(new AppConfig(context));
+        AppConfig config = new AppConfig(context);
+        config.preload(AsyncTask.THREAD_POOL_EXECUTOR);
+        bridge.pass(config);
     }
 
     /**
@@ -28,6 +40,6 @@ public class AppConfig extends AbsConfig {
      * @param context SharedPreferences を取得するための context です。
      */
     private AppConfig(Context context) {
-        super(context);
+        super(context, SCHEMA);
     }
 }
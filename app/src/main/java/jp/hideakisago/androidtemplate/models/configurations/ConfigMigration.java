@@ -0,0 +1,116 @@
+package jp.hideakisago.androidtemplate.models.configurations;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Map;
+
+/**
+ * {@link AbsConfig} の保存済みの値を、1つ前の schema version から {@link #version} へ移行する step です。
+ *
+ * Step は {@link ConfigSchema} に version の昇順で宣言します。
+ * {@link AbsConfig} は保存先の全ての値を1回だけ読み込み、保存されている version より新しい全ての step を
+ * memory 上の map に順に適用してから、差分と新しい version を1回の commit で書き込みます。
+ * Version は値と同じ commit で保存されるため、途中で process が終了しても、次回は保存されている version から再開します。
+ * <p>
+ * usage:
+ * <pre><code>
+ * private static final ConfigSchema SCHEMA = new ConfigSchema(
+ *         ConfigMigration.renameKey(1, "old_key", "new_key"),
+ *         ConfigMigration.convertValue(2, "timeout", value -> ((Integer) value).longValue()),
+ *         ConfigMigration.removeKeys(3, "unused"));
+ * </code></pre>
+ */
+public abstract class ConfigMigration {
+
+    /** 値を変換する interface です。 */
+    public interface Converter {
+        /**
+         * @param value 保存されている値です。
+         * @return 変換した値を返します。 null の場合は値を削除します。
+         */
+        @Nullable
+        Object convert(@NonNull Object value);
+    }
+
+    /** この step を適用した後の schema version。 1 以上です。 */
+    public final int version;
+
+    /**
+     * @param version この step を適用した後の schema version です。 1 以上を指定してください。
+     */
+    protected ConfigMigration(int version) {
+        if (version < 1) {
+            throw new IllegalArgumentException("Migration version must be positive: " + version);
+        }
+        this.version = version;
+    }
+
+    /**
+     * 値を移行します。 {@link AbsConfig} の lock を取得した状態で、 background thread から呼び出されることが有ります。
+     *
+     * @param values 保存されている全ての値です。 直接変更してください。
+     */
+    protected abstract void migrate(@NonNull Map<String, Object> values);
+
+    /**
+     * @param version 適用後の schema version です。
+     * @param from 変更前の key です。
+     * @param to 変更後の key です。 既に値が有る場合は上書きします。
+     * @return Key を変更する step を返します。
+     */
+    @NonNull
+    public static ConfigMigration renameKey(int version, @NonNull final String from, @NonNull final String to) {
+        return new ConfigMigration(version) {
+            @Override
+            protected void migrate(@NonNull Map<String, Object> values) {
+                if (values.containsKey(from)) {
+                    values.put(to, values.remove(from));
+                }
+            }
+        };
+    }
+
+    /**
+     * @param version 適用後の schema version です。
+     * @param key 変換する値の key です。 値が無い場合は何もしません。
+     * @param converter 値を変換する converter です。
+     * @return 値を変換する step を返します。
+     */
+    @NonNull
+    public static ConfigMigration convertValue(int version, @NonNull final String key,
+                                               @NonNull final Converter converter) {
+        return new ConfigMigration(version) {
+            @Override
+            protected void migrate(@NonNull Map<String, Object> values) {
+                Object value = values.get(key);
+                if (value == null) {
+                    return;
+                }
+                Object converted = converter.convert(value);
+                if (converted == null) {
+                    values.remove(key);
+                } else {
+                    values.put(key, converted);
+                }
+            }
+        };
+    }
+
+    /**
+     * @param version 適用後の schema version です。
+     * @param keys 削除する key です。
+     * @return 値を削除する step を返します。
+     */
+    @NonNull
+    public static ConfigMigration removeKeys(int version, @NonNull final String... keys) {
+        return new ConfigMigration(version) {
+            @Override
+            protected void migrate(@NonNull Map<String, Object> values) {
+                for (String key : keys) {
+                    values.remove(key);
+                }
+            }
+        };
+    }
+}
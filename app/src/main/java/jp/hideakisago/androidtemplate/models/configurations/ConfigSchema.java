@@ -0,0 +1,189 @@
+package jp.hideakisago.androidtemplate.models.configurations;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link AbsConfig} の派生 class が持つ全ての entry を登録する registry です。
+ *
+ * Entry は生成時に schema へ登録され、 schema 内で連続した ordinal (登録順の連番) と
+ * 型毎の slot を割り当てられます。 {@link AbsConfig} はこれらを index として snapshot の配列を参照します。
+ * 同じ key を2回登録した場合や、 {@link AbsConfig.SortedStringSetEntry} の要素の key
+ * (「&lt;key>/」で始まる key) と重なる key を登録した場合は {@link IllegalArgumentException} を throw します。
+ * Config の instance を生成すると schema は固定され、以降の登録は {@link IllegalStateException} を throw します。
+ * <p>
+ * Entry より先に初期化されるよう、 schema の field は entry の field より前に宣言してください。
+ * <p>
+ * Entry の key や型を変更する場合は、 {@link ConfigMigration} を constructor に追加します。
+ * 最後の step の version が schema の version になり、保存先の {@link #VERSION_KEY} に記録されます。
+ * <p>
+ * usage:
+ * <pre><code>
+ * private static final ConfigSchema SCHEMA = new ConfigSchema();
+ * private static final BooleanEntry CONFIG1 = new BooleanEntry(SCHEMA, "config1", true);
+ *
+ * public FooConfig(Context context) {
+ *     super(context, SCHEMA);
+ * }
+ * </code></pre>
+ */
+public final class ConfigSchema {
+
+    /** 保存先に schema version を記録する key。 Entry の key には使えません。 */
+    public static final String VERSION_KEY = "config_schema_version";
+
+    /** Version の昇順の migration。 */
+    private final List<ConfigMigration> mMigrations;
+
+    /** 登録順の entry。 */
+    private final List<AbsConfig.AbsEntry> mEntries = new ArrayList<>();
+
+    /** Key 毎の entry。 */
+    private final Map<String, AbsConfig.AbsEntry> mEntriesByKey = new HashMap<>();
+
+    /** 列毎の割り当て済みの slot 数。 */
+    private final int[] mSlotCounts = new int[ConfigSnapshot.COLUMN_COUNT];
+
+    /** 固定されたかどうか。 */
+    private volatile boolean mFrozen;
+
+    /**
+     * @param migrations 保存済みの値を移行する step です。 Version の昇順に指定してください。
+     * @throws IllegalArgumentException Version が昇順でない場合に throw します。
+     */
+    public ConfigSchema(ConfigMigration... migrations) {
+        int version = 0;
+        for (ConfigMigration migration : migrations) {
+            if (migration.version <= version) {
+                throw new IllegalArgumentException("Migration versions must be ascending: " + migration.version
+                        + " follows " + version);
+            }
+            version = migration.version;
+        }
+        mMigrations = Collections.unmodifiableList(Arrays.asList(migrations.clone()));
+    }
+
+    /**
+     * Entry を登録します。
+     *
+     * @param entry 登録する entry です。
+     * @return Entry の ordinal を返します。
+     */
+    synchronized int register(AbsConfig.AbsEntry entry) {
+        if (mFrozen) {
+            throw new IllegalStateException("Schema is already in use. Declare \"" + entry.key
+                    + "\" before creating the config.");
+        }
+        if (VERSION_KEY.equals(entry.key)) {
+            throw new IllegalArgumentException("Reserved config key: " + entry.key);
+        }
+        if (mEntriesByKey.containsKey(entry.key)) {
+            throw new IllegalArgumentException("Duplicate config key: " + entry.key);
+        }
+        AbsConfig.AbsEntry owner = findOwner(entry.key);
+        if (owner != null) {
+            throw new IllegalArgumentException("Config key \"" + entry.key + "\" overlaps the members of \""
+                    + owner.key + "\".");
+        }
+        if (entry instanceof AbsConfig.SortedStringSetEntry) {
+            // 要素の key の prefix は entry の constructor で設定されるため、ここでは key から求めます。
+            final String memberPrefix = entry.key + "/";
+            for (String key : mEntriesByKey.keySet()) {
+                if (key.startsWith(memberPrefix)) {
+                    throw new IllegalArgumentException("Config key \"" + key + "\" overlaps the members of \""
+                            + entry.key + "\".");
+                }
+            }
+        }
+        mEntriesByKey.put(entry.key, entry);
+        mEntries.add(entry);
+        return mEntries.size() - 1;
+    }
+
+    /**
+     * @param column {@link ConfigSnapshot#BOOLEAN} などの列です。
+     * @return 指定した列の新しい slot を返します。
+     */
+    synchronized int newSlot(int column) {
+        return mSlotCounts[column]++;
+    }
+
+    /**
+     * 登録を締め切ります。 {@link AbsConfig} の constructor で呼び出されます。
+     */
+    synchronized void freeze() {
+        mFrozen = true;
+    }
+
+    /**
+     * @return 登録されている entry 数を返します。
+     */
+    public int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * @return 最後の migration の version を返します。 Migration が無い場合は 0 です。
+     */
+    public int getVersion() {
+        return mMigrations.isEmpty() ? 0 : mMigrations.get(mMigrations.size() - 1).version;
+    }
+
+    /**
+     * @return Version の昇順の全ての migration を返します。
+     */
+    List<ConfigMigration> getMigrations() {
+        return mMigrations;
+    }
+
+    /**
+     * @return 登録順の全ての entry を返します。
+     */
+    List<AbsConfig.AbsEntry> getEntries() {
+        return Collections.unmodifiableList(mEntries);
+    }
+
+    /**
+     * @param key Preference key です。
+     * @return 指定した key の entry を返します。 登録されていない場合は null を返します。
+     */
+    @Nullable
+    AbsConfig.AbsEntry find(String key) {
+        return mEntriesByKey.get(key);
+    }
+
+    /**
+     * @param preferenceKey Preference key です。
+     * @return 指定した key に値を保存する entry を返します。
+     *         {@link AbsConfig.SortedStringSetEntry} の要素の key も解決します。 無い場合は null を返します。
+     */
+    @Nullable
+    AbsConfig.AbsEntry findOwner(String preferenceKey) {
+        AbsConfig.AbsEntry entry = mEntriesByKey.get(preferenceKey);
+        if (entry != null) {
+            return entry;
+        }
+        // 要素の key は「<key>/<要素>」のため、「/」の前までを key として探します。
+        for (int index = preferenceKey.indexOf('/'); index >= 0; index = preferenceKey.indexOf('/', index + 1)) {
+            AbsConfig.AbsEntry candidate = mEntriesByKey.get(preferenceKey.substring(0, index));
+            if (candidate != null && candidate.ownsMemberKey(preferenceKey)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param column {@link ConfigSnapshot#BOOLEAN} などの列です。
+     * @return 指定した列の slot 数を返します。
+     */
+    int getSlotCount(int column) {
+        return mSlotCounts[column];
+    }
+}
@@ -0,0 +1,202 @@
+package jp.hideakisago.androidtemplate.models.configurations;
+
+/**
+ * {@link AbsConfig} が読み込んだ値を型毎の primitive 配列で保持する、不変の snapshot です。
+ *
+ * 値は entry 毎の slot (型毎の連番) に格納し、読み込み済みかどうかは entry の ordinal で管理します。
+ * 配列の長さは {@link ConfigSchema} に登録された entry 数、 slot 数で固定です。
+ * 変更する場合は {@link #edit()} で複製を作成し、 {@link AbsConfig} が volatile field に公開します。
+ * 生成後に配列を変更しないため、読み込み側は lock 無しで参照できます。
+ */
+final class ConfigSnapshot {
+
+    /** boolean の列。 */
+    static final int BOOLEAN = 0;
+
+    /** int の列。 */
+    static final int INT = 1;
+
+    /** long の列。 */
+    static final int LONG = 2;
+
+    /** float の列。 */
+    static final int FLOAT = 3;
+
+    /** String や String set などの object の列。 */
+    static final int OBJECT = 4;
+
+    /** 列数。 */
+    static final int COLUMN_COUNT = 5;
+
+    /** Entry の ordinal 毎の、読み込み済みかどうか。 */
+    private final boolean[] mLoaded;
+
+    /** boolean の値。 */
+    final boolean[] booleans;
+
+    /** int の値。 */
+    final int[] ints;
+
+    /** long の値。 */
+    final long[] longs;
+
+    /** float の値。 */
+    final float[] floats;
+
+    /** Object の値。 */
+    final Object[] objects;
+
+    /**
+     * 各配列を指定して生成します。 生成後に配列を変更しないでください。
+     */
+    private ConfigSnapshot(boolean[] loaded, boolean[] booleans, int[] ints, long[] longs, float[] floats,
+                           Object[] objects) {
+        mLoaded = loaded;
+        this.booleans = booleans;
+        this.ints = ints;
+        this.longs = longs;
+        this.floats = floats;
+        this.objects = objects;
+    }
+
+    /**
+     * @param schema Snapshot に格納する entry を登録した schema です。
+     * @return 何も読み込んでいない snapshot を返します。
+     */
+    static ConfigSnapshot empty(ConfigSchema schema) {
+        return new ConfigSnapshot(new boolean[schema.size()],
+                new boolean[schema.getSlotCount(BOOLEAN)],
+                new int[schema.getSlotCount(INT)],
+                new long[schema.getSlotCount(LONG)],
+                new float[schema.getSlotCount(FLOAT)],
+                new Object[schema.getSlotCount(OBJECT)]);
+    }
+
+    /**
+     * @param ordinal Entry の ordinal です。
+     * @return 読み込み済みの場合は true を返します。 true の場合、 entry の slot の値を参照できます。
+     */
+    boolean isLoaded(int ordinal) {
+        return mLoaded[ordinal];
+    }
+
+    /**
+     * @return この snapshot を複製した {@link Builder} を返します。
+     */
+    Builder edit() {
+        return new Builder(this);
+    }
+
+    /**
+     * {@link ConfigSnapshot} を変更した複製を作成するための builder です。
+     */
+    static final class Builder {
+        /** Entry の ordinal 毎の、読み込み済みかどうか。 */
+        private final boolean[] mLoaded;
+        /** boolean の値。 */
+        private final boolean[] mBooleans;
+        /** int の値。 */
+        private final int[] mInts;
+        /** long の値。 */
+        private final long[] mLongs;
+        /** float の値。 */
+        private final float[] mFloats;
+        /** Object の値。 */
+        private final Object[] mObjects;
+
+        /**
+         * @param source 複製元です。
+         */
+        private Builder(ConfigSnapshot source) {
+            mLoaded = source.mLoaded.clone();
+            mBooleans = source.booleans.clone();
+            mInts = source.ints.clone();
+            mLongs = source.longs.clone();
+            mFloats = source.floats.clone();
+            mObjects = source.objects.clone();
+        }
+
+        /**
+         * @param ordinal Entry の ordinal です。
+         * @param slot Entry の slot です。
+         * @param value 設定する値です。
+         * @return this を返します。
+         */
+        Builder putBoolean(int ordinal, int slot, boolean value) {
+            mBooleans[slot] = value;
+            mLoaded[ordinal] = true;
+            return this;
+        }
+
+        /**
+         * @param ordinal Entry の ordinal です。
+         * @param slot Entry の slot です。
+         * @param value 設定する値です。
+         * @return this を返します。
+         */
+        Builder putInt(int ordinal, int slot, int value) {
+            mInts[slot] = value;
+            mLoaded[ordinal] = true;
+            return this;
+        }
+
+        /**
+         * @param ordinal Entry の ordinal です。
+         * @param slot Entry の slot です。
+         * @param value 設定する値です。
+         * @return this を返します。
+         */
+        Builder putLong(int ordinal, int slot, long value) {
+            mLongs[slot] = value;
+            mLoaded[ordinal] = true;
+            return this;
+        }
+
+        /**
+         * @param ordinal Entry の ordinal です。
+         * @param slot Entry の slot です。
+         * @param value 設定する値です。
+         * @return this を返します。
+         */
+        Builder putFloat(int ordinal, int slot, float value) {
+            mFloats[slot] = value;
+            mLoaded[ordinal] = true;
+            return this;
+        }
+
+        /**
+         * @param ordinal Entry の ordinal です。
+         * @param slot Entry の slot です。
+         * @param value 設定する値です。
+         * @return this を返します。
+         */
+        Builder putObject(int ordinal, int slot, Object value) {
+            mObjects[slot] = value;
+            mLoaded[ordinal] = true;
+            return this;
+        }
+
+        /**
+         * @param slot Entry の slot です。
+         * @return 設定されている Object の値を返します。
+         */
+        Object getObject(int slot) {
+            return mObjects[slot];
+        }
+
+        /**
+         * @param ordinal Entry の ordinal です。
+         * @return 読み込み済みの場合は true を返します。
+         */
+        boolean isLoaded(int ordinal) {
+            return mLoaded[ordinal];
+        }
+
+        /**
+         * @return 変更を反映した snapshot を返します。
+         */
+        ConfigSnapshot build() {
+            return new ConfigSnapshot(mLoaded, mBooleans, mInts, mLongs, mFloats, mObjects);
+        }
+    }
+}
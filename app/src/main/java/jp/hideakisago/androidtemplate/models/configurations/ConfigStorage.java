@@ -0,0 +1,110 @@
+package jp.hideakisago.androidtemplate.models.configurations;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+import jp.hideakisago.androidtemplate.models.configurations.storage.EncryptedPreferences;
+import jp.hideakisago.androidtemplate.models.configurations.storage.MappedPreferences;
+
+/**
+ * {@link AbsConfig} の保存先を開く interface です。
+ *
+ * {@link AbsConfig} は {@link SharedPreferences} を介して読み書きするため、
+ * 保存形式は {@link SharedPreferences} の実装で切り替えます。
+ * <p>
+ * usage:
+ * <pre><code>
+ * private UserConfig(Context context) {
+ *     super(context, ConfigStorage.MAPPED, SCHEMA);
+ * }
+ * </code></pre>
+ */
+public interface ConfigStorage {
+
+    /** Framework の XML 形式の SharedPreferences に保存します。 */
+    ConfigStorage XML = new ConfigStorage() {
+        @Override
+        public SharedPreferences open(Context context, String name) {
+            return context.getSharedPreferences(name, Context.MODE_PRIVATE);
+        }
+    };
+
+    /**
+     * Binary 形式の memory-mapped file に保存します。
+     * File は files dir の「&lt;name>.mprefs」です。
+     *
+     * @see MappedPreferences
+     */
+    ConfigStorage MAPPED = new ConfigStorage() {
+        @Override
+        public SharedPreferences open(Context context, String name) {
+            try {
+                return MappedPreferences.open(new File(context.getFilesDir(), name + ".mprefs"));
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to open " + name, e);
+            }
+        }
+    };
+
+    /**
+     * Binary 形式の memory-mapped file に保存し、複数の process で共有します。
+     * File は files dir の「&lt;name>.mprefs」です。
+     * 他の process の変更は {@link AbsConfig} の次の get、または {@link SharedPreferences.OnSharedPreferenceChangeListener}
+     * で反映されます。 同じ process では {@link #MAPPED} と同時に使えません。
+     *
+     * @see MappedPreferences#openMultiProcess(File)
+     */
+    ConfigStorage MAPPED_MULTI_PROCESS = new ConfigStorage() {
+        @Override
+        public SharedPreferences open(Context context, String name) {
+            try {
+                return MappedPreferences.openMultiProcess(new File(context.getFilesDir(), name + ".mprefs"));
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to open " + name, e);
+            }
+        }
+    };
+
+    /**
+     * 暗号化した file に保存します。
+     * File は files dir の「&lt;name>.eprefs」です。
+     * 開いた時に1回だけ復号するため、 {@link AbsConfig} の読み込みは他の保存先と同じ速度です。
+     *
+     * @see EncryptedPreferences
+     */
+    class Encrypted implements ConfigStorage {
+
+        /** 鍵を提供する provider。 */
+        private final EncryptedPreferences.KeyProvider mKeyProvider;
+
+        /**
+         * @param keyProvider 鍵を提供する provider です。 値を取り出せる、 app が保持する鍵を返してください。
+         *                    Android Keystore の鍵は直接利用できないため、 Keystore の鍵で wrap して保存した鍵を unwrap して返します。
+         */
+        public Encrypted(EncryptedPreferences.KeyProvider keyProvider) {
+            mKeyProvider = keyProvider;
+        }
+
+        @Override
+        public SharedPreferences open(Context context, String name) {
+            try {
+                return EncryptedPreferences.open(new File(context.getFilesDir(), name + ".eprefs"), mKeyProvider);
+            } catch (IOException | GeneralSecurityException e) {
+                throw new IllegalStateException("Failed to open " + name, e);
+            }
+        }
+    }
+
+    /**
+     * 保存先を開きます。
+     *
+     * @param context 保存先を開くための context です。
+     * @param name 保存先の名前です。 同じ名前の場合は同じ保存先を返してください。
+     * @return 保存先の {@link SharedPreferences} を返します。
+     */
+    SharedPreferences open(Context context, String name);
+}
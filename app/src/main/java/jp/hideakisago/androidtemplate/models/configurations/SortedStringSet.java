@@ -0,0 +1,139 @@
+package jp.hideakisago.androidtemplate.models.configurations;
+
+import android.support.annotation.NonNull;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * 昇順に並べた文字列の配列1つで値を保持する、変更不可能な set です。
+ *
+ * {@link AbsConfig.SortedStringSetEntry} の値として snapshot に保持し、 get では複製せずにそのまま返します。
+ * 要素の検索は二分探索です。 {@link #with(String)} と {@link #without(String)} は、変更した新しい instance を返します。
+ */
+public final class SortedStringSet extends AbstractSet<String> {
+
+    /** 空の set。 */
+    public static final SortedStringSet EMPTY = new SortedStringSet(new String[0]);
+
+    /** 昇順で重複の無い要素。 */
+    private final String[] mMembers;
+
+    /**
+     * @param members 昇順で重複の無い要素です。 この instance が所有します。
+     */
+    private SortedStringSet(String[] members) {
+        mMembers = members;
+    }
+
+    /**
+     * @param members 要素です。 null を含めることはできません。
+     * @return 要素を昇順に並べ、重複を除いた set を返します。
+     */
+    @NonNull
+    public static SortedStringSet of(@NonNull Collection<String> members) {
+        if (members instanceof SortedStringSet) {
+            return (SortedStringSet) members;
+        }
+        if (members.isEmpty()) {
+            return EMPTY;
+        }
+        String[] sorted = members.toArray(new String[members.size()]);
+        Arrays.sort(sorted);
+        int size = 0;
+        for (String member : sorted) {
+            if (member == null) {
+                throw new NullPointerException("SortedStringSet cannot contain null.");
+            }
+            if (size == 0 || !sorted[size - 1].equals(member)) {
+                sorted[size++] = member;
+            }
+        }
+        return new SortedStringSet(size == sorted.length ? sorted : Arrays.copyOf(sorted, size));
+    }
+
+    /**
+     * @param member 追加する要素です。
+     * @return 要素を追加した set を返します。 既に含む場合は this を返します。
+     */
+    @NonNull
+    public SortedStringSet with(@NonNull String member) {
+        int index = Arrays.binarySearch(mMembers, member);
+        if (index >= 0) {
+            return this;
+        }
+        index = -index - 1;
+        String[] members = new String[mMembers.length + 1];
+        System.arraycopy(mMembers, 0, members, 0, index);
+        members[index] = member;
+        System.arraycopy(mMembers, index, members, index + 1, mMembers.length - index);
+        return new SortedStringSet(members);
+    }
+
+    /**
+     * @param member 削除する要素です。
+     * @return 要素を削除した set を返します。 含まない場合は this を返します。
+     */
+    @NonNull
+    public SortedStringSet without(@NonNull String member) {
+        final int index = Arrays.binarySearch(mMembers, member);
+        if (index < 0) {
+            return this;
+        }
+        if (mMembers.length == 1) {
+            return EMPTY;
+        }
+        String[] members = new String[mMembers.length - 1];
+        System.arraycopy(mMembers, 0, members, 0, index);
+        System.arraycopy(mMembers, index + 1, members, index, members.length - index);
+        return new SortedStringSet(members);
+    }
+
+    /**
+     * @param index 昇順での位置です。
+     * @return 指定した位置の要素を返します。
+     */
+    @NonNull
+    public String get(int index) {
+        return mMembers[index];
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof String && Arrays.binarySearch(mMembers, o) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return mMembers.length;
+    }
+
+    @NonNull
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<String>() {
+            private int mIndex;
+
+            @Override
+            public boolean hasNext() {
+                return mIndex < mMembers.length;
+            }
+
+            @Override
+            public String next() {
+                if (mIndex >= mMembers.length) {
+                    throw new NoSuchElementException();
+                }
+                return mMembers[mIndex++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,405 @@
+package jp.hideakisago.androidtemplate.models.configurations.storage;
+
+import android.content.SharedPreferences;
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+
+import jp.hideakisago.androidtemplate.libraries.utilities.log.Logger;
+
+/**
+ * 値を memory 上の map に保持し、保存を派生 class に任せる {@link SharedPreferences} の抽象 class です。
+ *
+ * 読み込みと {@link Editor} の commit / apply は framework の実装と同じ動作をします。
+ * 派生 class は constructor で {@link #load(Map)} を呼び出して保存済みの値を設定し、
+ * {@link #persist(Map, Map, boolean, boolean)} で変更を保存します。
+ * 他の process と保存先を共有する派生 class は、 {@link #onBeginWrite(List)} と {@link #onEndWrite()} で書き込みを排他し、
+ * {@link #merge(Map, List)} で他の process の変更を取り込みます。
+ */
+public abstract class AbsMemoryPreferences implements SharedPreferences {
+
+    /** Log。 */
+    protected final Logger mLog = Logger.Factory.create(this);
+
+    /** 値と保存を保護する lock。 */
+    protected final Object mLock = new Object();
+
+    /** 値。 */
+    private final Map<String, Object> mMap = new HashMap<>();
+
+    /** Listener。 Framework の実装と同じく弱参照で保持します。 */
+    private final Map<OnSharedPreferenceChangeListener, Object> mListeners = new WeakHashMap<>();
+
+    /** Listener を呼び出す executor。 */
+    private final Executor mListenerExecutor;
+
+    /**
+     * @param listenerExecutor {@link OnSharedPreferenceChangeListener} を呼び出す executor です。
+     */
+    protected AbsMemoryPreferences(Executor listenerExecutor) {
+        mListenerExecutor = listenerExecutor;
+    }
+
+    /**
+     * 保存済みの値を設定します。 派生 class の constructor で呼び出してください。
+     *
+     * @param values 保存済みの値です。
+     */
+    protected final void load(Map<String, Object> values) {
+        synchronized (mLock) {
+            mMap.clear();
+            mMap.putAll(values);
+        }
+    }
+
+    /**
+     * 変更を保存します。 {@link #mLock} を取得した状態で呼び出されます。
+     *
+     * @param all 変更後の全ての値です。 変更しないでください。
+     * @param changes 変更した値です。 削除した key の値は null です。
+     * @param cleared {@link Editor#clear()} された場合は true です。
+     * @param sync {@link Editor#commit()} の場合は true です。 storage への反映を待ってから返してください。
+     * @throws IOException 保存に失敗した場合に throw します。
+     */
+    protected abstract void persist(Map<String, Object> all, Map<String, Object> changes, boolean cleared,
+                                    boolean sync) throws IOException;
+
+    /**
+     * {@link Editor} の変更を反映する前に、 {@link #mLock} を取得した状態で呼び出されます。
+     *
+     * 例外を throw しなかった場合は、必ず {@link #onEndWrite()} が呼び出されます。
+     *
+     * @param changedKeys 他の process の変更を取り込んだ場合に、その key を追加してください。
+     * @throws IOException 書き込みを開始できなかった場合に throw します。 変更は破棄されます。
+     */
+    protected void onBeginWrite(List<String> changedKeys) throws IOException {
+        // 空実装
+    }
+
+    /**
+     * {@link Editor} の変更を保存した後に、 {@link #mLock} を取得した状態で呼び出されます。
+     */
+    protected void onEndWrite() {
+        // 空実装
+    }
+
+    /**
+     * 他の process の変更を取り込みます。 {@link #mLock} を取得して呼び出してください。
+     *
+     * @param changes 変更した値です。 削除した key の値は null です。
+     * @param changedKeys 値が変わった key を追加します。
+     */
+    protected final void merge(Map<String, Object> changes, List<String> changedKeys) {
+        for (Map.Entry<String, Object> entry : changes.entrySet()) {
+            final String key = entry.getKey();
+            final Object value = entry.getValue();
+            if (value == null) {
+                if (mMap.containsKey(key)) {
+                    mMap.remove(key);
+                    changedKeys.add(key);
+                }
+            } else if (!value.equals(mMap.get(key))) {
+                mMap.put(key, value);
+                changedKeys.add(key);
+            }
+        }
+    }
+
+    /**
+     * 他の process が全ての値を書き直した場合に、新しい値との差分を取り込みます。 {@link #mLock} を取得して呼び出してください。
+     *
+     * @param values 新しい全ての値です。
+     * @param changedKeys 値が変わった key を追加します。
+     */
+    protected final void mergeAll(Map<String, Object> values, List<String> changedKeys) {
+        Map<String, Object> changes = new HashMap<>(values);
+        for (String key : mMap.keySet()) {
+            if (!values.containsKey(key)) {
+                changes.put(key, null);
+            }
+        }
+        merge(changes, changedKeys);
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        synchronized (mLock) {
+            return new HashMap<>(mMap);
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getString(String key, @Nullable String defValue) {
+        synchronized (mLock) {
+            String value = (String) mMap.get(key);
+            return value != null ? value : defValue;
+        }
+    }
+
+    @Nullable
+    @Override
+    public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+        synchronized (mLock) {
+            //noinspection unchecked
+            Set<String> value = (Set<String>) mMap.get(key);
+            return value != null ? value : defValues;
+        }
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        synchronized (mLock) {
+            Integer value = (Integer) mMap.get(key);
+            return value != null ? value : defValue;
+        }
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        synchronized (mLock) {
+            Long value = (Long) mMap.get(key);
+            return value != null ? value : defValue;
+        }
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        synchronized (mLock) {
+            Float value = (Float) mMap.get(key);
+            return value != null ? value : defValue;
+        }
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        synchronized (mLock) {
+            Boolean value = (Boolean) mMap.get(key);
+            return value != null ? value : defValue;
+        }
+    }
+
+    @Override
+    public boolean contains(String key) {
+        synchronized (mLock) {
+            return mMap.containsKey(key);
+        }
+    }
+
+    @Override
+    public Editor edit() {
+        return new MemoryEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (mListeners) {
+            mListeners.put(listener, Boolean.TRUE);
+        }
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (mListeners) {
+            mListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Listener に変更を通知します。
+     *
+     * @param keys 変更した key です。 全て消去した場合は先頭が null です。
+     */
+    protected final void notifyListeners(final List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        final List<OnSharedPreferenceChangeListener> listeners;
+        synchronized (mListeners) {
+            if (mListeners.isEmpty()) {
+                return;
+            }
+            listeners = new ArrayList<>(mListeners.keySet());
+        }
+        mListenerExecutor.execute(() -> {
+            for (String key : keys) {
+                for (OnSharedPreferenceChangeListener listener : listeners) {
+                    listener.onSharedPreferenceChanged(this, key);
+                }
+            }
+        });
+    }
+
+    /**
+     * 変更を記録し、 commit / apply で反映する editor です。
+     */
+    private class MemoryEditor implements Editor {
+        /** 変更する値。 null は削除を表します。 */
+        private final Map<String, Object> mModified = new HashMap<>();
+        /** 全て消去するかどうか。 */
+        private boolean mClear;
+
+        @Override
+        public Editor putString(String key, @Nullable String value) {
+            synchronized (this) {
+                mModified.put(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String key, @Nullable Set<String> values) {
+            synchronized (this) {
+                mModified.put(key, values == null ? null : Collections.unmodifiableSet(new HashSet<>(values)));
+            }
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            synchronized (this) {
+                mModified.put(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            synchronized (this) {
+                mModified.put(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            synchronized (this) {
+                mModified.put(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            synchronized (this) {
+                mModified.put(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            synchronized (this) {
+                mModified.put(key, null);
+            }
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            synchronized (this) {
+                mClear = true;
+            }
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            return write(true);
+        }
+
+        @Override
+        public void apply() {
+            write(false);
+        }
+
+        /**
+         * 変更を反映して保存し、 listener に通知します。
+         *
+         * @param sync Storage への反映を待つ場合は true を指定します。
+         * @return 保存に成功した場合は true を返します。
+         */
+        private boolean write(boolean sync) {
+            final Map<String, Object> modified;
+            final boolean clear;
+            synchronized (this) {
+                modified = new HashMap<>(mModified);
+                clear = mClear;
+                mModified.clear();
+                mClear = false;
+            }
+
+            List<String> keys = new ArrayList<>();
+            boolean succeeded;
+            synchronized (mLock) {
+                try {
+                    onBeginWrite(keys);
+                } catch (IOException e) {
+                    mLog.e("Failed to begin writing preferences.", e);
+                    return false;
+                }
+                try {
+                    succeeded = writeLocked(modified, clear, sync, keys);
+                } finally {
+                    onEndWrite();
+                }
+            }
+            notifyListeners(keys);
+            return succeeded;
+        }
+
+        /**
+         * 変更を反映して保存します。 {@link #mLock} を取得して呼び出してください。
+         *
+         * @param modified 変更する値です。 null は削除を表します。
+         * @param clear 全て消去する場合は true です。
+         * @param sync Storage への反映を待つ場合は true です。
+         * @param keys 変更した key を追加します。
+         * @return 保存に成功した場合は true を返します。
+         */
+        private boolean writeLocked(Map<String, Object> modified, boolean clear, boolean sync, List<String> keys) {
+            final int remoteKeyCount = keys.size();
+            if (clear && !mMap.isEmpty()) {
+                mMap.clear();
+                keys.add(null);
+            }
+            Map<String, Object> changes = new HashMap<>();
+            for (Map.Entry<String, Object> entry : modified.entrySet()) {
+                final String key = entry.getKey();
+                final Object value = entry.getValue();
+                if (value == null) {
+                    if (!mMap.containsKey(key)) {
+                        continue;
+                    }
+                    mMap.remove(key);
+                } else {
+                    if (value.equals(mMap.get(key))) {
+                        continue;
+                    }
+                    mMap.put(key, value);
+                }
+                changes.put(key, value);
+                keys.add(key);
+            }
+            if (keys.size() == remoteKeyCount) {
+                return true;
+            }
+            try {
+                persist(Collections.unmodifiableMap(mMap), changes, clear, sync);
+                return true;
+            } catch (IOException e) {
+                mLog.e("Failed to persist preferences.", e);
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package jp.hideakisago.androidtemplate.models.configurations.storage;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * 値を暗号化した file に保存する {@link android.content.SharedPreferences} です。
+ *
+ * File 全体を1つの暗号文として保存し、開いた時に1回だけ復号して memory 上の map に展開します。
+ * そのため読み込みは暗号化しない場合と同じく map の参照のみで、 cipher を呼び出しません。
+ * <p>
+ * 暗号化は stream cipher として使える AES/CTR で行い、暗号文を HMAC-SHA256 で認証します (encrypt-then-MAC)。
+ * {@link KeyProvider} の鍵から暗号化用と認証用の鍵を1回だけ導出し、 {@link Cipher} と {@link Mac} の instance と共に再利用します。
+ * <p>
+ * {@link Editor#apply()} の書き込みは background thread にまとめ、複数の apply を1回の暗号化で保存します。
+ * {@link Editor#commit()} はその場で暗号化して保存します。
+ * File を復号できない場合 (鍵の変更や改竄) は、 error を log に出力して file を「&lt;file>.bak」に退避し、空の値で開きます。
+ * <p>
+ * 鍵は {@link SecretKey#getEncoded()} で値を取得できる、 app が保持する鍵である必要が有ります。
+ * Android Keystore の鍵は値を取り出せないため直接は利用できません。 Keystore の鍵で wrap して保存した鍵を
+ * unwrap して渡してください。
+ * <p>
+ * 同じ file を複数の instance で開かないよう、 {@link #open(File, KeyProvider)} で取得してください。
+ */
+public class EncryptedPreferences extends AbsMemoryPreferences {
+
+    /** 暗号化に利用する鍵を提供する interface です。 */
+    public interface KeyProvider {
+        /**
+         * 暗号化の元になる鍵を返します。 {@link EncryptedPreferences} を開く時に1回だけ呼び出されます。
+         *
+         * Android Keystore の鍵は {@link SecretKey#getEncoded()} が null を返すため利用できません。
+         * App が保持する鍵 (Keystore の鍵で wrap して保存した鍵を unwrap したものなど) を返してください。
+         *
+         * @return 鍵を返します。 {@link SecretKey#getEncoded()} で鍵の値を取得できる必要が有ります。
+         * @throws GeneralSecurityException 鍵を取得できなかった場合に throw します。
+         */
+        @NonNull
+        SecretKey getKey() throws GeneralSecurityException;
+    }
+
+    /** File の識別子。 */
+    static final int MAGIC = 0x43464745;
+
+    /** File format の version。 */
+    static final int VERSION = 1;
+
+    /** IV の size。 */
+    static final int IV_SIZE = 16;
+
+    /** HMAC-SHA256 の size。 */
+    static final int MAC_SIZE = 32;
+
+    /** Header (識別子、 version 、 IV) の size。 */
+    static final int HEADER_SIZE = 4 + 4 + IV_SIZE;
+
+    /** 開いている instance。 */
+    private static final Map<File, EncryptedPreferences> INSTANCES = new HashMap<>();
+
+    /** Apply の書き込みを行う thread。 */
+    private static final ExecutorService WRITE_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, EncryptedPreferences.class.getSimpleName());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** 保存先の file。 */
+    private final File mFile;
+
+    /** Apply の書き込みを行う executor。 */
+    private final Executor mWriteExecutor;
+
+    /** IV を生成する乱数。 */
+    private final SecureRandom mRandom = new SecureRandom();
+
+    /** 暗号化用の鍵。 */
+    private final SecretKeySpec mCipherKey;
+
+    /** 認証用の鍵。 */
+    private final SecretKeySpec mMacKey;
+
+    /** 再利用する cipher。 {@link #mFileLock} を取得して利用します。 */
+    private final Cipher mCipher;
+
+    /** 再利用する MAC。 {@link #mFileLock} を取得して利用します。 */
+    private final Mac mMac;
+
+    /** 暗号化と file の書き込みを直列化する lock。 {@link #mLock} を取得している場合は、その後に取得します。 */
+    private final Object mFileLock = new Object();
+
+    /** 保存していない変更が有るかどうか。 {@link #mLock} を取得して参照します。 */
+    private boolean mDirty;
+
+    /** 書き込みを予約済みかどうか。 {@link #mLock} を取得して参照します。 */
+    private boolean mWriteScheduled;
+
+    /** 書き込む値の世代。 {@link #mLock} を取得して更新します。 */
+    private long mGeneration;
+
+    /** 書き込み済みの値の世代。 {@link #mFileLock} を取得して参照します。 */
+    private long mWrittenGeneration;
+
+    /** 暗号化した回数。 */
+    private int mEncryptionCount;
+
+    /** 予約した書き込みを実行する処理。 */
+    private final Runnable mWriteTask = this::writePending;
+
+    /**
+     * 指定した file の instance を取得します。
+     * 同じ file の instance は共有し、 listener は UI thread で呼び出します。
+     *
+     * @param file 保存先の file です。
+     * @param keyProvider 鍵を提供する provider です。 File を初めて開く時にのみ利用します。
+     * @return Instance を返します。
+     * @throws IOException File を開けなかった場合に throw します。
+     * @throws GeneralSecurityException 鍵や cipher を準備できなかった場合に throw します。
+     */
+    public static EncryptedPreferences open(File file, KeyProvider keyProvider)
+            throws IOException, GeneralSecurityException {
+        synchronized (INSTANCES) {
+            EncryptedPreferences prefs = INSTANCES.get(file);
+            if (prefs == null) {
+                final Handler handler = new Handler(Looper.getMainLooper());
+                prefs = new EncryptedPreferences(file, keyProvider, handler::post, WRITE_EXECUTOR);
+                INSTANCES.put(file, prefs);
+            }
+            return prefs;
+        }
+    }
+
+    /**
+     * File を開いて復号し、保存済みの値を読み込みます。
+     *
+     * @param file 保存先の file です。 存在しない場合は最初の書き込みで作成します。
+     * @param keyProvider 鍵を提供する provider です。
+     * @param listenerExecutor Listener を呼び出す executor です。
+     * @param writeExecutor Apply の書き込みを行う executor です。
+     * @throws IOException File を読み込めなかった場合に throw します。
+     * @throws GeneralSecurityException 鍵や cipher を準備できなかった場合に throw します。
+     */
+    @VisibleForTesting
+    EncryptedPreferences(File file, KeyProvider keyProvider, Executor listenerExecutor, Executor writeExecutor)
+            throws IOException, GeneralSecurityException {
+        super(listenerExecutor);
+        mFile = file;
+        mWriteExecutor = writeExecutor;
+
+        mMac = Mac.getInstance("HmacSHA256");
+        final byte[] master = keyProvider.getKey().getEncoded();
+        if (master == null) {
+            throw new GeneralSecurityException("Key material is not exportable. "
+                    + "Android Keystore keys cannot be used directly; pass an app-held key instead.");
+        }
+        mCipherKey = new SecretKeySpec(derive(master, "cipher"), "AES");
+        mMacKey = new SecretKeySpec(derive(master, "mac"), "HmacSHA256");
+        Arrays.fill(master, (byte) 0);
+        mCipher = Cipher.getInstance("AES/CTR/NoPadding");
+
+        if (file.exists()) {
+            synchronized (mFileLock) {
+                load(read());
+            }
+        }
+    }
+
+    @Override
+    protected void persist(Map<String, Object> all, Map<String, Object> changes, boolean cleared, boolean sync)
+            throws IOException {
+        mGeneration++;
+        if (!sync) {
+            mDirty = true;
+            if (!mWriteScheduled) {
+                mWriteScheduled = true;
+                mWriteExecutor.execute(mWriteTask);
+            }
+            return;
+        }
+        mDirty = false;
+        final long generation = mGeneration;
+        synchronized (mFileLock) {
+            write(all, generation);
+        }
+    }
+
+    /**
+     * @return 暗号化した回数を返します。
+     */
+    @VisibleForTesting
+    int getEncryptionCount() {
+        synchronized (mFileLock) {
+            return mEncryptionCount;
+        }
+    }
+
+    /**
+     * Apply で予約した書き込みを実行します。 それまでの apply の変更をまとめて1回で暗号化します。
+     */
+    private void writePending() {
+        final Map<String, ?> values;
+        final long generation;
+        synchronized (mLock) {
+            mWriteScheduled = false;
+            if (!mDirty) {
+                return;
+            }
+            mDirty = false;
+            values = getAll();
+            generation = mGeneration;
+        }
+        synchronized (mFileLock) {
+            try {
+                write(values, generation);
+            } catch (IOException e) {
+                mLog.e("Failed to persist preferences.", e);
+            }
+        }
+    }
+
+    /**
+     * 全ての値を暗号化し、一時 file に書き出してから rename で置き換えます。 {@link #mFileLock} を取得して呼び出してください。
+     *
+     * @param values 書き込む値です。
+     * @param generation 値の世代です。 既に新しい世代を書き込んでいる場合は何もしません。
+     * @throws IOException 書き込めなかった場合に throw します。
+     */
+    private void write(Map<String, ?> values, long generation) throws IOException {
+        if (generation <= mWrittenGeneration) {
+            return;
+        }
+        final byte[] plain = serialize(values);
+        final byte[] iv = new byte[IV_SIZE];
+        mRandom.nextBytes(iv);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + plain.length + MAC_SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.put(iv);
+        try {
+            mCipher.init(Cipher.ENCRYPT_MODE, mCipherKey, new IvParameterSpec(iv));
+            mCipher.doFinal(ByteBuffer.wrap(plain), buffer);
+            mMac.init(mMacKey);
+            mMac.update(buffer.array(), 0, buffer.position());
+            buffer.put(mMac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Failed to encrypt preferences.", e);
+        } finally {
+            Arrays.fill(plain, (byte) 0);
+        }
+        mEncryptionCount++;
+
+        File temp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream out = new FileOutputStream(temp);
+        try {
+            out.write(buffer.array());
+            out.getFD().sync();
+        } finally {
+            out.close();
+        }
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("Failed to rename " + temp + " to " + mFile);
+        }
+        mWrittenGeneration = generation;
+    }
+
+    /**
+     * File を認証して復号します。 {@link #mFileLock} を取得して呼び出してください。
+     *
+     * @return 保存されている値を返します。 復号できない場合は file を退避し、空の map を返します。
+     * @throws IOException File を読み込めなかった場合に throw します。
+     */
+    private Map<String, Object> read() throws IOException {
+        final byte[] bytes;
+        RandomAccessFile raf = new RandomAccessFile(mFile, "r");
+        try {
+            bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_SIZE + MAC_SIZE || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            backUpUnreadable("Unknown file format.", null);
+            return new HashMap<>();
+        }
+        final int macOffset = bytes.length - MAC_SIZE;
+        byte[] plain = null;
+        try {
+            mMac.init(mMacKey);
+            mMac.update(bytes, 0, macOffset);
+            if (!MessageDigest.isEqual(mMac.doFinal(), Arrays.copyOfRange(bytes, macOffset, bytes.length))) {
+                backUpUnreadable("Failed to authenticate.", null);
+                return new HashMap<>();
+            }
+            mCipher.init(Cipher.DECRYPT_MODE, mCipherKey, new IvParameterSpec(bytes, 8, IV_SIZE));
+            plain = mCipher.doFinal(bytes, HEADER_SIZE, macOffset - HEADER_SIZE);
+            return deserialize(plain);
+        } catch (GeneralSecurityException | IOException e) {
+            backUpUnreadable("Failed to decrypt.", e);
+            return new HashMap<>();
+        } finally {
+            if (plain != null) {
+                Arrays.fill(plain, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * 復号できない file を次の書き込みで失わないよう「&lt;file>.bak」に退避します。 {@link #mFileLock} を取得して呼び出してください。
+     *
+     * 既に退避した file が有る場合は置き換えます。
+     *
+     * @param reason 復号できない理由です。
+     * @param cause 復号できない原因の例外です。 無い場合は null です。
+     */
+    private void backUpUnreadable(String reason, Exception cause) {
+        final File backup = new File(mFile.getPath() + ".bak");
+        //noinspection ResultOfMethodCallIgnored
+        backup.delete();
+        final String message = reason + " Start with empty values: " + mFile;
+        if (mFile.renameTo(backup)) {
+            mLog.e(message + " (moved to " + backup + ")", cause);
+        } else {
+            mLog.e(message + " (failed to move to " + backup + ")", cause);
+        }
+    }
+
+    /**
+     * @param master 元の鍵です。
+     * @param purpose 鍵の用途です。
+     * @return 元の鍵から用途毎に導出した 256 bit の鍵を返します。
+     * @throws GeneralSecurityException 導出できなかった場合に throw します。
+     */
+    private byte[] derive(byte[] master, String purpose) throws GeneralSecurityException {
+        mMac.init(new SecretKeySpec(master, "HmacSHA256"));
+        return mMac.doFinal(purpose.getBytes(MappedPreferences.UTF_8));
+    }
+
+    /**
+     * @param values 変換する値です。
+     * @return 値を {@link MappedPreferences} と同じ型の識別子を付けた binary に変換して返します。
+     * @throws IOException 変換できなかった場合に throw します。
+     */
+    private static byte[] serialize(Map<String, ?> values) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(values.size());
+        for (Map.Entry<String, ?> entry : values.entrySet()) {
+            final Object value = entry.getValue();
+            if (value instanceof Boolean) {
+                out.writeByte(MappedPreferences.TYPE_BOOLEAN);
+                writeString(out, entry.getKey());
+                out.writeBoolean((Boolean) value);
+            } else if (value instanceof Integer) {
+                out.writeByte(MappedPreferences.TYPE_INT);
+                writeString(out, entry.getKey());
+                out.writeInt((Integer) value);
+            } else if (value instanceof Long) {
+                out.writeByte(MappedPreferences.TYPE_LONG);
+                writeString(out, entry.getKey());
+                out.writeLong((Long) value);
+            } else if (value instanceof Float) {
+                out.writeByte(MappedPreferences.TYPE_FLOAT);
+                writeString(out, entry.getKey());
+                out.writeFloat((Float) value);
+            } else if (value instanceof String) {
+                out.writeByte(MappedPreferences.TYPE_STRING);
+                writeString(out, entry.getKey());
+                writeString(out, (String) value);
+            } else if (value instanceof Set) {
+                out.writeByte(MappedPreferences.TYPE_STRING_SET);
+                writeString(out, entry.getKey());
+                Set<?> set = (Set<?>) value;
+                out.writeInt(set.size());
+                for (Object member : set) {
+                    writeString(out, (String) member);
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported value type: " + value);
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param bytes {@link #serialize(Map)} で変換した binary です。
+     * @return 変換前の値を返します。
+     * @throws IOException 変換できなかった場合に throw します。
+     */
+    private static Map<String, Object> deserialize(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        final int count = in.readInt();
+        Map<String, Object> values = new HashMap<>();
+        for (int index = 0; index < count; index++) {
+            final byte type = in.readByte();
+            final String key = readString(in);
+            switch (type) {
+                case MappedPreferences.TYPE_BOOLEAN:
+                    values.put(key, in.readBoolean());
+                    break;
+                case MappedPreferences.TYPE_INT:
+                    values.put(key, in.readInt());
+                    break;
+                case MappedPreferences.TYPE_LONG:
+                    values.put(key, in.readLong());
+                    break;
+                case MappedPreferences.TYPE_FLOAT:
+                    values.put(key, in.readFloat());
+                    break;
+                case MappedPreferences.TYPE_STRING:
+                    values.put(key, readString(in));
+                    break;
+                case MappedPreferences.TYPE_STRING_SET:
+                    final int size = in.readInt();
+                    Set<String> set = new HashSet<>();
+                    for (int member = 0; member < size; member++) {
+                        set.add(readString(in));
+                    }
+                    values.put(key, Collections.unmodifiableSet(set));
+                    break;
+                default:
+                    throw new IOException("Unknown value type: " + type);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param out 書き込む stream です。
+     * @param value Length 付きで書き込む文字列です。
+     * @throws IOException 書き込めなかった場合に throw します。
+     */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes(MappedPreferences.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param in 読み込む stream です。
+     * @return Length 付きの文字列を読み込んで返します。
+     * @throws IOException 読み込めなかった場合に throw します。
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, MappedPreferences.UTF_8);
+    }
+}
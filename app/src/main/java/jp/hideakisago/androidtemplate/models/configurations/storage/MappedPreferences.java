@@ -0,0 +1,800 @@
+package jp.hideakisago.androidtemplate.models.configurations.storage;
+
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * 値を binary 形式の memory-mapped file に保存する {@link android.content.SharedPreferences} です。
+ *
+ * File は header と record の列で構成します。 変更した値だけを record として末尾に追記するため、
+ * XML の SharedPreferences のように apply 毎に file 全体を書き直しません。
+ * 読み込みは file を1回 mmap して record を先頭から順に反映するだけです。
+ * <p>
+ * Record は「length (int) | CRC32 (int) | payload」の形式で、 length を最後に書き込みます。
+ * 書き込み中に process が終了した場合でも、 length が 0 か CRC32 が一致しない record 以降を無視するため、
+ * それまでに保存した値は失われません。
+ * <p>
+ * 追記する領域が無くなった場合や、上書きされて不要になった record が有効な record より多くなった場合は、
+ * 有効な値だけを一時 file に書き出して rename で置き換えます (compaction)。
+ * <p>
+ * {@link #openMultiProcess(File)} で開いた場合は、複数の process で同じ file を共有します。
+ * 書き込みは「&lt;file>.lock」の {@link FileLock} で process 間で排他し、 header の sequence を増やします。
+ * 読み込み側は {@link #getVersion()} で map した header の sequence を lock 無しで確認し、
+ * 変わっていれば {@link #sync()} で前回以降に追記された record だけを取り込みます。
+ * 他の process が compaction した場合は、古い file に置き換えたことを記録するため、 map し直して差分を取り込みます。
+ * また、書き込みの度に lock file に sequence を書き込み、 {@link FileObserver} で他の process に変更を通知します。
+ * <p>
+ * 同じ file を1つの process で複数の instance で開かないよう、 {@link #open(File)} で取得してください。
+ */
+public class MappedPreferences extends AbsMemoryPreferences implements VersionedPreferences {
+
+    /** File の識別子。 */
+    static final int MAGIC = 0x43464721;
+
+    /** File format の version。 */
+    static final int VERSION = 1;
+
+    /** Header の size。 */
+    static final int HEADER_SIZE = 32;
+
+    /** Header の、変更毎に増やす sequence (long) の位置。 */
+    static final int SEQUENCE_OFFSET = 8;
+
+    /** Header の、書き込み済みの record の終端 (int) の位置。 0 の場合は壊れた record まで読み込みます。 */
+    static final int END_OFFSET = 16;
+
+    /** Header の、 compaction で置き換えたかどうか (int) の位置。 */
+    static final int REPLACED_OFFSET = 20;
+
+    /** Record の length と CRC32 の size。 */
+    static final int RECORD_HEADER_SIZE = 8;
+
+    /** File の最小の size。 */
+    static final int MIN_FILE_SIZE = 4 * 1024;
+
+    /** 不要な record がこの size を超え、かつ有効な record より多くなった場合に compaction します。 */
+    static final int COMPACTION_THRESHOLD = 4 * 1024;
+
+    /** 値の削除を表す record の型。 */
+    static final byte TYPE_REMOVED = 0;
+
+    /** boolean の record の型。 */
+    static final byte TYPE_BOOLEAN = 1;
+
+    /** int の record の型。 */
+    static final byte TYPE_INT = 2;
+
+    /** long の record の型。 */
+    static final byte TYPE_LONG = 3;
+
+    /** float の record の型。 */
+    static final byte TYPE_FLOAT = 4;
+
+    /** String の record の型。 */
+    static final byte TYPE_STRING = 5;
+
+    /** String set の record の型。 */
+    static final byte TYPE_STRING_SET = 6;
+
+    /** 文字列の charset。 */
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** 開いている instance。 */
+    private static final Map<File, MappedPreferences> INSTANCES = new HashMap<>();
+
+    /**
+     * Lock file 毎の、 process 内で {@link FileLock} の取得を直列化する lock。
+     * {@link FileLock} は process 単位のため、同じ process の instance 同士は排他できません。
+     */
+    private static final Map<File, ReentrantLock> PROCESS_LOCKS = new HashMap<>();
+
+    /** 保存先の file。 */
+    private final File mFile;
+
+    /** 複数の process で共有するかどうか。 */
+    private final boolean mMultiProcess;
+
+    /** Process 間で排他するための lock file の channel。 共有しない場合は null です。 */
+    private final FileChannel mLockChannel;
+
+    /** 同じ lock file の {@link FileLock} の取得を process 内で直列化する lock。 共有しない場合は null です。 */
+    private final ReentrantLock mProcessLock;
+
+    /** 書き込み中に保持している {@link FileLock}。 */
+    private FileLock mWriteLock;
+
+    /** 他の process の変更を監視する observer。 Garbage collect されないよう保持します。 */
+    private FileObserver mObserver;
+
+    /** File を map した buffer。 {@link #getVersion()} が lock 無しで参照します。 */
+    private volatile MappedByteBuffer mBuffer;
+
+    /** 取り込み済みの sequence。 */
+    private volatile long mSequence;
+
+    /** 次に record を書き込む位置。 */
+    private int mEnd;
+
+    /** Key 毎の、有効な record の size。 */
+    private final Map<String, Integer> mRecordSizes = new HashMap<>();
+
+    /** 有効な record の size の合計。 */
+    private int mLiveBytes;
+
+    /**
+     * 指定した file の instance を取得します。
+     * 同じ file の instance は共有し、 listener は UI thread で呼び出します。
+     *
+     * @param file 保存先の file です。
+     * @return Instance を返します。
+     * @throws IOException File を開けなかった場合に throw します。
+     */
+    public static MappedPreferences open(File file) throws IOException {
+        return open(file, false);
+    }
+
+    /**
+     * 複数の process で共有する、指定した file の instance を取得します。
+     * 同じ file の instance は共有し、 listener は UI thread で呼び出します。
+     * 他の process の変更は {@link FileObserver} で検出して取り込みます。
+     *
+     * @param file 保存先の file です。
+     * @return Instance を返します。
+     * @throws IOException File を開けなかった場合に throw します。
+     */
+    public static MappedPreferences openMultiProcess(File file) throws IOException {
+        return open(file, true);
+    }
+
+    /**
+     * 指定した file の instance を取得します。
+     *
+     * @param file 保存先の file です。
+     * @param multiProcess 複数の process で共有する場合は true です。
+     * @return Instance を返します。
+     * @throws IOException File を開けなかった場合に throw します。
+     */
+    private static MappedPreferences open(File file, boolean multiProcess) throws IOException {
+        synchronized (INSTANCES) {
+            MappedPreferences prefs = INSTANCES.get(file);
+            if (prefs == null) {
+                final Handler handler = new Handler(Looper.getMainLooper());
+                prefs = new MappedPreferences(file, multiProcess, handler::post);
+                if (multiProcess) {
+                    prefs.startObserving();
+                }
+                INSTANCES.put(file, prefs);
+            } else if (prefs.mMultiProcess != multiProcess) {
+                throw new IllegalStateException(file + " is already opened with multiProcess="
+                        + prefs.mMultiProcess);
+            }
+            return prefs;
+        }
+    }
+
+    /**
+     * File を開いて保存済みの値を読み込みます。 他の process とは共有しません。
+     *
+     * @param file 保存先の file です。 存在しない場合は作成します。
+     * @param listenerExecutor Listener を呼び出す executor です。
+     * @throws IOException File を開けなかった場合に throw します。
+     */
+    @VisibleForTesting
+    MappedPreferences(File file, Executor listenerExecutor) throws IOException {
+        this(file, false, listenerExecutor);
+    }
+
+    /**
+     * File を開いて保存済みの値を読み込みます。
+     *
+     * @param file 保存先の file です。 存在しない場合は作成します。
+     * @param multiProcess 複数の process で共有する場合は true です。
+     * @param listenerExecutor Listener を呼び出す executor です。
+     * @throws IOException File を開けなかった場合に throw します。
+     */
+    @VisibleForTesting
+    MappedPreferences(File file, boolean multiProcess, Executor listenerExecutor) throws IOException {
+        super(listenerExecutor);
+        mFile = file;
+        mMultiProcess = multiProcess;
+        if (multiProcess) {
+            File lockFile = new File(file.getPath() + ".lock");
+            mLockChannel = new RandomAccessFile(lockFile, "rw").getChannel();
+            synchronized (PROCESS_LOCKS) {
+                ReentrantLock processLock = PROCESS_LOCKS.get(lockFile);
+                if (processLock == null) {
+                    processLock = new ReentrantLock();
+                    PROCESS_LOCKS.put(lockFile, processLock);
+                }
+                mProcessLock = processLock;
+            }
+        } else {
+            mLockChannel = null;
+            mProcessLock = null;
+        }
+
+        synchronized (mLock) {
+            FileLock fileLock = lockFile(false);
+            try {
+                if (!file.exists() || file.length() < HEADER_SIZE) {
+                    writeFile(Collections.<String, Object>emptyMap(), 0);
+                }
+                map();
+                Map<String, Object> values = new HashMap<>();
+                if (!read(values)) {
+                    mLog.w("Unknown file format. Replace with an empty file: {}", file);
+                    writeFile(Collections.<String, Object>emptyMap(), 0);
+                    map();
+                    read(values);
+                }
+                load(values);
+            } finally {
+                unlockFile(fileLock);
+            }
+        }
+    }
+
+    /**
+     * Lock file の変更の監視を開始します。
+     */
+    private void startObserving() {
+        mObserver = new FileObserver(mFile.getPath() + ".lock", FileObserver.MODIFY) {
+            @Override
+            public void onEvent(int event, String path) {
+                sync();
+            }
+        };
+        mObserver.startWatching();
+    }
+
+    @Override
+    public long getVersion() {
+        if (!mMultiProcess) {
+            return 0;
+        }
+        return mBuffer.getLong(SEQUENCE_OFFSET);
+    }
+
+    @NonNull
+    @Override
+    public List<String> sync() {
+        if (!mMultiProcess || mBuffer.getLong(SEQUENCE_OFFSET) == mSequence) {
+            return Collections.emptyList();
+        }
+        List<String> keys = new ArrayList<>();
+        synchronized (mLock) {
+            try {
+                FileLock fileLock = lockFile(true);
+                try {
+                    pull(keys);
+                } finally {
+                    unlockFile(fileLock);
+                }
+            } catch (IOException e) {
+                mLog.e("Failed to sync preferences.", e);
+            }
+        }
+        notifyListeners(new ArrayList<>(keys));
+        return keys;
+    }
+
+    @Override
+    protected void onBeginWrite(List<String> changedKeys) throws IOException {
+        mWriteLock = lockFile(false);
+        try {
+            pull(changedKeys);
+        } catch (IOException e) {
+            onEndWrite();
+            throw e;
+        }
+    }
+
+    @Override
+    protected void onEndWrite() {
+        FileLock fileLock = mWriteLock;
+        mWriteLock = null;
+        unlockFile(fileLock);
+    }
+
+    @Override
+    protected void persist(Map<String, Object> all, Map<String, Object> changes, boolean cleared, boolean sync)
+            throws IOException {
+        ByteBuffer[] records = new ByteBuffer[changes.size()];
+        int length = 0;
+        int index = 0;
+        for (Map.Entry<String, Object> entry : changes.entrySet()) {
+            records[index] = encode(entry.getKey(), entry.getValue());
+            length += records[index].remaining();
+            index++;
+        }
+
+        final int garbage = mEnd - HEADER_SIZE - mLiveBytes;
+        if (cleared
+                || mEnd + length > mBuffer.capacity()
+                || (garbage > COMPACTION_THRESHOLD && garbage > mLiveBytes)) {
+            compact(all);
+        } else {
+            index = 0;
+            for (Map.Entry<String, Object> entry : changes.entrySet()) {
+                append(entry.getKey(), entry.getValue() == null, records[index++]);
+            }
+            // 終端と sequence を最後に書き込み、他の process が書き込み途中の record を取り込まないようにします。
+            mBuffer.putInt(END_OFFSET, mEnd);
+            mSequence++;
+            mBuffer.putLong(SEQUENCE_OFFSET, mSequence);
+            if (sync) {
+                mBuffer.force();
+            }
+        }
+        notifyOtherProcesses();
+    }
+
+    /**
+     * 他の process の変更を取り込みます。 {@link #mLock} と {@link FileLock} を取得して呼び出してください。
+     *
+     * @param changedKeys 値が変わった key を追加します。
+     * @throws IOException Compaction された file を開けなかった場合に throw します。
+     */
+    private void pull(List<String> changedKeys) throws IOException {
+        if (!mMultiProcess || mBuffer.getLong(SEQUENCE_OFFSET) == mSequence) {
+            return;
+        }
+        if (mBuffer.getInt(REPLACED_OFFSET) != 0) {
+            map();
+            Map<String, Object> values = new HashMap<>();
+            read(values);
+            mergeAll(values, changedKeys);
+        } else {
+            Map<String, Object> changes = new HashMap<>();
+            mEnd = readRecords(mEnd, mBuffer.getInt(END_OFFSET), changes);
+            mSequence = mBuffer.getLong(SEQUENCE_OFFSET);
+            merge(changes, changedKeys);
+        }
+    }
+
+    /**
+     * Lock file に sequence を書き込み、他の process の {@link FileObserver} に変更を通知します。
+     *
+     * @throws IOException 書き込めなかった場合に throw します。
+     */
+    private void notifyOtherProcesses() throws IOException {
+        if (!mMultiProcess) {
+            return;
+        }
+        ByteBuffer sequence = ByteBuffer.allocate(8);
+        sequence.putLong(0, mSequence);
+        mLockChannel.write(sequence, 0);
+    }
+
+    /**
+     * 複数の process で共有する場合に、 lock file の {@link FileLock} を取得します。
+     *
+     * @param shared 読み込みのみの場合は true を指定します。
+     * @return 取得した lock を返します。 共有しない場合は null を返します。
+     * @throws IOException 取得できなかった場合に throw します。
+     */
+    private FileLock lockFile(boolean shared) throws IOException {
+        if (!mMultiProcess) {
+            return null;
+        }
+        mProcessLock.lock();
+        try {
+            return mLockChannel.lock(0, Long.MAX_VALUE, shared);
+        } catch (IOException | RuntimeException e) {
+            mProcessLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * {@link #lockFile(boolean)} で取得した lock を解放します。
+     *
+     * @param fileLock 解放する lock です。 null の場合は何もしません。
+     */
+    private void unlockFile(FileLock fileLock) {
+        if (fileLock == null) {
+            return;
+        }
+        try {
+            fileLock.release();
+        } catch (IOException e) {
+            mLog.w("Failed to release the file lock.", e);
+        } finally {
+            mProcessLock.unlock();
+        }
+    }
+
+    /**
+     * @return Record を書き込んだ領域の size を返します。
+     */
+    @VisibleForTesting
+    int getUsedBytes() {
+        synchronized (mLock) {
+            return mEnd;
+        }
+    }
+
+    /**
+     * 有効な値だけを書き出した file で置き換えます。
+     *
+     * @param all 全ての値です。
+     * @throws IOException 書き込めなかった場合に throw します。
+     */
+    private void compact(Map<String, Object> all) throws IOException {
+        final long sequence = mSequence + 1;
+        writeFile(all, sequence);
+        if (mMultiProcess) {
+            // 古い file を map している他の process に、 map し直すよう伝えます。
+            mBuffer.putInt(REPLACED_OFFSET, 1);
+            mBuffer.putLong(SEQUENCE_OFFSET, sequence);
+        }
+        map();
+        read(new HashMap<String, Object>());
+    }
+
+    /**
+     * 全ての値を一時 file に書き出し、 rename で保存先の file を置き換えます。
+     *
+     * File の size は record の合計の2倍以上にし、追記する領域を確保します。
+     *
+     * @param all 書き出す値です。
+     * @param sequence Header に書き込む sequence です。
+     * @throws IOException 書き込めなかった場合に throw します。
+     */
+    private void writeFile(Map<String, Object> all, long sequence) throws IOException {
+        ByteBuffer[] records = new ByteBuffer[all.size()];
+        int length = 0;
+        int index = 0;
+        for (Map.Entry<String, Object> entry : all.entrySet()) {
+            records[index] = encode(entry.getKey(), entry.getValue());
+            length += records[index].remaining();
+            index++;
+        }
+        int fileSize = MIN_FILE_SIZE;
+        while (fileSize < (HEADER_SIZE + length) * 2) {
+            fileSize *= 2;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(fileSize);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(SEQUENCE_OFFSET, sequence);
+        buffer.putInt(END_OFFSET, HEADER_SIZE + length);
+        buffer.position(HEADER_SIZE);
+        for (ByteBuffer record : records) {
+            buffer.put(record);
+        }
+        buffer.rewind();
+
+        File temp = new File(mFile.getPath() + ".tmp");
+        RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+        try {
+            raf.setLength(0);
+            FileChannel channel = raf.getChannel();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } finally {
+            raf.close();
+        }
+        if (!temp.renameTo(mFile)) {
+            throw new IOException("Failed to rename " + temp + " to " + mFile);
+        }
+    }
+
+    /**
+     * 保存先の file を map します。
+     *
+     * @throws IOException File を開けなかった場合に throw します。
+     */
+    private void map() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            mBuffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        } finally {
+            // Mapping は channel を閉じても有効です。
+            raf.close();
+        }
+    }
+
+    /**
+     * Map した file から record を順に読み込みます。
+     * 壊れた record 以降は無視し、その領域を 0 で埋めて次の書き込み位置にします。
+     *
+     * @param values 読み込んだ値を設定する map です。
+     * @return Header が正しい場合は true を返します。
+     */
+    private boolean read(Map<String, Object> values) {
+        mRecordSizes.clear();
+        mLiveBytes = 0;
+        mEnd = HEADER_SIZE;
+        if (mBuffer.capacity() < HEADER_SIZE
+                || mBuffer.getInt(0) != MAGIC
+                || mBuffer.getInt(4) != VERSION) {
+            return false;
+        }
+
+        final int capacity = mBuffer.capacity();
+        final int position = readRecords(HEADER_SIZE, capacity, values);
+        mEnd = position;
+        for (Iterator<Object> iterator = values.values().iterator(); iterator.hasNext(); ) {
+            if (iterator.next() == null) {
+                iterator.remove();
+            }
+        }
+
+        for (int index = position; index < capacity; index++) {
+            if (mBuffer.get(index) != 0) {
+                mBuffer.put(index, (byte) 0);
+            }
+        }
+        mBuffer.putInt(END_OFFSET, position);
+        mSequence = mBuffer.getLong(SEQUENCE_OFFSET);
+        return true;
+    }
+
+    /**
+     * 指定した範囲の record を順に読み込みます。 壊れた record で読み込みを終了します。
+     *
+     * @param from 読み込みを開始する位置です。
+     * @param to 読み込みを終了する位置です。
+     * @param values 読み込んだ値を設定する map です。 削除した key の値は null にします。
+     * @return 読み込んだ最後の record の次の位置を返します。
+     */
+    private int readRecords(int from, int to, Map<String, Object> values) {
+        final int capacity = Math.min(to, mBuffer.capacity());
+        int position = from;
+        while (position + RECORD_HEADER_SIZE <= capacity) {
+            final int length = mBuffer.getInt(position);
+            if (length <= 0 || length > capacity - position - RECORD_HEADER_SIZE) {
+                break;
+            }
+            ByteBuffer payload = slice(position + RECORD_HEADER_SIZE, length);
+            if (crc(payload) != mBuffer.getInt(position + 4)) {
+                break;
+            }
+            if (!decode(payload, values, RECORD_HEADER_SIZE + length)) {
+                break;
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    /**
+     * Record を末尾に追記します。
+     *
+     * @param key Key です。
+     * @param removed 削除した値の record の場合は true です。
+     * @param record {@link #encode(String, Object)} で作成した record です。
+     */
+    private void append(String key, boolean removed, ByteBuffer record) {
+        final int size = record.remaining();
+        // Length を最後に書き込み、書き込み途中の record を読み込まないようにします。
+        mBuffer.position(mEnd + 4);
+        record.position(4);
+        mBuffer.put(record);
+        mBuffer.putInt(mEnd, size - RECORD_HEADER_SIZE);
+        mEnd += size;
+
+        Integer previous = removed ? mRecordSizes.remove(key) : mRecordSizes.put(key, size);
+        mLiveBytes += (removed ? 0 : size) - (previous != null ? previous : 0);
+    }
+
+    /**
+     * 値を record に変換します。
+     *
+     * @param key Key です。
+     * @param value 値です。 削除した場合は null です。
+     * @return Length と CRC32 を含む record を返します。
+     */
+    static ByteBuffer encode(String key, Object value) {
+        final byte[] keyBytes = key.getBytes(UTF_8);
+        final byte type;
+        byte[][] strings = null;
+        int valueLength;
+        if (value == null) {
+            type = TYPE_REMOVED;
+            valueLength = 0;
+        } else if (value instanceof Boolean) {
+            type = TYPE_BOOLEAN;
+            valueLength = 1;
+        } else if (value instanceof Integer) {
+            type = TYPE_INT;
+            valueLength = 4;
+        } else if (value instanceof Long) {
+            type = TYPE_LONG;
+            valueLength = 8;
+        } else if (value instanceof Float) {
+            type = TYPE_FLOAT;
+            valueLength = 4;
+        } else if (value instanceof String) {
+            type = TYPE_STRING;
+            strings = new byte[][] {((String) value).getBytes(UTF_8)};
+            valueLength = 4 + strings[0].length;
+        } else if (value instanceof Set) {
+            type = TYPE_STRING_SET;
+            Set<?> set = (Set<?>) value;
+            strings = new byte[set.size()][];
+            valueLength = 4;
+            int index = 0;
+            for (Object member : set) {
+                strings[index] = ((String) member).getBytes(UTF_8);
+                valueLength += 4 + strings[index].length;
+                index++;
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported value type: " + value.getClass());
+        }
+
+        final int payloadLength = 1 + 2 + keyBytes.length + valueLength;
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payloadLength);
+        record.putInt(payloadLength);
+        record.putInt(0);
+        record.put(type);
+        record.putShort((short) keyBytes.length);
+        record.put(keyBytes);
+        switch (type) {
+            case TYPE_BOOLEAN:
+                record.put((byte) ((Boolean) value ? 1 : 0));
+                break;
+            case TYPE_INT:
+                record.putInt((Integer) value);
+                break;
+            case TYPE_LONG:
+                record.putLong((Long) value);
+                break;
+            case TYPE_FLOAT:
+                record.putFloat((Float) value);
+                break;
+            case TYPE_STRING:
+                record.putInt(strings[0].length);
+                record.put(strings[0]);
+                break;
+            case TYPE_STRING_SET:
+                record.putInt(strings.length);
+                for (byte[] member : strings) {
+                    record.putInt(member.length);
+                    record.put(member);
+                }
+                break;
+            default:
+                break;
+        }
+        record.putInt(4, crc(slice(record, RECORD_HEADER_SIZE, payloadLength)));
+        record.rewind();
+        return record;
+    }
+
+    /**
+     * Record の payload を読み込み、値を反映します。
+     *
+     * @param payload Record の payload です。
+     * @param values 値を反映する map です。 削除した key の値は null にします。
+     * @param recordSize Length と CRC32 を含む record の size です。
+     * @return 読み込めた場合は true を返します。
+     */
+    private boolean decode(ByteBuffer payload, Map<String, Object> values, int recordSize) {
+        try {
+            final byte type = payload.get();
+            final byte[] keyBytes = new byte[payload.getShort() & 0xffff];
+            payload.get(keyBytes);
+            final String key = new String(keyBytes, UTF_8);
+
+            final Object value;
+            switch (type) {
+                case TYPE_REMOVED:
+                    value = null;
+                    break;
+                case TYPE_BOOLEAN:
+                    value = payload.get() != 0;
+                    break;
+                case TYPE_INT:
+                    value = payload.getInt();
+                    break;
+                case TYPE_LONG:
+                    value = payload.getLong();
+                    break;
+                case TYPE_FLOAT:
+                    value = payload.getFloat();
+                    break;
+                case TYPE_STRING:
+                    value = readString(payload);
+                    break;
+                case TYPE_STRING_SET:
+                    final int count = payload.getInt();
+                    Set<String> set = new HashSet<>();
+                    for (int index = 0; index < count; index++) {
+                        set.add(readString(payload));
+                    }
+                    value = Collections.unmodifiableSet(set);
+                    break;
+                default:
+                    return false;
+            }
+
+            Integer previous;
+            if (value == null) {
+                values.put(key, null);
+                previous = mRecordSizes.remove(key);
+                mLiveBytes -= previous != null ? previous : 0;
+            } else {
+                values.put(key, value);
+                previous = mRecordSizes.put(key, recordSize);
+                mLiveBytes += recordSize - (previous != null ? previous : 0);
+            }
+            return true;
+        } catch (RuntimeException e) {
+            // BufferUnderflowException などは壊れた record として扱います。
+            return false;
+        }
+    }
+
+    /**
+     * @param buffer 読み込む buffer です。
+     * @return Length 付きの文字列を読み込んで返します。
+     */
+    private static String readString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * @param offset 開始位置です。
+     * @param length 長さです。
+     * @return Map した file の指定した範囲を返します。
+     */
+    private ByteBuffer slice(int offset, int length) {
+        return slice(mBuffer, offset, length);
+    }
+
+    /**
+     * @param buffer 元の buffer です。
+     * @param offset 開始位置です。
+     * @param length 長さです。
+     * @return 指定した範囲を共有する buffer を返します。
+     */
+    private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer duplicate = buffer.duplicate();
+        duplicate.limit(offset + length);
+        duplicate.position(offset);
+        return duplicate.slice();
+    }
+
+    /**
+     * @param buffer 計算する範囲の buffer です。
+     * @return CRC32 の下位 32 bit を返します。
+     */
+    private static int crc(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        crc.update(bytes, 0, bytes.length);
+        return (int) crc.getValue();
+    }
+}
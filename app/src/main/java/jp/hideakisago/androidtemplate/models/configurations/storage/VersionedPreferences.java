@@ -0,0 +1,43 @@
+package jp.hideakisago.androidtemplate.models.configurations.storage;
+
+import android.content.SharedPreferences;
+import android.support.annotation.NonNull;
+
+import java.util.List;
+
+/**
+ * 他の process からの変更を version で検出できる {@link SharedPreferences} です。
+ *
+ * {@link #getVersion()} は lock 無しで呼び出せるため、読み込みの度に確認できます。
+ * Version が変わった場合に {@link #sync()} を呼び出すと、他の process の変更だけを取り込みます。
+ * <p>
+ * usage:
+ * <pre><code>
+ * if (prefs.getVersion() != mVersion) {
+ *     mVersion = prefs.getVersion();
+ *     for (String key : prefs.sync()) {
+ *         ...
+ *     }
+ * }
+ * </code></pre>
+ */
+public interface VersionedPreferences extends SharedPreferences {
+
+    /**
+     * Lock を取得せずに、保存先の version を返します。
+     *
+     * @return いずれかの process が変更する度に変わる値を返します。
+     *         他の process と共有しない場合は常に同じ値を返します。
+     */
+    long getVersion();
+
+    /**
+     * 他の process の変更を取り込みます。
+     *
+     * 取り込んだ変更は {@link OnSharedPreferenceChangeListener} にも通知します。
+     *
+     * @return 取り込んだ変更の key を返します。 全て消去された場合は null を含みます。 変更が無い場合は空です。
+     */
+    @NonNull
+    List<String> sync();
+}
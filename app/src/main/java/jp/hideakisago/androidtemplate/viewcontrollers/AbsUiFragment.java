@@ -1,23 +1,57 @@
 package jp.hideakisago.androidtemplate.viewcontrollers;
 
 import android.os.Bundle;
+import android.os.Parcelable;
 import android.support.annotation.CallSuper;
 import android.support.annotation.LayoutRes;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import java.util.HashMap;
+import java.util.Map;
 
 import jp.hideakisago.androidtemplate.App;
+import jp.hideakisago.androidtemplate.libraries.utilities.BackgroundInflater;
 import jp.hideakisago.androidtemplate.libraries.utilities.ViewFinder;
+import jp.hideakisago.androidtemplate.libraries.utilities.log.Logger;
+import jp.hideakisago.androidtemplate.models.configurations.AbsConfig;
 import jp.hideakisago.androidtemplate.models.configurations.AppConfig;
 
 /**
  * 画面を持つ fragment の抽象 class です。
+ *
+ * Layout の inflate 、 {@link #onFindView(ViewFinder)} 、 {@link #onInitView(Bundle)} は
+ * それぞれ trace の section として記録されます。
+ * {@link #isAsyncInflationEnabled()} で true を返すと、 layout を background thread で inflate します。
+ * {@link #bindConfig(AbsConfig, AbsConfig.OnConfigChangeListener, AbsConfig.AbsEntry...)} で監視した config は、
+ * {@link #onDestroyView()} で監視を解除します。
+ *
+ * @see Logger#beginSection(String)
  */
 public abstract class AbsUiFragment extends LoggerFragment {
 
+    /** Fragment が保存した状態の中で、 view の状態を保持している key (FragmentManagerImpl.VIEW_STATE_TAG)。 */
+    private static final String VIEW_STATE_KEY = "android:view_state";
+
+    /** Background thread での inflate 要求。 Inflate 中でない場合は null です。 */
+    @Nullable
+    private BackgroundInflater.Request mInflateRequest;
+
+    /** Background thread での inflate 完了時に {@link #onInitView(Bundle)} に渡す状態。 */
+    @Nullable
+    private Bundle mSavedInstanceState;
+
+    /** {@link #onFindView(ViewFinder)} と {@link #onInitView(Bundle)} が完了しているかどうか。 */
+    private boolean mContentViewReady;
+
+    /** View を表示している間に監視する config の listener。 Config は listener を弱参照で保持するため、ここで保持します。 */
+    private final Map<AbsConfig.OnConfigChangeListener, AbsConfig> mConfigBindings = new HashMap<>();
+
     /**
      * この画面の layout id を取得します。
      *
@@ -29,13 +63,52 @@ public abstract class AbsUiFragment extends LoggerFragment {
     @LayoutRes
     protected abstract int getLayoutId();
 
+    /**
+     * Layout を background thread で inflate するかどうかを取得します。
+     *
+     * true を返した場合、 {@link #onCreateView(LayoutInflater, ViewGroup, Bundle)} は空の container を返し、
+     * Inflate した layout を container に追加した後で {@link #onFindView(ViewFinder)} と
+     * {@link #onInitView(Bundle)} を呼び出します。
+     * そのため onStart や onResume の時点で view が揃っていない場合があります。 {@link #isContentViewReady()} で確認してください。
+     * Inflate した layout の view の状態は、 onInitView の後に復元します。
+     * ただし inflate の完了前に状態を保存した場合、 view の状態は保存されません。
+     * <p>
+     * Inflate に時間がかかる layout の場合に override して true を返してください。
+     *
+     * @return Background thread で inflate する場合は true を返します。 default は false です。
+     * @see BackgroundInflater
+     */
+    protected boolean isAsyncInflationEnabled() {
+        return false;
+    }
+
+    /**
+     * @return {@link #onFindView(ViewFinder)} と {@link #onInitView(Bundle)} が完了している場合は true を返します。
+     */
+    protected final boolean isContentViewReady() {
+        return mContentViewReady;
+    }
+
     @CallSuper
     @NonNull
     @Override
     public View onCreateView(
             LayoutInflater inflater, ViewGroup container, @Nullable Bundle savedInstanceState) {
         super.onCreateView(inflater, container, savedInstanceState);
-        return inflater.inflate(getLayoutId(), container, false);
+        if (isAsyncInflationEnabled()) {
+            FrameLayout placeholder = new FrameLayout(inflater.getContext());
+            placeholder.setLayoutParams(new ViewGroup.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT));
+            mInflateRequest = BackgroundInflater.inflate(
+                    inflater, getLayoutId(), placeholder, view -> onInflated(placeholder, view));
+            return placeholder;
+        }
+        mLog.beginSection("inflate");
+        try {
+            return inflater.inflate(getLayoutId(), container, false);
+        } finally {
+            mLog.endSection();
+        }
     }
 
     @CallSuper
@@ -43,15 +116,82 @@ public abstract class AbsUiFragment extends LoggerFragment {
     public void onViewCreated(View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        onFindView(new ViewFinder(view));
+        if (mInflateRequest != null) {
+            // Background thread で inflate 中のため、完了時に初期化します。
+            mSavedInstanceState = savedInstanceState;
+            return;
+        }
+        onContentViewCreated(view, savedInstanceState);
+    }
+
+    @CallSuper
+    @Override
+    public void onDestroyView() {
+        if (mInflateRequest != null) {
+            mInflateRequest.cancel();
+            mInflateRequest = null;
+        }
+        mSavedInstanceState = null;
+        mContentViewReady = false;
+        for (Map.Entry<AbsConfig.OnConfigChangeListener, AbsConfig> binding : mConfigBindings.entrySet()) {
+            binding.getValue().unregisterOnConfigChangeListener(binding.getKey());
+        }
+        mConfigBindings.clear();
+        super.onDestroyView();
+    }
+
+    /**
+     * Background thread での inflate が完了した時に呼び出されます。
+     *
+     * Fragment は空の container に対して view の状態を復元済みのため、 inflate した layout の状態をここで復元します。
+     * View の破棄後に完了した場合は {@link BackgroundInflater.Request#cancel()} により呼び出されません。
+     *
+     * @param placeholder {@link #onCreateView(LayoutInflater, ViewGroup, Bundle)} で返した container です。
+     * @param view Inflate した layout です。
+     */
+    private void onInflated(ViewGroup placeholder, View view) {
+        mInflateRequest = null;
+        placeholder.addView(view);
+
+        Bundle savedInstanceState = mSavedInstanceState;
+        mSavedInstanceState = null;
+        onContentViewCreated(view, savedInstanceState);
+
+        if (savedInstanceState != null) {
+            SparseArray<Parcelable> viewState = savedInstanceState.getSparseParcelableArray(VIEW_STATE_KEY);
+            if (viewState != null) {
+                view.restoreHierarchyState(viewState);
+            }
+        }
+    }
+
+    /**
+     * Layout の view が揃った時に、 view を探して初期化します。
+     *
+     * @param view Layout の root view です。
+     * @param savedInstanceState null でないの場合、この fragment は以前に保存した状態から再構築されています。
+     */
+    private void onContentViewCreated(View view, @Nullable Bundle savedInstanceState) {
+        mLog.beginSection("onFindView");
+        try {
+            onFindView(new ViewFinder(view).indexAll());
+        } finally {
+            mLog.endSection();
+        }
 
-        onInitView(savedInstanceState);
+        mLog.beginSection("onInitView");
+        try {
+            onInitView(savedInstanceState);
+        } finally {
+            mLog.endSection();
+        }
+        mContentViewReady = true;
     }
 
     /**
      * この画面で利用する view を全て探し、 field に保持します。
      *
-     * @param view View を見つけるための helper です。
+     * @param view View を見つけるための helper です。 Layout 内の ID を持つ view は index 済みです。
      */
     @CallSuper
     protected void onFindView(ViewFinder view) {
@@ -68,6 +208,22 @@ public abstract class AbsUiFragment extends LoggerFragment {
         mLog.trace(savedInstanceState);
     }
 
+    /**
+     * View を表示している間、 config の entry の変更を監視します。
+     *
+     * {@link #onInitView(Bundle)} で呼び出してください。 Listener は {@link #onDestroyView()} まで保持し、解除します。
+     * 値が変わった entry は frame 毎にまとめて通知されるため、変更の度に view を更新し直すことは有りません。
+     *
+     * @param config 監視する config です。
+     * @param listener 変更を受け取る listener です。
+     * @param entries 監視する entry です。 指定しない場合は全ての entry を監視します。
+     */
+    protected final void bindConfig(@NonNull AbsConfig config, @NonNull AbsConfig.OnConfigChangeListener listener,
+                                    @NonNull AbsConfig.AbsEntry... entries) {
+        config.registerOnConfigChangeListener(listener, entries);
+        mConfigBindings.put(listener, config);
+    }
+
     /**
      * @return {@link App} の instance を返します。
      */
@@ -4,6 +4,8 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.res.Configuration;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
@@ -18,19 +20,44 @@ import android.view.ViewGroup;
 import android.view.animation.Animation;
 
 import jp.hideakisago.androidtemplate.libraries.utilities.log.Logger;
+import jp.hideakisago.androidtemplate.libraries.utilities.profile.LifecycleProfiler;
 
 /**
  * 各 method で trace log を出力する fragment です。
  *
  * onXxx のうち、非推奨を除いた method で log を出力します。
+ * {@link LifecycleProfiler} が有効な場合は、主な lifecycle callback 間の所要時間も計測します。
  */
 public class LoggerFragment extends Fragment {
 
+    /** UI thread の handler。 */
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
     /** Log。 */
     protected final Logger mLog = Logger.Factory.create(this);
 
+    /** Lifecycle の計測。 計測が無効な場合は null です。 */
+    @Nullable
+    private final LifecycleProfiler.Session mProfile = LifecycleProfiler.startSession(getClass());
+
+    /** onResume 後に UI thread が空いた時点を記録する処理。 */
+    private final Runnable mMarkResumed = () -> mark(LifecycleProfiler.Callback.RESUMED);
+
+    /**
+     * Lifecycle callback の開始を記録します。
+     *
+     * @param callback 開始した callback です。
+     * @see LifecycleProfiler
+     */
+    private void mark(LifecycleProfiler.Callback callback) {
+        if (mProfile != null) {
+            mProfile.mark(callback);
+        }
+    }
+
     @Override
     public void onActivityCreated(@Nullable Bundle savedInstanceState) {
+        mark(LifecycleProfiler.Callback.ON_ACTIVITY_CREATED);
         mLog.trace(savedInstanceState);
         super.onActivityCreated(savedInstanceState);
     }
@@ -43,6 +70,7 @@ public class LoggerFragment extends Fragment {
 
     @Override
     public void onAttach(Context context) {
+        mark(LifecycleProfiler.Callback.ON_ATTACH);
         mLog.trace(context);
         super.onAttach(context);
     }
@@ -61,6 +89,7 @@ public class LoggerFragment extends Fragment {
 
     @Override
     public void onCreate(@Nullable Bundle savedInstanceState) {
+        mark(LifecycleProfiler.Callback.ON_CREATE);
         mLog.trace(savedInstanceState);
         super.onCreate(savedInstanceState);
     }
@@ -86,12 +115,15 @@ public class LoggerFragment extends Fragment {
     @Override
     public View onCreateView(
             LayoutInflater inflater, ViewGroup container, @Nullable Bundle savedInstanceState) {
+        mark(LifecycleProfiler.Callback.ON_CREATE_VIEW);
         mLog.trace(inflater, container, savedInstanceState);
         return super.onCreateView(inflater, container, savedInstanceState);
     }
 
     @Override
     public void onDestroy() {
+        MAIN_HANDLER.removeCallbacks(mMarkResumed);
+        mark(LifecycleProfiler.Callback.ON_DESTROY);
         mLog.trace();
         super.onDestroy();
     }
@@ -104,12 +136,14 @@ public class LoggerFragment extends Fragment {
 
     @Override
     public void onDestroyView() {
+        mark(LifecycleProfiler.Callback.ON_DESTROY_VIEW);
         mLog.trace();
         super.onDestroyView();
     }
 
     @Override
     public void onDetach() {
+        mark(LifecycleProfiler.Callback.ON_DETACH);
         mLog.trace();
         super.onDetach();
     }
@@ -146,6 +180,9 @@ public class LoggerFragment extends Fragment {
 
     @Override
     public void onPause() {
+        // すぐに pause された場合は、 resume が完了した時点を記録しません。
+        MAIN_HANDLER.removeCallbacks(mMarkResumed);
+        mark(LifecycleProfiler.Callback.ON_PAUSE);
         mLog.trace();
         super.onPause();
     }
@@ -165,8 +202,12 @@ public class LoggerFragment extends Fragment {
 
     @Override
     public void onResume() {
+        mark(LifecycleProfiler.Callback.ON_RESUME);
         mLog.trace();
         super.onResume();
+        if (mProfile != null) {
+            MAIN_HANDLER.post(mMarkResumed);
+        }
     }
 
     @Override
@@ -177,18 +218,21 @@ public class LoggerFragment extends Fragment {
 
     @Override
     public void onStart() {
+        mark(LifecycleProfiler.Callback.ON_START);
         mLog.trace();
         super.onStart();
     }
 
     @Override
     public void onStop() {
+        mark(LifecycleProfiler.Callback.ON_STOP);
         mLog.trace();
         super.onStop();
     }
 
     @Override
     public void onViewCreated(View view, @Nullable Bundle savedInstanceState) {
+        mark(LifecycleProfiler.Callback.ON_VIEW_CREATED);
         mLog.trace(view, savedInstanceState);
         super.onViewCreated(view, savedInstanceState);
     }
@@ -4,4 +4,7 @@ package jp.hideakisago.androidtemplate.defines;
  * Production flavor defines。
  */
 class FlavorDefines {
+
+    /** Fragment の lifecycle の所要時間を計測するかどうか。 */
+    public static final boolean LIFECYCLE_PROFILING_ENABLED = false;
 }
@@ -1,14 +1,17 @@
 package jp.hideakisago.androidtemplate.libraries.utilities.log;
 
-import android.content.Intent;
 import android.util.Log;
 
 /**
  * Log 出力を行う class です。
- * release 時は {@link Log#VERBOSE}, {@link Log#DEBUG} level の log は出力しません。
+ * release 時は default で {@link Log#VERBOSE}, {@link Log#DEBUG} level の log は出力しません。
+ * 出力する level は {@link LogLevels} で実行時に変更できます。
  */
 class LoggerImpl extends AbsLogger {
 
+    /** Tag 毎の設定が無い場合に出力する最低の log level。 */
+    static final int DEFAULT_MIN_LEVEL = Log.INFO;
+
     /**
      * Log 出力時の tag を指定して生成します。
      *
@@ -17,44 +20,4 @@ class LoggerImpl extends AbsLogger {
     public LoggerImpl(String tag) {
         super(tag);
     }
-
-    @Override
-    public void trace() {
-        // nothing
-    }
-
-    @Override
-    public void trace(Object... args) {
-        // nothing
-    }
-
-    @Override
-    public void dump(Intent intent) {
-        // nothing
-    }
-
-    @Override
-    public void v(String msg) {
-        // nothing
-    }
-
-    @Override
-    public void m(String msg) {
-        // nothing
-    }
-
-    @Override
-    public void d(String msg) {
-        // nothing
-    }
-
-    @Override
-    public void d(Throwable e) {
-        // nothing
-    }
-
-    @Override
-    public void d(String msg, Throwable e) {
-        // nothing
-    }
 }
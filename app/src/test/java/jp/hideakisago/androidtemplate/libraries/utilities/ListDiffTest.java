@@ -0,0 +1,133 @@
+package jp.hideakisago.androidtemplate.libraries.utilities;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link ListDiff} の test です。
+ */
+public class ListDiffTest {
+
+    /** 「key:内容」形式の文字列を比較する callback。 */
+    private static final ListDiff.Callback<String> CALLBACK = new ListDiff.Callback<String>() {
+        @NonNull
+        @Override
+        public Object getKey(@NonNull String item) {
+            return item.split(":")[0];
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull String oldItem, @NonNull String newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    @Test
+    public void compute_identicalListsHasNoOperation() {
+        List<String> list = Arrays.asList("a:1", "b:1", "c:1");
+
+        assertTrue(ListDiff.compute(list, new ArrayList<>(list), CALLBACK).isEmpty());
+    }
+
+    @Test
+    public void compute_touchesOnlyChangedRows() {
+        List<String> oldList = Arrays.asList("a:1", "b:1", "c:1", "d:1", "e:1");
+        List<String> newList = Arrays.asList("x:1", "a:1", "c:2", "e:1", "d:1");
+
+        ListDiff diff = ListDiff.compute(oldList, newList, CALLBACK);
+
+        // b の削除、 x の挿入、 e の移動、 c の変更のみです。
+        assertEquals(4, diff.size());
+        assertEquals(newList, apply(oldList, newList, diff));
+    }
+
+    @Test
+    public void compute_reordersAndReplacesAll() {
+        List<String> oldList = Arrays.asList("a:1", "b:1", "c:1", "d:1");
+        List<String> newList = Arrays.asList("d:1", "c:1", "y:1", "b:2", "a:1", "z:1");
+
+        assertEquals(newList, apply(oldList, newList, ListDiff.compute(oldList, newList, CALLBACK)));
+    }
+
+    @Test
+    public void compute_mergesFilteredRowsIntoRanges() {
+        List<String> oldList = new ArrayList<>();
+        for (int index = 0; index < 10000; index++) {
+            oldList.add(index + ":1");
+        }
+        List<String> newList = Arrays.asList("10:1", "11:2", "12:2", "5000:1", "9999:1");
+
+        ListDiff diff = ListDiff.compute(oldList, newList, CALLBACK);
+
+        // 0-9、 13-4999、 5001-9998 の削除の範囲と、 11-12 の変更の範囲のみです。
+        assertEquals(4, diff.size());
+        assertEquals(newList, apply(oldList, newList, diff));
+    }
+
+    @Test
+    public void compute_mergesConsecutiveInsertsIntoRange() {
+        List<String> oldList = Arrays.asList("a:1", "b:1");
+        List<String> newList = Arrays.asList("a:1", "x:1", "y:1", "z:1", "b:1");
+
+        ListDiff diff = ListDiff.compute(oldList, newList, CALLBACK);
+
+        assertEquals(1, diff.size());
+        assertEquals(newList, apply(oldList, newList, diff));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compute_rejectsDuplicateKey() {
+        ListDiff.compute(Arrays.asList("a:1", "a:2"), Arrays.asList("a:1"), CALLBACK);
+    }
+
+    /**
+     * 通知された操作を旧 list に順に適用します。 挿入と変更では、適用後の位置の新 list の要素を設定します。
+     * 操作が順に正しくなければ、最終的な list は新 list と一致しません。
+     */
+    private static List<String> apply(List<String> oldList, final List<String> newList, ListDiff diff) {
+        final List<String> list = new ArrayList<>(oldList);
+        final List<String> changed = new ArrayList<>();
+        diff.dispatchTo(new ListDiff.Receiver() {
+            @Override
+            public void onInserted(int position, int count) {
+                list.addAll(position, Collections.nCopies(count, "?"));
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                list.subList(position, position + count).clear();
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                list.add(toPosition, list.remove(fromPosition));
+            }
+
+            @Override
+            public void onChanged(int position, int count) {
+                for (int index = position; index < position + count; index++) {
+                    changed.add(CALLBACK.getKey(list.get(index)).toString());
+                }
+            }
+        });
+        for (int position = 0; position < list.size(); position++) {
+            String item = list.get(position);
+            String expected = newList.get(position);
+            if (item.equals("?") || changed.contains(CALLBACK.getKey(item).toString())) {
+                list.set(position, expected);
+            } else {
+                assertEquals(CALLBACK.getKey(expected), CALLBACK.getKey(item));
+            }
+        }
+        return list;
+    }
+}
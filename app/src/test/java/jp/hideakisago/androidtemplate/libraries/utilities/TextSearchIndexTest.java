@@ -0,0 +1,76 @@
+package jp.hideakisago.androidtemplate.libraries.utilities;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link TextSearchIndex} の test です。
+ */
+public class TextSearchIndexTest {
+
+    private static final TextSearchIndex INDEX = TextSearchIndex.build(Arrays.asList(
+            "Dump lifecycle profile", "Write trace events", "Screen", "API login", "api logout"));
+
+    @Test
+    public void search_matchesSubstringIgnoringCase() {
+        assertArrayEquals(new int[] {3, 4}, INDEX.search("API LOG"));
+        assertArrayEquals(new int[] {1}, INDEX.search("e e"));
+        assertArrayEquals(new int[] {2}, INDEX.search("scr"));
+    }
+
+    @Test
+    public void search_emptyQueryMatchesAll() {
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4}, INDEX.search("  "));
+    }
+
+    @Test
+    public void search_unknownQueryMatchesNothing() {
+        assertEquals(0, INDEX.search("logix").length);
+        assertEquals(0, INDEX.search("z").length);
+    }
+
+    @Test
+    public void search_largeList() {
+        List<String> texts = new ArrayList<>();
+        for (int index = 0; index < 20000; index++) {
+            texts.add(String.format(Locale.US, "Item %05d %s", index, index % 2 == 0 ? "even" : "odd"));
+        }
+        TextSearchIndex index = TextSearchIndex.build(texts);
+
+        int[] matches = index.search("13 od");
+
+        // 下2桁が 13 の index のみです。
+        assertEquals(200, matches.length);
+        for (int match : matches) {
+            assertEquals(13, match % 100);
+        }
+    }
+
+    @Test
+    public void search_interruptedThreadCancels() {
+        List<String> texts = new ArrayList<>();
+        for (int index = 0; index < 5000; index++) {
+            texts.add("menu item");
+        }
+        TextSearchIndex index = TextSearchIndex.build(texts);
+
+        Thread.currentThread().interrupt();
+        try {
+            index.search("menu item");
+            throw new AssertionError("Search was not cancelled.");
+        } catch (CancellationException expected) {
+            // 中断されました。
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            Thread.interrupted();
+        }
+    }
+}
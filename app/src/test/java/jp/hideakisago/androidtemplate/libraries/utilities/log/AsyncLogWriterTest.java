@@ -0,0 +1,151 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import android.support.annotation.Nullable;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link AsyncLogWriter} の test です。
+ */
+public class AsyncLogWriterTest {
+
+    /** Android の {@code Log.INFO}。 */
+    private static final int INFO = 4;
+
+    /** Unit test では android.os.Process を呼び出さずに書き込み thread を生成する factory。 */
+    private static final ThreadFactory THREAD_FACTORY = runnable -> new Thread(runnable, "AsyncLogWriterTest");
+
+    private final GatedLogWriter mDelegate = new GatedLogWriter();
+
+    @After
+    public void tearDown() {
+        // 書き込み thread を待たせたままにしないようにします。
+        mDelegate.open();
+    }
+
+    @Test
+    public void write_dropOldestDiscardsOldestQueuedRecord() throws Exception {
+        AsyncLogWriter writer = fillWhileWriterIsBusy(AsyncLogWriter.OverflowPolicy.DROP_OLDEST);
+        writer.write(0L, INFO, "Tag", "3", null);
+
+        assertEquals(1, writer.getDroppedCount());
+        mDelegate.open();
+        assertTrue(writer.flush(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("0", "2", "3"), mDelegate.getMessages(INFO));
+    }
+
+    @Test
+    public void write_dropNewestDiscardsNewRecord() throws Exception {
+        AsyncLogWriter writer = fillWhileWriterIsBusy(AsyncLogWriter.OverflowPolicy.DROP_NEWEST);
+        writer.write(0L, INFO, "Tag", "3", null);
+
+        assertEquals(1, writer.getDroppedCount());
+        mDelegate.open();
+        assertTrue(writer.flush(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("0", "1", "2"), mDelegate.getMessages(INFO));
+    }
+
+    @Test
+    public void write_blockWaitsUntilWriterMakesRoom() throws Exception {
+        final AsyncLogWriter writer = fillWhileWriterIsBusy(AsyncLogWriter.OverflowPolicy.BLOCK);
+        Thread caller = new Thread(() -> writer.write(0L, INFO, "Tag", "3", null));
+        caller.start();
+
+        caller.join(200);
+        assertTrue(caller.isAlive());
+
+        mDelegate.open();
+        caller.join(5000);
+        assertFalse(caller.isAlive());
+        assertTrue(writer.flush(5, TimeUnit.SECONDS));
+        assertEquals(0, writer.getDroppedCount());
+        assertEquals(Arrays.asList("0", "1", "2", "3"), mDelegate.getMessages(INFO));
+    }
+
+    @Test
+    public void flush_writesAllRecordsInOrder() throws Exception {
+        mDelegate.open();
+        AsyncLogWriter writer = new AsyncLogWriter(
+                mDelegate, 16, AsyncLogWriter.OverflowPolicy.BLOCK, THREAD_FACTORY);
+        List<String> expected = new ArrayList<>();
+        for (int index = 0; index < 1000; index++) {
+            writer.write(index, INFO, "Tag", String.valueOf(index), null);
+            expected.add(String.valueOf(index));
+        }
+
+        assertTrue(writer.flush(5, TimeUnit.SECONDS));
+        assertEquals(expected, mDelegate.getMessages(INFO));
+        assertEquals(0, writer.getDroppedCount());
+    }
+
+    @Test
+    public void flush_timesOutWhileWriterIsBusy() throws Exception {
+        AsyncLogWriter writer = fillWhileWriterIsBusy(AsyncLogWriter.OverflowPolicy.DROP_NEWEST);
+
+        assertFalse(writer.flush(50, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * 容量 2 の writer を生成し、書き込み thread が "0" の出力で止まっている間に "1", "2" で ring buffer を一杯にします。
+     *
+     * @param policy Ring buffer が一杯の時の振る舞いです。
+     * @return 生成した writer を返します。
+     */
+    private AsyncLogWriter fillWhileWriterIsBusy(AsyncLogWriter.OverflowPolicy policy) throws Exception {
+        AsyncLogWriter writer = new AsyncLogWriter(mDelegate, 2, policy, THREAD_FACTORY);
+        assertEquals(2, writer.getCapacity());
+        writer.write(0L, INFO, "Tag", "0", null);
+        assertTrue(mDelegate.awaitEntered());
+        writer.write(0L, INFO, "Tag", "1", null);
+        writer.write(0L, INFO, "Tag", "2", null);
+        assertEquals(0, writer.getDroppedCount());
+        return writer;
+    }
+
+    /**
+     * {@link #open()} するまで書き込みを待たせる {@link RecordingLogWriter} です。
+     */
+    private static class GatedLogWriter extends RecordingLogWriter {
+        /** 書き込みを始めたことを表す latch。 */
+        private final CountDownLatch mEntered = new CountDownLatch(1);
+        /** 書き込みを許可する latch。 */
+        private final CountDownLatch mGate = new CountDownLatch(1);
+
+        /**
+         * 書き込みを許可します。
+         */
+        void open() {
+            mGate.countDown();
+        }
+
+        /**
+         * @return 書き込みが始まった場合は true, timeout した場合は false を返します。
+         */
+        boolean awaitEntered() throws InterruptedException {
+            return mEntered.await(5, TimeUnit.SECONDS);
+        }
+
+        @Override
+        public void write(long timeMillis, int priority, String tag, String msg, @Nullable Throwable tr) {
+            mEntered.countDown();
+            try {
+                mGate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            super.write(timeMillis, priority, tag, msg, tr);
+        }
+    }
+}
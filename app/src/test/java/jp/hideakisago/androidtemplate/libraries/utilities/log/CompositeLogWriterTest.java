@@ -0,0 +1,31 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link CompositeLogWriter} の test です。
+ */
+public class CompositeLogWriterTest {
+
+    /** Android の {@code Log.INFO}。 */
+    private static final int INFO = 4;
+
+    @Test
+    public void add_writesRecordsAfterAdding() {
+        RecordingLogWriter first = new RecordingLogWriter();
+        RecordingLogWriter added = new RecordingLogWriter();
+        CompositeLogWriter writer = new CompositeLogWriter(first);
+
+        writer.write(1L, INFO, "Tag", "before", null);
+        writer.add(added);
+        writer.write(2L, INFO, "Tag", "after", null);
+
+        assertEquals(Arrays.asList("before", "after"), first.getMessages(INFO));
+        assertEquals(Collections.singletonList("after"), added.getMessages(INFO));
+    }
+}
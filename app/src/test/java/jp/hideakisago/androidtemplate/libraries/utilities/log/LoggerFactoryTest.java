@@ -0,0 +1,119 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link Logger.Factory} の test です。
+ */
+public class LoggerFactoryTest {
+
+    /** 同時に取得する thread 数。 */
+    private static final int THREADS = 8;
+
+    /** 各 thread で取得する回数。 */
+    private static final int ITERATIONS = 1000;
+
+    private RecordingLogWriter mLogWriter;
+
+    @Before
+    public void setUp() {
+        mLogWriter = new RecordingLogWriter().install();
+    }
+
+    @After
+    public void tearDown() {
+        mLogWriter.uninstall();
+    }
+
+    @Test
+    public void create_returnsSameInstanceForSameClass() {
+        Logger logger = Logger.Factory.create(SameClass.class);
+
+        assertSame(logger, Logger.Factory.create(SameClass.class));
+        assertSame(logger, Logger.Factory.create(new SameClass()));
+        assertSame(logger, Logger.Factory.create("SameClass"));
+    }
+
+    @Test
+    public void create_returnsDifferentInstanceForDifferentTag() {
+        assertNotSame(Logger.Factory.create("TagA"), Logger.Factory.create("TagB"));
+    }
+
+    @Test
+    public void create_internsTag() {
+        AbsLogger logger = (AbsLogger) Logger.Factory.create(new String("InternedTag"));
+
+        assertSame("InternedTag", logger.getTag());
+    }
+
+    @Test
+    public void create_returnsSameInstanceUnderConcurrentCreation() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<Logger[]>> futures = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                futures.add(executor.submit(new Callable<Logger[]>() {
+                    @Override
+                    public Logger[] call() throws Exception {
+                        start.await();
+                        Logger[] loggers = new Logger[ITERATIONS * 2];
+                        for (int index = 0; index < ITERATIONS; index++) {
+                            loggers[index * 2] = Logger.Factory.create(new ConcurrentClass());
+                            loggers[index * 2 + 1] = Logger.Factory.create("ConcurrentTag" + (index % 10));
+                        }
+                        return loggers;
+                    }
+                }));
+            }
+            start.countDown();
+
+            Logger expectedByClass = Logger.Factory.create(ConcurrentClass.class);
+            for (Future<Logger[]> future : futures) {
+                Logger[] loggers = future.get(10, TimeUnit.SECONDS);
+                for (int index = 0; index < ITERATIONS; index++) {
+                    assertSame(expectedByClass, loggers[index * 2]);
+                    assertSame(Logger.Factory.create("ConcurrentTag" + (index % 10)), loggers[index * 2 + 1]);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void setLevel_appliesToCreatedInstance() {
+        AbsLogger logger = (AbsLogger) Logger.Factory.create("LevelTag");
+        try {
+            LogLevels.setLevel("LevelTag", 5);
+            assertTrue(logger.isLoggable(5));
+            assertFalse(logger.isLoggable(4));
+        } finally {
+            LogLevels.clearLevel("LevelTag");
+        }
+    }
+
+    /** Class 指定の test 用 class です。 */
+    private static class SameClass {
+    }
+
+    /** 同時生成の test 用 class です。 */
+    private static class ConcurrentClass {
+    }
+}
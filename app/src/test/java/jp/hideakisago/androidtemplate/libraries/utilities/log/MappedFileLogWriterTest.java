@@ -0,0 +1,140 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link MappedFileLogWriter} と {@link MappedLogFileDecoder} の test です。
+ */
+public class MappedFileLogWriterTest {
+
+    /** Android の {@code Log.DEBUG}。 */
+    private static final int DEBUG = 3;
+
+    /** Android の {@code Log.ERROR}。 */
+    private static final int ERROR = 6;
+
+    /** Test に使う file size。 */
+    private static final int FILE_SIZE = MappedFileLogWriter.DATA_START + 16 * 1024;
+
+    private File mFile;
+
+    @Before
+    public void setUp() throws Exception {
+        mFile = File.createTempFile("mapped", ".mlog");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Test
+    public void write_decodesRecordsInOrder() throws Exception {
+        MappedFileLogWriter writer = new MappedFileLogWriter(mFile, FILE_SIZE);
+        writer.write(1000L, DEBUG, "First", "hello", null);
+        writer.write(2000L, ERROR, "Second", "日本語", null);
+        writer.write(3000L, DEBUG, "First", "again", null);
+
+        List<MappedLogFileDecoder.Record> records = MappedLogFileDecoder.read(mFile);
+        assertEquals(3, records.size());
+        assertRecord(records.get(0), 1000L, DEBUG, "First", "hello");
+        assertRecord(records.get(1), 2000L, ERROR, "Second", "日本語");
+        assertRecord(records.get(2), 3000L, DEBUG, "First", "again");
+    }
+
+    @Test
+    public void write_overwritesOldestRecordsWhenFull() throws Exception {
+        MappedFileLogWriter writer = new MappedFileLogWriter(mFile, FILE_SIZE);
+        final int count = 5000;
+        for (int index = 0; index < count; index++) {
+            writer.write(index, DEBUG, "Tag" + (index % 3), "message " + index, null);
+        }
+
+        List<MappedLogFileDecoder.Record> records = MappedLogFileDecoder.read(mFile);
+        assertTrue(records.size() > 0);
+        assertTrue(records.size() < count);
+
+        final int first = count - records.size();
+        for (int index = 0; index < records.size(); index++) {
+            final int expected = first + index;
+            assertRecord(records.get(index), expected, DEBUG, "Tag" + (expected % 3), "message " + expected);
+        }
+    }
+
+    @Test
+    public void write_keepsRecordStartingRightAfterExactFit() throws Exception {
+        final int length = MappedFileLogWriter.RECORD_HEADER_SIZE + MappedFileLogWriter.MAX_MESSAGE_BYTES;
+        MappedFileLogWriter writer = new MappedFileLogWriter(mFile, MappedFileLogWriter.DATA_START + 3 * length);
+        for (int index = 0; index < 4; index++) {
+            writer.write(index, DEBUG, "Tag", fill(index), null);
+        }
+
+        // 4つ目の record は1つ目の record の領域にちょうど収まるため、2つ目以降は残ります。
+        List<MappedLogFileDecoder.Record> records = MappedLogFileDecoder.read(mFile);
+        assertEquals(3, records.size());
+        for (int index = 0; index < records.size(); index++) {
+            assertRecord(records.get(index), index + 1, DEBUG, "Tag", fill(index + 1));
+        }
+    }
+
+    @Test
+    public void write_continuesExistingFile() throws Exception {
+        new MappedFileLogWriter(mFile, FILE_SIZE).write(1L, DEBUG, "Tag", "before", null);
+        new MappedFileLogWriter(mFile, FILE_SIZE).write(2L, DEBUG, "Tag", "after", null);
+
+        List<MappedLogFileDecoder.Record> records = MappedLogFileDecoder.read(mFile);
+        assertEquals(2, records.size());
+        assertRecord(records.get(0), 1L, DEBUG, "Tag", "before");
+        assertRecord(records.get(1), 2L, DEBUG, "Tag", "after");
+    }
+
+    @Test
+    public void write_truncatesLongMessageAndAppendsThrowable() throws Exception {
+        MappedFileLogWriter writer = new MappedFileLogWriter(mFile, FILE_SIZE);
+        StringBuilder longMessage = new StringBuilder();
+        while (longMessage.length() <= MappedFileLogWriter.MAX_MESSAGE_BYTES) {
+            longMessage.append("0123456789");
+        }
+        writer.write(1L, DEBUG, "Tag", longMessage.toString(), null);
+        writer.write(2L, ERROR, "Tag", "failed", new IllegalStateException("boom"));
+
+        List<MappedLogFileDecoder.Record> records = MappedLogFileDecoder.read(mFile);
+        assertEquals(MappedFileLogWriter.MAX_MESSAGE_BYTES, records.get(0).message.length());
+        assertTrue(records.get(1).message.startsWith("failed"));
+        assertTrue(records.get(1).message.contains("IllegalStateException: boom"));
+
+        StringWriter text = new StringWriter();
+        MappedLogFileDecoder.decode(mFile, text);
+        assertTrue(text.toString().contains(" E/Tag: failed"));
+    }
+
+    /**
+     * @param digit 繰り返す数字です。
+     * @return {@link MappedFileLogWriter#MAX_MESSAGE_BYTES} byte の message を返します。
+     */
+    private static String fill(int digit) {
+        StringBuilder message = new StringBuilder();
+        while (message.length() < MappedFileLogWriter.MAX_MESSAGE_BYTES) {
+            message.append(digit);
+        }
+        return message.toString();
+    }
+
+    private static void assertRecord(MappedLogFileDecoder.Record record,
+                                     long timeMillis, int priority, String tag, String message) {
+        assertEquals(timeMillis, record.timeMillis);
+        assertEquals(priority, record.priority);
+        assertEquals(tag, record.tag);
+        assertEquals(message, record.message);
+    }
+}
@@ -0,0 +1,48 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link MessageFormatter} の test です。
+ */
+public class MessageFormatterTest {
+
+    @Test
+    public void format_replacesAnchorsInOrder() {
+        assertEquals("a=1, b=x, c={}", MessageFormatter.format("a={}, b={}, c={}", 1, "x"));
+        assertEquals("no anchor", MessageFormatter.format("no anchor", 1L));
+    }
+
+    @Test
+    public void format_nestedCallKeepsOuterMessage() {
+        Object nested = new Object() {
+            @Override
+            public String toString() {
+                return MessageFormatter.format("inner({})", 2);
+            }
+        };
+
+        assertEquals("outer[inner(2)] 3", MessageFormatter.format("outer[{}] {}", nested, 3));
+    }
+
+    @Test
+    public void format_recoversAfterArgumentThrows() {
+        Object broken = new Object() {
+            @Override
+            public String toString() {
+                throw new IllegalStateException("broken");
+            }
+        };
+        try {
+            MessageFormatter.format("value={}", broken);
+            fail();
+        } catch (IllegalStateException expected) {
+            // 引数の例外はそのまま throw します。
+        }
+
+        assertEquals("value=1", MessageFormatter.format("value={}", 1));
+    }
+}
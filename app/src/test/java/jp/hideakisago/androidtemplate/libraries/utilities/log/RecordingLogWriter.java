@@ -0,0 +1,71 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test 用に、書き込まれた log を memory に記録する {@link LogWriter} です。
+ *
+ * Unit test の android.jar の {@link android.util.Log} は呼び出すと例外を throw するため、
+ * logger を生成する class の test では {@link #install()} で logcat の代わりに設定し、
+ * {@link #uninstall()} で元に戻します。
+ * 設定している間は、 release build でも {@link android.util.Log#isLoggable(String, int)} を呼び出さないよう、
+ * 端末の設定で許可された log level は無いものとして扱います。
+ */
+public class RecordingLogWriter implements LogWriter {
+
+    /** 書き込まれた log の level。 */
+    private final List<Integer> mPriorities = new ArrayList<>();
+
+    /** 書き込まれた log の message。 */
+    private final List<String> mMessages = new ArrayList<>();
+
+    /** 設定する前の出力先。 */
+    private LogWriter mPrevious;
+
+    /** 端末の設定で許可された log level は無いものとする判定処理。 */
+    private static final LogLevels.PropertyCheck NO_PROPERTY = (tag, priority) -> false;
+
+    /**
+     * {@link Logger.Factory#setWriter(LogWriter)} で出力先に設定し、
+     * {@link LogLevels} が {@link android.util.Log#isLoggable(String, int)} を呼び出さないようにします。
+     *
+     * @return Method chain で呼び出せるようにするため this を返します。
+     */
+    public RecordingLogWriter install() {
+        mPrevious = Logger.Factory.getWriter();
+        Logger.Factory.setWriter(this);
+        LogLevels.setPropertyCheck(NO_PROPERTY);
+        return this;
+    }
+
+    /**
+     * {@link #install()} する前の出力先に戻します。
+     */
+    public void uninstall() {
+        Logger.Factory.setWriter(mPrevious);
+        LogLevels.setPropertyCheck(null);
+    }
+
+    @Override
+    public synchronized void write(long timeMillis, int priority, String tag, String msg, @Nullable Throwable tr) {
+        mPriorities.add(priority);
+        mMessages.add(msg);
+    }
+
+    /**
+     * @param priority Log level です。
+     * @return 指定した log level で書き込まれた message を返します。
+     */
+    public synchronized List<String> getMessages(int priority) {
+        final List<String> messages = new ArrayList<>();
+        for (int index = 0; index < mMessages.size(); index++) {
+            if (mPriorities.get(index) == priority) {
+                messages.add(mMessages.get(index));
+            }
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,63 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.log;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link TraceEventBuffer} の test です。
+ */
+public class TraceEventBufferTest {
+
+    /** Event に記録する process id。 */
+    private static final int PID = 1234;
+
+    @Test
+    public void writeJson_writesBeginAndEndEventsInOrder() throws Exception {
+        TraceEventBuffer buffer = new TraceEventBuffer(8);
+        buffer.begin("Screen#inflate");
+        buffer.begin("Screen#\"quoted\"");
+        buffer.end();
+        buffer.end();
+
+        String json = toJson(buffer);
+        assertTrue(json.startsWith("{\"traceEvents\":[{\"ph\":\"B\""));
+        assertTrue(json.indexOf("\"name\":\"Screen#inflate\"") < json.indexOf("\"name\":\"Screen#\\\"quoted\\\"\""));
+        assertTrue(json.lastIndexOf("\"ph\":\"B\"") < json.indexOf("\"ph\":\"E\""));
+        assertTrue(json.contains("\"pid\":" + PID));
+        assertEquals(4, buffer.getCount());
+    }
+
+    @Test
+    public void record_overwritesOldestEventsWhenFull() throws Exception {
+        TraceEventBuffer buffer = new TraceEventBuffer(2);
+        buffer.begin("first");
+        buffer.begin("second");
+        buffer.begin("third");
+
+        String json = toJson(buffer);
+        assertEquals(2, buffer.getCount());
+        assertFalse(json.contains("first"));
+        assertTrue(json.indexOf("second") < json.indexOf("third"));
+    }
+
+    @Test
+    public void clear_removesAllEvents() throws Exception {
+        TraceEventBuffer buffer = new TraceEventBuffer(4);
+        buffer.begin("section");
+        buffer.clear();
+
+        assertEquals(0, buffer.getCount());
+        assertEquals("{\"traceEvents\":[]}", toJson(buffer));
+    }
+
+    private static String toJson(TraceEventBuffer buffer) throws Exception {
+        StringWriter out = new StringWriter();
+        buffer.writeJson(out, PID);
+        return out.toString();
+    }
+}
@@ -0,0 +1,114 @@
+package jp.hideakisago.androidtemplate.libraries.utilities.profile;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link LatencyHistogram} の test です。
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void getPercentile_emptyReturnsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void getPercentile_smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100, histogram.getCount());
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(50, histogram.getPercentile(50));
+        assertEquals(95, histogram.getPercentile(95));
+        // 最後の bucket の代表値は最大値を超えないよう切り詰めます。
+        assertEquals(100, histogram.getPercentile(100));
+        assertEquals(50.5, histogram.getMean(), 1e-9);
+    }
+
+    @Test
+    public void getPercentile_staysWithinRelativeError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(1);
+        long[] values = new long[10000];
+        for (int index = 0; index < values.length; index++) {
+            // 1us から 10s まで、桁の異なる値を記録します。
+            values[index] = (long) Math.pow(10, 3 + random.nextDouble() * 7);
+            histogram.record(values[index]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[] {1, 50, 90, 95, 99, 99.9}) {
+            final long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            final long actual = histogram.getPercentile(percentile);
+            assertTrue("p" + percentile + ": expected " + expected + " but was " + actual,
+                    Math.abs(actual - expected) <= expected * 0.03);
+        }
+        assertEquals(values[0], histogram.getMin());
+        assertEquals(values[values.length - 1], histogram.getMax());
+    }
+
+    @Test
+    public void record_clampsOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-1);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(0, histogram.getMin());
+        assertEquals((1L << 36) - 1, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+        // 最大値も bucket の代表値で返すため、相対誤差の範囲内です。
+        final long max = histogram.getMax();
+        assertTrue(Math.abs(histogram.getPercentile(100) - max) <= max * 0.03);
+    }
+
+    @Test
+    public void reset_clearsAllRecords() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+        histogram.reset();
+        histogram.record(7);
+
+        assertEquals(1, histogram.getCount());
+        assertEquals(7, histogram.getMin());
+        assertEquals(7, histogram.getMax());
+        assertEquals(7, histogram.getPercentile(99));
+    }
+
+    @Test
+    public void record_countsConcurrentRecords() throws Exception {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[4];
+        for (int thread = 0; thread < threads.length; thread++) {
+            threads[thread] = new Thread(() -> {
+                for (int index = 1; index <= 10000; index++) {
+                    histogram.record(index);
+                }
+            });
+            threads[thread].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(40000, histogram.getCount());
+        assertEquals(1, histogram.getMin());
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000.5, histogram.getMean(), 1e-9);
+    }
+}
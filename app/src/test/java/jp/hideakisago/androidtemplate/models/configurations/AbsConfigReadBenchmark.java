@@ -0,0 +1,126 @@
+package jp.hideakisago.androidtemplate.models.configurations;
+
+import android.content.SharedPreferences;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link AbsConfig} の読み込みの micro-benchmark です。
+ *
+ * SharedPreferences を直接読み込んだ場合 (snapshot 導入前の {@link AbsConfig#get} と同じ処理) と、
+ * snapshot から読み込んだ場合の1回あたりの所要時間を標準出力に出力します。
+ * 暗号化した保存先との比較は {@link jp.hideakisago.androidtemplate.models.configurations.storage.EncryptedPreferencesReadBenchmark} です。
+ * 実行環境による揺らぎが大きいため、所要時間の大小は検証しません。
+ * 数百万回読み込むため unit test では実行しません。 計測する場合は {@link Ignore} を外して個別に実行します。
+ */
+@Ignore("Micro-benchmark. Run manually.")
+public class AbsConfigReadBenchmark {
+
+    /** 計測前に実行する回数。 */
+    private static final int WARM_UP_ITERATIONS = 200000;
+
+    /** 計測する回数。 */
+    private static final int ITERATIONS = 2000000;
+
+    /** 並行して読み込む thread 数。 */
+    private static final int THREADS = 4;
+
+    @Test
+    public void readBoolean_singleThread() throws Exception {
+        BenchmarkConfig config = new BenchmarkConfig(new FakeSharedPreferences());
+
+        report("boolean 1 thread", measure(config::readPreferences, 1), measure(config::readSnapshot, 1));
+    }
+
+    @Test
+    public void readBoolean_concurrent() throws Exception {
+        BenchmarkConfig config = new BenchmarkConfig(new FakeSharedPreferences());
+
+        report("boolean " + THREADS + " threads",
+                measure(config::readPreferences, THREADS), measure(config::readSnapshot, THREADS));
+    }
+
+    /**
+     * @param reader 計測する読み込み処理です。 {@link BenchmarkConfig#FLAG} が true の場合の回数を返します。
+     * @param threads 並行して実行する thread 数です。
+     * @return 1回あたりの所要時間 (nanosecond) を返します。
+     */
+    private static double measure(final Reader reader, int threads) throws Exception {
+        reader.read(WARM_UP_ITERATIONS);
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            final long start = System.nanoTime();
+            for (int thread = 0; thread < threads; thread++) {
+                futures.add(executor.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return reader.read(ITERATIONS);
+                    }
+                }));
+            }
+            for (Future<Integer> future : futures) {
+                assertEquals(ITERATIONS, (int) future.get());
+            }
+            return (double) (System.nanoTime() - start) / ITERATIONS;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void report(String name, double before, double after) {
+        System.out.println(String.format(Locale.US, "AbsConfig read %s: SharedPreferences %.1f ns/op, snapshot %.1f ns/op",
+                name, before, after));
+    }
+
+    /** 計測する読み込み処理です。 */
+    private interface Reader {
+        /**
+         * @param iterations 読み込む回数です。
+         * @return 読み込んだ値が true だった回数を返します。
+         */
+        int read(int iterations);
+    }
+
+    /** 計測用の config です。 */
+    private static class BenchmarkConfig extends AbsConfig {
+        static final ConfigSchema SCHEMA = new ConfigSchema();
+        static final BooleanEntry FLAG = new BooleanEntry(SCHEMA, "flag", true);
+
+        BenchmarkConfig(SharedPreferences prefs) {
+            super(prefs, SCHEMA);
+        }
+
+        int readPreferences(int iterations) {
+            int count = 0;
+            for (int index = 0; index < iterations; index++) {
+                if (mPrefs.getBoolean(FLAG.key, FLAG.defaultValue)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        int readSnapshot(int iterations) {
+            int count = 0;
+            for (int index = 0; index < iterations; index++) {
+                if (get(FLAG)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,503 @@
+package jp.hideakisago.androidtemplate.models.configurations;
+
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+
+import jp.hideakisago.androidtemplate.libraries.utilities.log.RecordingLogWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link AbsConfig} の test です。
+ */
+public class AbsConfigTest {
+
+    private FakeSharedPreferences mPrefs;
+
+    private FakeScheduler mScheduler;
+
+    private RecordingLogWriter mLogWriter;
+
+    private TestConfig mConfig;
+
+    @Before
+    public void setUp() {
+        mPrefs = new FakeSharedPreferences();
+        mScheduler = new FakeScheduler();
+        mLogWriter = new RecordingLogWriter().install();
+        mConfig = attach(new TestConfig(mPrefs));
+    }
+
+    @After
+    public void tearDown() {
+        mLogWriter.uninstall();
+    }
+
+    @Test
+    public void get_returnsDefaultValueWhenNotSaved() {
+        assertTrue(mConfig.get(TestConfig.FLAG));
+        assertEquals(10, mConfig.get(TestConfig.COUNT));
+        assertEquals("default", mConfig.get(TestConfig.NAME));
+    }
+
+    @Test
+    public void set_updatesValueAndPreferences() {
+        mConfig.get(TestConfig.FLAG);
+        mConfig.set(TestConfig.FLAG, false);
+        mConfig.set(TestConfig.TIME, 123L);
+
+        assertFalse(mConfig.get(TestConfig.FLAG));
+        assertEquals(123L, mConfig.get(TestConfig.TIME));
+        assertFalse(mPrefs.getBoolean("flag", true));
+    }
+
+    @Test
+    public void editorApply_updatesAllValues() {
+        mConfig.get(TestConfig.COUNT);
+        mConfig.edit()
+                .put(TestConfig.COUNT, 20)
+                .put(TestConfig.RATIO, 0.5f)
+                .put(TestConfig.TAGS, Collections.singleton("a"))
+                .apply();
+
+        assertEquals(20, mConfig.get(TestConfig.COUNT));
+        assertEquals(0.5f, mConfig.get(TestConfig.RATIO), 0f);
+        assertEquals(Collections.singleton("a"), mConfig.get(TestConfig.TAGS));
+    }
+
+    @Test
+    public void stringSet_holdsUnmodifiableCopy() {
+        Set<String> tags = new HashSet<>(Collections.singleton("a"));
+        mConfig.set(TestConfig.TAGS, tags);
+        tags.add("b");
+        assertEquals(Collections.singleton("a"), mConfig.get(TestConfig.TAGS));
+
+        Set<String> edited = new HashSet<>(Collections.singleton("c"));
+        mConfig.edit().put(TestConfig.TAGS, edited).apply();
+        edited.clear();
+        assertEquals(Collections.singleton("c"), mConfig.get(TestConfig.TAGS));
+
+        try {
+            mConfig.get(TestConfig.TAGS).add("d");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            // Snapshot の値は変更できません。
+        }
+
+        // 保存先から読み込んだ値も、保存先の set とは別の instance です。
+        TestConfig other = attach(new TestConfig(mPrefs));
+        assertNotSame(mPrefs.getStringSet("tags", null), other.get(TestConfig.TAGS));
+    }
+
+    @Test
+    public void externalChange_isReflected() {
+        assertEquals("default", mConfig.get(TestConfig.NAME));
+
+        mPrefs.edit().putString("name", "external").apply();
+
+        assertEquals("external", mConfig.get(TestConfig.NAME));
+    }
+
+    @Test
+    public void removeAndClear_restoreDefaultValues() {
+        mConfig.set(TestConfig.COUNT, 30);
+        mConfig.set(TestConfig.NAME, "saved");
+
+        mConfig.remove(TestConfig.COUNT);
+        assertEquals(10, mConfig.get(TestConfig.COUNT));
+        assertEquals("saved", mConfig.get(TestConfig.NAME));
+
+        mConfig.clear();
+        assertEquals("default", mConfig.get(TestConfig.NAME));
+    }
+
+    @Test
+    public void set_writesEachCallByDefault() {
+        mConfig.set(TestConfig.COUNT, 1);
+        mConfig.set(TestConfig.COUNT, 2);
+
+        assertEquals(2, mPrefs.getCommitCount());
+    }
+
+    @Test
+    public void writeCoalescing_mergesWritesUntilFlush() {
+        mConfig.setWriteCoalescing(1000);
+        mConfig.set(TestConfig.COUNT, 1);
+        mConfig.set(TestConfig.NAME, "coalesced");
+        mConfig.remove(TestConfig.TIME);
+
+        assertEquals(0, mPrefs.getCommitCount());
+        assertEquals(1, mScheduler.getPendingCount());
+        assertEquals(1, mConfig.get(TestConfig.COUNT));
+        assertEquals("coalesced", mConfig.get(TestConfig.NAME));
+
+        mConfig.flush();
+
+        assertEquals(1, mPrefs.getCommitCount());
+        assertEquals(1, mPrefs.getInt("count", 0));
+        assertEquals("coalesced", mPrefs.getString("name", null));
+        // 明示的に書き込んだ場合は、予約した書き込みを取り消します。
+        assertEquals(0, mScheduler.getPendingCount());
+    }
+
+    @Test
+    public void writeCoalescing_writesAfterWindow() {
+        mConfig.setWriteCoalescing(1000);
+        mConfig.set(TestConfig.COUNT, 1);
+        mConfig.set(TestConfig.COUNT, 2);
+
+        mScheduler.runAll();
+
+        assertEquals(1, mPrefs.getCommitCount());
+        assertEquals(2, mPrefs.getInt("count", 0));
+    }
+
+    @Test
+    public void writeCoalescing_writesOnIdle() {
+        mConfig.setWriteCoalescing(AbsConfig.WRITE_ON_IDLE);
+        mConfig.set(TestConfig.COUNT, 1);
+        mConfig.set(TestConfig.NAME, "idle");
+
+        mScheduler.runAll();
+
+        assertEquals(1, mPrefs.getCommitCount());
+        assertEquals("idle", mPrefs.getString("name", null));
+    }
+
+    @Test
+    public void writeCoalescing_pendingValueWinsOverExternalChange() {
+        mConfig.setWriteCoalescing(AbsConfig.WRITE_ON_IDLE);
+        mConfig.set(TestConfig.NAME, "pending");
+
+        mPrefs.edit().putString("name", "external").apply();
+        assertEquals("pending", mConfig.get(TestConfig.NAME));
+
+        mConfig.flush();
+        assertEquals("pending", mPrefs.getString("name", null));
+    }
+
+    @Test
+    public void writeCoalescing_editorApplyWritesPendingValuesFirst() {
+        mConfig.setWriteCoalescing(1000);
+        mConfig.set(TestConfig.COUNT, 1);
+        mConfig.edit()
+                .put(TestConfig.COUNT, 2)
+                .apply();
+
+        assertEquals(2, mPrefs.getCommitCount());
+        assertEquals(2, mPrefs.getInt("count", 0));
+        assertEquals(2, mConfig.get(TestConfig.COUNT));
+    }
+
+    @Test
+    public void preload_countsReadsBeforeCompletion() {
+        List<Runnable> tasks = new ArrayList<>();
+        Future<Void> readiness = mConfig.preload(tasks::add);
+
+        assertFalse(readiness.isDone());
+        assertSame(readiness, mConfig.preload(tasks::add));
+        mConfig.get(TestConfig.FLAG);
+        assertEquals(1, mConfig.getBlockedReadCount());
+
+        tasks.get(0).run();
+
+        assertTrue(mConfig.getReadiness().isDone());
+        mConfig.get(TestConfig.COUNT);
+        assertEquals(1, mConfig.getBlockedReadCount());
+        assertEquals(1, tasks.size());
+    }
+
+    @Test
+    public void preload_usesDefaultValueForMismatchedType() {
+        mPrefs.edit().putString("count", "not a number").apply();
+
+        mConfig.preload(Runnable::run);
+
+        assertEquals(10, mConfig.get(TestConfig.COUNT));
+        assertFalse(mLogWriter.getMessages(Log.ERROR).isEmpty());
+    }
+
+    @Test
+    public void exportAndImport_copyAllValues() {
+        mConfig.set(TestConfig.COUNT, 3);
+        mConfig.set(TestConfig.NAME, "exported");
+        Map<String, Object> values = mConfig.exportValues();
+
+        assertEquals(Arrays.asList("flag", "count", "time", "ratio", "name", "tags"),
+                new ArrayList<>(values.keySet()));
+
+        FakeSharedPreferences otherPrefs = new FakeSharedPreferences();
+        TestConfig other = attach(new TestConfig(otherPrefs));
+        other.importValues(values);
+
+        assertEquals(3, other.get(TestConfig.COUNT));
+        assertEquals("exported", other.get(TestConfig.NAME));
+        assertEquals(1, otherPrefs.getCommitCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void importValues_rejectsMismatchedType() {
+        mConfig.importValues(Collections.singletonMap("flag", "true"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void schema_rejectsDuplicateKey() {
+        ConfigSchema schema = new ConfigSchema();
+        new AbsConfig.IntEntry(schema, "key", 0);
+        new AbsConfig.LongEntry(schema, "key", 0L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void schema_rejectsKeyInsideSortedStringSetMembers() {
+        ConfigSchema schema = new ConfigSchema();
+        new AbsConfig.SortedStringSetEntry(schema, "ids");
+        new AbsConfig.StringEntry(schema, "ids/token", "");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void schema_rejectsSortedStringSetCoveringExistingKey() {
+        ConfigSchema schema = new ConfigSchema();
+        new AbsConfig.StringEntry(schema, "ids/token", "");
+        new AbsConfig.SortedStringSetEntry(schema, "ids");
+    }
+
+    @Test
+    public void listener_receivesOneBatchOfChangedEntries() {
+        final List<Set<AbsConfig.AbsEntry>> notifications = new ArrayList<>();
+        AbsConfig.OnConfigChangeListener listener = (config, entries) -> notifications.add(entries);
+        mConfig.registerOnConfigChangeListener(listener, TestConfig.COUNT, TestConfig.NAME);
+
+        mConfig.edit()
+                .put(TestConfig.COUNT, 1)
+                .put(TestConfig.NAME, "changed")
+                .put(TestConfig.FLAG, false)
+                .apply();
+        mConfig.set(TestConfig.COUNT, 2);
+        mConfig.set(TestConfig.NAME, "changed");
+        mScheduler.runAll();
+
+        assertEquals(1, notifications.size());
+        assertEquals(new HashSet<>(Arrays.asList(TestConfig.COUNT, TestConfig.NAME)), notifications.get(0));
+
+        mConfig.set(TestConfig.COUNT, 2);
+        mScheduler.runAll();
+        assertEquals(1, notifications.size());
+
+        mConfig.unregisterOnConfigChangeListener(listener);
+        mConfig.set(TestConfig.COUNT, 3);
+        mScheduler.runAll();
+        assertEquals(1, notifications.size());
+    }
+
+    @Test
+    public void listener_comparesClearedEntriesWithDefaultValues() {
+        final List<Set<AbsConfig.AbsEntry>> notifications = new ArrayList<>();
+        AbsConfig.OnConfigChangeListener listener = (config, entries) -> notifications.add(entries);
+        mConfig.registerOnConfigChangeListener(listener, TestConfig.FLAG, TestConfig.COUNT, TestConfig.TIME);
+        // default 値とは異なる、型の初期値を保存します。
+        mConfig.set(TestConfig.FLAG, false);
+        mConfig.set(TestConfig.COUNT, 0);
+        mConfig.get(TestConfig.TIME);
+        mScheduler.runAll();
+        notifications.clear();
+
+        mConfig.clear();
+        mScheduler.runAll();
+
+        // TIME は default 値のままなので通知されません。
+        assertEquals(1, notifications.size());
+        assertEquals(new HashSet<>(Arrays.asList(TestConfig.FLAG, TestConfig.COUNT)), notifications.get(0));
+    }
+
+    @Test
+    public void listener_ignoresClearedSortedStringSetThatWasEmpty() {
+        IdsConfig config = attach(new IdsConfig(mPrefs));
+        final List<Set<AbsConfig.AbsEntry>> notifications = new ArrayList<>();
+        config.registerOnConfigChangeListener((c, entries) -> notifications.add(entries), IdsConfig.IDS);
+        assertTrue(config.get(IdsConfig.IDS).isEmpty());
+
+        config.clear();
+        mScheduler.runAll();
+
+        assertTrue(notifications.isEmpty());
+    }
+
+    @Test
+    public void foreignEntry_isRejectedBeforeWriting() {
+        final int commits = mPrefs.getCommitCount();
+        try {
+            mConfig.set(MigratedConfig.COUNT, 1);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // Schema に無い entry は書き込む前に拒否します。
+        }
+        AbsConfig.Editor editor = mConfig.edit().put(TestConfig.COUNT, 2);
+        try {
+            editor.put(MigratedConfig.COUNT, 3);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            // Editor にも設定しません。
+        }
+        editor.apply();
+
+        assertEquals(commits + 1, mPrefs.getCommitCount());
+        assertEquals(Collections.singleton("count"), mPrefs.getAll().keySet());
+        assertEquals(2, mPrefs.getInt("count", 0));
+    }
+
+    @Test
+    public void migration_appliesAllStepsInOneCommit() {
+        mPrefs.edit()
+                .putString("old_count", "5")
+                .putBoolean("unused", true)
+                .apply();
+        final int commits = mPrefs.getCommitCount();
+
+        MigratedConfig config = attach(new MigratedConfig(mPrefs));
+        config.preload(Runnable::run);
+
+        assertEquals(commits + 1, mPrefs.getCommitCount());
+        assertEquals(5, config.get(MigratedConfig.COUNT));
+        assertFalse(mPrefs.contains("unused"));
+        assertEquals(3, mPrefs.getInt(ConfigSchema.VERSION_KEY, 0));
+
+        attach(new MigratedConfig(mPrefs)).preload(Runnable::run);
+        assertEquals(commits + 1, mPrefs.getCommitCount());
+    }
+
+    @Test
+    public void migration_runsOnCallerThreadWithoutPreload() {
+        mPrefs.edit().putString("old_count", "7").apply();
+
+        assertEquals(7, attach(new MigratedConfig(mPrefs)).get(MigratedConfig.COUNT));
+        assertSame(Thread.currentThread(), mPrefs.getLastCommitThread());
+    }
+
+    @Test
+    public void migration_readBeforePreloadWaitsForPreloadThread() throws Exception {
+        mPrefs.edit().putString("old_count", "7").apply();
+        MigratedConfig config = attach(new MigratedConfig(mPrefs));
+        final Thread[] preloadThread = new Thread[1];
+
+        config.preload(task -> {
+            preloadThread[0] = new Thread(() -> {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                task.run();
+            });
+            preloadThread[0].start();
+        });
+        assertEquals(7, config.get(MigratedConfig.COUNT));
+
+        // 移行は先読みの thread で commit され、読み込みは先読みを待った回数として計上されます。
+        assertSame(preloadThread[0], mPrefs.getLastCommitThread());
+        assertEquals(1, config.getBlockedReadCount());
+        config.set(MigratedConfig.COUNT, 8);
+        assertEquals(1, config.getBlockedReadCount());
+    }
+
+    @Test
+    public void sortedStringSet_writesOnlyChangedMembers() {
+        IdsConfig config = attach(new IdsConfig(mPrefs));
+        config.set(IdsConfig.IDS, Arrays.asList("c", "a", "b"));
+        config.remove(IdsConfig.IDS, "b");
+        config.add(IdsConfig.IDS, "d");
+
+        assertEquals(Arrays.asList("a", "c", "d"), new ArrayList<>(config.get(IdsConfig.IDS)));
+        assertSame(config.get(IdsConfig.IDS), config.get(IdsConfig.IDS));
+        assertEquals(new HashSet<>(Arrays.asList("ids/a", "ids/c", "ids/d")), mPrefs.getAll().keySet());
+
+        // 他の場所で変更された要素は、保存先の全ての key を走査し直さずに反映します。
+        final int getAllCount = mPrefs.getGetAllCount();
+        mPrefs.edit().putBoolean("ids/b", true).apply();
+        assertTrue(config.get(IdsConfig.IDS).contains("b"));
+        mPrefs.edit().remove("ids/a").apply();
+        assertEquals(Arrays.asList("b", "c", "d"), new ArrayList<>(config.get(IdsConfig.IDS)));
+        assertEquals(getAllCount, mPrefs.getGetAllCount());
+
+        config.remove(IdsConfig.IDS);
+        assertTrue(config.get(IdsConfig.IDS).isEmpty());
+        assertTrue(mPrefs.getAll().isEmpty());
+    }
+
+    @Test
+    public void sortedStringSet_editorAppliesDelta() {
+        IdsConfig config = attach(new IdsConfig(mPrefs));
+        config.add(IdsConfig.IDS, "a");
+
+        config.edit()
+                .add(IdsConfig.IDS, "b")
+                .remove(IdsConfig.IDS, "a")
+                .apply();
+
+        assertEquals(Collections.singleton("b"), config.get(IdsConfig.IDS));
+        assertEquals(Collections.singleton("ids/b"), mPrefs.getAll().keySet());
+    }
+
+    /**
+     * @param config UI thread の処理を {@link #mScheduler} で実行する config です。
+     * @return 引数の config を返します。
+     */
+    private <T extends AbsConfig> T attach(T config) {
+        config.setScheduler(mScheduler);
+        return config;
+    }
+
+    /** Test 用の config です。 */
+    static class TestConfig extends AbsConfig {
+        static final ConfigSchema SCHEMA = new ConfigSchema();
+        static final BooleanEntry FLAG = new BooleanEntry(SCHEMA, "flag", true);
+        static final IntEntry COUNT = new IntEntry(SCHEMA, "count", 10);
+        static final LongEntry TIME = new LongEntry(SCHEMA, "time", 0L);
+        static final FloatEntry RATIO = new FloatEntry(SCHEMA, "ratio", 1f);
+        static final StringEntry NAME = new StringEntry(SCHEMA, "name", "default");
+        static final StringSetEntry TAGS = new StringSetEntry(SCHEMA, "tags", Collections.<String>emptySet());
+
+        TestConfig(FakeSharedPreferences prefs) {
+            super(prefs, SCHEMA);
+        }
+    }
+
+    /** Migration の test 用の config です。 */
+    static class MigratedConfig extends AbsConfig {
+        static final ConfigSchema SCHEMA = new ConfigSchema(
+                ConfigMigration.renameKey(1, "old_count", "count"),
+                ConfigMigration.convertValue(2, "count", value -> Integer.valueOf((String) value)),
+                ConfigMigration.removeKeys(3, "unused"));
+        static final IntEntry COUNT = new IntEntry(SCHEMA, "count", 0);
+
+        MigratedConfig(FakeSharedPreferences prefs) {
+            super(prefs, SCHEMA);
+        }
+    }
+
+    /** Sorted string set の test 用の config です。 */
+    static class IdsConfig extends AbsConfig {
+        static final ConfigSchema SCHEMA = new ConfigSchema();
+        static final SortedStringSetEntry IDS = new SortedStringSetEntry(SCHEMA, "ids");
+
+        IdsConfig(FakeSharedPreferences prefs) {
+            super(prefs, SCHEMA);
+        }
+    }
+}
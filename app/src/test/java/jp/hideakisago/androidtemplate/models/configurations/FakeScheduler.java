@@ -0,0 +1,114 @@
+package jp.hideakisago.androidtemplate.models.configurations;
+
+import android.os.MessageQueue;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Test 用に、予約された処理を {@link #runAll()} まで保持する {@link AbsConfig.Scheduler} です。
+ *
+ * 呼び出し元の thread を UI thread として扱うかどうかは {@link #setMainThread(boolean)} で指定します。
+ */
+class FakeScheduler implements AbsConfig.Scheduler {
+
+    /** 呼び出し元を UI thread として扱うかどうか。 */
+    private boolean mMainThread = true;
+
+    /** 予約された処理と、実行するまでの時間 (millisecond)。 */
+    private final Map<Runnable, Long> mTasks = new LinkedHashMap<>();
+
+    /** Idle になった時に実行する処理。 */
+    private final List<MessageQueue.IdleHandler> mIdleHandlers = new ArrayList<>();
+
+    /** 次の frame で実行する処理。 */
+    private final List<Choreographer.FrameCallback> mFrameCallbacks = new ArrayList<>();
+
+    /**
+     * @param mainThread 呼び出し元を UI thread として扱う場合は true です。
+     */
+    synchronized void setMainThread(boolean mainThread) {
+        mMainThread = mainThread;
+    }
+
+    /**
+     * @param task 予約された処理です。
+     * @return 処理を実行するまでの時間 (millisecond) を返します。 予約されていない場合は null を返します。
+     */
+    synchronized Long getDelay(Runnable task) {
+        return mTasks.get(task);
+    }
+
+    /**
+     * @return 予約されている処理の数を返します。
+     */
+    synchronized int getPendingCount() {
+        return mTasks.size() + mIdleHandlers.size() + mFrameCallbacks.size();
+    }
+
+    /**
+     * 予約された処理、 idle の処理、 frame の処理の順に、予約が無くなるまで実行します。
+     */
+    void runAll() {
+        while (true) {
+            final List<Runnable> tasks;
+            final List<MessageQueue.IdleHandler> idleHandlers;
+            final List<Choreographer.FrameCallback> frameCallbacks;
+            synchronized (this) {
+                if (getPendingCount() == 0) {
+                    return;
+                }
+                tasks = new ArrayList<>(mTasks.keySet());
+                idleHandlers = new ArrayList<>(mIdleHandlers);
+                frameCallbacks = new ArrayList<>(mFrameCallbacks);
+                mTasks.clear();
+                mIdleHandlers.clear();
+                mFrameCallbacks.clear();
+            }
+            for (Runnable task : tasks) {
+                task.run();
+            }
+            for (MessageQueue.IdleHandler handler : idleHandlers) {
+                if (handler.queueIdle()) {
+                    addIdleHandler(handler);
+                }
+            }
+            for (Choreographer.FrameCallback callback : frameCallbacks) {
+                callback.doFrame(0);
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean isMainThread() {
+        return mMainThread;
+    }
+
+    @Override
+    public synchronized void post(Runnable task) {
+        mTasks.put(task, 0L);
+    }
+
+    @Override
+    public synchronized void postDelayed(Runnable task, long delayMillis) {
+        mTasks.put(task, delayMillis);
+    }
+
+    @Override
+    public synchronized void removeCallbacks(Runnable task) {
+        mTasks.remove(task);
+    }
+
+    @Override
+    public synchronized void addIdleHandler(MessageQueue.IdleHandler handler) {
+        mIdleHandlers.add(handler);
+    }
+
+    @Override
+    public synchronized void postFrameCallback(Choreographer.FrameCallback callback) {
+        mFrameCallbacks.add(callback);
+    }
+}
@@ -0,0 +1,227 @@
+package jp.hideakisago.androidtemplate.models.configurations;
+
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Test 用の memory 上の {@link SharedPreferences} です。
+ *
+ * Framework の実装と同じく、1つの lock で保護した {@code HashMap<String, Object>} に boxing した値を保持します。
+ * Listener は {@link Editor#apply()} を呼び出した thread で同期的に呼び出します。
+ */
+class FakeSharedPreferences implements SharedPreferences {
+
+    /** 値。 */
+    private final Map<String, Object> mMap = new HashMap<>();
+
+    /** Listener。 */
+    private final List<OnSharedPreferenceChangeListener> mListeners = new ArrayList<>();
+
+    /** commit / apply された回数。 */
+    private int mCommitCount;
+
+    /**
+     * @return commit / apply された回数を返します。
+     */
+    synchronized int getCommitCount() {
+        return mCommitCount;
+    }
+
+    /** 最後に commit / apply した thread。 */
+    private Thread mLastCommitThread;
+
+    /**
+     * @return 最後に commit / apply した thread を返します。
+     */
+    synchronized Thread getLastCommitThread() {
+        return mLastCommitThread;
+    }
+
+    /** {@link #getAll()} を呼び出された回数。 */
+    private int mGetAllCount;
+
+    /**
+     * @return {@link #getAll()} を呼び出された回数を返します。
+     */
+    synchronized int getGetAllCount() {
+        return mGetAllCount;
+    }
+
+    @Override
+    public Map<String, ?> getAll() {
+        synchronized (this) {
+            mGetAllCount++;
+            return new HashMap<>(mMap);
+        }
+    }
+
+    @Override
+    public String getString(String key, String defValue) {
+        synchronized (this) {
+            String value = (String) mMap.get(key);
+            return value != null ? value : defValue;
+        }
+    }
+
+    @Override
+    public Set<String> getStringSet(String key, Set<String> defValues) {
+        synchronized (this) {
+            //noinspection unchecked
+            Set<String> value = (Set<String>) mMap.get(key);
+            return value != null ? value : defValues;
+        }
+    }
+
+    @Override
+    public int getInt(String key, int defValue) {
+        synchronized (this) {
+            Integer value = (Integer) mMap.get(key);
+            return value != null ? value : defValue;
+        }
+    }
+
+    @Override
+    public long getLong(String key, long defValue) {
+        synchronized (this) {
+            Long value = (Long) mMap.get(key);
+            return value != null ? value : defValue;
+        }
+    }
+
+    @Override
+    public float getFloat(String key, float defValue) {
+        synchronized (this) {
+            Float value = (Float) mMap.get(key);
+            return value != null ? value : defValue;
+        }
+    }
+
+    @Override
+    public boolean getBoolean(String key, boolean defValue) {
+        synchronized (this) {
+            Boolean value = (Boolean) mMap.get(key);
+            return value != null ? value : defValue;
+        }
+    }
+
+    @Override
+    public boolean contains(String key) {
+        synchronized (this) {
+            return mMap.containsKey(key);
+        }
+    }
+
+    @Override
+    public Editor edit() {
+        return new FakeEditor();
+    }
+
+    @Override
+    public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (this) {
+            mListeners.add(listener);
+        }
+    }
+
+    @Override
+    public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+        synchronized (this) {
+            mListeners.remove(listener);
+        }
+    }
+
+    /**
+     * 変更を記録し、 commit / apply で反映する editor です。
+     */
+    private class FakeEditor implements Editor {
+        /** 変更する値。 null は削除を表します。 */
+        private final Map<String, Object> mModified = new HashMap<>();
+        /** 全て消去するかどうか。 */
+        private boolean mClear;
+
+        @Override
+        public Editor putString(String key, String value) {
+            mModified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putStringSet(String key, Set<String> values) {
+            mModified.put(key, values == null ? null : new HashSet<>(values));
+            return this;
+        }
+
+        @Override
+        public Editor putInt(String key, int value) {
+            mModified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putLong(String key, long value) {
+            mModified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putFloat(String key, float value) {
+            mModified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor putBoolean(String key, boolean value) {
+            mModified.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Editor remove(String key) {
+            mModified.put(key, null);
+            return this;
+        }
+
+        @Override
+        public Editor clear() {
+            mClear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            List<OnSharedPreferenceChangeListener> listeners;
+            synchronized (FakeSharedPreferences.this) {
+                if (mClear) {
+                    mMap.clear();
+                }
+                for (Map.Entry<String, Object> entry : mModified.entrySet()) {
+                    if (entry.getValue() == null) {
+                        mMap.remove(entry.getKey());
+                    } else {
+                        mMap.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                listeners = new ArrayList<>(mListeners);
+                mCommitCount++;
+                mLastCommitThread = Thread.currentThread();
+            }
+            for (String key : mModified.keySet()) {
+                for (OnSharedPreferenceChangeListener listener : listeners) {
+                    listener.onSharedPreferenceChanged(FakeSharedPreferences.this, key);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public void apply() {
+            commit();
+        }
+    }
+}
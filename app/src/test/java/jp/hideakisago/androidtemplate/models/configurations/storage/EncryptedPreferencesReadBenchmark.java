@@ -0,0 +1,99 @@
+package jp.hideakisago.androidtemplate.models.configurations.storage;
+
+import android.content.SharedPreferences;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import jp.hideakisago.androidtemplate.models.configurations.AbsConfig;
+import jp.hideakisago.androidtemplate.models.configurations.ConfigSchema;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 平文と {@link EncryptedPreferences} の保存先で、 {@link AbsConfig} の snapshot からの読み込みを比較する micro-benchmark です。
+ *
+ * 1回あたりの所要時間を標準出力に出力します。 実行環境による揺らぎが大きいため、所要時間の大小は検証しません。
+ * 実行に時間がかかるため {@link Ignore} で unit test から除外しています。
+ */
+@Ignore("Micro-benchmark. Run manually.")
+public class EncryptedPreferencesReadBenchmark {
+
+    /** Listener と書き込みを呼び出し元の thread で実行する executor。 */
+    private static final Executor DIRECT = Runnable::run;
+
+    /** 計測前に実行する回数。 */
+    private static final int WARM_UP_ITERATIONS = 200000;
+
+    /** 計測する回数。 */
+    private static final int ITERATIONS = 2000000;
+
+    @Test
+    public void readBoolean_encryptedStorage() throws Exception {
+        File plainFile = File.createTempFile("benchmark", ".mprefs");
+        File encryptedFile = File.createTempFile("benchmark", ".eprefs");
+        try {
+            //noinspection ResultOfMethodCallIgnored
+            plainFile.delete();
+            //noinspection ResultOfMethodCallIgnored
+            encryptedFile.delete();
+            SharedPreferences plain = new MappedPreferences(plainFile, DIRECT);
+            SharedPreferences encrypted = new EncryptedPreferences(encryptedFile,
+                    () -> new SecretKeySpec(new byte[32], "AES"), DIRECT, DIRECT);
+            plain.edit().putBoolean(BenchmarkConfig.FLAG.key, false).commit();
+            encrypted.edit().putBoolean(BenchmarkConfig.FLAG.key, false).commit();
+
+            final double plainTime = measure(new BenchmarkConfig(plain));
+            final double encryptedTime = measure(new BenchmarkConfig(encrypted));
+            System.out.println(String.format(Locale.US,
+                    "AbsConfig read boolean encrypted: plaintext %.1f ns/op, encrypted %.1f ns/op",
+                    plainTime, encryptedTime));
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            plainFile.delete();
+            //noinspection ResultOfMethodCallIgnored
+            encryptedFile.delete();
+        }
+    }
+
+    /**
+     * @param config 計測する config です。
+     * @return 1回あたりの所要時間 (nanosecond) を返します。
+     */
+    private static double measure(BenchmarkConfig config) {
+        config.readSnapshot(WARM_UP_ITERATIONS);
+        final long start = System.nanoTime();
+        assertEquals(ITERATIONS, config.readSnapshot(ITERATIONS));
+        return (double) (System.nanoTime() - start) / ITERATIONS;
+    }
+
+    /** 計測用の config です。 */
+    private static class BenchmarkConfig extends AbsConfig {
+        static final ConfigSchema SCHEMA = new ConfigSchema();
+        static final BooleanEntry FLAG = new BooleanEntry(SCHEMA, "flag", true);
+
+        BenchmarkConfig(SharedPreferences prefs) {
+            super(prefs, SCHEMA);
+        }
+
+        /**
+         * @param iterations 読み込む回数です。
+         * @return 読み込んだ値が false だった回数を返します。
+         */
+        int readSnapshot(int iterations) {
+            int count = 0;
+            for (int index = 0; index < iterations; index++) {
+                if (!get(FLAG)) {
+                    count++;
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package jp.hideakisago.androidtemplate.models.configurations.storage;
+
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import jp.hideakisago.androidtemplate.libraries.utilities.log.RecordingLogWriter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link EncryptedPreferences} の test です。
+ */
+public class EncryptedPreferencesTest {
+
+    /** Listener と書き込みを呼び出し元の thread で実行する executor。 */
+    private static final Executor DIRECT = Runnable::run;
+
+    /** Test 用の鍵。 */
+    private static final EncryptedPreferences.KeyProvider KEY =
+            () -> new SecretKeySpec("0123456789abcdef".getBytes(MappedPreferences.UTF_8), "AES");
+
+    private File mFile;
+
+    private RecordingLogWriter mLogWriter;
+
+    @Before
+    public void setUp() throws Exception {
+        mLogWriter = new RecordingLogWriter().install();
+        mFile = File.createTempFile("config", ".eprefs");
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mLogWriter.uninstall();
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+        //noinspection ResultOfMethodCallIgnored
+        new File(mFile.getPath() + ".bak").delete();
+    }
+
+    @Test
+    public void commit_persistsAllTypesEncrypted() throws Exception {
+        new EncryptedPreferences(mFile, KEY, DIRECT, DIRECT).edit()
+                .putBoolean("boolean", true)
+                .putInt("int", 42)
+                .putLong("long", 1L << 40)
+                .putFloat("float", 1.5f)
+                .putString("string", "secret-token")
+                .putStringSet("set", new HashSet<>(Arrays.asList("a", "b")))
+                .commit();
+
+        assertFalse(new String(readFile(), MappedPreferences.UTF_8).contains("secret-token"));
+
+        SharedPreferences prefs = new EncryptedPreferences(mFile, KEY, DIRECT, DIRECT);
+        assertTrue(prefs.getBoolean("boolean", false));
+        assertEquals(42, prefs.getInt("int", 0));
+        assertEquals(1L << 40, prefs.getLong("long", 0));
+        assertEquals(1.5f, prefs.getFloat("float", 0), 0f);
+        assertEquals("secret-token", prefs.getString("string", null));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), prefs.getStringSet("set", null));
+    }
+
+    @Test
+    public void apply_coalescesIntoOneEncryption() throws Exception {
+        final List<Runnable> scheduled = new ArrayList<>();
+        EncryptedPreferences prefs = new EncryptedPreferences(mFile, KEY, DIRECT, scheduled::add);
+
+        prefs.edit().putInt("count", 1).apply();
+        prefs.edit().putInt("count", 2).apply();
+        prefs.edit().putString("name", "value").apply();
+
+        assertEquals(1, scheduled.size());
+        assertEquals(0, prefs.getEncryptionCount());
+        assertEquals(2, prefs.getInt("count", 0));
+
+        scheduled.get(0).run();
+
+        assertEquals(1, prefs.getEncryptionCount());
+        SharedPreferences reopened = new EncryptedPreferences(mFile, KEY, DIRECT, DIRECT);
+        assertEquals(2, reopened.getInt("count", 0));
+        assertEquals("value", reopened.getString("name", null));
+    }
+
+    @Test
+    public void open_tamperedFileStartsEmpty() throws Exception {
+        new EncryptedPreferences(mFile, KEY, DIRECT, DIRECT).edit().putInt("count", 1).commit();
+
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            raf.seek(EncryptedPreferences.HEADER_SIZE);
+            final int value = raf.read();
+            raf.seek(EncryptedPreferences.HEADER_SIZE);
+            raf.write(value ^ 1);
+        } finally {
+            raf.close();
+        }
+
+        final byte[] tampered = readFile();
+        SharedPreferences prefs = new EncryptedPreferences(mFile, KEY, DIRECT, DIRECT);
+        assertNull(prefs.getAll().get("count"));
+        assertEquals(1, mLogWriter.getMessages(Log.ERROR).size());
+
+        // 復号できない file は、次の書き込みで置き換える前に退避します。
+        prefs.edit().putInt("count", 2).commit();
+        assertArrayEquals(tampered, readFile(new File(mFile.getPath() + ".bak")));
+        assertEquals(2, new EncryptedPreferences(mFile, KEY, DIRECT, DIRECT).getInt("count", 0));
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void open_nonExportableKeyIsRejected() throws Exception {
+        new EncryptedPreferences(mFile, () -> new SecretKeySpec(new byte[16], "AES") {
+            @Override
+            public byte[] getEncoded() {
+                return null;
+            }
+        }, DIRECT, DIRECT);
+    }
+
+    @Test
+    public void open_otherKeyStartsEmpty() throws Exception {
+        new EncryptedPreferences(mFile, KEY, DIRECT, DIRECT).edit().putInt("count", 1).commit();
+
+        SharedPreferences prefs = new EncryptedPreferences(mFile,
+                () -> new SecretKeySpec("fedcba9876543210".getBytes(MappedPreferences.UTF_8), "AES"), DIRECT, DIRECT);
+        assertEquals(0, prefs.getInt("count", 0));
+    }
+
+    private byte[] readFile() throws Exception {
+        return readFile(mFile);
+    }
+
+    private byte[] readFile(File file) throws Exception {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) raf.length()];
+            raf.readFully(bytes);
+            return bytes;
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package jp.hideakisago.androidtemplate.models.configurations.storage;
+
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import jp.hideakisago.androidtemplate.libraries.utilities.log.RecordingLogWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link MappedPreferences} の test です。
+ */
+public class MappedPreferencesTest {
+
+    /** Listener を呼び出し元の thread で実行する executor。 */
+    private static final Executor DIRECT = Runnable::run;
+
+    private File mFile;
+
+    private RecordingLogWriter mLogWriter;
+
+    @Before
+    public void setUp() throws Exception {
+        mLogWriter = new RecordingLogWriter().install();
+        mFile = File.createTempFile("config", ".mprefs");
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mLogWriter.uninstall();
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+        //noinspection ResultOfMethodCallIgnored
+        new File(mFile.getPath() + ".lock").delete();
+    }
+
+    @Test
+    public void commit_persistsAllTypes() throws Exception {
+        new MappedPreferences(mFile, DIRECT).edit()
+                .putBoolean("boolean", true)
+                .putInt("int", 42)
+                .putLong("long", 1L << 40)
+                .putFloat("float", 1.5f)
+                .putString("string", "日本語")
+                .putStringSet("set", new HashSet<>(Arrays.asList("a", "b")))
+                .commit();
+
+        SharedPreferences prefs = new MappedPreferences(mFile, DIRECT);
+        assertTrue(prefs.getBoolean("boolean", false));
+        assertEquals(42, prefs.getInt("int", 0));
+        assertEquals(1L << 40, prefs.getLong("long", 0));
+        assertEquals(1.5f, prefs.getFloat("float", 0), 0f);
+        assertEquals("日本語", prefs.getString("string", null));
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), prefs.getStringSet("set", null));
+    }
+
+    @Test
+    public void apply_appendsOnlyChangedRecord() throws Exception {
+        MappedPreferences prefs = new MappedPreferences(mFile, DIRECT);
+        prefs.edit().putString("large", "0123456789").putInt("small", 1).apply();
+        final int before = prefs.getUsedBytes();
+
+        prefs.edit().putInt("small", 2).apply();
+        prefs.edit().putInt("small", 2).apply();
+
+        // Key 5 byte と int 4 byte の record が1つだけ追記されます。
+        assertEquals(before + MappedPreferences.RECORD_HEADER_SIZE + 1 + 2 + 5 + 4, prefs.getUsedBytes());
+        assertEquals(2, new MappedPreferences(mFile, DIRECT).getInt("small", 0));
+    }
+
+    @Test
+    public void remove_isPersisted() throws Exception {
+        MappedPreferences prefs = new MappedPreferences(mFile, DIRECT);
+        prefs.edit().putInt("a", 1).putInt("b", 2).apply();
+        prefs.edit().remove("a").apply();
+
+        SharedPreferences reopened = new MappedPreferences(mFile, DIRECT);
+        assertFalse(reopened.contains("a"));
+        assertEquals(2, reopened.getInt("b", 0));
+    }
+
+    @Test
+    public void apply_compactsWhenFull() throws Exception {
+        MappedPreferences prefs = new MappedPreferences(mFile, DIRECT);
+        for (int index = 0; index < 2000; index++) {
+            prefs.edit().putInt("counter", index).putString("key" + (index % 10), "value" + index).apply();
+        }
+
+        assertTrue(mFile.length() <= MappedPreferences.MIN_FILE_SIZE * 2);
+        SharedPreferences reopened = new MappedPreferences(mFile, DIRECT);
+        assertEquals(1999, reopened.getInt("counter", 0));
+        assertEquals("value1999", reopened.getString("key9", null));
+        assertEquals(11, reopened.getAll().size());
+    }
+
+    @Test
+    public void open_ignoresBrokenTailRecord() throws Exception {
+        MappedPreferences prefs = new MappedPreferences(mFile, DIRECT);
+        prefs.edit().putString("kept", "value").commit();
+        final int end = prefs.getUsedBytes();
+        prefs.edit().putString("broken", "value").commit();
+
+        // 最後の record の payload を壊します。
+        RandomAccessFile raf = new RandomAccessFile(mFile, "rw");
+        try {
+            raf.seek(end + MappedPreferences.RECORD_HEADER_SIZE + 4);
+            raf.write('X');
+        } finally {
+            raf.close();
+        }
+
+        MappedPreferences reopened = new MappedPreferences(mFile, DIRECT);
+        assertEquals("value", reopened.getString("kept", null));
+        assertNull(reopened.getString("broken", null));
+
+        reopened.edit().putString("after", "value").commit();
+        assertEquals("value", new MappedPreferences(mFile, DIRECT).getString("after", null));
+    }
+
+    @Test
+    public void listener_isNotifiedForChangedKeysAndClear() throws Exception {
+        MappedPreferences prefs = new MappedPreferences(mFile, DIRECT);
+        final List<String> keys = new ArrayList<>();
+        SharedPreferences.OnSharedPreferenceChangeListener listener = (p, key) -> keys.add(key);
+        prefs.registerOnSharedPreferenceChangeListener(listener);
+
+        prefs.edit().putInt("a", 1).apply();
+        prefs.edit().putInt("a", 1).apply();
+        prefs.edit().clear().apply();
+
+        assertEquals(Arrays.asList("a", null), keys);
+        assertTrue(new MappedPreferences(mFile, DIRECT).getAll().isEmpty());
+    }
+
+    @Test
+    public void multiProcess_syncPullsOnlyNewRecords() throws Exception {
+        MappedPreferences writer = new MappedPreferences(mFile, true, DIRECT);
+        MappedPreferences reader = new MappedPreferences(mFile, true, DIRECT);
+        final long version = reader.getVersion();
+        assertTrue(reader.sync().isEmpty());
+
+        writer.edit().putInt("a", 1).putString("b", "value").apply();
+
+        assertTrue(reader.getVersion() != version);
+        assertEquals(new HashSet<>(Arrays.asList("a", "b")), new HashSet<>(reader.sync()));
+        assertEquals(1, reader.getInt("a", 0));
+        assertEquals("value", reader.getString("b", null));
+        assertTrue(reader.sync().isEmpty());
+
+        writer.edit().remove("a").apply();
+        assertEquals(Arrays.asList("a"), reader.sync());
+        assertFalse(reader.contains("a"));
+    }
+
+    @Test
+    public void multiProcess_writePullsOtherChangesFirst() throws Exception {
+        MappedPreferences first = new MappedPreferences(mFile, true, DIRECT);
+        MappedPreferences second = new MappedPreferences(mFile, true, DIRECT);
+
+        first.edit().putInt("a", 1).apply();
+        second.edit().putInt("b", 2).apply();
+
+        assertEquals(1, second.getInt("a", 0));
+        first.sync();
+        assertEquals(2, first.getInt("b", 0));
+        SharedPreferences reopened = new MappedPreferences(mFile, DIRECT);
+        assertEquals(1, reopened.getInt("a", 0));
+        assertEquals(2, reopened.getInt("b", 0));
+    }
+
+    @Test
+    public void multiProcess_syncFollowsCompaction() throws Exception {
+        MappedPreferences writer = new MappedPreferences(mFile, true, DIRECT);
+        MappedPreferences reader = new MappedPreferences(mFile, true, DIRECT);
+        writer.edit().putString("removed", "value").apply();
+        reader.sync();
+
+        writer.edit().clear().putInt("counter", 1).apply();
+
+        reader.sync();
+        assertFalse(reader.contains("removed"));
+        assertEquals(1, reader.getInt("counter", 0));
+
+        writer.edit().putInt("counter", 2).apply();
+        reader.sync();
+        assertEquals(2, reader.getInt("counter", 0));
+    }
+}
@@ -0,0 +1,184 @@
+package jp.hideakisago.androidtemplate.viewcontrollers.menu;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import jp.hideakisago.androidtemplate.libraries.utilities.log.RecordingLogWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * {@link ItemPager} の test です。
+ */
+public class ItemPagerTest {
+
+    /** 呼び出し元の thread で実行する executor。 */
+    private static final Executor DIRECT = Runnable::run;
+
+    /** 1 page の項目数。 */
+    private static final int PAGE_SIZE = 2;
+
+    /** 端からこの行数以内を表示した時に、次の page を読み込みます。 */
+    private static final int PREFETCH_DISTANCE = 1;
+
+    /** 読み込んだ page の番号。 */
+    private final List<Integer> mLoadedPages = new ArrayList<>();
+
+    /** 最後に通知された項目。 */
+    private List<AbsMenuListFragment.Item> mItems;
+
+    /** 読み込みに失敗させる page の番号。 */
+    private int mFailingPage = -1;
+
+    /** Logcat の代わりの出力先。 */
+    private RecordingLogWriter mLogWriter;
+
+    /** Page 0 から 5 までの項目を「page:index」の名前で返す source。 */
+    private final AbsPagedMenuListFragment.ItemPageSource mSource = new AbsPagedMenuListFragment.ItemPageSource() {
+        @Override
+        protected boolean loadPage(int page, AbsMenuListFragment.ItemListBuilder builder) throws Exception {
+            mLoadedPages.add(page);
+            if (page == mFailingPage) {
+                throw new Exception("Failed to load page " + page);
+            }
+            for (int index = 0; index < PAGE_SIZE; index++) {
+                builder.add(page + ":" + index);
+            }
+            return page < 5;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        mLogWriter = new RecordingLogWriter().install();
+        mLoadedPages.clear();
+        mItems = null;
+        mFailingPage = -1;
+    }
+
+    @After
+    public void tearDown() {
+        mLogWriter.uninstall();
+    }
+
+    @Test
+    public void loadFirstPage_loadsOnlyFirstPage() {
+        ItemPager pager = createPager(3);
+
+        assertEquals("[0:0, 0:1]", pager.loadFirstPage().toString());
+        assertEquals("[0]", mLoadedPages.toString());
+    }
+
+    @Test
+    public void onVisibleRangeChanged_appendsAndEvictsFirstPage() {
+        ItemPager pager = createPager(3);
+        mItems = pager.loadFirstPage();
+
+        for (int count = 0; count < 3; count++) {
+            pager.onVisibleRangeChanged(first(), last(), 1);
+        }
+
+        assertEquals("[1:0, 1:1, 2:0, 2:1, 3:0, 3:1]", mItems.toString());
+    }
+
+    @Test
+    public void onVisibleRangeChanged_shortListDoesNotLoadBackAndForth() {
+        ItemPager pager = createPager(3);
+        mItems = pager.loadFirstPage();
+
+        // 全ての項目が画面に収まる場合、読み込み毎の確認で最後の page まで読み込んで止まります。
+        for (int count = 0; count < 20; count++) {
+            pager.onVisibleRangeChanged(first(), last(), 0);
+        }
+
+        assertEquals("[0, 1, 2, 3, 4, 5]", mLoadedPages.toString());
+        assertEquals("[3:0, 3:1, 4:0, 4:1, 5:0, 5:1]", mItems.toString());
+    }
+
+    @Test
+    public void onVisibleRangeChanged_reloadsEvictedPageOnlyWhenScrollingTowardsIt() {
+        ItemPager pager = createPager(2);
+        mItems = pager.loadFirstPage();
+        pager.onVisibleRangeChanged(first(), last(), 1);
+        pager.onVisibleRangeChanged(first(), last(), 1);
+        assertEquals("[1:0, 1:1, 2:0, 2:1]", mItems.toString());
+
+        pager.onVisibleRangeChanged(first(), last(), -1);
+        assertEquals("[0:0, 0:1, 1:0, 1:1]", mItems.toString());
+
+        // 前に読み込んだ直後は、破棄した後ろの page を読み込み直しません。
+        pager.onVisibleRangeChanged(first(), last(), 0);
+        assertEquals("[0, 1, 2, 0]", mLoadedPages.toString());
+    }
+
+    @Test
+    public void onVisibleRangeChanged_usesPositionsInHeldItems() {
+        ItemPager pager = createPager(3);
+        mItems = pager.loadFirstPage();
+        pager.onVisibleRangeChanged(first(), last(), 1);
+        pager.onVisibleRangeChanged(first(), last(), 1);
+
+        // 絞り込みで最初の page の項目のみを表示している場合は、後ろの端に近づいていません。
+        pager.onVisibleRangeChanged(mItems.get(0), mItems.get(1), 1);
+        assertEquals("[0, 1, 2]", mLoadedPages.toString());
+
+        // 保持していない項目は無視します。
+        pager.onVisibleRangeChanged(null, new AbsMenuListFragment.Item("stale"), 1);
+        assertEquals("[0, 1, 2]", mLoadedPages.toString());
+    }
+
+    @Test
+    public void onVisibleRangeChanged_stopsAppendingAfterFailure() {
+        ItemPager pager = createPager(3);
+        mItems = pager.loadFirstPage();
+        List<AbsMenuListFragment.Item> firstPage = mItems;
+        mFailingPage = 1;
+
+        pager.onVisibleRangeChanged(first(), last(), 1);
+        pager.onVisibleRangeChanged(first(), last(), 1);
+
+        assertEquals("[0, 1]", mLoadedPages.toString());
+        assertSame(firstPage, mItems);
+    }
+
+    @Test
+    public void cancel_dropsPendingPage() {
+        final List<Runnable> pending = new ArrayList<>();
+        ItemPager pager = new ItemPager(mSource, 3, PREFETCH_DISTANCE, DIRECT, pending::add, items -> mItems = items);
+        mItems = pager.loadFirstPage();
+
+        pager.onVisibleRangeChanged(first(), last(), 1);
+        pager.cancel();
+        pending.get(0).run();
+
+        assertEquals("[0:0, 0:1]", mItems.toString());
+    }
+
+    /**
+     * @param maxPages 保持する page 数の上限です。
+     * @return 全ての読み込みを呼び出し元の thread で行う pager を返します。
+     */
+    private ItemPager createPager(int maxPages) {
+        return new ItemPager(mSource, maxPages, PREFETCH_DISTANCE, DIRECT, DIRECT, items -> mItems = items);
+    }
+
+    /**
+     * @return 表示している最初の項目として、保持している最初の項目を返します。
+     */
+    private AbsMenuListFragment.Item first() {
+        return mItems.get(0);
+    }
+
+    /**
+     * @return 表示している最後の項目として、保持している最後の項目を返します。
+     */
+    private AbsMenuListFragment.Item last() {
+        return mItems.get(mItems.size() - 1);
+    }
+}